@@ -0,0 +1,130 @@
+/*
+ *  This file is part of SWADroid.
+ *
+ *  Copyright (C) 2010 Juan Miguel Boyero Corral <juanmi1982@gmail.com>
+ *
+ *  SWADroid is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  SWADroid is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with SWADroid.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.ugr.swad.swadroid.database;
+
+import android.content.Context;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.android.dataframework.DataFramework;
+import com.android.dataframework.Entity;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import es.ugr.swad.swadroid.preferences.Preferences;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that the _id of new rows is assigned by SQLite without collisions when several
+ * threads insert rows at the same time
+ *
+ * @author Juan Miguel Boyero Corral <juanmi1982@gmail.com>
+ */
+@RunWith(AndroidJUnit4.class)
+public class ConcurrentInsertTest {
+    private static final int THREADS = 4;
+    private static final int ROWS_PER_THREAD = 250;
+
+    private DataBaseHelper dbHelper;
+
+    @Before
+    public void setUp() throws Exception {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+
+        new Preferences(context);
+        dbHelper = DataBaseHelper.acquire(context);
+        removeTestRows();
+    }
+
+    @After
+    public void tearDown() {
+        removeTestRows();
+        DataBaseHelper.release();
+    }
+
+    /**
+     * Test rows use negative course codes, which never come from SWAD
+     */
+    private void removeTestRows() {
+        DataFramework.getInstance().delete(DataBaseHelper.DB_TABLE_COURSE_ACCESS, "crsCod < 0", null);
+    }
+
+    @Test
+    public void concurrentInsertsGetDistinctIds() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Future<List<Long>>> results = new ArrayList<>();
+
+        try {
+            for (int t = 0; t < THREADS; t++) {
+                final int thread = t;
+
+                results.add(executor.submit(new Callable<List<Long>>() {
+                    @Override
+                    public List<Long> call() throws Exception {
+                        List<Long> ids = new ArrayList<>(ROWS_PER_THREAD);
+
+                        start.await();
+                        for (int i = 0; i < ROWS_PER_THREAD; i++) {
+                            Entity ent = new Entity(DataBaseHelper.DB_TABLE_COURSE_ACCESS);
+                            ent.setValue("crsCod", -(thread * ROWS_PER_THREAD + i + 1));
+                            ent.setValue("lastAccess", 0);
+                            ent.setValue("bytes", 0);
+                            assertTrue(ent.save());
+                            ids.add(ent.getId());
+                        }
+
+                        return ids;
+                    }
+                }));
+            }
+
+            start.countDown();
+
+            Set<Long> ids = new HashSet<>();
+            for (Future<List<Long>> result : results) {
+                ids.addAll(result.get());
+            }
+
+            assertEquals(THREADS * ROWS_PER_THREAD, ids.size());
+            assertTrue(Collections.min(ids) > 0);
+            assertEquals(THREADS * ROWS_PER_THREAD, dbHelper.getAllRowsCount(DataBaseHelper.DB_TABLE_COURSE_ACCESS,
+                    QueryBuilder.where("crsCod", "<", 0)));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
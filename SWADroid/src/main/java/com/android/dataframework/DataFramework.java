@@ -27,17 +27,46 @@
 
 package com.android.dataframework;
 
+import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.CursorWrapper;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteCursor;
+import android.database.sqlite.SQLiteCursorDriver;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteProgram;
+import android.database.sqlite.SQLiteQuery;
+import android.database.sqlite.SQLiteQueryBuilder;
+import android.database.sqlite.SQLiteStatement;
+import android.text.TextUtils;
 
+import com.android.dataframework.core.BinaryBackup;
 import com.android.dataframework.core.DataFrameworkCore;
+import com.android.dataframework.core.StorageProfile;
 import com.android.dataframework.core.Table;
 
 import org.xmlpull.v1.XmlPullParserException;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class DataFramework {
 	
@@ -45,21 +74,99 @@ public class DataFramework {
 	public final static String KEY_ID = "_id";
 	public static DataFramework mDataFramework = null;
 	
+	/**
+	 * Recibe un aviso cada vez que se modifican los registros de una tabla
+	 */
+	public interface OnTableChangedListener {
+		/**
+		 * Se llama despues de cada escritura en la tabla y otra vez cuando se
+		 * confirma la transaccion en la que se hizo la escritura
+		 * 
+		 * @param table tabla modificada
+		 */
+		void onTableChanged(String table);
+	}
+	
+	/**
+	 * Recibe los _id de los registros modificados en una tabla una vez confirmada
+	 * la transaccion en la que se modificaron. Si la transaccion se deshace no se
+	 * recibe ningun aviso. Se llama desde el hilo que hizo la escritura.
+	 */
+	public interface OnRowsChangedListener {
+		/**
+		 * Se llama despues de cada escritura confirmada en la tabla
+		 * 
+		 * @param table tabla modificada
+		 * @param ids _id de los registros insertados, modificados o borrados,
+		 *            o null si no se conocen y hay que volver a leer la tabla entera
+		 */
+		void onRowsChanged(String table, Set<Long> ids);
+	}
+	
+	/**
+	 * Numero maximo de _id que se envian en un aviso. Si se modifican mas
+	 * registros se avisa con null para que se vuelva a leer la tabla entera
+	 */
+	public static final int MAX_CHANGED_IDS = 500;
+	
+	/**
+	 * Estado de la transaccion en curso en un hilo
+	 */
+	private static class TransactionState {
+		/** Tablas modificadas */
+		final HashSet<String> tables = new HashSet<>();
+		/** _id modificados por tabla. null si no se conocen */
+		final HashMap<String, HashSet<Long>> rows = new HashMap<>();
+		/** Marca de exito de cada nivel de transaccion abierto */
+		final ArrayList<Boolean> successful = new ArrayList<>();
+		/** Algun nivel ha terminado sin exito, por lo que se deshace todo */
+		boolean failed;
+	}
+	
 	private int mOpenInstances = 0;
 
     private ArrayList<Table> mTables = new ArrayList<>();
+    // Se sustituye entero al abrir, nunca se modifica, asi que se puede leer desde cualquier hilo
+    private volatile HashMap<String, Table> mTablesByName = new HashMap<>();
     
     private DataFrameworkCore mCore;
     
-    public void open(Context context, String namePackage) throws XmlPullParserException, IOException 
+    private volatile Thread mWriterThread;
+    private final AtomicInteger mPendingWrites = new AtomicInteger();
+    
+    private final List<OnTableChangedListener> mTableChangedListeners = new CopyOnWriteArrayList<>();
+    private final QueryLog mQueryLog = new QueryLog();
+    private final ConcurrentHashMap<String, List<OnRowsChangedListener>> mRowsChangedListeners = new ConcurrentHashMap<>();
+    private final ThreadLocal<TransactionState> mTransactionState = new ThreadLocal<TransactionState>() {
+		@Override
+		protected TransactionState initialValue() {
+			return new TransactionState();
+		}
+	};
+    private final ExecutorService mWriter = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable r) {
+			mWriterThread = new Thread(r, "DataFramework-writer");
+			return mWriterThread;
+		}
+	});
+    
+    public synchronized void open(Context context, String namePackage) throws XmlPullParserException, IOException 
     {
     	if (mOpenInstances == 0){
 			mCore.open(context, namePackage, mTables);
+			
+			// El indice por nombre se construye entero antes de publicarlo
+			HashMap<String, Table> tablesByName = new HashMap<>();
+			for (Table t : mTables) {
+				tablesByName.put(t.getName(), t);
+			}
+			mTablesByName = tablesByName;
 		}
     	mOpenInstances++;
     }
     
-    public void close()
+    public synchronized void close()
     {
     	if(mOpenInstances>0){
 			mOpenInstances--;
@@ -101,17 +208,7 @@ public class DataFramework {
      */
 	
 	public Table getTable (String table) throws NullPointerException {
-		Table res = null;
-		ArrayList<Table> tables = mTables;
-		int tableCount = tables.size();
-		
-		for (int i = 0; i < tableCount; i++)
-		{
-			Table t = tables.get(i); 
-			if (t.getName().equals(table)){
-				res = t;
-			}
-		}
+		Table res = mTablesByName.get(table);
 		if(res==null){
 			throw new NullPointerException("No existe la tabla '"+table+"'");
 		}
@@ -207,17 +304,63 @@ public class DataFramework {
      */    
     
     public ArrayList<Entity> getEntityList(String table, String where, String orderby, String limit) {
-    	String[] fields = getTable(table).getFieldsToArray();
-    	Cursor c = getCursor(table, fields, where, null, null, null, orderby, limit);
+    	return getEntityList(table, null, where, null, orderby, limit);
+    }
+    
+    /**
+     * Devuelve una lista de objetos Entity cargando solo las columnas indicadas. 
+     * El resto de campos de las entidades quedan a null, y al guardarlas solo se 
+     * actualizan las columnas cargadas.
+     * 
+     * @param table tabla a usar
+     * @param columns columnas a cargar, sin incluir _id (null para todas)
+     * @param where parte WHERE de la consulta SQL
+     * @param orderby parte ORDER BY de la consulta SQL
+     * @param limit parte LIMIT de la consulta SQL
+     * 
+     * @return lista de objetos
+     */    
+    
+    public ArrayList<Entity> getEntityList(String table, String[] columns, String where, String orderby, String limit) {
+    	return getEntityList(table, columns, where, null, orderby, limit);
+    }
+    
+    /**
+     * Devuelve una lista de objetos Entity de una consulta con parametros. Al usar ? en lugar 
+     * de los valores, SQLite puede reutilizar la sentencia compilada para todas las consultas 
+     * iguales.
+     * 
+     * @param table tabla a usar
+     * @param columns columnas a cargar, sin incluir _id (null para todas)
+     * @param where parte WHERE de la consulta SQL, con ? en lugar de los valores
+     * @param whereArgs valores de la parte WHERE, de cualquier tipo (ver bindValue)
+     * @param orderby parte ORDER BY de la consulta SQL
+     * @param limit parte LIMIT de la consulta SQL
+     * 
+     * @return lista de objetos
+     */    
+    
+    public ArrayList<Entity> getEntityList(String table, String[] columns, String where, Object[] whereArgs, 
+    			String orderby, String limit) {
+    	String[] fields;
+    	
+    	if (columns == null) {
+    		fields = getTable(table).getFieldsToArray();
+    	} else {
+    		fields = new String[columns.length + 1];
+    		fields[0] = KEY_ID;
+    		System.arraycopy(columns, 0, fields, 1, columns.length);
+    	}
     	
+    	Cursor c = getCursor(table, fields, where, whereArgs, orderby, limit);
     	ArrayList<Entity> aux = new ArrayList<>();
+    	// Los indices de columna se resuelven una sola vez para todo el cursor
+    	int[] columnIndexes = Entity.getColumnIndexes(getTable(table), c, columns);
 
     	c.moveToFirst();
     	while (!c.isAfterLast()) {
     		// Creamos la entidad a partir del cursor y nos ahorramos el acceso a la BD
-    		Entity ent = new Entity(table, c);
-
-    		aux.add(ent);
+    		aux.add(new Entity(table, c, columnIndexes));
     		c.moveToNext();
     	}
     	c.close();
@@ -254,11 +397,37 @@ public class DataFramework {
      */
     
     public int getEntityListCount(String table, String where) {
-    	String[] fields = getTable(table).getFieldsToArray();
-    	Cursor c = getCursor(table, fields, where, null, null, null, null, null);
-    	int count = c.getCount();
-    	c.close();
-    	c = null;
+    	return getEntityListCount(table, where, null);
+    }
+    
+    /**
+     * Devuelve el numero de resultados de una consulta con parametros
+     * 
+     * @param table tabla a usar
+     * @param where parte WHERE de la consulta SQL, con ? en lugar de los valores
+     * @param whereArgs valores de la parte WHERE, de cualquier tipo (ver bindValue)
+     * 
+     * @return numero de objetos
+     */
+    
+    public int getEntityListCount(String table, String where, Object[] whereArgs) {
+    	long start = System.nanoTime();
+    	// SELECT COUNT(*) en lugar de cargar todos los registros en un cursor
+    	String sql = "SELECT COUNT(*) FROM " + table
+    			+ ((where != null && where.length() > 0) ? " WHERE " + where : "");
+    	SQLiteStatement statement = mCore.getDB().compileStatement(sql);
+    	int count;
+    	try {
+    		if (whereArgs != null) {
+    			for (int i = 0; i < whereArgs.length; i++) {
+    				bindValue(statement, i + 1, whereArgs[i]);
+    			}
+    		}
+    		count = (int) statement.simpleQueryForLong();
+    	} finally {
+    		statement.close();
+    	}
+    	mQueryLog.record(mCore.getDB(), sql, toStringArgs(whereArgs), start, 1);
     	return count;
     }
     
@@ -293,7 +462,7 @@ public class DataFramework {
     
     public Cursor getCursor(String table) {
     	String[] aux = getTable(table).getFieldsToArray();
-        return mCore.getDB().query(table, aux, null, null, null, null, null);
+        return getCursor(table, aux, null, null, null, null, null, null);
     }
     
     /**
@@ -308,7 +477,23 @@ public class DataFramework {
     
     public Cursor getCursor(String table, String selection, String orderby) {
     	String[] aux = getTable(table).getFieldsToArray();
-    	return mCore.getDB().query(table, aux, selection, null, null, null, orderby, null);
+    	return getCursor(table, aux, selection, null, null, null, orderby, null);
+    }
+    
+    /**
+     * Devuelve un cursor con los registros de una consulta con parametros en la tabla 
+     * 
+     * @param table tabla a usar
+     * @param selection parte WHERE de la consulta SQL, con ? en lugar de los valores
+     * @param selectionArgs valores de la parte WHERE
+     * @param orderby parte ORDER BY de la consulta SQL
+     * 
+     * @return cursor
+     */
+    
+    public Cursor getCursor(String table, String selection, String[] selectionArgs, String orderby) {
+    	String[] aux = getTable(table).getFieldsToArray();
+    	return getCursor(table, aux, selection, selectionArgs, null, null, orderby, null);
     }
     
     /**
@@ -328,9 +513,144 @@ public class DataFramework {
     
     public Cursor getCursor(String table, String[] fields, String selection, 
     			String[] selectionArgs, String groupby, String having, String orderby, String limit) {
-        return mCore.getDB().query(table, fields, selection, selectionArgs, groupby, having, orderby, limit);
+        Cursor c = mCore.getDB().query(table, fields, selection, selectionArgs, groupby, having, orderby, limit);
+        return new LoggedCursor(c, SQLiteQueryBuilder.buildQueryString(false, table, fields, selection,
+        		groupby, having, orderby, limit), selectionArgs);
     }
 	
+    /**
+     * Devuelve un cursor con los registros de una consulta con parametros de cualquier tipo.
+     * Cada parametro se enlaza segun su tipo (ver bindValue), asi los byte[] se comparan como
+     * BLOB directamente con la columna y la comparacion puede usar sus indices
+     * 
+     * @param table tabla a usar
+     * @param fields array con los nombres de los campos de la tabla
+     * @param selection parte WHERE de la consulta SQL, con ? en lugar de los valores
+     * @param selectionArgs valores de la parte WHERE
+     * @param orderby parte ORDER BY de la consulta SQL
+     * @param limit parte LIMIT de la consulta SQL
+     * 
+     * @return cursor
+     */
+    
+    public Cursor getCursor(String table, String[] fields, String selection, 
+    			Object[] selectionArgs, String orderby, String limit) {
+    	String sql = SQLiteQueryBuilder.buildQueryString(false, table, fields, selection,
+    			null, null, orderby, limit);
+    	Cursor c = mCore.getDB().rawQueryWithFactory(new BindArgsCursorFactory(selectionArgs), sql, null, table);
+    	return new LoggedCursor(c, sql, toStringArgs(selectionArgs));
+    }
+    
+    /**
+     * Cursor que registra su consulta en el QueryLog la primera vez que se accede a el.
+     * SQLiteDatabase no ejecuta la consulta hasta ese momento, asi que se mide justo esa
+     * ejecucion sin obligar a contar los registros al crear el cursor: un cursor que no se
+     * lee no cuesta nada y uno grande sigue cargandose por ventanas
+     */
+    private class LoggedCursor extends CursorWrapper {
+    	private final String mSql;
+    	private final String[] mArgs;
+    	private boolean mLogged = false;
+    	
+    	LoggedCursor(Cursor cursor, String sql, String[] args) {
+    		super(cursor);
+    		mSql = sql;
+    		mArgs = args;
+    	}
+    	
+    	/**
+    	 * Ejecuta la consulta en el primer acceso, midiendo su tiempo
+    	 */
+    	private void execute() {
+    		if (!mLogged) {
+    			mLogged = true;
+    			long start = System.nanoTime();
+    			int rows = super.getCount();
+    			mQueryLog.record(mCore.getDB(), mSql, mArgs, start, rows);
+    		}
+    	}
+    	
+    	@Override
+    	public int getCount() {
+    		execute();
+    		return super.getCount();
+    	}
+    	
+    	@Override
+    	public boolean move(int offset) {
+    		execute();
+    		return super.move(offset);
+    	}
+    	
+    	@Override
+    	public boolean moveToPosition(int position) {
+    		execute();
+    		return super.moveToPosition(position);
+    	}
+    	
+    	@Override
+    	public boolean moveToFirst() {
+    		execute();
+    		return super.moveToFirst();
+    	}
+    	
+    	@Override
+    	public boolean moveToLast() {
+    		execute();
+    		return super.moveToLast();
+    	}
+    	
+    	@Override
+    	public boolean moveToNext() {
+    		execute();
+    		return super.moveToNext();
+    	}
+    	
+    	@Override
+    	public boolean moveToPrevious() {
+    		execute();
+    		return super.moveToPrevious();
+    	}
+    }
+    
+    /**
+     * Crea los cursores de las consultas con parametros de cualquier tipo. SQLiteDatabase solo
+     * enlaza parametros de tipo String, asi que se enlazan aqui, antes de ejecutar la consulta
+     */
+    private static class BindArgsCursorFactory implements SQLiteDatabase.CursorFactory {
+    	private final Object[] mArgs;
+    	
+    	BindArgsCursorFactory(Object[] args) {
+    		mArgs = args;
+    	}
+    	
+    	@Override
+    	public Cursor newCursor(SQLiteDatabase db, SQLiteCursorDriver masterQuery, String editTable, SQLiteQuery query) {
+    		if (mArgs != null) {
+    			for (int i = 0; i < mArgs.length; i++) {
+    				bindValue(query, i + 1, mArgs[i]);
+    			}
+    		}
+    		return new SQLiteCursor(masterQuery, editTable, query);
+    	}
+    }
+    
+    /**
+     * Convierte los parametros a texto para el registro de consultas. Los byte[] y los null
+     * se sustituyen por una cadena vacia, solo se usan para obtener el plan de la consulta
+     */
+    private static String[] toStringArgs(Object[] args) {
+    	if (args == null) {
+    		return null;
+    	}
+    	
+    	String[] aux = new String[args.length];
+    	for (int i = 0; i < args.length; i++) {
+    		aux[i] = (args[i] == null || args[i] instanceof byte[]) ? "" : String.valueOf(args[i]);
+    	}
+    	return aux;
+    }
+    
     /**
      * Devuelve un cursor con los registros de una consulta en la tabla 
      * 
@@ -341,23 +661,397 @@ public class DataFramework {
      */
     
     public Cursor rawQuery(String sql, String[] selectionArgs) {
+    	// getCount ya era necesario para colocar el cursor en el primer registro, asi que
+    	// medir aqui la consulta no anade trabajo
+    	long start = System.nanoTime();
     	Cursor c = mCore.getDB().rawQuery(sql, selectionArgs);
-    	if (c.getCount() > 0) {
+    	int rows = c.getCount();
+    	mQueryLog.record(mCore.getDB(), sql, selectionArgs, start, rows);
+    	if (rows > 0) {
     		c.moveToFirst();
     	}
         return c;        
     }
+    
+    /**
+     * Devuelve un cursor con los registros de una consulta SQL, sin moverlo. La consulta
+     * se registra en el QueryLog la primera vez que se accede al cursor
+     * 
+     * @param sql consulta SQL
+     * @param selectionArgs valores de los ? de la consulta
+     * 
+     * @return cursor
+     */
+    public Cursor getRawCursor(String sql, String[] selectionArgs) {
+    	return new LoggedCursor(mCore.getDB().rawQuery(sql, selectionArgs), sql, selectionArgs);
+    }
+    
+    /**
+     * Ejecuta una consulta que devuelve un unico numero, registrandola en el QueryLog
+     * 
+     * @param sql consulta SQL
+     * @param selectionArgs valores de los ? de la consulta
+     * 
+     * @return valor de la primera columna del primer registro
+     */
+    public long longForQuery(String sql, String[] selectionArgs) {
+    	long start = System.nanoTime();
+    	long value = DatabaseUtils.longForQuery(mCore.getDB(), sql, selectionArgs);
+    	mQueryLog.record(mCore.getDB(), sql, selectionArgs, start, 1);
+    	return value;
+    }
+    	
+    /**
+     * Inserta o actualiza un lote de registros identificados por su clave natural.
+     * 
+     * Para cada registro se ejecuta un UPDATE precompilado por las columnas clave y, solo si
+     * no ha modificado ningun registro, un INSERT precompilado, por lo que un registro existente
+     * cuesta una unica sentencia. Todo el lote se ejecuta en una unica transaccion (anidada si
+     * ya hay una en curso). Los _id de los registros actualizados solo se buscan si alguien
+     * escucha los cambios de la tabla, y como mucho MAX_CHANGED_IDS; si no, se avisa con null.
+     * Todos los registros del lote deben contener las mismas columnas.
+     * 
+     * @param table tabla a usar
+     * @param keyColumns columnas que forman la clave natural del registro
+     * @param rows registros a insertar o actualizar
+     * @param insertOnlyColumns columnas que solo se escriben al insertar un registro nuevo
+     * 
+     * @return numero de registros insertados o actualizados
+     */
+    public int upsert(final String table, final String[] keyColumns, final List<ContentValues> rows,
+    		final String... insertOnlyColumns) {
+    	return runWrite(new Callable<Integer>() {
+    		@Override
+    		public Integer call() {
+    			return doUpsert(table, keyColumns, rows, insertOnlyColumns);
+    		}
+    	});
+    }
+    
+    private int doUpsert(String table, String[] keyColumns, List<ContentValues> rows, String... insertOnlyColumns) {
+    	if (rows.isEmpty()) {
+    		return 0;
+    	}
+    	
+    	List<String> keys = Arrays.asList(keyColumns);
+    	List<String> insertOnly = Arrays.asList(insertOnlyColumns);
+    	ArrayList<String> insertColumns = new ArrayList<>(rows.get(0).keySet());
+    	ArrayList<String> updateColumns = new ArrayList<>();
+    	
+    	// Una columna que falte en algun registro se perderia en todo el lote
+    	for (ContentValues row : rows) {
+    		if (!row.keySet().equals(rows.get(0).keySet())) {
+    			throw new IllegalArgumentException("Todos los registros de " + table
+    					+ " deben contener las mismas columnas: " + insertColumns + " != " + row.keySet());
+    		}
+    	}
+    	
+    	for (String column : insertColumns) {
+    		if (!keys.contains(column) && !insertOnly.contains(column)) {
+    			updateColumns.add(column);
+    		}
+    	}
+    	
+    	StringBuilder where = new StringBuilder();
+    	for (int i = 0; i < keyColumns.length; i++) {
+    		where.append(i > 0 ? " AND " : "").append(keyColumns[i]).append(" = ?");
+    	}
+    	
+    	// Si solo hay columnas clave el UPDATE no cambia nada, pero indica si el registro existe
+    	StringBuilder update = new StringBuilder("UPDATE ").append(table).append(" SET ");
+    	if (updateColumns.isEmpty()) {
+    		update.append(keyColumns[0]).append(" = ").append(keyColumns[0]);
+    	}
+    	for (int i = 0; i < updateColumns.size(); i++) {
+    		update.append(i > 0 ? ", " : "").append(updateColumns.get(i)).append(" = ?");
+    	}
+    	update.append(" WHERE ").append(where);
+    	
+    	StringBuilder insert = new StringBuilder("INSERT INTO ").append(table).append(" (");
+    	StringBuilder values = new StringBuilder(") VALUES (");
+    	for (int i = 0; i < insertColumns.size(); i++) {
+    		insert.append(i > 0 ? ", " : "").append(insertColumns.get(i));
+    		values.append(i > 0 ? ", ?" : "?");
+    	}
+    	insert.append(values).append(")");
+    	
+    	List<OnRowsChangedListener> listeners = mRowsChangedListeners.get(table);
+    	boolean trackIds = (listeners != null) && !listeners.isEmpty();
+    	
+    	SQLiteDatabase db = mCore.getDB();
+    	SQLiteStatement selectStatement = null;
+    	SQLiteStatement updateStatement = null;
+    	SQLiteStatement insertStatement = null;
+    	HashSet<Long> ids = trackIds ? new HashSet<Long>() : null;
+    	int count = 0;
+    	long start = System.nanoTime();
+    	
+    	db.beginTransaction();
+    	try {
+    		updateStatement = db.compileStatement(update.toString());
+    		insertStatement = db.compileStatement(insert.toString());
+    		if (trackIds) {
+    			selectStatement = db.compileStatement("SELECT " + KEY_ID + " FROM " + table
+    					+ " WHERE " + where + " LIMIT 1");
+    		}
+    		
+    		for (ContentValues row : rows) {
+    			int index = 1;
+    			updateStatement.clearBindings();
+    			for (String column : updateColumns) {
+    				bindValue(updateStatement, index++, row.get(column));
+    			}
+    			for (String column : keyColumns) {
+    				bindValue(updateStatement, index++, row.get(column));
+    			}
+    			
+    			if (updateStatement.executeUpdateDelete() == 0) {
+    				insertStatement.clearBindings();
+    				for (int i = 0; i < insertColumns.size(); i++) {
+    					bindValue(insertStatement, i + 1, row.get(insertColumns.get(i)));
+    				}
+    				long id = insertStatement.executeInsert();
+    				if (ids != null) {
+    					ids.add(id);
+    				}
+    			} else if (ids != null) {
+    				// Solo se busca el _id mientras el aviso pueda llevar la lista de registros
+    				if (ids.size() < MAX_CHANGED_IDS) {
+    					selectStatement.clearBindings();
+    					for (int i = 0; i < keyColumns.length; i++) {
+    						bindValue(selectStatement, i + 1, row.get(keyColumns[i]));
+    					}
+    					ids.add(selectStatement.simpleQueryForLong());
+    				} else {
+    					ids = null;
+    				}
+    			}
+    			
+    			if (ids != null && ids.size() > MAX_CHANGED_IDS) {
+    				ids = null;
+    			}
+    			count++;
+    		}
+    		db.setTransactionSuccessful();
+    	} finally {
+    		if (selectStatement != null) {
+    			selectStatement.close();
+    		}
+    		if (updateStatement != null) {
+    			updateStatement.close();
+    		}
+    		if (insertStatement != null) {
+    			insertStatement.close();
+    		}
+    		db.endTransaction();
+    	}
+    	
+    	mQueryLog.record(db, update.toString(), null, start, count);
+    	notifyRowsChanged(table, ids);
+    	return count;
+    }
+    
+    /**
+     * Borra con una unica sentencia DELETE los registros de una tabla que cumplen una condicion,
+     * sin cargarlos en memoria
+     * 
+     * @param table tabla a usar
+     * @param where parte WHERE de la sentencia, con ? en lugar de los valores (null borra todos)
+     * @param whereArgs valores de la parte WHERE
+     * 
+     * @return numero de registros borrados
+     */
+    public int delete(final String table, final String where, final String[] whereArgs) {
+    	return runWrite(new Callable<Integer>() {
+    		@Override
+    		public Integer call() {
+    			return doDelete(table, where, whereArgs);
+    		}
+    	});
+    }
+    
+    private int doDelete(String table, String where, String[] whereArgs) {
+    	HashSet<Long> ids = getChangedIds(table, where, whereArgs);
+    	long start = System.nanoTime();
+    	int count = mCore.getDB().delete(table, where, whereArgs);
+    	mQueryLog.record(mCore.getDB(), "DELETE FROM " + table
+    			+ ((where != null && where.length() > 0) ? " WHERE " + where : ""), whereArgs, start, count);
+    	if (count > 0) notifyRowsChanged(table, ids);
+    	return count;
+    }
+    
+    /**
+     * Actualiza con una unica sentencia UPDATE los registros de una tabla que cumplen una condicion,
+     * sin cargarlos en memoria
+     * 
+     * @param table tabla a usar
+     * @param values columnas a modificar con sus nuevos valores
+     * @param where parte WHERE de la sentencia, con ? en lugar de los valores (null actualiza todos)
+     * @param whereArgs valores de la parte WHERE
+     * 
+     * @return numero de registros actualizados
+     */
+    public int update(final String table, final ContentValues values, final String where, final String[] whereArgs) {
+    	return runWrite(new Callable<Integer>() {
+    		@Override
+    		public Integer call() {
+    			return doUpdate(table, values, where, whereArgs);
+    		}
+    	});
+    }
+    
+    private int doUpdate(String table, ContentValues values, String where, String[] whereArgs) {
+    	HashSet<Long> ids = getChangedIds(table, where, whereArgs);
+    	long start = System.nanoTime();
+    	int count = mCore.getDB().update(table, values, where, whereArgs);
+    	// Los valores del SET no estan en whereArgs, el plan se obtiene sin parametros
+    	mQueryLog.record(mCore.getDB(), "UPDATE " + table + " SET " + TextUtils.join(" = ?, ", values.keySet()) + " = ?"
+    			+ ((where != null && where.length() > 0) ? " WHERE " + where : ""), null, start, count);
+    	if (count > 0) notifyRowsChanged(table, ids);
+    	return count;
+    }
+    
+    /**
+     * Actualiza con una unica sentencia UPDATE los registros de una tabla que cumplen una condicion
+     * con parametros de cualquier tipo. Cada parametro se enlaza segun su tipo (ver bindValue), asi
+     * los byte[] se comparan como BLOB con la columna
+     * 
+     * @param table tabla a usar
+     * @param values columnas a modificar con sus nuevos valores
+     * @param where parte WHERE de la sentencia, con ? en lugar de los valores (null actualiza todos)
+     * @param whereArgs valores de la parte WHERE, de cualquier tipo
+     * 
+     * @return numero de registros actualizados
+     */
+    public int update(final String table, final ContentValues values, final String where, final Object[] whereArgs) {
+    	return runWrite(new Callable<Integer>() {
+    		@Override
+    		public Integer call() {
+    			return doUpdate(table, values, where, whereArgs);
+    		}
+    	});
+    }
+    
+    private int doUpdate(String table, ContentValues values, String where, Object[] whereArgs) {
+    	HashSet<Long> ids = getChangedIds(table, where, whereArgs);
+    	StringBuilder sql = new StringBuilder("UPDATE ").append(table).append(" SET ");
+    	ArrayList<Object> bindArgs = new ArrayList<>();
+    	
+    	for (Entry<String, Object> value : values.valueSet()) {
+    		if (!bindArgs.isEmpty()) sql.append(", ");
+    		sql.append(value.getKey()).append(" = ?");
+    		bindArgs.add(value.getValue());
+    	}
+    	if (where != null && where.length() > 0) {
+    		sql.append(" WHERE ").append(where);
+    		if (whereArgs != null) bindArgs.addAll(Arrays.asList(whereArgs));
+    	}
+    	
+    	long start = System.nanoTime();
+    	SQLiteStatement statement = mCore.getDB().compileStatement(sql.toString());
+    	int count;
+    	try {
+    		for (int i = 0; i < bindArgs.size(); i++) {
+    			bindValue(statement, i + 1, bindArgs.get(i));
+    		}
+    		count = statement.executeUpdateDelete();
+    	} finally {
+    		statement.close();
+    	}
+    	// Los valores del SET no estan en whereArgs, el plan se obtiene sin parametros
+    	mQueryLog.record(mCore.getDB(), sql.toString(), null, start, count);
+    	if (count > 0) notifyRowsChanged(table, ids);
+    	return count;
+    }
+    
+    /**
+     * Obtiene los _id de los registros que va a modificar una sentencia, solo si alguien
+     * escucha los cambios de la tabla. Dentro de una transaccion el resultado coincide con
+     * los registros modificados; fuera de ella otro hilo podria escribir entre la consulta
+     * y la sentencia, por lo que conviene ejecutar ambas dentro de una transaccion.
+     * 
+     * @param table tabla a usar
+     * @param where parte WHERE de la sentencia
+     * @param whereArgs valores de la parte WHERE
+     * 
+     * @return _id de los registros, o null si no hay listeners o son mas de MAX_CHANGED_IDS
+     */
+    private HashSet<Long> getChangedIds(String table, String where, Object[] whereArgs) {
+    	List<OnRowsChangedListener> listeners = mRowsChangedListeners.get(table);
+    	if (listeners == null || listeners.isEmpty()) {
+    		return null;
+    	}
     	
+    	HashSet<Long> ids = new HashSet<>();
+    	// Los parametros se enlazan segun su tipo, como en la sentencia que se va a ejecutar
+    	String sql = SQLiteQueryBuilder.buildQueryString(false, table, new String[] {KEY_ID}, where,
+    			null, null, null, String.valueOf(MAX_CHANGED_IDS + 1));
+    	Cursor c = mCore.getDB().rawQueryWithFactory(new BindArgsCursorFactory(whereArgs), sql, null, table);
+    	try {
+    		while (c.moveToNext()) {
+    			ids.add(c.getLong(0));
+    		}
+    	} finally {
+    		c.close();
+    	}
+    	
+    	return (ids.size() > MAX_CHANGED_IDS) ? null : ids;
+    }
+    
+    /**
+     * Conserva solo los primeros registros de una tabla segun un orden y borra el resto
+     * con una unica sentencia DELETE. Sirve para mantener solo los N registros mas recientes.
+     * 
+     * @param table tabla a usar
+     * @param orderby parte ORDER BY que indica que registros se conservan primero
+     * @param count numero de registros a conservar
+     * 
+     * @return numero de registros borrados
+     */
+    public int deleteAllButFirst(String table, String orderby, int count) {
+    	return delete(table, KEY_ID + " NOT IN (SELECT " + KEY_ID + " FROM " + table
+    			+ " ORDER BY " + orderby + " LIMIT " + Math.max(count, 0) + ")", null);
+    }
+    
+    /**
+     * Asigna un valor a un parametro de una sentencia precompilada o una consulta segun su tipo
+     * 
+     * @param statement sentencia precompilada o consulta
+     * @param index posicion del parametro (empieza en 1)
+     * @param value valor a asignar
+     */
+    public static void bindValue(SQLiteProgram statement, int index, Object value) {
+    	if (value == null) {
+    		statement.bindNull(index);
+    	} else if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+    		statement.bindLong(index, ((Number) value).longValue());
+    	} else if (value instanceof Double || value instanceof Float) {
+    		statement.bindDouble(index, ((Number) value).doubleValue());
+    	} else if (value instanceof Boolean) {
+    		statement.bindLong(index, (Boolean) value ? 1 : 0);
+    	} else if (value instanceof byte[]) {
+    		statement.bindBlob(index, (byte[]) value);
+    	} else {
+    		statement.bindString(index, value.toString());
+    	}
+    }
+    
     /**
      * Crea las tablas de la base de datos 
      * 
      */    
     public void createTables() {
-		ArrayList<Table> tables = mTables;
-		int tableCount = tables.size();
-    	for (int i = 0; i < tableCount; i++){
-			mCore.getDB().execSQL(tables.get(i).getSQLCreateTable());
-		}
+		runWrite(new Callable<Void>() {
+			@Override
+			public Void call() {
+				ArrayList<Table> tables = mTables;
+				int tableCount = tables.size();
+				for (int i = 0; i < tableCount; i++){
+					mCore.getDB().execSQL(tables.get(i).getSQLCreateTable());
+				}
+				return null;
+			}
+		});
 	}
     
     /**
@@ -366,11 +1060,18 @@ public class DataFramework {
      */
     
     public void deleteTables() {
-		ArrayList<Table> tables = mTables;
-		int tableCount = tables.size();
-		for (int i = 0; i < tableCount; i++){
-			mCore.getDB().execSQL(tables.get(i).getSQLDeleteTable());
-		}
+		runWrite(new Callable<Void>() {
+			@Override
+			public Void call() {
+				ArrayList<Table> tables = mTables;
+				int tableCount = tables.size();
+				for (int i = 0; i < tableCount; i++){
+					mCore.getDB().execSQL(tables.get(i).getSQLDeleteTable());
+				}
+				notifyAllTablesChanged();
+				return null;
+			}
+		});
 	}
     
     /**
@@ -379,11 +1080,18 @@ public class DataFramework {
      * @param table tabla
      * 
      */    
-    public void deleteTable(String table) {
-    	Table t = getTable(table);
-    	if (t != null){
-			mCore.getDB().execSQL(t.getSQLDeleteTable());
-		}
+    public void deleteTable(final String table) {
+		runWrite(new Callable<Void>() {
+			@Override
+			public Void call() {
+				Table t = getTable(table);
+				if (t != null){
+					mCore.getDB().execSQL(t.getSQLDeleteTable());
+					notifyTableChanged(table);
+				}
+				return null;
+			}
+		});
 	}
     
     /**
@@ -391,11 +1099,18 @@ public class DataFramework {
      * 
      */    
     public void emptyTables() {
-		ArrayList<Table> tables = mTables;
-		int tableCount = tables.size();
-    	for (int i = 0; i < tableCount; i++){
-			mCore.getDB().delete(tables.get(i).getName(), null, null);
-		}
+		runWrite(new Callable<Void>() {
+			@Override
+			public Void call() {
+				ArrayList<Table> tables = mTables;
+				int tableCount = tables.size();
+				for (int i = 0; i < tableCount; i++){
+					mCore.getDB().delete(tables.get(i).getName(), null, null);
+				}
+				notifyAllTablesChanged();
+				return null;
+			}
+		});
 	}
     
     /**
@@ -404,15 +1119,22 @@ public class DataFramework {
      */
     
     public void emptyTablesBackup() {
-		ArrayList<Table> tables = mTables;
-		int tableCount = tables.size();
-    	for (int i = 0; i < tableCount; i++)
-    	{
-    		Table t = tables.get(i);
-    		if (t.isBackup()){
-				mCore.getDB().delete(t.getName(), null, null);
+		runWrite(new Callable<Void>() {
+			@Override
+			public Void call() {
+				ArrayList<Table> tables = mTables;
+				int tableCount = tables.size();
+				for (int i = 0; i < tableCount; i++)
+				{
+					Table t = tables.get(i);
+					if (t.isBackup()){
+						mCore.getDB().delete(t.getName(), null, null);
+						notifyTableChanged(t.getName());
+					}
+				}
+				return null;
 			}
-    	}
+		});
 	}
     
     /**
@@ -422,8 +1144,15 @@ public class DataFramework {
      * 
      */
     
-    public void emptyTable(String table) {
-    	mCore.getDB().delete(table, null, null);
+    public void emptyTable(final String table) {
+		runWrite(new Callable<Void>() {
+			@Override
+			public Void call() {
+				mCore.getDB().delete(table, null, null);
+				notifyTableChanged(table);
+				return null;
+			}
+		});
 	}
     
     /**
@@ -448,13 +1177,93 @@ public class DataFramework {
     }
     
     /**
-     * Reestablece una copia de seguridad de la base de datos
+     * Reestablece una copia de seguridad de la base de datos. Las copias
+     * binarias se reconocen por su cabecera y se restauran con restoreBinary.
      * 
-     * @param file Archivo XML donde esta la copia
+     * @param file Archivo XML o binario donde esta la copia
      * 
      */
     public void restore(String file) throws XmlPullParserException, IOException {	
+    	if (BinaryBackup.isBackup(file)) {
+    		restoreBinary(file);
+    		return;
+    	}
     	mCore.restore(file);
+    	notifyAllTablesChanged();
+    }
+    
+    /**
+     * Crea una copia de seguridad binaria de la base de datos, opcionalmente comprimida
+     * 
+     * @param file Archivo donde hace la copia
+     * @param compress Comprimir la copia con GZIP
+     * @return numero de registros copiados
+     * 
+     */
+    public int backupBinary(String file, boolean compress) throws IOException {
+    	return mCore.backupBinary(file, false, compress);
+    }
+    
+    /**
+     * Crea una copia de seguridad binaria de la base de datos, opcionalmente comprimida
+     * 
+     * @param file Archivo donde hace la copia
+     * @param forceBackup Forzar a hacer backup aunque la table no lo permita
+     * @param compress Comprimir la copia con GZIP
+     * @return numero de registros copiados
+     * 
+     */
+    public int backupBinary(String file, boolean forceBackup, boolean compress) throws IOException {
+    	return mCore.backupBinary(file, forceBackup, compress);
+    }
+    
+    /**
+     * Reestablece una copia de seguridad binaria de la base de datos en el hilo escritor.
+     * Si la copia no se puede leer entera, la base de datos no se modifica.
+     * 
+     * @param file Archivo donde esta la copia
+     * @return numero de registros restaurados
+     * 
+     */
+    public int restoreBinary(final String file) throws IOException {
+    	int count;
+    	try {
+    		count = runWrite(new Callable<Integer>() {
+    			@Override
+    			public Integer call() throws IOException {
+    				return mCore.restoreBinary(file);
+    			}
+    		});
+    	} catch (RuntimeException e) {
+    		if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+    		throw e;
+    	}
+    	notifyAllTablesChanged();
+    	return count;
+    }
+    
+	/**
+	 * Devuelve un recorrido paginado de los registros de una tabla
+	 * 
+	 * @param table Tabla
+	 * @param where Condicion de busqueda
+	 * @param whereArgs Argumentos de la condicion de busqueda
+	 * @param pageSize Registros por pagina
+	 * @return EntityPager
+	 */
+    public EntityPager getEntityPager(String table, String where, String[] whereArgs, int pageSize) {
+    	return new EntityPager(table, where, whereArgs, pageSize, 0);
+    }
+    
+	/**
+	 * Devuelve un recorrido paginado de los registros de una tabla
+	 * 
+	 * @param table Tabla
+	 * @param where Condicion de busqueda
+	 * @return EntityPager
+	 */
+    public EntityPager getEntityPager(String table, String where) {
+    	return getEntityPager(table, where, null, EntityPager.DEFAULT_PAGE_SIZE);
     }
     
 	/**
@@ -481,6 +1290,54 @@ public class DataFramework {
     public SQLiteDatabase getDB() {
     	return mCore.getDB();
     }
+
+    /**
+     * Devuelve el registro de consultas lentas
+     * 
+     * @return registro de consultas lentas
+     */
+    public QueryLog getQueryLog() {
+    	return mQueryLog;
+    }
+
+    /**
+     * Devuelve la version que tenia la base de datos antes de abrirla
+     * 
+     * @return version anterior (0 si se acaba de crear)
+     */
+    public int getOldVersion() {
+    	return mCore.getOldVersion();
+    }
+
+    /**
+     * Devuelve la version de la base de datos definida en tables.xml
+     * 
+     * @return version actual
+     */
+    public int getVersion() {
+    	return mCore.getVersion();
+    }
+    
+    /**
+     * Establece el perfil de almacenamiento que se aplica al abrir la base de datos.
+     * No tiene efecto si la base de datos ya esta abierta
+     * 
+     * @param profile perfil de almacenamiento
+     */
+    public void setStorageProfile(StorageProfile profile) {
+    	if (mOpenInstances == 0) {
+    		mCore.setStorageProfile(profile);
+    	}
+    }
+    
+    /**
+     * Devuelve el perfil de almacenamiento
+     * 
+     * @return perfil de almacenamiento o null si se usan los valores por defecto
+     */
+    public StorageProfile getStorageProfile() {
+    	return mCore.getStorageProfile();
+    }
     
     public void setForceLanguage(String lang) {
     	mCore.setForceLanguage(lang);
@@ -509,6 +1366,7 @@ public class DataFramework {
 	public void startTransaction()
 	{
 		mCore.getDB().beginTransaction();
+		mTransactionState.get().successful.add(Boolean.FALSE);
 	}
 	
 	/**
@@ -518,7 +1376,34 @@ public class DataFramework {
 	 */
 	public void endTransaction()
 	{
+		TransactionState state = mTransactionState.get();
+		
 		mCore.getDB().endTransaction();
+		if (!state.successful.isEmpty() && !state.successful.remove(state.successful.size() - 1)) {
+			state.failed = true;
+		}
+		
+		if (!inTransaction()) {
+			String[] tables = state.tables.toArray(new String[0]);
+			HashMap<String, HashSet<Long>> rows = new HashMap<>(state.rows);
+			boolean committed = !state.failed;
+			
+			state.tables.clear();
+			state.rows.clear();
+			state.successful.clear();
+			state.failed = false;
+			
+			// Se repite el aviso de las tablas modificadas una vez terminada la transaccion
+			for (String table : tables) {
+				dispatchTableChanged(table);
+			}
+			// Los registros modificados solo se avisan si la transaccion se ha confirmado
+			if (committed) {
+				for (Entry<String, HashSet<Long>> e : rows.entrySet()) {
+					dispatchRowsChanged(e.getKey(), e.getValue());
+				}
+			}
+		}
 	}
 
 	/**
@@ -539,7 +1424,236 @@ public class DataFramework {
 	public void successfulTransaction()
 	{
 		mCore.getDB().setTransactionSuccessful();
+		
+		ArrayList<Boolean> successful = mTransactionState.get().successful;
+		if (!successful.isEmpty()) {
+			successful.set(successful.size() - 1, Boolean.TRUE);
+		}
 	}	
+
+	/**
+	 * Registra un listener que recibe un aviso cada vez que se modifica una tabla
+	 * 
+	 * @param listener listener a registrar
+	 */
+	public void addOnTableChangedListener(OnTableChangedListener listener)
+	{
+		mTableChangedListeners.add(listener);
+	}
+	
+	/**
+	 * Elimina un listener registrado con addOnTableChangedListener
+	 * 
+	 * @param listener listener a eliminar
+	 */
+	public void removeOnTableChangedListener(OnTableChangedListener listener)
+	{
+		mTableChangedListeners.remove(listener);
+	}
+	
+	/**
+	 * Registra un listener que recibe los _id de los registros modificados en una tabla
+	 * 
+	 * @param table tabla a escuchar
+	 * @param listener listener a registrar
+	 */
+	public void addOnRowsChangedListener(String table, OnRowsChangedListener listener)
+	{
+		List<OnRowsChangedListener> listeners = mRowsChangedListeners.get(table);
+		if (listeners == null) {
+			mRowsChangedListeners.putIfAbsent(table, new CopyOnWriteArrayList<OnRowsChangedListener>());
+			listeners = mRowsChangedListeners.get(table);
+		}
+		listeners.add(listener);
+	}
+	
+	/**
+	 * Elimina un listener registrado con addOnRowsChangedListener
+	 * 
+	 * @param table tabla escuchada
+	 * @param listener listener a eliminar
+	 */
+	public void removeOnRowsChangedListener(String table, OnRowsChangedListener listener)
+	{
+		List<OnRowsChangedListener> listeners = mRowsChangedListeners.get(table);
+		if (listeners != null) {
+			listeners.remove(listener);
+		}
+	}
+	
+	/**
+	 * Avisa a los listeners de que se han modificado los registros de una tabla.
+	 * Las escrituras hechas fuera de esta clase y de Entity deben llamarlo.
+	 * Si hay una transaccion en curso el aviso se repite cuando termina.
+	 * 
+	 * @param table tabla modificada
+	 */
+	public void notifyTableChanged(String table)
+	{
+		notifyRowsChanged(table, null);
+	}
+	
+	/**
+	 * Avisa a los listeners de que se han modificado unos registros de una tabla.
+	 * Los OnTableChangedListener reciben el aviso inmediatamente. Los OnRowsChangedListener
+	 * lo reciben ahora si no hay una transaccion en curso o, si la hay, cuando se confirma.
+	 * 
+	 * @param table tabla modificada
+	 * @param ids _id de los registros modificados, o null si no se conocen
+	 */
+	public void notifyRowsChanged(String table, Collection<Long> ids)
+	{
+		dispatchTableChanged(table);
+		
+		if (mCore.getDB() != null && inTransaction()) {
+			TransactionState state = mTransactionState.get();
+			state.tables.add(table);
+			
+			if (!state.rows.containsKey(table)) {
+				state.rows.put(table, (ids != null) ? new HashSet<>(ids) : null);
+			} else {
+				HashSet<Long> pending = state.rows.get(table);
+				if (pending != null && ids != null && pending.size() + ids.size() <= MAX_CHANGED_IDS) {
+					pending.addAll(ids);
+				} else {
+					state.rows.put(table, null);
+				}
+			}
+		} else {
+			dispatchRowsChanged(table, (ids != null) ? new HashSet<>(ids) : null);
+		}
+	}
+	
+	private void dispatchTableChanged(String table)
+	{
+		for (OnTableChangedListener listener : mTableChangedListeners) {
+			listener.onTableChanged(table);
+		}
+	}
+	
+	private void dispatchRowsChanged(String table, HashSet<Long> ids)
+	{
+		List<OnRowsChangedListener> listeners = mRowsChangedListeners.get(table);
+		if (listeners == null || listeners.isEmpty()) {
+			return;
+		}
+		
+		Set<Long> changed = (ids != null && ids.size() <= MAX_CHANGED_IDS) ? Collections.unmodifiableSet(ids) : null;
+		for (OnRowsChangedListener listener : listeners) {
+			listener.onRowsChanged(table, changed);
+		}
+	}
+	
+	/**
+	 * Avisa a los listeners de que se han modificado todas las tablas
+	 */
+	public void notifyAllTablesChanged()
+	{
+		ArrayList<Table> tables = mTables;
+		int tableCount = tables.size();
+		for (int i = 0; i < tableCount; i++) {
+			notifyTableChanged(tables.get(i).getName());
+		}
+	}
+	
+	/**
+	 * Ejecuta una escritura en el hilo escritor y espera a que termine.
+	 * Todas las escrituras pasan por este unico hilo, por lo que no
+	 * compiten entre ellas, y en modo WAL las lecturas de otros hilos siguen
+	 * ejecutandose mientras tanto. Si se llama desde el hilo escritor la
+	 * tarea se ejecuta directamente. Las sentencias lentas de la tarea se
+	 * atribuyen en el QueryLog al metodo que la encolo.
+	 * 
+	 * @param task Escritura a ejecutar
+	 * @return Resultado de la tarea
+	 * @throws Exception La excepcion lanzada por la tarea
+	 */
+	public <T> T write(final Callable<T> task) throws Exception
+	{
+		if (Thread.currentThread() == mWriterThread) {
+			return task.call();
+		}
+		
+		final Throwable caller = mQueryLog.captureCaller();
+		mPendingWrites.incrementAndGet();
+		try {
+			return mWriter.submit(new Callable<T>() {
+				@Override
+				public T call() throws Exception {
+					mQueryLog.setSubmitter(caller);
+					try {
+						return task.call();
+					} finally {
+						mQueryLog.setSubmitter(null);
+					}
+				}
+			}).get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof Exception) throw (Exception) cause;
+			if (cause instanceof Error) throw (Error) cause;
+			throw e;
+		} finally {
+			mPendingWrites.decrementAndGet();
+		}
+	}
+	
+	/**
+	 * Ejecuta una escritura de la propia libreria en el hilo escritor. Si ya
+	 * estamos en el hilo escritor o dentro de una transaccion de este hilo se
+	 * ejecuta directamente: esperar al hilo escritor mientras este hilo tiene
+	 * la base de datos bloqueada provocaria un interbloqueo.
+	 * 
+	 * @param task Escritura a ejecutar
+	 * @return Resultado de la tarea
+	 */
+	<T> T runWrite(Callable<T> task)
+	{
+		try {
+			if (Thread.currentThread() == mWriterThread || inTransaction()) {
+				return task.call();
+			}
+			return write(task);
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+	}
+	
+	/**
+	 * Encola una escritura en el hilo escritor sin esperar a que termine
+	 * 
+	 * @param task Escritura a ejecutar
+	 * @return Future para conocer cuando termina la tarea
+	 */
+	public Future<?> submitWrite(final Runnable task)
+	{
+		final Throwable caller = mQueryLog.captureCaller();
+		mPendingWrites.incrementAndGet();
+		return mWriter.submit(new Runnable() {
+			@Override
+			public void run() {
+				mQueryLog.setSubmitter(caller);
+				try {
+					task.run();
+				} finally {
+					mQueryLog.setSubmitter(null);
+					mPendingWrites.decrementAndGet();
+				}
+			}
+		});
+	}
+	
+	/**
+	 * Indica si hay escrituras pendientes o en curso en el hilo escritor
+	 * 
+	 * @return Boolean True si el hilo escritor esta ocupado
+	 */
+	public boolean isWriting()
+	{
+		return mPendingWrites.get() > 0;
+	}
 	
 }
 
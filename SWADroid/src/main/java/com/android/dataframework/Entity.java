@@ -30,10 +30,13 @@ package com.android.dataframework;
 import android.content.ContentValues;
 import android.database.Cursor;
 import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
+import android.text.TextUtils;
+import android.util.Base64;
 import android.util.Log;
 
 import com.android.dataframework.core.Field;
@@ -45,22 +48,32 @@ import org.xmlpull.v1.XmlPullParserFactory;
 
 import java.io.IOException;
 import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map.Entry;
+import java.util.concurrent.Callable;
 
 public class Entity {
 	
 	private String mTable;
+	private Table mTableObject;
 	private long mId = -1;
 	private long mForceId = -1;
-	protected HashMap<String, Object> mAttributes = new HashMap<>();
+	// Valores de los campos, en el mismo orden que Table.getFields()
+	protected Object[] mValues;
 	protected HashMap<String, Object> mMultilanguagesAttributes = new HashMap<>();
 
     /**
      * Devuelve el siguiente _id
      * 
      * @return siguiente _id
+     * @deprecated save() ya no lo usa: SQLite asigna el _id (rowid) al insertar, 
+     * de forma atomica aunque haya varios hilos escribiendo a la vez
      */	
+	@Deprecated
 	public long nextId() {
 		if (mForceId<0) 
 		{
@@ -312,7 +325,10 @@ public class Entity {
 
 	public Table getTableObject()
 	{
-		return DataFramework.getInstance().getTable(mTable);
+		if (mTableObject == null) {
+			mTableObject = DataFramework.getInstance().getTable(mTable);
+		}
+		return mTableObject;
 	}
 	
 	/**
@@ -343,18 +359,72 @@ public class Entity {
 		return obj == null? 0.0f : Float.parseFloat(obj.toString());
 	}
 
+	/**
+     * Devuelve el valor a un atributo de tipo blob
+     * 
+     * @param name nombre del campo
+     * @return valor del campo o null si es nulo o no es un blob
+     */	
+	public byte[] getBlob(String name)
+	{
+		Object obj = getValue(name);
+		return (obj instanceof byte[]) ? (byte[]) obj : null;
+	}
+
 	/**
 	 * A�ade los atributos desde el objeto table.
 	 * Se llama desde el constructor. 
 	 */
 	private void addAllAttributesFromTable()
 	{
-		Table t = getTableObject();
-		for (int i=0; i<t.getFields().size(); i++) 
-		{
-			Field f = t.getFields().get(i);
-			mAttributes.put(f.getName(), null);
+		mValues = new Object[getTableObject().getFields().size()];
+	}
+	
+	/**
+	 * Resuelve los indices de las columnas del cursor para los campos de la tabla.
+	 * Se calcula una vez por cursor y se reutiliza para cada registro.
+	 * 
+	 * El cursor debe contener todos los campos de la tabla: si falta alguno se lanza
+	 * IllegalArgumentException en vez de cargarlo a null sin avisar.
+	 * 
+	 * @param t Tabla de las entidades
+	 * @param c Cursor con los registros
+	 * @return indices de columna: la posicion 0 es el _id y la posicion i+1 el campo i de la tabla
+	 */
+	public static int[] getColumnIndexes(Table t, Cursor c)
+	{
+		return getColumnIndexes(t, c, null);
+	}
+	
+	/**
+	 * Resuelve los indices de las columnas del cursor para los campos de una consulta
+	 * con proyeccion. Los campos pedidos deben estar en el cursor; los que no se han
+	 * pedido tienen indice -1 y quedan a null en la entidad.
+	 * 
+	 * @param t Tabla de las entidades
+	 * @param c Cursor con los registros
+	 * @param columns campos cargados por la consulta, sin incluir _id (null para todos)
+	 * @return indices de columna: la posicion 0 es el _id y la posicion i+1 el campo i de la tabla
+	 */
+	public static int[] getColumnIndexes(Table t, Cursor c, String[] columns)
+	{
+		ArrayList<Field> fields = t.getFields();
+		List<String> loaded = (columns != null) ? Arrays.asList(columns) : null;
+		int fieldCount = fields.size();
+		int[] indexes = new int[fieldCount + 1];
+		
+		indexes[0] = c.getColumnIndexOrThrow(DataFramework.KEY_ID);
+		for (int i = 0; i < fieldCount; i++) {
+			Field f = fields.get(i);
+			if (loaded != null && !loaded.contains(f.getName())) {
+				indexes[i + 1] = -1;
+			} else if (f.getType().equals("multilanguage")) {
+				indexes[i + 1] = c.getColumnIndexOrThrow(f.getName() + "_" + DataFramework.getInstance().getCurrentLanguage());
+			} else {
+				indexes[i + 1] = c.getColumnIndexOrThrow(f.getName());
+			}
 		}
+		return indexes;
 	}
 
 	/**
@@ -377,42 +447,45 @@ public class Entity {
 	protected void loadData(Cursor c)
 	{		
 		if (c!=null) {
-			HashMap<String, Object> attribs = mAttributes; // Para reducir el acceso al heap.
-			Object[] attributeNames = attribs.keySet().toArray();
-			int attributeCount = attributeNames.length;
-
-			for (Object attributeName1 : attributeNames) {
-				String attributeName = attributeName1.toString();
-
-				Field f = getTableObject().getField(attributeName);
+			loadData(c, getColumnIndexes(getTableObject(), c));
+		}
+	}
+	
+	/**
+	 * Carga los valores de un cursor con los indices de columna ya resueltos.
+	 * 
+	 * @param c Cursor al registro con los datos.
+	 * @param columnIndexes indices obtenidos con getColumnIndexes
+	 */
+	protected void loadData(Cursor c, int[] columnIndexes)
+	{
+		ArrayList<Field> fields = getTableObject().getFields();
+		Object[] values = mValues; // Para reducir el acceso al heap.
+		int fieldCount = values.length;
 
-				int indexField;
-				if (f.getType().equals("multilanguage")) {
-					indexField = c.getColumnIndexOrThrow(attributeName + "_" + DataFramework.getInstance().getCurrentLanguage());
-				} else {
-					indexField = c.getColumnIndexOrThrow(attributeName);
-				}
+		for (int i = 0; i < fieldCount; i++) {
+			int indexField = columnIndexes[i + 1];
+			if (indexField < 0) {
+				values[i] = null;
+				continue;
+			}
 
-				switch (f.getType()) {
-					case "text":
-					case "multilanguage":
-					case "string-identifier":
-					case "drawable-identifier":
-						attribs.put(attributeName, c.getString(indexField));
-						break;
-					case "int":
-						attribs.put(attributeName, c.getLong(indexField));
-						break;
-					case "foreign-key":
-						attribs.put(attributeName, c.getLong(indexField));
-						break;
-					case "real":
-						attribs.put(attributeName, c.getDouble(indexField));
-						break;
-					default:
-						attribs.put(attributeName, c.getString(indexField));
-						break;
-				}
+			switch (fields.get(i).getType()) {
+				case "int":
+				case "foreign-key":
+					values[i] = c.getLong(indexField);
+					break;
+				case "real":
+					values[i] = c.getDouble(indexField);
+					break;
+				case "blob":
+					// Las filas anteriores a la columna blob pueden guardar todavia un texto
+					values[i] = (c.getType(indexField) == Cursor.FIELD_TYPE_BLOB)
+							? c.getBlob(indexField) : c.getString(indexField);
+					break;
+				default:
+					values[i] = c.getString(indexField);
+					break;
 			}
 		}
 	}
@@ -425,12 +498,39 @@ public class Entity {
 	 */
 	public Entity(String table, Cursor c)
 	{
-		mId = c.getLong(c.getColumnIndexOrThrow(DataFramework.KEY_ID));
+		this(table, c, getColumnIndexes(DataFramework.getInstance().getTable(table), c));
+	}
+	
+	/**
+	 * Constructor a partir de un cursor con los indices de columna ya resueltos.
+	 * Es el que se debe usar al recorrer un cursor con muchos registros.
+	 * 
+	 * @param table Nombre de la tabla
+	 * @param c Cursor al registro a cargar. 
+	 * @param columnIndexes indices obtenidos con getColumnIndexes
+	 */
+	public Entity(String table, Cursor c, int[] columnIndexes)
+	{
+		mId = c.getLong(columnIndexes[0]);
 		this.mTable = table;
 		mForceId = -1;
 		
 		addAllAttributesFromTable();
-		loadData(c);
+		loadData(c, columnIndexes);
+	}
+	
+	/**
+	 * Reutiliza la entidad para otro registro del mismo cursor (ver EntityPager).
+	 * 
+	 * @param c Cursor posicionado en el nuevo registro
+	 * @param columnIndexes indices obtenidos con getColumnIndexes
+	 */
+	void reload(Cursor c, int[] columnIndexes)
+	{
+		mId = c.getLong(columnIndexes[0]);
+		mForceId = -1;
+		mMultilanguagesAttributes.clear();
+		loadData(c, columnIndexes);
 	}
 	
     /**
@@ -484,10 +584,15 @@ public class Entity {
      */	
 	public void setValue(String name, Object value) 
 	{
+		int index = getTableObject().getFieldIndex(name);
+		if (index < 0) {
+			// Igual que antes, los atributos que no son campos de la tabla no se guardan
+			return;
+		}
 		if (Entity.class.isInstance(value)){
-			mAttributes.put(name, ((Entity)value).getId());
+			mValues[index] = ((Entity)value).getId();
 		}else{
-			mAttributes.put(name, value);
+			mValues[index] = value;
 		}
 	}
 	
@@ -510,7 +615,8 @@ public class Entity {
      */	
 	public Object getValue(String name) 
 	{
-		return mAttributes.get(name);
+		int index = getTableObject().getFieldIndex(name);
+		return (index < 0) ? null : mValues[index];
 	}
 
 	/**
@@ -538,7 +644,7 @@ public class Entity {
      */	
 	public boolean isAttribute(String name) {
         try {
-		    return getTableObject().getField(name) != null;
+		    return getTableObject().getFieldIndex(name) >= 0;
         } catch (NullPointerException e) {
             return false;
         }
@@ -551,7 +657,7 @@ public class Entity {
 	 */
 	public boolean isNull(String name)
 	{
-		return mAttributes.get(name) == null;
+		return getValue(name) == null;
 	}
  
     /**
@@ -562,18 +668,15 @@ public class Entity {
     public boolean save() {
     	try {
 	        ContentValues args = new ContentValues();
-	        if (isInsert()) {
-	        	args.put(DataFramework.KEY_ID, "" + nextId());
-	        } else {
-	        	if (mForceId>0) {
-	        		args.put(DataFramework.KEY_ID, "" + mForceId);	        		
-	        	}
+	        // Si no se fuerza el _id, SQLite asigna el siguiente rowid en el propio INSERT
+	        if (mForceId>0) {
+	        	args.put(DataFramework.KEY_ID, "" + mForceId);
 	        }
-			for (int i=0; i < getTableObject().getFields().size(); i++) 
+			ArrayList<Field> fields = getTableObject().getFields();
+			for (int i=0; i < fields.size(); i++) 
 			{
-				Field f = getTableObject().getFields().get(i);
-				String attr = f.getName();
-				Object value = getValue(attr);
+				Field f = fields.get(i);
+				Object value = mValues[i];
 				if (value != null)  
 				{
 					// TODO: Verificar si no hay que usar las distintas llamdas 
@@ -584,6 +687,8 @@ public class Entity {
 					// campo.
 					if (f.getType().equals("multilanguage")) {
 						args.put(f.getName() + "_" +  DataFramework.getInstance().getCurrentLanguage(), value.toString());
+					} else if (value instanceof byte[]) {
+						args.put(f.getName(), (byte[]) value);
 					} else {
 						args.put(f.getName(), value.toString());
 					}
@@ -594,12 +699,30 @@ public class Entity {
 				args.put(e.getKey(), e.getValue().toString());
 			}
 			
-			if (isInsert()) {
-				mId = DataFramework.getInstance().getDB().insert(mTable, null, args);
-				return (mId > 0);
-			}else{
-				return DataFramework.getInstance().getDB().update(mTable, args, DataFramework.KEY_ID + "=" + mId, null) > 0;
+			final ContentValues values = args;
+			boolean saved = DataFramework.getInstance().runWrite(new Callable<Boolean>() {
+				@Override
+				public Boolean call() {
+					SQLiteDatabase db = DataFramework.getInstance().getDB();
+					long start = System.nanoTime();
+					if (isInsert()) {
+						mId = db.insert(mTable, null, values);
+						DataFramework.getInstance().getQueryLog().record(db, "INSERT INTO " + mTable + " ("
+								+ TextUtils.join(", ", values.keySet()) + ") VALUES ("
+								+ TextUtils.join(", ", Collections.nCopies(values.size(), "?")) + ")", null, start, (mId > 0) ? 1 : 0);
+						return mId > 0;
+					}
+					int count = db.update(mTable, values, DataFramework.KEY_ID + "=" + mId, null);
+					DataFramework.getInstance().getQueryLog().record(db, "UPDATE " + mTable + " SET "
+							+ TextUtils.join(" = ?, ", values.keySet()) + " = ? WHERE " + DataFramework.KEY_ID + "=" + mId,
+							null, start, count);
+					return count > 0;
+				}
+			});
+			if (saved) {
+				DataFramework.getInstance().notifyRowsChanged(mTable, Collections.singleton(mId));
 			}
+			return saved;
     	} catch (SQLException e) {
             Log.e("Exception on query", e.toString());
         }
@@ -612,8 +735,23 @@ public class Entity {
      * @return "true" si es borrada, "false" otra cosa
      */
     public boolean delete() {
-        boolean res = DataFramework.getInstance().getDB().delete(mTable, DataFramework.KEY_ID + "=" + mId, null) > 0;
+        final long id = mId;
+        boolean res = DataFramework.getInstance().runWrite(new Callable<Boolean>() {
+        	@Override
+        	public Boolean call() {
+        		SQLiteDatabase db = DataFramework.getInstance().getDB();
+        		String where = DataFramework.KEY_ID + "=" + id;
+        		long start = System.nanoTime();
+        		int count = db.delete(mTable, where, null);
+        		DataFramework.getInstance().getQueryLog().record(db, "DELETE FROM " + mTable + " WHERE " + where,
+        				null, start, count);
+        		return count > 0;
+        	}
+        });
         mId = -1;
+        if (res) {
+        	DataFramework.getInstance().notifyRowsChanged(mTable, Collections.singleton(id));
+        }
         return res;
     }
 
@@ -632,17 +770,19 @@ public class Entity {
      */
     private String getXml()
     {    	
-		HashMap<String, Object> attribs = mAttributes; // Para reducir el acceso al heap.
-		Object[] attributeNames = attribs.keySet().toArray();
-		int attributeCount = attributeNames.length;
+		ArrayList<Field> fields = getTableObject().getFields();
+		Object[] values = mValues; // Para reducir el acceso al heap.
 		
     	String result = "<entity>\n";
 		result += "<attribute name=\"_id\" value=\"" + mId + "\"/>\n";
 
-		for (Object attributeName : attributeNames) {
-			if (!isNull(attributeName.toString())) {
-				result += "<attribute name=\"" + attributeName.toString() + "\"" +
-						" value=\"" + getValue(attributeName.toString()).toString() + "\"/>\n";
+		for (int i = 0; i < values.length; i++) {
+			if (values[i] instanceof byte[]) {
+				result += "<attribute name=\"" + fields.get(i).getName() + "\"" +
+						" encoding=\"base64\" value=\"" + Base64.encodeToString((byte[]) values[i], Base64.NO_WRAP) + "\"/>\n";
+			} else if (values[i] != null) {
+				result += "<attribute name=\"" + fields.get(i).getName() + "\"" +
+						" value=\"" + values[i].toString() + "\"/>\n";
 			}
 		}
     	
@@ -673,6 +813,8 @@ public class Entity {
 	    					String value = x.getAttributeValue(null, "value");
 	    					if (name.equals("_id")){
 								mId = Long.parseLong(value);
+							}else if ("base64".equals(x.getAttributeValue(null, "encoding"))){
+								setValue(name, Base64.decode(value, Base64.NO_WRAP));
 							}else{
 								setValue(name, value);
 							}
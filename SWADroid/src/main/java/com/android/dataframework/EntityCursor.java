@@ -63,11 +63,14 @@ public class EntityCursor implements Cursor, Iterable<Entity> {
 	private Cursor mCursor;
 	private String mTableName;
 	private Entity mCurrentEntity;
+	private int[] mColumnIndexes;
 	
 	public EntityCursor(String tableName, Cursor c)
 	{
 		mTableName = tableName;
 		mCursor = c;
+		// Los indices de columna se resuelven una vez para todos los registros
+		mColumnIndexes = Entity.getColumnIndexes(DataFramework.getInstance().getTable(tableName), c);
 		c.moveToFirst();
 	}
 
@@ -80,7 +83,7 @@ public class EntityCursor implements Cursor, Iterable<Entity> {
 	private void onMove(int oldPosition, int newPosition)
 	{
 		if (oldPosition != newPosition || mCurrentEntity == null){
-			mCurrentEntity = new Entity(mTableName, mCursor);
+			mCurrentEntity = new Entity(mTableName, mCursor, mColumnIndexes);
 		}
 	}
 	
@@ -0,0 +1,189 @@
+/*
+ *  This file is part of SWADroid.
+ *
+ *  Copyright (C) 2010 Juan Miguel Boyero Corral <juanmi1982@gmail.com>
+ *
+ *  SWADroid is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  SWADroid is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with SWADroid.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  EntityPager recorre los registros de una tabla por paginas de tamano fijo,
+ *  continuando cada pagina a partir del ultimo _id leido (keyset). Nunca hay
+ *  mas de una pagina cargada en memoria.
+ *
+ *  Se reutiliza una unica Entity para todos los registros, por lo que no se
+ *  debe guardar la referencia devuelta por el iterador.
+ *
+ *   Ejemplo de uso:
+ *
+ *     EntityPager pager = DataFramework.getInstance().getEntityPager("users", null, null, 100);
+ *     for (Entity entity: pager)
+ *     {
+ *     		entity.setValue("name", entity.getString("name").trim());
+ *     		entity.save();
+ *     }
+ *
+ */
+
+package com.android.dataframework;
+
+import android.database.Cursor;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+public class EntityPager implements Iterable<Entity> {
+
+	public static final int DEFAULT_PAGE_SIZE = 100;
+
+	private String mTable;
+	private String mWhere;
+	private String[] mWhereArgs;
+	private int mPageSize;
+	private long mStartAfterId;
+	private long mLastId;
+	private Cursor mCursor;
+
+	/**
+	 * Constructor
+	 *
+	 * @param table Tabla
+	 * @param where Condicion de busqueda (puede ser null)
+	 * @param whereArgs Argumentos de la condicion (puede ser null)
+	 * @param pageSize Numero de registros por pagina
+	 * @param startAfterId Se empieza por el registro siguiente a este _id (0 para empezar desde el principio)
+	 */
+	public EntityPager(String table, String where, String[] whereArgs, int pageSize, long startAfterId) {
+		mTable = table;
+		mWhere = where;
+		mWhereArgs = whereArgs;
+		mPageSize = (pageSize > 0) ? pageSize : DEFAULT_PAGE_SIZE;
+		mStartAfterId = startAfterId;
+		mLastId = startAfterId;
+	}
+
+	/**
+	 * Devuelve el _id del ultimo registro devuelto. Sirve para continuar el
+	 * recorrido mas tarde con otro EntityPager.
+	 *
+	 * @return ultimo _id leido
+	 */
+	public long getLastId() {
+		return mLastId;
+	}
+
+	/**
+	 * Cierra el cursor de la pagina en curso. Solo es necesario si se abandona
+	 * el recorrido antes de llegar al final.
+	 */
+	public void close() {
+		if (mCursor != null) {
+			mCursor.close();
+			mCursor = null;
+		}
+	}
+
+	/**
+	 * Carga la pagina siguiente al ultimo _id leido
+	 *
+	 * @return true si la pagina tiene registros
+	 */
+	private boolean loadNextPage() {
+		String selection = DataFramework.KEY_ID + " > ?";
+		String[] selectionArgs;
+		int argCount = (mWhereArgs != null) ? mWhereArgs.length : 0;
+
+		if (mWhere != null && mWhere.length() > 0) {
+			selection += " AND (" + mWhere + ")";
+		}
+
+		selectionArgs = new String[argCount + 1];
+		selectionArgs[0] = String.valueOf(mLastId);
+		if (argCount > 0) {
+			System.arraycopy(mWhereArgs, 0, selectionArgs, 1, argCount);
+		}
+
+		DataFramework df = DataFramework.getInstance();
+		mCursor = df.getCursor(mTable, df.getTable(mTable).getFieldsToArray(), selection, selectionArgs,
+				null, null, DataFramework.KEY_ID, String.valueOf(mPageSize));
+
+		if (mCursor.getCount() == 0) {
+			close();
+			return false;
+		}
+		return true;
+	}
+
+	@Override
+	public Iterator<Entity> iterator() {
+		close();
+		mLastId = mStartAfterId;
+		return new PageIterator();
+	}
+
+	private class PageIterator implements Iterator<Entity> {
+
+		private Entity mRow;
+		private int[] mColumnIndexes;
+		private boolean mFinished = false;
+
+		@Override
+		public boolean hasNext() {
+			if (mFinished) {
+				return false;
+			}
+
+			if (mCursor != null) {
+				if (mCursor.getPosition() < mCursor.getCount() - 1) {
+					return true;
+				}
+
+				// Una pagina incompleta es la ultima
+				boolean lastPage = mCursor.getCount() < mPageSize;
+				close();
+				if (lastPage) {
+					mFinished = true;
+					return false;
+				}
+			}
+
+			if (!loadNextPage()) {
+				mFinished = true;
+				return false;
+			}
+			return true;
+		}
+
+		@Override
+		public Entity next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+
+			mCursor.moveToNext();
+			if (mRow == null) {
+				mColumnIndexes = Entity.getColumnIndexes(DataFramework.getInstance().getTable(mTable), mCursor);
+				mRow = new Entity(mTable, mCursor, mColumnIndexes);
+			} else {
+				mRow.reload(mCursor, mColumnIndexes);
+			}
+			mLastId = mRow.getId();
+
+			return mRow;
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+}
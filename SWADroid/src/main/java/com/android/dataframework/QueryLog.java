@@ -0,0 +1,319 @@
+/*
+ *  This file is part of SWADroid.
+ *
+ *  Copyright (C) 2010 Juan Miguel Boyero Corral <juanmi1982@gmail.com>
+ *
+ *  SWADroid is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  SWADroid is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with SWADroid.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  QueryLog mide el tiempo de las consultas y escrituras hechas a traves de
+ *  DataFramework. Las que superan un umbral se guardan en un buffer circular
+ *  de tamano fijo con la forma de su SQL (sin literales), el numero de
+ *  registros y el metodo que las llamo.
+ *
+ *  Si se activa, la primera vez que aparece cada forma de SQL se guarda
+ *  tambien la salida de EXPLAIN QUERY PLAN. Solo debe activarse en
+ *  compilaciones de depuracion, porque ejecuta una consulta mas.
+ *
+ */
+
+package com.android.dataframework;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+public class QueryLog {
+
+	public static final long DEFAULT_THRESHOLD_MS = 50;
+	public static final int DEFAULT_CAPACITY = 100;
+
+	/**
+	 * Numero maximo de formas de SQL cuyo plan se recuerda
+	 */
+	private static final int MAX_PLANS = 200;
+
+	private static final String TAG = "QueryLog";
+
+	private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+	private static final Pattern NUMBER_LITERAL = Pattern.compile("(?<![\\w.])-?\\d+(?:\\.\\d+)?\\b");
+	private static final Pattern IN_LIST = Pattern.compile("(?i)\\bIN\\s*\\(\\s*\\?(?:\\s*,\\s*\\?)*\\s*\\)");
+	private static final Pattern SPACES = Pattern.compile("\\s+");
+
+	/**
+	 * Consulta lenta
+	 */
+	public static class Entry {
+		public final long time;
+		public final long durationMs;
+		public final String shape;
+		public final int rows;
+		public final String caller;
+
+		Entry(long time, long durationMs, String shape, int rows, String caller) {
+			this.time = time;
+			this.durationMs = durationMs;
+			this.shape = shape;
+			this.rows = rows;
+			this.caller = caller;
+		}
+	}
+
+	private final ArrayDeque<Entry> mEntries = new ArrayDeque<>();
+	private final LinkedHashMap<String, String> mPlans = new LinkedHashMap<String, String>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+			return size() > MAX_PLANS;
+		}
+	};
+	/**
+	 * Pila del hilo que encolo la escritura que se esta ejecutando en el hilo escritor
+	 */
+	private final ThreadLocal<Throwable> mSubmitter = new ThreadLocal<>();
+	private volatile long mThresholdMs = DEFAULT_THRESHOLD_MS;
+	private volatile int mCapacity = DEFAULT_CAPACITY;
+	private volatile boolean mExplain = false;
+
+	/**
+	 * Establece el tiempo a partir del cual una consulta se considera lenta
+	 * 
+	 * @param thresholdMs umbral en milisegundos
+	 */
+	public void setThreshold(long thresholdMs) {
+		mThresholdMs = thresholdMs;
+	}
+
+	/**
+	 * Establece el numero maximo de consultas lentas guardadas. Al llenarse se
+	 * descartan las mas antiguas
+	 * 
+	 * @param capacity numero de consultas
+	 */
+	public synchronized void setCapacity(int capacity) {
+		mCapacity = Math.max(capacity, 1);
+		while (mEntries.size() > mCapacity) {
+			mEntries.removeFirst();
+		}
+	}
+
+	/**
+	 * Activa la captura de EXPLAIN QUERY PLAN para cada forma de SQL nueva
+	 * 
+	 * @param explain true para capturar los planes
+	 */
+	public void setExplainEnabled(boolean explain) {
+		mExplain = explain;
+	}
+
+	/**
+	 * Captura la pila del hilo que encola una escritura. Solo se recorre si la
+	 * escritura resulta lenta, para obtener el metodo que la llamo
+	 * 
+	 * @return pila del hilo actual
+	 */
+	Throwable captureCaller() {
+		return new Throwable();
+	}
+	
+	/**
+	 * Establece la pila del hilo que encolo la escritura que va a ejecutar el hilo
+	 * actual, o null al terminarla. Las sentencias que se registren mientras tanto
+	 * se atribuyen al metodo que encolo la escritura y no al hilo escritor
+	 * 
+	 * @param submitter pila capturada con captureCaller
+	 */
+	void setSubmitter(Throwable submitter) {
+		if (submitter == null) {
+			mSubmitter.remove();
+		} else {
+			mSubmitter.set(submitter);
+		}
+	}
+
+	/**
+	 * Registra una consulta o escritura ya ejecutada
+	 * 
+	 * @param db base de datos, para obtener el plan
+	 * @param sql sentencia ejecutada
+	 * @param args valores de los parametros de la sentencia
+	 * @param startNanos System.nanoTime() al empezar la sentencia
+	 * @param rows numero de registros leidos o modificados
+	 */
+	public void record(SQLiteDatabase db, String sql, String[] args, long startNanos, int rows) {
+		long durationMs = (System.nanoTime() - startNanos) / 1000000;
+		boolean slow = durationMs >= mThresholdMs;
+
+		if (!slow && !mExplain) {
+			return;
+		}
+
+		String shape = shape(sql);
+
+		if (mExplain) {
+			boolean known;
+			synchronized (this) {
+				known = mPlans.containsKey(shape);
+			}
+			if (!known) {
+				String plan = explain(db, sql, args);
+				synchronized (this) {
+					mPlans.put(shape, plan);
+				}
+			}
+		}
+
+		if (slow) {
+			Throwable submitter = mSubmitter.get();
+			String caller = getCaller((submitter != null) ? submitter.getStackTrace()
+					: Thread.currentThread().getStackTrace());
+			Log.w(TAG, durationMs + " ms, " + rows + " rows, " + caller + ": " + shape);
+
+			synchronized (this) {
+				if (mEntries.size() >= mCapacity) {
+					mEntries.removeFirst();
+				}
+				mEntries.addLast(new Entry(System.currentTimeMillis(), durationMs, shape, rows, caller));
+			}
+		}
+	}
+
+	/**
+	 * Devuelve la forma de una sentencia: los literales se sustituyen por ?, las listas
+	 * de IN se reducen a un unico ? y los espacios se normalizan, de forma que todas las
+	 * ejecuciones de una misma consulta tienen la misma forma
+	 * 
+	 * @param sql sentencia
+	 * @return forma de la sentencia
+	 */
+	public static String shape(String sql) {
+		String s = STRING_LITERAL.matcher(sql).replaceAll("?");
+		s = NUMBER_LITERAL.matcher(s).replaceAll("?");
+		s = IN_LIST.matcher(s).replaceAll("IN (?...)");
+		return SPACES.matcher(s).replaceAll(" ").trim();
+	}
+
+	/**
+	 * Obtiene la salida de EXPLAIN QUERY PLAN de una sentencia
+	 */
+	private static String explain(SQLiteDatabase db, String sql, String[] args) {
+		StringBuilder plan = new StringBuilder();
+
+		try {
+			Cursor c = db.rawQuery("EXPLAIN QUERY PLAN " + sql, args);
+			try {
+				int detail = c.getColumnIndex("detail");
+				while (c.moveToNext()) {
+					if (plan.length() > 0) {
+						plan.append('\n');
+					}
+					plan.append(c.getString(detail));
+				}
+			} finally {
+				c.close();
+			}
+		} catch (Exception e) {
+			plan.append("(no plan: ").append(e.getMessage()).append(')');
+		}
+
+		return plan.toString();
+	}
+
+	/**
+	 * Devuelve el primer metodo de la pila que no pertenece a DataFramework y, si lo hay,
+	 * el primero de otra clase que lo llamo. Asi las sentencias lanzadas desde metodos
+	 * auxiliares de la aplicacion, como las transacciones, muestran tambien su origen
+	 */
+	private static String getCaller(StackTraceElement[] stack) {
+		String frameworkPackage = QueryLog.class.getPackage().getName();
+		String caller = null;
+		String callerClass = null;
+
+		for (StackTraceElement e : stack) {
+			String cls = e.getClassName();
+			if (cls.startsWith(frameworkPackage) || cls.startsWith("java.")
+					|| cls.startsWith("dalvik.") || cls.startsWith("android.")) {
+				continue;
+			}
+			// Las lambdas y clases anonimas pertenecen a la clase que las contiene
+			String outer = (cls.indexOf('$') >= 0) ? cls.substring(0, cls.indexOf('$')) : cls;
+			String method = cls.substring(cls.lastIndexOf('.') + 1) + "." + e.getMethodName() + ":" + e.getLineNumber();
+			if (caller == null) {
+				caller = method;
+				callerClass = outer;
+			} else if (!outer.equals(callerClass)) {
+				return caller + " < " + method;
+			}
+		}
+		return (caller != null) ? caller : "?";
+	}
+
+	/**
+	 * Devuelve una copia de las consultas lentas guardadas, de la mas antigua a la mas reciente
+	 * 
+	 * @return consultas lentas
+	 */
+	public synchronized Entry[] getEntries() {
+		return mEntries.toArray(new Entry[0]);
+	}
+
+	/**
+	 * Devuelve el plan capturado para una forma de SQL
+	 * 
+	 * @param shape forma devuelta por shape()
+	 * @return plan o null si no se ha capturado
+	 */
+	public synchronized String getPlan(String shape) {
+		return mPlans.get(shape);
+	}
+
+	/**
+	 * Vacia el registro
+	 */
+	public synchronized void clear() {
+		mEntries.clear();
+		mPlans.clear();
+	}
+
+	/**
+	 * Devuelve el registro en formato texto, para exportarlo
+	 * 
+	 * @return consultas lentas con sus planes, si se han capturado
+	 */
+	public synchronized String export() {
+		SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS", Locale.US);
+		StringBuilder sb = new StringBuilder();
+
+		sb.append("Slow queries (>= ").append(mThresholdMs).append(" ms): ").append(mEntries.size()).append('\n');
+		for (Entry e : mEntries) {
+			sb.append('\n').append(format.format(new Date(e.time)))
+				.append("  ").append(e.durationMs).append(" ms  ")
+				.append(e.rows).append(" rows  ").append(e.caller).append('\n')
+				.append("  ").append(e.shape).append('\n');
+
+			String plan = mPlans.get(e.shape);
+			if (plan != null) {
+				sb.append("  PLAN: ").append(plan.replace("\n", "\n        ")).append('\n');
+			}
+		}
+
+		return sb.toString();
+	}
+}
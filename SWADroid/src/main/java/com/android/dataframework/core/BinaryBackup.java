@@ -0,0 +1,402 @@
+/*
+ *  This file is part of SWADroid.
+ *
+ *  Copyright (C) 2010 Juan Miguel Boyero Corral <juanmi1982@gmail.com>
+ *
+ *  SWADroid is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  SWADroid is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with SWADroid.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  Copia de seguridad en formato binario. Los registros se escriben y se leen
+ *  de uno en uno, sin cargar nunca una tabla entera en memoria.
+ *
+ *  Formato:
+ *
+ *    "ADFB" | version (int) | compresion (byte)
+ *    y, comprimido con GZIP si se indica, una seccion por tabla:
+ *      SECTION (byte) | nombre (UTF) | numero de campos (int) | nombre de cada campo (UTF)
+ *      por cada registro: ROW (byte) | _id (long) | valor de cada campo
+ *      END (byte)
+ *    END (byte)
+ *
+ *  Cada valor empieza por un byte con su tipo (null, entero, real, texto o blob).
+ *  Los textos y blobs se escriben precedidos de su longitud en bytes.
+ *
+ *  Al restaurar, los registros se cargan primero en tablas temporales y solo se
+ *  pasan a las tablas reales cuando la copia se ha leido entera, en una unica
+ *  transaccion. Una copia truncada o corrupta no modifica la base de datos.
+ *
+ */
+
+package com.android.dataframework.core;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import com.android.dataframework.DataFramework;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+public class BinaryBackup {
+
+	public static final int VERSION = 1;
+
+	/**
+	 * Numero de registros que se restauran en cada transaccion
+	 */
+	public static final int RESTORE_CHUNK_SIZE = 500;
+
+	/**
+	 * Sufijo de las tablas temporales donde se carga la copia antes de pasarla a las tablas reales
+	 */
+	public static final String STAGING_SUFFIX = "_restore";
+
+	private static final byte[] MAGIC = {'A', 'D', 'F', 'B'};
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final byte END = 0;
+	private static final byte SECTION = 1;
+	private static final byte ROW = 2;
+
+	private static final byte TYPE_NULL = 0;
+	private static final byte TYPE_INTEGER = 1;
+	private static final byte TYPE_FLOAT = 2;
+	private static final byte TYPE_STRING = 3;
+	private static final byte TYPE_BLOB = 4;
+
+	private BinaryBackup() {
+	}
+
+	/**
+	 * Indica si un archivo es una copia de seguridad binaria
+	 *
+	 * @param file Archivo de la copia
+	 * @return true si el archivo empieza por la marca de las copias binarias
+	 */
+	public static boolean isBackup(String file) throws IOException {
+		byte[] magic = new byte[MAGIC.length];
+
+		try (DataInputStream dis = new DataInputStream(new FileInputStream(file))) {
+			dis.readFully(magic);
+		} catch (EOFException e) {
+			return false;
+		}
+
+		return Arrays.equals(magic, MAGIC);
+	}
+
+	/**
+	 * Escribe la copia de seguridad de las tablas
+	 *
+	 * @param db Base de datos
+	 * @param tables Tablas a copiar
+	 * @param out Destino de la copia. Se cierra al terminar
+	 * @param forceBackup Forzar a hacer backup aunque la tabla no lo permita
+	 * @param compress Comprimir la copia con GZIP
+	 * @return numero de registros copiados
+	 */
+	public static int write(SQLiteDatabase db, List<Table> tables, OutputStream out,
+			boolean forceBackup, boolean compress) throws IOException {
+		int rowCount = 0;
+
+		// El destino se cierra aunque falle la cabecera o la creacion del flujo GZIP
+		try (OutputStream target = out) {
+			DataOutputStream header = new DataOutputStream(target);
+
+			header.write(MAGIC);
+			header.writeInt(VERSION);
+			header.writeByte(compress ? 1 : 0);
+			header.flush();
+
+			OutputStream body = compress ? new GZIPOutputStream(target, BUFFER_SIZE) : target;
+			try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(body, BUFFER_SIZE))) {
+				int tableCount = tables.size();
+				for (int i = 0; i < tableCount; i++) {
+					Table t = tables.get(i);
+
+					if (t.isBackup() || forceBackup) {
+						rowCount += writeTable(db, t, dos);
+					}
+				}
+				dos.writeByte(END);
+			}
+		}
+
+		return rowCount;
+	}
+
+	private static int writeTable(SQLiteDatabase db, Table t, DataOutputStream dos) throws IOException {
+		String[] fields = t.getFieldsToArray();
+		int fieldCount = fields.length - 1; // fields[0] es _id
+		int rowCount = 0;
+
+		dos.writeByte(SECTION);
+		dos.writeUTF(t.getName());
+		dos.writeInt(fieldCount);
+		for (int j = 1; j <= fieldCount; j++) {
+			dos.writeUTF(fields[j]);
+		}
+
+		// Las columnas van en el mismo orden que fields, no hace falta buscar sus indices
+		Cursor c = db.query(t.getName(), fields, null, null, null, null, null);
+		try {
+			while (c.moveToNext()) {
+				dos.writeByte(ROW);
+				dos.writeLong(c.getLong(0));
+				for (int j = 1; j <= fieldCount; j++) {
+					writeValue(c, j, dos);
+				}
+				rowCount++;
+			}
+		} finally {
+			c.close();
+		}
+		dos.writeByte(END);
+
+		return rowCount;
+	}
+
+	private static void writeValue(Cursor c, int index, DataOutputStream dos) throws IOException {
+		byte[] bytes;
+
+		switch (c.getType(index)) {
+			case Cursor.FIELD_TYPE_NULL:
+				dos.writeByte(TYPE_NULL);
+				break;
+			case Cursor.FIELD_TYPE_INTEGER:
+				dos.writeByte(TYPE_INTEGER);
+				dos.writeLong(c.getLong(index));
+				break;
+			case Cursor.FIELD_TYPE_FLOAT:
+				dos.writeByte(TYPE_FLOAT);
+				dos.writeDouble(c.getDouble(index));
+				break;
+			case Cursor.FIELD_TYPE_BLOB:
+				bytes = c.getBlob(index);
+				dos.writeByte(TYPE_BLOB);
+				dos.writeInt(bytes.length);
+				dos.write(bytes);
+				break;
+			default:
+				bytes = c.getString(index).getBytes(UTF8);
+				dos.writeByte(TYPE_STRING);
+				dos.writeInt(bytes.length);
+				dos.write(bytes);
+				break;
+		}
+	}
+
+	/**
+	 * Restaura una copia de seguridad binaria. Cada tabla se carga en una tabla temporal
+	 * con una sentencia precompilada, confirmando cada RESTORE_CHUNK_SIZE registros, de forma
+	 * que una copia grande no mantiene una unica transaccion enorme. Cuando la copia se ha
+	 * leido entera, los registros pasan a las tablas reales en una unica transaccion: por cada
+	 * tabla se borran los registros que se van a restaurar y se insertan los de la copia. Si la lectura falla, las tablas reales no se modifican.
+	 * Los campos de la copia que ya no existen en la tabla se ignoran.
+	 *
+	 * @param db Base de datos
+	 * @param tables Tablas de la base de datos
+	 * @param in Origen de la copia. Se cierra al terminar
+	 * @return numero de registros restaurados
+	 */
+	public static int read(SQLiteDatabase db, List<Table> tables, InputStream in) throws IOException {
+		int rowCount = 0;
+		ArrayList<String[]> staged = new ArrayList<>();
+
+		try (InputStream source = in) {
+			DataInputStream header = new DataInputStream(source);
+			byte[] magic = new byte[MAGIC.length];
+
+			header.readFully(magic);
+			if (!Arrays.equals(magic, MAGIC)) {
+				throw new IOException("No es una copia de seguridad binaria");
+			}
+			int version = header.readInt();
+			if (version > VERSION) {
+				throw new IOException("Version de copia de seguridad no soportada: " + version);
+			}
+			boolean compressed = header.readByte() != 0;
+
+			InputStream body = compressed ? new GZIPInputStream(source, BUFFER_SIZE) : source;
+			DataInputStream dis = new DataInputStream(new BufferedInputStream(body, BUFFER_SIZE));
+
+			while (dis.readByte() == SECTION) {
+				rowCount += readTable(db, tables, dis, staged);
+			}
+
+			// Todas las tablas se actualizan a la vez, o ninguna. Los registros que ya existen se
+			// borran antes con DELETE, no con INSERT OR REPLACE, para que se ejecuten los
+			// disparadores de borrado que mantienen los contadores
+			db.beginTransaction();
+			try {
+				for (String[] s : staged) {
+					db.execSQL("DELETE FROM " + s[0] + " WHERE " + DataFramework.KEY_ID + " IN (SELECT "
+							+ DataFramework.KEY_ID + " FROM " + s[0] + STAGING_SUFFIX + ")");
+					db.execSQL("INSERT INTO " + s[0] + " (" + s[1] + ") SELECT " + s[1]
+							+ " FROM " + s[0] + STAGING_SUFFIX);
+				}
+				db.setTransactionSuccessful();
+			} finally {
+				db.endTransaction();
+			}
+		} finally {
+			for (String[] s : staged) {
+				db.execSQL("DROP TABLE IF EXISTS " + s[0] + STAGING_SUFFIX);
+			}
+		}
+
+		return rowCount;
+	}
+
+	/**
+	 * Carga una seccion de la copia en su tabla temporal
+	 *
+	 * @param db Base de datos
+	 * @param tables Tablas de la base de datos
+	 * @param dis Copia, situada tras el byte SECTION
+	 * @param staged Tablas ya cargadas: nombre y columnas cargadas, separadas por comas
+	 * @return numero de registros cargados
+	 */
+	private static int readTable(SQLiteDatabase db, List<Table> tables, DataInputStream dis,
+			List<String[]> staged) throws IOException {
+		String tableName = dis.readUTF();
+		int fieldCount = dis.readInt();
+		String[] fields = new String[fieldCount];
+		HashSet<String> columnNames = null;
+		int rowCount = 0;
+		int inChunk = 0;
+
+		for (int j = 0; j < fieldCount; j++) {
+			fields[j] = dis.readUTF();
+		}
+
+		for (int i = 0; i < tables.size(); i++) {
+			if (tables.get(i).getName().equals(tableName)) {
+				columnNames = new HashSet<>(Arrays.asList(tables.get(i).getFieldsToArray()));
+				break;
+			}
+		}
+
+		// Posicion de cada campo de la copia en la sentencia, o 0 si la tabla ya no lo tiene
+		int[] bindIndexes = new int[fieldCount];
+		StringBuilder columns = new StringBuilder(DataFramework.KEY_ID);
+		StringBuilder values = new StringBuilder("?");
+		int bindCount = 1;
+		for (int j = 0; j < fieldCount; j++) {
+			if (columnNames != null && columnNames.contains(fields[j])) {
+				bindIndexes[j] = ++bindCount;
+				columns.append(", ").append(fields[j]);
+				values.append(", ?");
+			}
+		}
+
+		SQLiteStatement insert = null;
+		if (columnNames != null) {
+			String staging = tableName + STAGING_SUFFIX;
+
+			// La tabla temporal tiene las columnas cargadas, sin restricciones ni indices
+			db.execSQL("DROP TABLE IF EXISTS " + staging);
+			staged.add(new String[] {tableName, columns.toString()});
+			db.execSQL("CREATE TABLE " + staging + " AS SELECT " + columns + " FROM " + tableName + " WHERE 0");
+			insert = db.compileStatement("INSERT INTO " + staging
+					+ " (" + columns + ") VALUES (" + values + ")");
+			db.beginTransaction();
+		}
+
+		try {
+			while (dis.readByte() == ROW) {
+				long id = dis.readLong();
+
+				if (insert != null) {
+					insert.clearBindings();
+					insert.bindLong(1, id);
+				}
+				for (int j = 0; j < fieldCount; j++) {
+					readValue(dis, insert, bindIndexes[j]);
+				}
+
+				if (insert != null) {
+					insert.executeInsert();
+					rowCount++;
+
+					if (++inChunk == RESTORE_CHUNK_SIZE) {
+						db.setTransactionSuccessful();
+						db.endTransaction();
+						db.beginTransaction();
+						inChunk = 0;
+					}
+				}
+			}
+
+			if (insert != null) {
+				db.setTransactionSuccessful();
+			}
+		} finally {
+			if (insert != null) {
+				insert.close();
+				db.endTransaction();
+			}
+		}
+
+		return rowCount;
+	}
+
+	private static void readValue(DataInputStream dis, SQLiteStatement insert, int bindIndex) throws IOException {
+		byte type = dis.readByte();
+		boolean bind = (insert != null) && (bindIndex > 0);
+		byte[] bytes;
+
+		switch (type) {
+			case TYPE_NULL:
+				if (bind) insert.bindNull(bindIndex);
+				break;
+			case TYPE_INTEGER:
+				long l = dis.readLong();
+				if (bind) insert.bindLong(bindIndex, l);
+				break;
+			case TYPE_FLOAT:
+				double d = dis.readDouble();
+				if (bind) insert.bindDouble(bindIndex, d);
+				break;
+			case TYPE_STRING:
+				bytes = new byte[dis.readInt()];
+				dis.readFully(bytes);
+				if (bind) insert.bindString(bindIndex, new String(bytes, UTF8));
+				break;
+			case TYPE_BLOB:
+				bytes = new byte[dis.readInt()];
+				dis.readFully(bytes);
+				if (bind) insert.bindBlob(bindIndex, bytes);
+				break;
+			default:
+				throw new IOException("Tipo de valor desconocido: " + type);
+		}
+	}
+
+}
@@ -32,6 +32,7 @@ import android.content.res.XmlResourceParser;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.util.Base64;
 import android.util.Log;
 
 import com.android.dataframework.DataFramework;
@@ -42,6 +43,7 @@ import org.xmlpull.v1.XmlPullParserException;
 import org.xmlpull.v1.XmlPullParserFactory;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
@@ -69,6 +71,7 @@ public class DataFrameworkCore {
     private int mDataBaseOldVersion = 0;
     private int mDataBaseVersion = 0;
     private Context mCtx;
+    private StorageProfile mStorageProfile;
 	
 	private boolean mSaveInitialValues = false;
 	
@@ -86,6 +89,23 @@ public class DataFrameworkCore {
         	super(mCtx, mDataBaseName, null, mDataBaseVersion);
         }
 
+        @Override
+        public void onConfigure(SQLiteDatabase db) {
+        	// El tamano de pagina se fija antes de pasar a WAL, que escribe la cabecera del fichero
+        	if (mStorageProfile != null) {
+        		mStorageProfile.applyPageSize(db);
+        	}
+        	// Modo WAL: las lecturas no se bloquean mientras otro hilo escribe
+        	db.enableWriteAheadLogging();
+        	// Las paginas libres se recuperan poco a poco con PRAGMA incremental_vacuum.
+        	// Solo tiene efecto al crear la base de datos o al ejecutar VACUUM
+        	db.execSQL("PRAGMA auto_vacuum = INCREMENTAL;");
+        	// Despues de WAL, porque al activarlo Android vuelve a fijar el nivel de sincronizacion
+        	if (mStorageProfile != null) {
+        		mStorageProfile.applyToConnection(db);
+        	}
+        }
+
         @Override
         public void onCreate(SQLiteDatabase db) {
         	try {
@@ -233,6 +253,8 @@ public class DataFrameworkCore {
 			// Presuponemos que no se guardan los valores iniciales.
 			mSaveInitialValues = false;
 			
+	        // Si no se crea ni se actualiza, la version anterior es la actual
+	        mDataBaseOldVersion = mDataBaseVersion;
 	        mDbHelper = new DatabaseHelper();
 	        mDb = mDbHelper.getWritableDatabase();
 			
@@ -321,14 +343,27 @@ public class DataFrameworkCore {
 	    		ArrayList<Field> fields = t.getFields();
 	    		int fieldCount = fields.size();
 	    		
+	    		// Los indices de las columnas se buscan una sola vez por tabla
+	    		int idIndex = c.getColumnIndex(DataFramework.KEY_ID);
+	    		int[] fieldIndexes = new int[fieldCount];
+	    		for (int j = 0; j < fieldCount; j++) {
+	    			fieldIndexes[j] = c.getColumnIndex(fields.get(j).getName());
+	    		}
+	    		
 	    		while (!c.isAfterLast()) {
-	        		osw.append("<row table=\"").append(tableName).append("\" id=\"").append(c.getString(c.getColumnIndex(DataFramework.KEY_ID))).append("\">\n");
+	        		osw.append("<row table=\"").append(tableName).append("\" id=\"").append(c.getString(idIndex)).append("\">\n");
 	        		
 	        		for (int j = 0; j < fieldCount; j++) 
 	        		{
-	        			Field field = fields.get(j);
-	        			if (c.getString(c.getColumnIndex(field.getName()))!=null)
-	        				osw.append("<field name=\"").append(field.getName()).append("\" value=\"").append(c.getString(c.getColumnIndex(field.getName())).replace("\"", "&quot;")).append("\" />\n");
+	        			if (fieldIndexes[j] >= 0 && c.getType(fieldIndexes[j]) == Cursor.FIELD_TYPE_BLOB) {
+	        				// Los blobs se escriben en Base64
+	        				osw.append("<field name=\"").append(fields.get(j).getName()).append("\" encoding=\"base64\" value=\"")
+	        						.append(Base64.encodeToString(c.getBlob(fieldIndexes[j]), Base64.NO_WRAP)).append("\" />\n");
+	        				continue;
+	        			}
+	        			String value = (fieldIndexes[j] >= 0) ? c.getString(fieldIndexes[j]) : null;
+	        			if (value!=null)
+	        				osw.append("<field name=\"").append(fields.get(j).getName()).append("\" value=\"").append(value.replace("\"", "&quot;")).append("\" />\n");
 	        		}
 	        		
 	        		osw.append("</row>\n");
@@ -366,6 +401,34 @@ public class DataFrameworkCore {
 		}
     }
     
+    /**
+     * Crea una copia de seguridad de la base de datos en formato binario.
+     * Es mucho mas pequena y rapida de escribir y restaurar que la copia XML.
+     * 
+     * @param file Archivo donde hace la copia
+     * @param forceBackup Forzar a hacer backup aunque la table no lo permita
+     * @param compress Comprimir la copia con GZIP
+     * @return numero de registros copiados
+     * 
+     */
+    public int backupBinary(String file, boolean forceBackup, boolean compress) throws IOException {
+		File f = new File(file);
+		if (f.exists()) f.delete();
+		
+		return BinaryBackup.write(mDb, mTables, new FileOutputStream(file), forceBackup, compress);
+    }
+    
+    /**
+     * Reestablece una copia de seguridad binaria de la base de datos
+     * 
+     * @param file Archivo donde esta la copia
+     * @return numero de registros restaurados
+     * 
+     */
+    public int restoreBinary(String file) throws IOException {
+    	return BinaryBackup.read(mDb, mTables, new FileInputStream(file));
+    }
+    
     /**
      * Inserta los registros de un XmlResourceParser en la Base de datos
      * 
@@ -430,7 +493,10 @@ public class DataFrameworkCore {
 	    				} else {
 	    					if ( ( x.getAttributeValue(null, "name") != null ) && ( x.getAttributeValue(null, "value") != null ) ) {
 		    					if (currenEntity!=null) {
-		    						if (x.getAttributeValue(null, "value")!=null) {
+		    						if ("base64".equals(x.getAttributeValue(null, "encoding"))) {
+		    							currenEntity.setValue(x.getAttributeValue(null, "name"), 
+		    									Base64.decode(x.getAttributeValue(null, "value"), Base64.NO_WRAP));
+		    						} else if (x.getAttributeValue(null, "value")!=null) {
 		    							currenEntity.setValue(x.getAttributeValue(null, "name"), 
 		    									x.getAttributeValue(null, "value").replace("&quot;", "\""));
 		    						}
@@ -462,6 +528,25 @@ public class DataFrameworkCore {
 		}
     }
 
+    /**
+     * Establece el perfil de almacenamiento que se aplica al abrir la base de datos.
+     * Debe llamarse antes de open()
+     * 
+     * @param profile perfil de almacenamiento, o null para usar los valores por defecto de SQLite
+     */
+    public void setStorageProfile(StorageProfile profile) {
+    	mStorageProfile = profile;
+    }
+    
+    /**
+     * Devuelve el perfil de almacenamiento
+     * 
+     * @return perfil de almacenamiento o null si se usan los valores por defecto
+     */
+    public StorageProfile getStorageProfile() {
+    	return mStorageProfile;
+    }
+
     /**
      * Devuelve conexion a SQLiteDatabase
      * 
@@ -471,6 +556,24 @@ public class DataFrameworkCore {
     	return mDb;
     }
 
+    /**
+     * Devuelve la version que tenia la base de datos antes de abrirla
+     * 
+     * @return version anterior (0 si se acaba de crear)
+     */
+    public int getOldVersion() {
+    	return mDataBaseOldVersion;
+    }
+
+    /**
+     * Devuelve la version de la base de datos definida en tables.xml
+     * 
+     * @return version actual
+     */
+    public int getVersion() {
+    	return mDataBaseVersion;
+    }
+
     public Context getContext()
     {
     	return mCtx;
@@ -0,0 +1,199 @@
+/*
+ *  This file is part of SWADroid.
+ *
+ *  Copyright (C) 2010 Juan Miguel Boyero Corral <juanmi1982@gmail.com>
+ *
+ *  SWADroid is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  SWADroid is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with SWADroid.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  Perfil de almacenamiento: ajustes de SQLite que se aplican al abrir la base
+ *  de datos (tamano de pagina, cache de paginas, lecturas con mmap, almacen de
+ *  temporales y nivel de sincronizacion).
+ *
+ *  Hay dos perfiles predefinidos, uno para dispositivos con poca memoria y otro
+ *  para dispositivos con memoria de sobra. forDevice() elige uno de los dos.
+ *
+ */
+
+package com.android.dataframework.core;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Build;
+
+public class StorageProfile {
+
+	public static final int TEMP_STORE_DEFAULT = 0;
+	public static final int TEMP_STORE_FILE = 1;
+	public static final int TEMP_STORE_MEMORY = 2;
+
+	public static final int SYNCHRONOUS_OFF = 0;
+	public static final int SYNCHRONOUS_NORMAL = 1;
+	public static final int SYNCHRONOUS_FULL = 2;
+
+	/**
+	 * Clase de memoria (MB por aplicacion) a partir de la cual se usa el perfil highRam()
+	 */
+	private static final int HIGH_RAM_MEMORY_CLASS = 192;
+
+	private final String mName;
+	private final int mPageSize;
+	private final int mCacheSizeKb;
+	private final long mMmapSize;
+	private final int mTempStore;
+	private final int mSynchronous;
+
+	/**
+	 * Constructor
+	 *
+	 * @param name nombre del perfil
+	 * @param pageSize tamano de pagina en bytes, 0 para no cambiarlo
+	 * @param cacheSizeKb tamano de la cache de paginas de cada conexion en KB
+	 * @param mmapSize bytes del fichero que se leen con mmap, 0 para no usarlo
+	 * @param tempStore donde se guardan las tablas e indices temporales (TEMP_STORE_*)
+	 * @param synchronous nivel de sincronizacion (SYNCHRONOUS_*)
+	 */
+	public StorageProfile(String name, int pageSize, int cacheSizeKb, long mmapSize,
+			int tempStore, int synchronous) {
+		mName = name;
+		mPageSize = pageSize;
+		mCacheSizeKb = cacheSizeKb;
+		mMmapSize = mmapSize;
+		mTempStore = tempStore;
+		mSynchronous = synchronous;
+	}
+
+	/**
+	 * Perfil para dispositivos con poca memoria: cache pequena, sin mmap y
+	 * temporales en disco
+	 *
+	 * @return perfil
+	 */
+	public static StorageProfile lowRam() {
+		return new StorageProfile("low-ram", 4096, 1024, 0, TEMP_STORE_FILE, SYNCHRONOUS_NORMAL);
+	}
+
+	/**
+	 * Perfil para dispositivos con memoria de sobra: cache grande, lecturas con
+	 * mmap y temporales en memoria
+	 *
+	 * @return perfil
+	 */
+	public static StorageProfile highRam() {
+		return new StorageProfile("high-ram", 4096, 8192, 32L * 1024 * 1024, TEMP_STORE_MEMORY, SYNCHRONOUS_NORMAL);
+	}
+
+	/**
+	 * Elige el perfil segun la memoria del dispositivo
+	 *
+	 * @param context contexto de la aplicacion
+	 * @return lowRam() o highRam()
+	 */
+	public static StorageProfile forDevice(Context context) {
+		ActivityManager am = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+
+		if (am == null || am.isLowRamDevice() || am.getMemoryClass() < HIGH_RAM_MEMORY_CLASS) {
+			return lowRam();
+		}
+		return highRam();
+	}
+
+	/**
+	 * Fija el tamano de pagina. Solo tiene efecto en una base de datos vacia, asi que
+	 * se llama desde onConfigure antes de pasar a WAL y de crear las tablas. Una base
+	 * de datos existente mantiene el tamano de pagina con el que se creo.
+	 *
+	 * @param db base de datos
+	 */
+	public void applyPageSize(SQLiteDatabase db) {
+		if (mPageSize > 0) {
+			db.execSQL("PRAGMA page_size = " + mPageSize);
+		}
+	}
+
+	/**
+	 * Aplica los ajustes de cada conexion (todos menos page_size). Se llama una sola vez,
+	 * desde onConfigure al abrir la base de datos.
+	 *
+	 * Los PRAGMA solo afectan a la conexion que los ejecuta. Desde Android 11 todos se
+	 * ejecutan con execPerConnectionSQL, que los aplica a la conexion principal y a las
+	 * conexiones de lectura del pool de WAL, tambien a las que se abran despues. Cada
+	 * llamada anade los PRAGMA a la lista de cada conexion, por eso no se vuelve a aplicar
+	 * otro perfil con la base de datos abierta.
+	 *
+	 * En versiones anteriores solo se ajusta la conexion principal: las conexiones de
+	 * lectura del pool de WAL usan los valores por defecto de SQLite para cache_size,
+	 * mmap_size, temp_store y synchronous.
+	 *
+	 * @param db base de datos
+	 */
+	public void applyToConnection(SQLiteDatabase db) {
+		String[] pragmas = {
+				"PRAGMA cache_size = " + (-mCacheSizeKb),
+				"PRAGMA temp_store = " + mTempStore,
+				"PRAGMA synchronous = " + mSynchronous,
+				"PRAGMA mmap_size = " + mMmapSize
+		};
+
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+			for (String pragma : pragmas) {
+				db.execPerConnectionSQL(pragma, null);
+			}
+		} else {
+			for (int i = 0; i < pragmas.length - 1; i++) {
+				db.execSQL(pragmas[i]);
+			}
+
+			// mmap_size devuelve el valor aplicado, asi que hay que leerlo como consulta
+			Cursor c = db.rawQuery(pragmas[pragmas.length - 1], null);
+			try {
+				c.moveToFirst();
+			} finally {
+				c.close();
+			}
+		}
+	}
+
+	public String getName() {
+		return mName;
+	}
+
+	public int getPageSize() {
+		return mPageSize;
+	}
+
+	public int getCacheSizeKb() {
+		return mCacheSizeKb;
+	}
+
+	public long getMmapSize() {
+		return mMmapSize;
+	}
+
+	public int getTempStore() {
+		return mTempStore;
+	}
+
+	public int getSynchronous() {
+		return mSynchronous;
+	}
+
+	@Override
+	public String toString() {
+		return mName + " [page_size=" + mPageSize + ", cache_size=" + mCacheSizeKb + "KB, mmap_size="
+				+ mMmapSize + ", temp_store=" + mTempStore + ", synchronous=" + mSynchronous + "]";
+	}
+
+}
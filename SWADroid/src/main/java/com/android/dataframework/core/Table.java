@@ -30,6 +30,7 @@ package com.android.dataframework.core;
 import com.android.dataframework.DataFramework;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 
 
 public class Table {
@@ -37,6 +38,8 @@ public class Table {
 	private String mName;
 	private String mToString;
 	private ArrayList<Field> mFields = new ArrayList<>();
+	private HashMap<String, Integer> mFieldIndexes = new HashMap<>();
+	private String[] mFieldsArray = null;
 	private int mNewInVersion;
 	private boolean mBackup;
 
@@ -149,6 +152,15 @@ public class Table {
      */
 		
 	public String[] getFieldsToArray() 
+	{
+		// Los campos no cambian una vez cargado el XML, asi que se calcula una sola vez
+		if (mFieldsArray == null) {
+			mFieldsArray = buildFieldsArray();
+		}
+		return mFieldsArray;
+	}
+	
+	private String[] buildFieldsArray() 
 	{
 		ArrayList<Field> fields = mFields;
 		int fieldCount = fields.size();
@@ -184,21 +196,23 @@ public class Table {
      */
 	
 	public Field getField(String name) {
-		Field res = null;
-		ArrayList<Field> fields = mFields;
-		int fieldCount = fields.size();
-		
-		for (int i=0; i<fieldCount; i++) 
-		{
-			Field f = fields.get(i);
-			if (f.getName().equals(name)){
-				res = f;
-			}
-		}
-		if(res==null){
+		int index = getFieldIndex(name);
+		if(index<0){
 			throw new NullPointerException("No exist field '"+name+"' in table '"+mName+"'");
 		}
-		return res;
+		return mFields.get(index);
+	}
+	
+    /**
+     * Devuelve la posicion del campo en la lista de campos de la tabla
+     * 
+     * @param name nombre del campo
+     * @return posicion del campo o -1 si no existe
+     */
+	
+	public int getFieldIndex(String name) {
+		Integer index = mFieldIndexes.get(name);
+		return (index == null) ? -1 : index;
 	}
 	
     /**
@@ -228,7 +242,9 @@ public class Table {
      */
 	
 	public void addField(Field field) {
+		mFieldIndexes.put(field.getName(), mFields.size());
 		mFields.add(field);
+		mFieldsArray = null;
 	}
 	
 	/**
@@ -64,6 +64,10 @@ public class Constants {
      * Threshold for clean old notifications (in seconds)
      */
     public static final int CLEAN_NOTIFICATIONS_THRESHOLD = 2592000; // 30 days
+    /**
+     * Default maximum size of the downloaded data of all the courses (in bytes)
+     */
+    public static final long DEFAULT_COURSE_DATA_BUDGET = 20L * 1024 * 1024; // 20 MB
     /**
      * Null value returned by webservices when a field is empty
      */
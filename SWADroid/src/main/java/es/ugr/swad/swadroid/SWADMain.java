@@ -23,7 +23,6 @@ import android.app.Activity;
 import android.app.AlertDialog;
 import android.content.Context;
 import android.content.Intent;
-import android.database.Cursor;
 import android.os.Bundle;
 import android.text.TextUtils;
 import android.util.Log;
@@ -38,7 +37,6 @@ import android.widget.ExpandableListView;
 import android.widget.ExpandableListView.OnChildClickListener;
 import android.widget.ImageView;
 import android.widget.LinearLayout;
-import android.widget.SimpleCursorAdapter;
 import android.widget.Spinner;
 import android.widget.TextView;
 import android.widget.Toast;
@@ -71,6 +69,7 @@ import es.ugr.swad.swadroid.modules.rollcall.Rollcall;
 import es.ugr.swad.swadroid.modules.tests.Tests;
 import es.ugr.swad.swadroid.preferences.Preferences;
 import es.ugr.swad.swadroid.sync.AccountAuthenticator;
+import es.ugr.swad.swadroid.sync.DatabaseMaintenanceJobService;
 import es.ugr.swad.swadroid.sync.SyncUtils;
 import es.ugr.swad.swadroid.utils.DateTimeUtils;
 import es.ugr.swad.swadroid.utils.Utils;
@@ -109,6 +108,10 @@ public class SWADMain extends MenuExpandableListActivity {
      * Indicates if it is the first run
      */
     private boolean firstRun = false;
+    /**
+     * Indicates that the pending migrations of the database are running in background
+     */
+    private boolean upgradingDatabase = false;
 
 
     /**
@@ -157,19 +160,69 @@ public class SWADMain extends MenuExpandableListActivity {
      */
     @Override
     public void onCreate(Bundle icicle) {
-        int lastVersion, currentVersion;
-
-        //Initialize screen
-        super.onCreate(icicle);
+        //Pending migrations of the database are run below in background, showing their progress,
+        //instead of blocking the main thread while the database is opened
+        DataBaseHelper.setUpgradeDeferred(true);
+        try {
+            //Initialize screen
+            super.onCreate(icicle);
+        } finally {
+            DataBaseHelper.setUpgradeDeferred(false);
+        }
 
         setContentView(R.layout.main);
         initializeMainViews();
 
+        if ((dbHelper != null) && dbHelper.isUpgradePending()) {
+            upgradeDatabase();
+        } else {
+            initializeApplication();
+        }
+    }
+
+    /**
+     * Runs the pending migrations of the database in background while a progress screen shows
+     * the current step. The application is initialized when the database has been upgraded
+     */
+    private void upgradeDatabase() {
+        upgradingDatabase = true;
+        mProgressScreen.setMessage(getString(R.string.upgradeDatabaseProgressDescription));
+        mProgressScreen.show();
+
+        new Thread(() -> {
+            try {
+                dbHelper.runPendingUpgrade((step, index, count) -> runOnUiThread(() ->
+                        mProgressScreen.setMessage(getString(R.string.upgradeDatabaseStepProgressDescription,
+                                index + 1, count))));
+            } catch (Exception e) {
+                runOnUiThread(() -> error(e.getMessage(), e));
+                return;
+            }
+
+            runOnUiThread(() -> {
+                if (!isFinishing()) {
+                    upgradingDatabase = false;
+                    mProgressScreen.hide();
+                    mProgressScreen.setMessage(getString(R.string.coursesProgressDescription));
+
+                    initializeApplication();
+                    showMainScreen();
+                }
+            });
+        }, "DatabaseUpgrade").start();
+    }
+
+    /**
+     * Initializes the application once the database is ready: runs the changes of the first run
+     * or of an upgrade of the application, loads the courses and schedules the database maintenance
+     */
+    private void initializeApplication() {
+        int lastVersion, currentVersion;
+
         try {
             //Check if this is the first run after an install or upgrade
             lastVersion = Preferences.getLastVersion();
             currentVersion = getPackageManager().getPackageInfo(getPackageName(), 0).versionCode;
-            dbHelper.initializeDB();
             //lastVersion = 67;
             //currentVersion = 68;
 
@@ -185,6 +238,8 @@ public class SWADMain extends MenuExpandableListActivity {
 
             loadCourses();
 
+            DatabaseMaintenanceJobService.schedule(getApplicationContext());
+
             currentRole = -1;
         } catch (Exception ex) {
             error(ex.getMessage(), ex);
@@ -199,6 +254,16 @@ public class SWADMain extends MenuExpandableListActivity {
     protected void onResume() {
         super.onResume();
 
+        //The main screen is shown when the database has been upgraded
+        if (!upgradingDatabase) {
+            showMainScreen();
+        }
+    }
+
+    /**
+     * Asks for the login data if they are missing, or shows the courses and the menu
+     */
+    private void showMainScreen() {
         if (isUserOrPasswordEmpty() && listCourses.isEmpty()) {
             startActivityForResult(new Intent(this, LoginActivity.class), Constants.LOGIN_REQUEST_CODE);
         } else {
@@ -265,7 +330,7 @@ public class SWADMain extends MenuExpandableListActivity {
     private void upgradeApp(int lastVersion, int currentVersion) throws NoSuchAlgorithmException {
         Log.i(TAG, "Upgrading application from version " + lastVersion + " to version " + currentVersion);
 
-        dbHelper.upgradeDB();
+        //The database structure has already been upgraded when it was opened
 
         if(lastVersion < 52) {
             //Encrypts users table
@@ -333,18 +398,16 @@ public class SWADMain extends MenuExpandableListActivity {
     }
 
     private void createSpinnerAdapter() {
-        listCourses = dbHelper.getAllRows(DataBaseHelper.DB_TABLE_COURSES, null, "shortName");
-        /*
-          Cursor for database access
-         */
-        Cursor dbCursor = dbHelper.getDb().getCursor(DataBaseHelper.DB_TABLE_COURSES, null, "shortName");
-        startManagingCursor(dbCursor);
+        listCourses = dbHelper.getAllRows(DataBaseHelper.DB_TABLE_COURSES, (String) null, "shortName");
         if (!listCourses.isEmpty()) {
-            SimpleCursorAdapter adapter = new SimpleCursorAdapter(this,
-                    android.R.layout.simple_spinner_item,
-                    dbCursor,
-                    new String[]{"shortName"},
-                    new int[]{android.R.id.text1});
+            //The spinner shows the same list of courses, so the table is not queried again
+            List<String> shortNames = new ArrayList<>(listCourses.size());
+            for (Model m : listCourses) {
+                shortNames.add(((Course) m).getShortName());
+            }
+
+            ArrayAdapter<String> adapter = new ArrayAdapter<>(this,
+                    android.R.layout.simple_spinner_item, shortNames);
 
             adapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
             mCoursesSpinner.setAdapter(adapter);
@@ -389,6 +452,8 @@ public class SWADMain extends MenuExpandableListActivity {
                 Courses.setSelectedCourseCode(courseCode);
                 Courses.setSelectedCourseShortName(courseSelected.getShortName());
                 Courses.setSelectedCourseFullName(courseSelected.getFullName());
+                final long touchedCourse = courseCode;
+                dbHelper.submitWrite(() -> dbHelper.touchCourse(touchedCourse));
 
                 Login.setCurrentUserRole(courseSelected.getUserRole());
 
@@ -455,6 +520,8 @@ public class SWADMain extends MenuExpandableListActivity {
                 Courses.setSelectedCourseCode(courseSelected.getId());
                 Courses.setSelectedCourseShortName(courseSelected.getShortName());
                 Courses.setSelectedCourseFullName(courseSelected.getFullName());
+                final long touchedCourse = courseSelected.getId();
+                dbHelper.submitWrite(() -> dbHelper.touchCourse(touchedCourse));
             }
 
             createBaseMenu();
@@ -0,0 +1,240 @@
+/*
+ *  This file is part of SWADroid.
+ *
+ *  Copyright (C) 2010 Juan Miguel Boyero Corral <juanmi1982@gmail.com>
+ *
+ *  SWADroid is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  SWADroid is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with SWADroid.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.ugr.swad.swadroid.database;
+
+import android.util.Log;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import es.ugr.swad.swadroid.Constants;
+import es.ugr.swad.swadroid.preferences.Preferences;
+
+/**
+ * Writes a large download to database in chunks of rows, each one committed in its own
+ * transaction on the database writer thread. The rollback journal only holds one chunk,
+ * other writers can run between chunks and a failure only rolls back the last chunk.
+ * <p>
+ * The number of chunks committed in each phase is stored as a progress marker together with
+ * a fingerprint of the data. If the same data is ingested again after a failure, the chunks
+ * already committed are skipped. Chunk writers must be idempotent (upserts), because the
+ * marker is stored just after the commit and a chunk can be written twice if the process
+ * dies in between.
+ *
+ * @author Juan Miguel Boyero Corral <juanmi1982@gmail.com>
+ */
+public class ChunkedIngestion {
+    /**
+     * ChunkedIngestion tag name for Logcat
+     */
+    private static final String TAG = Constants.APP_TAG + " ChunkedIngestion";
+    /**
+     * Default number of rows committed in each transaction
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 500;
+    /**
+     * Commits each chunk in its own transaction
+     */
+    private final Committer committer;
+    /**
+     * Stores the number of chunks committed in each phase
+     */
+    private final ProgressStore progress;
+    /**
+     * Ingestion name. It must identify the data being downloaded (for example, the course)
+     */
+    private final String name;
+    /**
+     * Number of rows committed in each transaction
+     */
+    private final int chunkSize;
+    /**
+     * Number of chunks committed by this ingestion
+     */
+    private int chunksWritten = 0;
+    /**
+     * Number of chunks skipped because they were committed by an interrupted ingestion
+     */
+    private int chunksSkipped = 0;
+
+    /**
+     * Writes a chunk of rows to database. It is run inside a transaction
+     *
+     * @param <T> Type of the rows
+     */
+    public interface ChunkWriter<T> {
+        /**
+         * Writes a chunk of rows
+         *
+         * @param chunk      Rows of the chunk
+         * @param chunkIndex Position of the chunk in the phase, starting with 0
+         * @throws Exception If the rows could not be written. The chunk is rolled back
+         */
+        void write(List<T> chunk, int chunkIndex) throws Exception;
+    }
+
+    /**
+     * Runs a chunk writer in its own transaction
+     */
+    interface Committer {
+        /**
+         * Runs a task in a transaction and commits it if it ends without errors
+         *
+         * @param task Task to be run
+         * @throws Exception If the task failed. The transaction is rolled back
+         */
+        void commit(Callable<Void> task) throws Exception;
+    }
+
+    /**
+     * Stores the progress markers of the ingestions
+     */
+    interface ProgressStore {
+        /**
+         * Gets the number of chunks of a phase already committed
+         *
+         * @param marker      Ingestion and phase name
+         * @param fingerprint Fingerprint of the data being ingested
+         * @return The number of chunks committed, or 0 if the marker was stored for other data
+         */
+        int get(String marker, long fingerprint);
+
+        /**
+         * Sets the number of chunks of a phase already committed
+         *
+         * @param marker      Ingestion and phase name
+         * @param fingerprint Fingerprint of the data being ingested
+         * @param chunks      Number of chunks committed
+         */
+        void set(String marker, long fingerprint, int chunks);
+
+        /**
+         * Removes the progress markers of an ingestion and all its phases
+         *
+         * @param prefix Ingestion name
+         */
+        void remove(String prefix);
+    }
+
+    /**
+     * Progress markers stored in the application preferences
+     */
+    private static final ProgressStore PREFERENCES_STORE = new ProgressStore() {
+        @Override
+        public int get(String marker, long fingerprint) {
+            return Preferences.getIngestionProgress(marker, fingerprint);
+        }
+
+        @Override
+        public void set(String marker, long fingerprint, int chunks) {
+            Preferences.setIngestionProgress(marker, fingerprint, chunks);
+        }
+
+        @Override
+        public void remove(String prefix) {
+            Preferences.removeIngestionProgress(prefix);
+        }
+    };
+
+    /**
+     * Constructor
+     *
+     * @param dbHelper  Database helper
+     * @param name      Ingestion name. It must identify the data being downloaded
+     * @param chunkSize Number of rows committed in each transaction
+     */
+    public ChunkedIngestion(DataBaseHelper dbHelper, String name, int chunkSize) {
+        this(dbHelper::writeInTransaction, PREFERENCES_STORE, name, chunkSize);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param committer Commits each chunk in its own transaction
+     * @param progress  Stores the number of chunks committed in each phase
+     * @param name      Ingestion name. It must identify the data being downloaded
+     * @param chunkSize Number of rows committed in each transaction
+     */
+    ChunkedIngestion(Committer committer, ProgressStore progress, String name, int chunkSize) {
+        this.committer = committer;
+        this.progress = progress;
+        this.name = name;
+        this.chunkSize = Math.max(chunkSize, 1);
+    }
+
+    /**
+     * Writes a phase of the ingestion, committing every chunkSize rows
+     *
+     * @param phase  Phase name, unique inside the ingestion
+     * @param rows   Rows to be written
+     * @param writer Writes each chunk of rows
+     * @throws Exception If a chunk could not be written. The previous chunks stay committed
+     */
+    public <T> void write(String phase, final List<T> rows, final ChunkWriter<T> writer) throws Exception {
+        String marker = name + "." + phase;
+        long fingerprint = fingerprint(rows);
+        int chunks = (rows.size() + chunkSize - 1) / chunkSize;
+        int first = Math.min(progress.get(marker, fingerprint), chunks);
+
+        if (first > 0) {
+            Log.i(TAG, "Resuming " + marker + " after " + first + " of " + chunks + " chunks");
+        }
+
+        for (int i = first; i < chunks; i++) {
+            final List<T> chunk = rows.subList(i * chunkSize, Math.min(rows.size(), (i + 1) * chunkSize));
+            final int chunkIndex = i;
+
+            committer.commit(() -> {
+                writer.write(chunk, chunkIndex);
+                return null;
+            });
+
+            progress.set(marker, fingerprint, i + 1);
+        }
+
+        chunksWritten += chunks - first;
+        chunksSkipped += first;
+    }
+
+    /**
+     * Removes the progress markers once all the phases have been written
+     */
+    public void finish() {
+        progress.remove(name + ".");
+
+        Log.i(TAG, name + ": " + chunksWritten + " chunks of " + chunkSize + " rows written, "
+                + chunksSkipped + " skipped");
+    }
+
+    /**
+     * Gets a fingerprint of the rows, so that a progress marker is only used for the same data
+     *
+     * @param rows Rows to be written
+     * @return Fingerprint of the rows
+     */
+    private static long fingerprint(List<?> rows) {
+        long fingerprint = rows.size();
+
+        for (Object row : rows) {
+            fingerprint = 31 * fingerprint + String.valueOf(row).hashCode();
+        }
+
+        return fingerprint;
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ *  This file is part of SWADroid.
+ *
+ *  Copyright (C) 2010 Juan Miguel Boyero Corral <juanmi1982@gmail.com>
+ *
+ *  SWADroid is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  SWADroid is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with SWADroid.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.ugr.swad.swadroid.database;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import es.ugr.swad.swadroid.model.Model;
+
+/**
+ * Differences between the rows stored in database and the rows received from the webservice.
+ * Both collections are matched by model id and compared by a fingerprint of their content,
+ * so the diff is computed in linear time instead of comparing every pair of models.
+ *
+ * @author Juan Miguel Boyero Corral <juanmi1982@gmail.com>
+ */
+public class CollectionDiff<T extends Model> {
+    /**
+     * Models received that are not stored yet
+     */
+    private final List<T> inserted = new ArrayList<>();
+    /**
+     * Models received that are stored with a different content
+     */
+    private final List<T> updated = new ArrayList<>();
+    /**
+     * Ids of the stored models that have not been received
+     */
+    private final List<Long> deleted = new ArrayList<>();
+    /**
+     * Number of models received that are stored with the same content
+     */
+    private int unchanged;
+
+    /**
+     * Gets the content of a model to be compared
+     */
+    public interface Fingerprint<T> {
+        /**
+         * Gets the content of a model to be compared
+         *
+         * @param model Model to be compared
+         * @return An object whose equals() and hashCode() depend only on the content of the model
+         */
+        Object of(T model);
+    }
+
+    /**
+     * Computes the differences between two collections of models
+     *
+     * @param stored      Models stored in database
+     * @param current     Models received from the webservice
+     * @param fingerprint Content of the models to be compared
+     * @return Differences between both collections
+     */
+    public static <T extends Model> CollectionDiff<T> compute(Collection<? extends T> stored,
+                                                            Collection<? extends T> current,
+                                                            Fingerprint<? super T> fingerprint) {
+        CollectionDiff<T> diff = new CollectionDiff<>();
+        Map<Long, Object> storedContent = new HashMap<>(stored.size() * 2);
+
+        for (T m : stored) {
+            storedContent.put(m.getId(), fingerprint.of(m));
+        }
+
+        for (T m : current) {
+            //Removing the stored models as they are matched leaves only the obsolete ones
+            Object content = storedContent.remove(m.getId());
+            Object newContent;
+
+            if (content == null) {
+                diff.inserted.add(m);
+            } else if (content.hashCode() != (newContent = fingerprint.of(m)).hashCode()
+                    || !content.equals(newContent)) {
+                diff.updated.add(m);
+            } else {
+                diff.unchanged++;
+            }
+        }
+
+        diff.deleted.addAll(storedContent.keySet());
+
+        return diff;
+    }
+
+    /**
+     * Gets the models received that are not stored yet
+     *
+     * @return Models to be inserted
+     */
+    public List<T> getInserted() {
+        return inserted;
+    }
+
+    /**
+     * Gets the models received that are stored with a different content
+     *
+     * @return Models to be updated
+     */
+    public List<T> getUpdated() {
+        return updated;
+    }
+
+    /**
+     * Gets the models received that are not stored yet or are stored with a different content
+     *
+     * @return Models to be inserted or updated
+     */
+    public List<T> getUpserted() {
+        List<T> upserted = new ArrayList<>(inserted.size() + updated.size());
+
+        upserted.addAll(inserted);
+        upserted.addAll(updated);
+
+        return upserted;
+    }
+
+    /**
+     * Gets the ids of the stored models that have not been received
+     *
+     * @return Ids of the models to be deleted
+     */
+    public List<Long> getDeleted() {
+        return deleted;
+    }
+
+    /**
+     * Gets the number of models received that are stored with the same content
+     *
+     * @return Number of unchanged models
+     */
+    public int getUnchanged() {
+        return unchanged;
+    }
+
+    /**
+     * Checks if both collections have the same content
+     *
+     * @return true if there is nothing to be written
+     */
+    public boolean isEmpty() {
+        return inserted.isEmpty() && updated.isEmpty() && deleted.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "CollectionDiff [inserted=" + inserted.size() + ", updated=" + updated.size()
+                + ", deleted=" + deleted.size() + ", unchanged=" + unchanged + "]";
+    }
+}
@@ -18,25 +18,48 @@
  */
 package es.ugr.swad.swadroid.database;
 
+import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteStatement;
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
+import android.text.TextUtils;
 import android.util.Log;
 
 import com.android.dataframework.DataFramework;
 import com.android.dataframework.Entity;
+import com.android.dataframework.EntityPager;
+import com.android.dataframework.core.StorageProfile;
 
 import org.xmlpull.v1.XmlPullParserException;
 
+import java.io.File;
 import java.io.IOException;
 import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
-
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import es.ugr.swad.swadroid.BuildConfig;
 import es.ugr.swad.swadroid.Constants;
 import es.ugr.swad.swadroid.model.Course;
 import es.ugr.swad.swadroid.model.Event;
@@ -70,6 +93,28 @@ public class DataBaseHelper {
      * DataBaseHelper tag name for Logcat
      */
     private static final String TAG = Constants.APP_TAG + " DataBaseHelper";
+    /**
+     * Maximum number of values bound in a single IN clause (SQLITE_MAX_VARIABLE_NUMBER is 999)
+     */
+    private static final int MAX_BIND_ARGS = 500;
+    /**
+     * Order of the notifications pages. notifCode breaks the ties between notifications
+     * with the same event time, so that every notification has a unique position
+     */
+    private static final String NOTIFICATIONS_PAGE_ORDER = "eventTime DESC, notifCode DESC";
+    /**
+     * Maximum number of queries stored in the query cache
+     */
+    private static final int QUERY_CACHE_SIZE = 32;
+    /**
+     * Time to wait for the writer thread to be held before checking again if the database
+     * rewrite has been cancelled, in milliseconds
+     */
+    private static final long WRITER_BARRIER_POLL_MS = 500;
+    /**
+     * Value of PRAGMA auto_vacuum when incremental vacuum is enabled
+     */
+    private static final int AUTO_VACUUM_INCREMENTAL = 2;
 	/**
      * Field for access to the database backend
      */
@@ -86,10 +131,31 @@ public class DataBaseHelper {
      * Cryptographic object
      */
     private final Crypto crypto;
+    /**
+     * Results of the queries over small tables, invalidated by any write to the tables
+     */
+    private final QueryCache queryCache = new QueryCache(QUERY_CACHE_SIZE, DataBaseHelper::copyModel);
 	/**
 	 * Indicates if there are changes on db
 	 */
 	private static boolean dbCleaned = false;
+    /**
+     * Helper shared by all the components of the process
+     */
+    private static DataBaseHelper sharedInstance;
+    /**
+     * Number of components using the shared helper
+     */
+    private static int sharedReferences = 0;
+    /**
+     * Set while the main activity opens the database, so that the pending migrations are left
+     * to be run in background instead of blocking the main thread
+     */
+    private static volatile boolean upgradeDeferred = false;
+    /**
+     * Indicates that the database was opened with the migrations deferred and they have not run yet
+     */
+    private volatile boolean upgradePending = false;
 	/**
 	 * Table name for courses
 	 */
@@ -176,6 +242,83 @@ public class DataBaseHelper {
      * Table name for frequent recipients
      */
     public static final String DB_TABLE_FREQUENT_RECIPIENTS = "frequent_recipients";
+    /**
+     * Table name for the last access and the size of the local data of each course
+     */
+    public static final String DB_TABLE_COURSE_ACCESS = "course_access";
+    /**
+     * Counter table for the not seen notifications of each type, maintained by triggers
+     */
+    private static final String DB_COUNTER_NOTIFICATIONS_UNREAD = DB_TABLE_NOTIFICATIONS + "_unread";
+    /**
+     * Counter table for the present and absent users of each event, maintained by triggers
+     */
+    private static final String DB_COUNTER_USERS_ATTENDANCES = DB_TABLE_USERS_ATTENDANCES + "_count";
+    /**
+     * Counter table for the questions of each test tag, maintained by triggers
+     */
+    private static final String DB_COUNTER_TEST_QUESTION_TAGS = DB_TABLE_TEST_QUESTION_TAGS + "_count";
+    /**
+     * Inserts a relationship between a test question and a tag if it does not exist.
+     * INSERT OR REPLACE is not used because the rows it replaces do not fire the delete
+     * triggers that maintain the questions counters
+     */
+    private static final String SQL_INSERT_QUESTION_TAG = "INSERT OR IGNORE INTO " + DB_TABLE_TEST_QUESTION_TAGS
+            + " VALUES (NULL, ?, ?, ?);";
+    /**
+     * Updates the index of an existing relationship between a test question and a tag
+     */
+    private static final String SQL_UPDATE_QUESTION_TAG = "UPDATE " + DB_TABLE_TEST_QUESTION_TAGS
+            + " SET tagInd = ? WHERE qstCod = ? AND tagCod = ?;";
+
+    /**
+     * Gets the helper shared by all the components of the process, opening the database and
+     * deriving the encryption key only the first time. Every call must be paired with a call to
+     * {@link #release()} when the component is destroyed
+     *
+     * @param ctx Context of the component
+     * @return The shared helper
+     * @throws IOException
+     * @throws XmlPullParserException
+     */
+    public static synchronized DataBaseHelper acquire(Context ctx) throws XmlPullParserException, IOException {
+        if (sharedInstance == null) {
+            sharedInstance = new DataBaseHelper(ctx.getApplicationContext());
+        }
+        sharedReferences++;
+
+        return sharedInstance;
+    }
+
+    /**
+     * Releases a reference to the shared helper. The database is closed when no component uses it
+     */
+    public static synchronized void release() {
+        if (sharedReferences > 0) {
+            sharedReferences--;
+
+            if (sharedReferences == 0) {
+                sharedInstance.close();
+                sharedInstance = null;
+            }
+        }
+    }
+
+    /**
+     * Adds a reference to this helper if it is the shared one, so that it is not closed while
+     * a task started by a component that may be destroyed meanwhile is running
+     *
+     * @return true if a reference was added, which must be released with {@link #release()}
+     */
+    private boolean retain() {
+        synchronized (DataBaseHelper.class) {
+            if (this == sharedInstance) {
+                sharedReferences++;
+                return true;
+            }
+            return false;
+        }
+    }
 
     /**
      * Constructor
@@ -187,7 +330,12 @@ public class DataBaseHelper {
         DBKey = Preferences.getDBKey();
         db = DataFramework.getInstance();
 
+        db.setStorageProfile(StorageProfile.forDevice(mCtx));
         db.open(mCtx, mCtx.getPackageName());
+        db.addOnTableChangedListener(queryCache);
+        db.getQueryLog().setExplainEnabled(BuildConfig.DEBUG);
+        //A database just created already has the structure of the current version
+        MigrationEngine.init(db.getDB(), (db.getOldVersion() == 0) ? db.getVersion() : db.getOldVersion());
 
         //If the passphrase is empty, generate a random passphrase and recreate database
         if (DBKey.equals("")) {
@@ -201,15 +349,69 @@ public class DataBaseHelper {
 
         crypto = new Crypto(ctx, DBKey);
         //Log.d("DataBaseHelper", "DBKey=" + DBKey);
+
+        //Whatever component opens the database first after an update (an activity, a sync
+        //adapter or the maintenance job) migrates it before running any query on it. The main
+        //activity defers the migration and runs it in background, showing its progress
+        if (MigrationEngine.getMigratedVersion(db.getDB()) < db.getVersion()) {
+            if (upgradeDeferred) {
+                upgradePending = true;
+            } else {
+                upgradeDB();
+            }
+        } else {
+            initializeDB();
+        }
     }
 
     /**
      * Closes the database
      */
     public synchronized void close() {
+        db.removeOnTableChangedListener(queryCache);
+        queryCache.clear();
         db.close();
     }
 
+    /**
+     * Gets the query cache, to check its hit and miss counters
+     *
+     * @return The query cache
+     */
+    public QueryCache getQueryCache() {
+        return queryCache;
+    }
+
+    /**
+     * Gets the log of slow queries, with the query plans captured in debug builds
+     *
+     * @return The slow query log as text
+     */
+    public static String exportQueryLog() {
+        return DataFramework.getInstance().getQueryLog().export();
+    }
+
+    /**
+     * Registers a listener that receives the _id of the rows changed in a table after each
+     * committed transaction. It is called from the thread that wrote the rows
+     *
+     * @param table    Table to be listened
+     * @param listener Listener to be registered
+     */
+    public void addOnRowsChangedListener(String table, DataFramework.OnRowsChangedListener listener) {
+        db.addOnRowsChangedListener(table, listener);
+    }
+
+    /**
+     * Unregisters a listener registered with addOnRowsChangedListener
+     *
+     * @param table    Table listened
+     * @param listener Listener to be unregistered
+     */
+    public void removeOnRowsChangedListener(String table, DataFramework.OnRowsChangedListener listener) {
+        db.removeOnRowsChangedListener(table, listener);
+    }
+
     /**
      * Gets DB object
      *
@@ -236,6 +438,16 @@ public class DataBaseHelper {
         return DBKey;
     }
 
+    /**
+     * Gets the cryptographic object of the database, so that the encryption key
+     * is not derived again by every component
+     *
+     * @return the cryptographic object of the database
+     */
+    public Crypto getCrypto() {
+        return crypto;
+    }
+
     /**
      * Selects the appropriated parameters for access a table
      *
@@ -279,6 +491,60 @@ public class DataBaseHelper {
         return new Pair<>(firstParam, secondParam);
     }
     
+    /**
+     * Selects the columns that identify a row of a table regardless of its _id
+     *
+     * @param table Table to be accessed
+     * @return The natural key columns of the table
+     */
+    private String[] selectNaturalKey(String table) {
+        switch (table) {
+            case DataBaseHelper.DB_TABLE_COURSES:
+            case DataBaseHelper.DB_TABLE_TEST_QUESTIONS:
+            case DataBaseHelper.DB_TABLE_TEST_TAGS:
+            case DataBaseHelper.DB_TABLE_EVENTS_ATTENDANCES:
+            case DataBaseHelper.DB_TABLE_GROUPS:
+            case DataBaseHelper.DB_TABLE_GROUP_TYPES:
+                return new String[]{"id"};
+            case DataBaseHelper.DB_TABLE_NOTIFICATIONS:
+                return new String[]{"notifCode"};
+            case DataBaseHelper.DB_TABLE_USERS:
+                return new String[]{"userCode"};
+            case DataBaseHelper.DB_TABLE_USERS_ATTENDANCES:
+                return new String[]{"userCode", "eventCode"};
+            case DataBaseHelper.DB_TABLE_TEST_QUESTIONS_COURSE:
+                return new String[]{"qstCod"};
+            case DataBaseHelper.DB_TABLE_GROUPS_COURSES:
+            case DataBaseHelper.DB_TABLE_GROUPS_GROUPTYPES:
+                return new String[]{"grpCod"};
+            case DataBaseHelper.DB_TABLE_USERS_COURSES:
+            case DataBaseHelper.DB_TABLE_EVENTS_COURSES:
+                Pair<String, String> params = selectParamsPairTable(table);
+                return new String[]{params.getFirst(), params.getSecond()};
+            default:
+                throw new IllegalArgumentException("Table " + table + " has no natural key");
+        }
+    }
+
+    /**
+     * Selects the columns of a table that are written only when the row is created
+     *
+     * @param table Table to be accessed
+     * @return The insert-only columns of the table
+     */
+    private String[] selectInsertOnlyColumns(String table) {
+        if (table.equals(DataBaseHelper.DB_TABLE_EVENTS_ATTENDANCES)) {
+            return new String[]{"status"};
+        }
+
+        //A notification downloaded again keeps the read status set by the user on the device
+        if (table.equals(DataBaseHelper.DB_TABLE_NOTIFICATIONS)) {
+            return new String[]{"seenLocal"};
+        }
+
+        return new String[0];
+    }
+
     /**
      * Gets ParTable class from table
      * @param <T>
@@ -324,24 +590,23 @@ public class DataBaseHelper {
                         ent.getInt(params.getSecond()));
                 break;
             case DataBaseHelper.DB_TABLE_NOTIFICATIONS:
-                String nickName = ent.getString("userNickname");
-                String decryptedNickname = (nickName != null && !nickName.isEmpty())? crypto.decrypt(nickName) : "";
+                String decryptedNickname = decryptColumn(ent, "userNickname", "");
 
                 o = new SWADNotification(ent.getInt("notifCode"),
                         ent.getInt("eventCode"),
-                        crypto.decrypt(ent.getString("eventType")),
+                        decryptColumn(ent, "eventType"),
                         ent.getLong("eventTime"),
                         decryptedNickname,
-                        crypto.decrypt(ent.getString("userSurname1")),
-                        crypto.decrypt(ent.getString("userSurname2")),
-                        crypto.decrypt(ent.getString("userFirstname")),
-                        crypto.decrypt(ent.getString("userPhoto")),
-                        crypto.decrypt(ent.getString("location")),
-                        crypto.decrypt(ent.getString("summary")),
+                        decryptColumn(ent, "userSurname1"),
+                        decryptColumn(ent, "userSurname2"),
+                        decryptColumn(ent, "userFirstname"),
+                        decryptColumn(ent, "userPhoto"),
+                        decryptColumn(ent, "location"),
+                        decryptColumn(ent, "summary"),
                         ent.getInt("status"),
-                        crypto.decrypt(ent.getString("content")),
-                        Utils.parseStringBool(ent.getString("seenLocal")),
-                        Utils.parseStringBool(ent.getString("seenRemote")));
+                        decryptColumn(ent, "content"),
+                        getFlag(ent, "seenLocal"),
+                        getFlag(ent, "seenRemote"));
                 break;
             case DataBaseHelper.DB_TABLE_TEST_QUESTIONS:
                 id = ent.getInt("id");
@@ -352,7 +617,7 @@ public class DataBaseHelper {
                             (Integer) q.getFirst(),
                             ent.getString("stem"),
                             ent.getString("ansType"),
-                            Utils.parseStringBool(ent.getString("shuffle")),
+                            getFlag(ent, "shuffle"),
                             ent.getString("feedback"));
                 } else {
                     o = null;
@@ -367,7 +632,7 @@ public class DataBaseHelper {
                     o = new TestAnswer(id,
                             ansInd,
                             (Integer) a.getFirst(),
-                            Utils.parseStringBool(ent.getString("correct")),
+                            getFlag(ent, "correct"),
                             ent.getString("answer"),
                             ent.getString("answerFeedback"));
                 } else {
@@ -407,12 +672,12 @@ public class DataBaseHelper {
                 try {
                     o = new User(ent.getInt("userCode"),
                             null,                                // wsKey
-                            ent.getString("userID"),
-                            ent.getString("userNickname"),
-                            ent.getString("userSurname1"),
-                            ent.getString("userSurname2"),
-                            ent.getString("userFirstname"),
-                            ent.getString("photoPath"),
+                            decryptColumn(ent, "userID", ""),
+                            decryptColumn(ent, "userNickname", ""),
+                            decryptColumn(ent, "userSurname1", ""),
+                            decryptColumn(ent, "userSurname2", ""),
+                            decryptColumn(ent, "userFirstname", ""),
+                            decryptColumn(ent, "photoPath", ""),
                             null,                               //userBirthday
                             ent.getInt("userRole"));
                 } catch (ParseException e) {
@@ -427,17 +692,17 @@ public class DataBaseHelper {
             case DataBaseHelper.DB_TABLE_EVENTS_ATTENDANCES:
                 o = new Event(ent.getLong("id"),
                         Utils.parseIntBool(ent.getInt("hidden")),
-                        crypto.decrypt(ent.getString("userSurname1")),
-                        crypto.decrypt(ent.getString("userSurname2")),
-                        crypto.decrypt(ent.getString("userFirstName")),
-                        crypto.decrypt(ent.getString("userPhoto")),
+                        decryptColumn(ent, "userSurname1", ""),
+                        decryptColumn(ent, "userSurname2", ""),
+                        decryptColumn(ent, "userFirstName", ""),
+                        decryptColumn(ent, "userPhoto", ""),
                         ent.getLong("startTime"),
                         ent.getLong("endTime"),
                         Utils.parseIntBool(ent.getInt("commentsTeachersVisible")),
-                        crypto.decrypt(ent.getString("title")),
-                        crypto.decrypt(ent.getString("text")),
-                        crypto.decrypt(ent.getString("groups")),
-                        crypto.decrypt(ent.getString("status")));
+                        decryptColumn(ent, "title", ""),
+                        decryptColumn(ent, "text", ""),
+                        decryptColumn(ent, "groups", ""),
+                        decryptColumn(ent, "status", ""));
                 break;
             case DataBaseHelper.DB_TABLE_GROUPS:
                 long groupTypeCode = getGroupTypeCodeFromGroup(ent.getLong("id"));
@@ -460,11 +725,11 @@ public class DataBaseHelper {
                 break;
             case DataBaseHelper.DB_TABLE_FREQUENT_RECIPIENTS:
                 o = new FrequentUser(ent.getString("idUser"),
-                        crypto.decrypt(ent.getString("nicknameRecipient")),
-                        crypto.decrypt(ent.getString("surname1Recipient")),
-                        crypto.decrypt(ent.getString("surname2Recipient")),
-                        crypto.decrypt(ent.getString("firstnameRecipient")),
-                        crypto.decrypt(ent.getString("photoRecipient")),
+                        decryptColumn(ent, "nicknameRecipient", ""),
+                        decryptColumn(ent, "surname1Recipient", ""),
+                        decryptColumn(ent, "surname2Recipient", ""),
+                        decryptColumn(ent, "firstnameRecipient", ""),
+                        decryptColumn(ent, "photoRecipient", ""),
                         ent.getInt("userCode"),
                         false,
                         ent.getDouble("score"));
@@ -475,1971 +740,3906 @@ public class DataBaseHelper {
     }
 
     /**
-     * Gets all rows of specified table
+     * Checks if the rows of a table are loaded together with a relation table
      *
-     * @param table Table containing the rows
-     * @return A list of Model's subclass objects
+     * @param table Table to be checked
+     * @return true if the table has to be loaded with getRowsWithRelations
      */
-    public <T extends Model> List<T>  getAllRows(String table) {
-        List<T> result = new ArrayList<>();
-        List<Entity> rows = db.getEntityList(table);
-        T row;
-
-        for (Entity ent : rows) {
-            row = createObjectByTable(table, ent);
-            result.add(row);
+    private boolean hasRelationTable(String table) {
+        switch (table) {
+            case DataBaseHelper.DB_TABLE_TEST_QUESTIONS:
+            case DataBaseHelper.DB_TABLE_TEST_ANSWERS:
+            case DataBaseHelper.DB_TABLE_TEST_TAGS:
+            case DataBaseHelper.DB_TABLE_GROUPS:
+                return true;
+            default:
+                return false;
         }
-
-        return result;
     }
 
     /**
-     * Gets the rows of specified table that matches "where" condition. The rows are ordered as says the "orderby"
-     * parameter
+     * Selects the tables read by the queries of a table whose results can be cached.
+     * Only small tables that are read repeatedly by the menus are cached
      *
-     * @param table   Table containing the rows
-     * @param where   Where condition of SQL sentence
-     * @param orderby Orderby part of SQL sentence
-     * @return A list of Model's subclass objects
+     * @param table Table to be read
+     * @return The tables read or null if the results of the table are not cached
      */
-    public <T extends Model> List<T> getAllRows(String table, String where, String orderby) {
-        List<T> result = new ArrayList<>();
-        List<Entity> rows = db.getEntityList(table, where, orderby);
-        T row;
-
-        if (rows != null) {
-            for (Entity ent : rows) {
-                row = createObjectByTable(table, ent);
-                result.add(row);
-            }
+    private String[] selectCacheTables(String table) {
+        switch (table) {
+            case DataBaseHelper.DB_TABLE_COURSES:
+            case DataBaseHelper.DB_TABLE_GROUP_TYPES:
+                return new String[]{table};
+            case DataBaseHelper.DB_TABLE_GROUPS:
+                return new String[]{table, DataBaseHelper.DB_TABLE_GROUPS_GROUPTYPES,
+                        DataBaseHelper.DB_TABLE_GROUPS_COURSES};
+            default:
+                return null;
         }
-
-        return result;
     }
-    
+
     /**
-     * Gets count of all rows of specified table
+     * Copies a model of a cacheable table, so the query cache does not share the models
+     * it stores with the callers, that can modify them
      *
-     * @param table Table containing the rows
-     * @return Count of all rows of specified table
+     * @param m Model to be copied
+     * @return Copy of the model
      */
-    public int getAllRowsCount(String table) {
-        return db.getEntityListCount(table, null);
+    private static Model copyModel(Model m) {
+        if (m instanceof Course) {
+            Course c = (Course) m;
+            return new Course(c.getId(), c.getUserRole(), c.getShortName(), c.getFullName());
+        } else if (m instanceof GroupType) {
+            GroupType gt = (GroupType) m;
+            return new GroupType(gt.getId(), gt.getGroupTypeName(), gt.getCourseCode(), gt.getMandatory(),
+                    gt.getMultiple(), gt.getOpenTime());
+        } else if (m instanceof Group) {
+            Group g = (Group) m;
+            return new Group(g.getId(), g.getGroupName(), g.getGroupTypeCode(), g.getMaxStudents(),
+                    g.getOpen(), g.getCurrentStudents(), g.getDocumentsArea(), g.getMember());
+        }
+
+        throw new IllegalArgumentException("Models of class " + m.getClass().getSimpleName()
+                + " can not be cached");
     }
-    
-    /**
-     * Gets count of all rows of specified table
-    *
-    * @param table   Table containing the rows
-    * @param where   Where condition of SQL sentence
-    * @return Count of all rows of specified table
-    */
-   public int getAllRowsCount(String table, String where) {
-       return db.getEntityListCount(table, where);
-   }
 
     /**
-     * Gets a row of specified table
+     * Gets the result of a query from the query cache, or runs it and stores the result if the
+     * table is cacheable. Results read inside a transaction are not stored because the
+     * transaction could be rolled back
      *
-     * @param table      Table containing the rows
-     * @param fieldName  Field's name
-     * @param fieldValue Field's value
-     * @return A Model's subclass object
-     *         or null if the row does not exist in the specified table
+     * @param table  Main table of the query
+     * @param key    Key of the query
+     * @param loader Runs the query against the database
+     * @return A list of Model's subclass objects
      */
-    public <T extends Model> T getRow(String table, String fieldName, Object fieldValue) {
-        List<Entity> rows;
-        Entity ent;
-        T row = null;
-        
-        if(fieldValue instanceof String) {
-        	rows = db.getEntityList(table, fieldName + " = '" + fieldValue + "'");
-        } else {
-        	rows = db.getEntityList(table, fieldName + " = " + fieldValue + "");
+    private <T extends Model> List<T> getCachedRows(String table, String key, Supplier<List<T>> loader) {
+        String[] cacheTables = selectCacheTables(table);
+
+        if (cacheTables == null) {
+            return loader.get();
         }
 
-        if (rows.size() > 0) {
-            ent = rows.get(0);
-            row = createObjectByTable(table, ent);
+        List<T> result = queryCache.get(key);
+        if (result == null) {
+            long stamp = queryCache.stamp();
+            result = loader.get();
+
+            if (!db.inTransaction()) {
+                queryCache.put(key, stamp, result, cacheTables);
+            }
         }
 
-        return row;
+        return result;
     }
 
     /**
-     * Gets all tablenames of the database
+     * Gets the rows of a table joined with its relation table in a single query and maps them
+     * in one pass, instead of querying the relation table for every row:
+     * tst_questions with tst_questions_course, tst_answers with tst_question_answers,
+     * tst_tags with tst_question_tags and groups with group_grouptypes.
+     * Rows without relation are discarded, except groups without group type, that are returned
+     * with group type code -1.
      *
-     * @return A list of all tablenames of the database
+     * @param table     Table containing the rows
+     * @param where     Where condition of SQL sentence over the columns of the table (can be null)
+     * @param whereArgs Values of the where condition (can be null)
+     * @param orderby   Orderby part of SQL sentence over the columns of the table (can be null)
+     * @return A list of Model's subclass objects
      */
-    public List<String>  getAllTablenames() {
-        List<String> result = new ArrayList<>();
-        Cursor cursor = db.rawQuery("SELECT name FROM sqlite_master WHERE type='table' ORDER BY name", null);
-
-        while (cursor.moveToNext()) {
-            result.add(cursor.getString(0));
-        }
-
-        return result;
+    private <T extends Model> List<T> getRowsWithRelations(final String table, final String where,
+                                                           final String[] whereArgs, final String orderby) {
+        return getCachedRows(table, QueryCache.key(table, where, whereArgs, orderby),
+                () -> loadRowsWithRelations(table, where, whereArgs, orderby));
     }
 
     /**
-     * Gets an user
-     *
-     * @param fieldName  Field's name
-     * @param fieldValue Field's value
-     * @return The user found 
-     *         or null if the user does not exist
+     * Loads from database the rows of a table together with their relation table.
+     * See {@link #getRowsWithRelations(String, String, String[], String)}
      */
-    public User getUser(String fieldName, Object fieldValue) {
-        List<Entity> rows;
-        Entity ent;
-        User user = null;
-        
-        if(fieldValue instanceof String) {
-        	rows = db.getEntityList(DataBaseHelper.DB_TABLE_USERS, fieldName + " = '" + fieldValue + "'");
-        } else {
-        	rows = db.getEntityList(DataBaseHelper.DB_TABLE_USERS, fieldName + " = " + fieldValue + "");
+    private <T extends Model> List<T> loadRowsWithRelations(String table, String where, String[] whereArgs,
+                                                            String orderby) {
+        String rows = "(SELECT * FROM " + table
+                + (((where != null) && !where.isEmpty()) ? " WHERE " + where : "") + ") AS R";
+        String sql;
+        List<Model> result = new ArrayList<>();
+        Cursor c;
+
+        switch (table) {
+            case DataBaseHelper.DB_TABLE_TEST_QUESTIONS:
+                sql = "SELECT R.id, C.crsCod, R.stem, R.ansType, R.shuffle, R.feedback FROM " + rows
+                        + " INNER JOIN " + DataBaseHelper.DB_TABLE_TEST_QUESTIONS_COURSE + " AS C ON C.qstCod = R.id";
+                break;
+            case DataBaseHelper.DB_TABLE_TEST_ANSWERS:
+                sql = "SELECT R._id, R.ansInd, Q.qstCod, R.correct, R.answer, R.answerFeedback FROM " + rows
+                        + " INNER JOIN " + DataBaseHelper.DB_TABLE_TEST_QUESTION_ANSWERS + " AS Q ON Q.ansCod = R._id";
+                break;
+            case DataBaseHelper.DB_TABLE_TEST_TAGS:
+                sql = "SELECT R.id, R.tagTxt, Q.qstCod, Q.tagInd FROM " + rows
+                        + " INNER JOIN " + DataBaseHelper.DB_TABLE_TEST_QUESTION_TAGS + " AS Q ON Q.tagCod = R.id";
+                break;
+            case DataBaseHelper.DB_TABLE_GROUPS:
+                sql = "SELECT R.id, R.groupName, G.grpTypCod, R.maxStudents, R.open, R.students, R.fileZones,"
+                        + " R.member FROM " + rows
+                        + " LEFT JOIN " + DataBaseHelper.DB_TABLE_GROUPS_GROUPTYPES + " AS G ON G.grpCod = R.id";
+                break;
+            default:
+                throw new IllegalArgumentException("Table " + table + " has no relation table");
         }
 
-        if (rows.size() > 0) {
-            ent = rows.get(0);
+        if ((orderby != null) && !orderby.isEmpty()) {
+            sql += " ORDER BY " + orderby;
+        }
 
-            try {
-                user = new User(
-                        ent.getLong("userCode"),
-                        null,
-                        crypto.decrypt(ent.getString("userID")),
-                        crypto.decrypt(ent.getString("userNickname")),
-                        crypto.decrypt(ent.getString("userSurname1")),
-                        crypto.decrypt(ent.getString("userSurname2")),
-                        crypto.decrypt(ent.getString("userFirstname")),
-                        crypto.decrypt(ent.getString("photoPath")),
-                        null,
-                        ent.getInt("userRole"));
-            } catch (ParseException e) {
-                Log.e(TAG, e.getMessage(), e);
+        c = db.getRawCursor(sql, whereArgs);
+        try {
+            if (table.equals(DataBaseHelper.DB_TABLE_TEST_TAGS)) {
+                //A tag is repeated for every question related to it
+                Map<Long, TestTag> tags = new LinkedHashMap<>();
+
+                while (c.moveToNext()) {
+                    long id = c.getLong(0);
+                    TestTag t = tags.get(id);
+
+                    if (t == null) {
+                        List<Integer> qstCodList = new ArrayList<>();
+                        qstCodList.add(c.getInt(2));
+                        tags.put(id, new TestTag(id, qstCodList, c.getString(1), c.getInt(3)));
+                    } else {
+                        t.addQstCod(c.getInt(2));
+                    }
+                }
+
+                result.addAll(tags.values());
+            } else {
+                while (c.moveToNext()) {
+                    switch (table) {
+                        case DataBaseHelper.DB_TABLE_TEST_QUESTIONS:
+                            result.add(new TestQuestion(c.getLong(0),
+                                    c.getLong(1),
+                                    c.getString(2),
+                                    c.getString(3),
+                                    Utils.parseIntBool(c.getInt(4)),
+                                    c.getString(5)));
+                            break;
+                        case DataBaseHelper.DB_TABLE_TEST_ANSWERS:
+                            result.add(new TestAnswer(c.getLong(0),
+                                    c.getInt(1),
+                                    c.getInt(2),
+                                    Utils.parseIntBool(c.getInt(3)),
+                                    c.getString(4),
+                                    c.getString(5)));
+                            break;
+                        case DataBaseHelper.DB_TABLE_GROUPS:
+                            result.add(new Group(c.getLong(0),
+                                    c.getString(1),
+                                    c.isNull(2) ? -1 : c.getLong(2),
+                                    c.getInt(3),
+                                    c.getInt(4),
+                                    c.getInt(5),
+                                    c.getInt(6),
+                                    c.getInt(7)));
+                            break;
+                    }
+                }
             }
+        } finally {
+            c.close();
         }
 
-        return user;
+        return (List<T>) result;
     }
 
     /**
-     * Gets the id of users enrolled in the selected course
+     * Creates the column values of a row looking at the table selected
      *
-     * @param courseCode Course code to be referenced
-     * @return A list of User's id
-     */
-    public List<Long> getUsersCourse(long courseCode) {
-        List<Long> result = new ArrayList<>();
-
-        List<Entity> rows = db.getEntityList(DataBaseHelper.DB_TABLE_USERS_COURSES, "crsCod = '" + courseCode + "'");
-        if (rows != null) {
-            for (Entity ent : rows) {
-                result.add(ent.getLong("userCode"));
-            }
-        }
-        return result;
-    }
-
-    /**
-     * Gets the id of users related to the selected event
-     *
-     * @param eventCode Event code to be referenced
-     * @return A list of User's id
+     * @param table Table selected
+     * @param m     Model to be stored in the table
+     * @return The column values of the row. Every column is included, null values too, so
+     *         all the rows of a table have the same columns and updates clear null values
      */
-    public List<Long> getUserIdsEvent(int eventCode) {
-        List<Long> result = new ArrayList<>();
-
-        List<Entity> rows = db.getEntityList(DataBaseHelper.DB_TABLE_USERS_ATTENDANCES, "eventCode = '" + eventCode + "'");
-        if (rows != null) {
-            for (Entity ent : rows) {
-                result.add(ent.getLong("userCode"));
-            }
-        }
-        return result;
+    private ContentValues createValuesByTable(String table, Model m) {
+        return createValuesByTable(table, m, true);
     }
 
     /**
-     * Gets the list of users related to the selected event
+     * Creates the column values of a row looking at the table selected
      *
-     * @param eventCode Event code to be referenced
-     * @return A list of @link{UserAttendance} related to the selected event
+     * @param table   Table selected
+     * @param m       Model to be stored in the table
+     * @param encrypt true to encrypt the private columns as they are stored, false to keep them
+     *                as plain text, to compare the content of the models without encrypting them
+     * @return The column values of the row. Every column is included, null values too, so
+     *         all the rows of a table have the same columns and updates clear null values
      */
-    public List<UserAttendance> getUsersEvent(int eventCode) {
-        List<UserAttendance> result = new ArrayList<>();
-        List<Entity> rows = db.getEntityList(DataBaseHelper.DB_TABLE_USERS_ATTENDANCES, "eventCode = '" + eventCode + "'");
+    private ContentValues createValuesByTable(String table, Model m, boolean encrypt) {
+        ContentValues values = new ContentValues();
 
-        if (rows != null) {
-            for (Entity ent : rows) {
-                result.add( (UserAttendance) createObjectByTable(DataBaseHelper.DB_TABLE_USERS_ATTENDANCES, ent));
-            }
+        switch (table) {
+            case DataBaseHelper.DB_TABLE_COURSES:
+                Course c = (Course) m;
+                values.put("id", c.getId());
+                values.put("userRole", c.getUserRole());
+                values.put("shortName", c.getShortName());
+                values.put("fullName", c.getFullName());
+                break;
+            case DataBaseHelper.DB_TABLE_TEST_QUESTIONS_COURSE:
+            case DataBaseHelper.DB_TABLE_TEST_QUESTION_ANSWERS:
+            case DataBaseHelper.DB_TABLE_USERS_COURSES:
+            case DataBaseHelper.DB_TABLE_GROUPS_COURSES:
+            case DataBaseHelper.DB_TABLE_GROUPS_GROUPTYPES:
+            case DataBaseHelper.DB_TABLE_EVENTS_COURSES:
+                PairTable<?, ?> p = (PairTable<?, ?>) m;
+                Pair<String, String> params = selectParamsPairTable(table);
+                values.put(params.getFirst(), ((Number) p.getFirst()).longValue());
+                values.put(params.getSecond(), ((Number) p.getSecond()).longValue());
+                break;
+            case DataBaseHelper.DB_TABLE_NOTIFICATIONS:
+                SWADNotification n = (SWADNotification) m;
+                values.put("notifCode", n.getId());
+                values.put("eventCode", n.getEventCode());
+                putPrivate(values, "eventType", n.getEventType(), encrypt);
+                values.put("eventTime", n.getEventTime());
+                putPrivate(values, "userNickname", n.getUserNickname(), encrypt);
+                putPrivate(values, "userSurname1", n.getUserSurname1(), encrypt);
+                putPrivate(values, "userSurname2", n.getUserSurname2(), encrypt);
+                putPrivate(values, "userFirstname", n.getUserFirstName(), encrypt);
+                putPrivate(values, "userPhoto", n.getUserPhoto(), encrypt);
+                putPrivate(values, "location", n.getLocation(), encrypt);
+                putPrivate(values, "summary", n.getSummary(), encrypt);
+                values.put("status", String.valueOf(n.getStatus()));
+                putPrivate(values, "content", n.getContent(), encrypt);
+                values.put("seenLocal", Utils.parseBoolInt(n.isSeenLocal()));
+                values.put("seenRemote", Utils.parseBoolInt(n.isSeenRemote()));
+                break;
+            case DataBaseHelper.DB_TABLE_TEST_QUESTIONS:
+                TestQuestion q = (TestQuestion) m;
+                values.put("id", q.getId());
+                values.put("ansType", q.getAnswerType());
+                values.put("stem", q.getStem());
+                values.put("shuffle", Utils.parseBoolInt(q.getShuffle()));
+                values.put("feedback", q.getFeedback());
+                break;
+            case DataBaseHelper.DB_TABLE_TEST_TAGS:
+                TestTag t = (TestTag) m;
+                values.put("id", t.getId());
+                values.put("tagTxt", t.getTagTxt());
+                break;
+            case DataBaseHelper.DB_TABLE_USERS:
+                User u = (User) m;
+                values.put("userCode", u.getId());
+                putPrivate(values, "userID", u.getUserID(), encrypt);
+                putPrivate(values, "userNickname", u.getUserNickname(), encrypt);
+                putPrivate(values, "userSurname1", u.getUserSurname1(), encrypt);
+                putPrivate(values, "userSurname2", u.getUserSurname2(), encrypt);
+                putPrivate(values, "userFirstname", u.getUserFirstname(), encrypt);
+                //photoPath is not nullable, so a missing photo is stored as an empty path
+                putPrivate(values, "photoPath", (u.getUserPhoto() != null) ? u.getUserPhoto() : "", encrypt);
+                values.put("userRole", u.getUserRole());
+                break;
+            case DataBaseHelper.DB_TABLE_USERS_ATTENDANCES:
+                UserAttendance ua = (UserAttendance) m;
+                values.put("userCode", ua.getId());
+                values.put("eventCode", ua.getEventCode());
+                values.put("present", Utils.parseBoolInt(ua.isUserPresent()));
+                break;
+            case DataBaseHelper.DB_TABLE_EVENTS_ATTENDANCES:
+                Event e = (Event) m;
+                values.put("id", e.getId());
+                values.put("hidden", Utils.parseBoolInt(e.isHidden()));
+                putPrivate(values, "userSurname1", e.getUserSurname1(), encrypt);
+                putPrivate(values, "userSurname2", e.getUserSurname2(), encrypt);
+                putPrivate(values, "userFirstName", e.getUserFirstName(), encrypt);
+                putPrivate(values, "userPhoto", e.getUserPhoto(), encrypt);
+                values.put("startTime", e.getStartTime());
+                values.put("endTime", e.getEndTime());
+                values.put("commentsTeachersVisible", Utils.parseBoolInt(e.isCommentsTeachersVisible()));
+                putPrivate(values, "title", e.getTitle(), encrypt);
+                putPrivate(values, "text", e.getText(), encrypt);
+                putPrivate(values, "groups", e.getGroups(), encrypt);
+                putPrivate(values, "status", e.getStatus(), encrypt);
+                break;
+            case DataBaseHelper.DB_TABLE_GROUPS:
+                Group g = (Group) m;
+                values.put("id", g.getId());
+                values.put("groupName", g.getGroupName());
+                values.put("maxStudents", g.getMaxStudents());
+                values.put("students", g.getCurrentStudents());
+                values.put("open", g.getOpen());
+                values.put("fileZones", g.getDocumentsArea());
+                values.put("member", g.getMember());
+                break;
+            case DataBaseHelper.DB_TABLE_GROUP_TYPES:
+                GroupType gt = (GroupType) m;
+                values.put("id", gt.getId());
+                values.put("groupTypeName", gt.getGroupTypeName());
+                values.put("courseCode", gt.getCourseCode());
+                values.put("mandatory", gt.getMandatory());
+                values.put("multiple", gt.getMultiple());
+                values.put("openTime", gt.getOpenTime());
+                break;
+            default:
+                throw new IllegalArgumentException("Table " + table + " can not be written from a model");
         }
 
-        return result;
+        return values;
     }
 
     /**
-     * Checks if the user is enrolled in the selected event
+     * Puts the value of a private column, encrypted as it is stored or as plain text
      *
-     * @param eventCode Event code to be referenced
-     * @param fieldName  Field's name
-     * @param fieldValue Field's value
-     * @return true if the user is enrolled in the selected event
-     *         false if the user is not enrolled in the selected event
+     * @param values  Column values of the row
+     * @param column  Column name
+     * @param value   Value of the column
+     * @param encrypt true to encrypt the value
      */
-    public boolean isUserEnrolledEvent(int eventCode, String fieldName, String fieldValue) {
-        return (getAllRowsCount(DB_TABLE_USERS_ATTENDANCES, "eventCode = '" + eventCode + "'" +
-                " AND " + fieldName + " = '" + fieldValue + "'") != 0);
+    private void putPrivate(ContentValues values, String column, String value, boolean encrypt) {
+        if (encrypt) {
+            values.put(column, crypto.encrypt(value));
+        } else {
+            values.put(column, value);
+        }
     }
 
     /**
-     * Gets the list of users related to the selected event
+     * Decrypts a column of a row. Columns not loaded by a projection query are kept as null
+     * so they are not decrypted.
      *
-     * @param eventCode Event code to be referenced
-     * @return A Cursor with a list of users related to the selected event
+     * @param ent  Row containing the column
+     * @param name Column name
+     * @return Decrypted value or null if the column was not loaded
      */
-    public Cursor getUsersEventCursor(int eventCode) {
-        return db.rawQuery("SELECT * FROM " + DB_TABLE_USERS + " AS U"
-                + " INNER JOIN " + DB_TABLE_USERS_ATTENDANCES + " AS A"
-                + " ON U.userCode = A.userCode WHERE eventCode ='" + eventCode + "'", null);
+    private String decryptColumn(Entity ent, String name) {
+        return decryptColumn(ent, name, null);
     }
 
     /**
-     * Gets the list of events related to the selected course
+     * Decrypts a column of a row
      *
-     * @param crsCod Course code to be referenced
-     * @return A list of Event
+     * @param ent          Row containing the column
+     * @param name         Column name
+     * @param defaultValue Value returned if the column is null or was not loaded
+     * @return Decrypted value or defaultValue
      */
-    public List<Event> getEventsCourse(long crsCod) {
-        List<Event> result = new ArrayList<>();
-        List<Entity> rows = db.getEntityList(DataBaseHelper.DB_TABLE_EVENTS_COURSES, "crsCod = '" + crsCod + "'");
+    private String decryptColumn(Entity ent, String name, String defaultValue) {
+        Object value = ent.getValue(name);
 
-        if (rows != null) {
-            for (Entity ent : rows) {
-                result.add((Event) getRow(DataBaseHelper.DB_TABLE_EVENTS_ATTENDANCES, "id", ent.getValue("eventCode")));
-            }
+        if (value == null) {
+            return defaultValue;
         }
 
-        return result;
+        //Rows not migrated yet keep the ciphertext as hexadecimal text
+        return (value instanceof byte[]) ? crypto.decrypt((byte[]) value) : crypto.decrypt(value.toString());
     }
 
     /**
-     * Gets the list of users related to the selected event
+     * Reads a boolean column stored as INTEGER. Rows written before the typed column
+     * migration still hold 'Y'/'N' or 'true'/'false', so they are accepted too.
      *
-     * @param crsCod Course code to be referenced
-     * @return A Cursor with a list of events related to the selected course
+     * @param ent  Row containing the column
+     * @param name Column name
+     * @return Value of the column
      */
-    public Cursor getEventsCourseCursor(long crsCod) {
-        return db.rawQuery("SELECT * FROM " + DB_TABLE_EVENTS_ATTENDANCES + " AS E"
-                + " INNER JOIN " + DB_TABLE_EVENTS_COURSES + " AS C"
-                + " ON E.id = C.eventCode WHERE C.crsCod ='" + crsCod + "' AND hidden=" + Utils.parseBoolInt(false)
-                + " ORDER BY E.startTime DESC,E.endTime DESC,E.title DESC", null);
+    private static boolean getFlag(Entity ent, String name) {
+        String value = ent.getString(name);
+
+        return "1".equals(value) || "Y".equals(value) || "true".equals(value);
     }
 
     /**
-     * Gets the number of users related to the selected event
+     * Gets all rows of specified table
      *
-     * @param eventCode Event code to be referenced
-     * @return the number of users related to the selected event
+     * @param table Table containing the rows
+     * @return A list of Model's subclass objects
      */
-    public int getUsersEventCount(int eventCode) {
-        Cursor cursor =  db.rawQuery("SELECT COUNT(*) AS COUNT FROM " + DB_TABLE_USERS + " AS U"
-                + " INNER JOIN " + DB_TABLE_USERS_ATTENDANCES + " AS A"
-                + " ON U.userCode = A.userCode WHERE eventCode = '" + eventCode + "'", null);
-
-        return cursor.getInt(cursor.getColumnIndex("COUNT"));
+    public <T extends Model> List<T>  getAllRows(String table) {
+        return getAllRows(table, (String) null, null);
     }
 
     /**
-     * Gets the number of users related to the selected event
+     * Gets the rows of specified table that matches "where" condition. The rows are ordered as says the "orderby"
+     * parameter
      *
-     * @param eventCode Event code to be referenced
-     * @param fieldName  Field's name
-     * @param fieldValue Field's value
-     * @return the number of users related to the selected event
+     * @param table   Table containing the rows
+     * @param where   Where condition of SQL sentence
+     * @param orderby Orderby part of SQL sentence
+     * @return A list of Model's subclass objects
      */
-    public int getUsersEventCount(int eventCode, String fieldName, String fieldValue) {
-        Cursor cursor =  db.rawQuery("SELECT COUNT(*) AS COUNT FROM " + DB_TABLE_USERS + " AS U"
-                + " INNER JOIN " + DB_TABLE_USERS_ATTENDANCES + " AS A"
-                + " ON U.userCode = A.userCode WHERE eventCode = '" + eventCode + "'" +
-                " AND " + fieldName + " = '" + fieldValue + "'", null);
+    public <T extends Model> List<T> getAllRows(final String table, final String where, final String orderby) {
+        if (hasRelationTable(table)) {
+            return getRowsWithRelations(table, where, null, orderby);
+        }
 
-        return cursor.getInt(cursor.getColumnIndex("COUNT"));
-    }
+        return getCachedRows(table, QueryCache.key(table, where, orderby), () -> {
+            List<T> result = new ArrayList<>();
+            List<Entity> rows = db.getEntityList(table, where, orderby);
+
+            for (Entity ent : rows) {
+                result.add(createObjectByTable(table, ent));
+            }
 
+            return result;
+        });
+    }
+    
     /**
-     * Gets the group which code is given
+     * Gets the rows of specified table that matches the query. The rows are ordered as says the
+     * "orderby" parameter
      *
-     * @param groupId long that identifies uniquely the searched group
-     * @return group with the referenced code in case it exits
-     *         null otherwise
+     * @param table   Table containing the rows
+     * @param query   Where condition with bind arguments
+     * @param orderby Orderby part of SQL sentence
+     * @return A list of Model's subclass objects
      */
-    public Group getGroup(long groupId) {
-        String table = DataBaseHelper.DB_TABLE_GROUPS;
-        List<Entity> rows = db.getEntityList(table, "id = " + groupId);
-        Group g = null;
-        if (rows != null)
-            g = createObjectByTable(table, rows.get(0));
-        return g;
+    public <T extends Model> List<T> getAllRows(final String table, final QueryBuilder query, final String orderby) {
+        if (hasRelationTable(table)) {
+            return getRowsWithRelations(table, query.getSelection(), query.getSelectionArgs(), orderby);
+        }
+
+        return getCachedRows(table, QueryCache.key(table, query.getSelection(), query.getBindArgs(), orderby), () -> {
+            List<T> result = new ArrayList<>();
+
+            for (Entity ent : getEntityList(table, query, orderby)) {
+                result.add(createObjectByTable(table, ent));
+            }
+
+            return result;
+        });
     }
 
     /**
-     * Gets the group codes in the selected course
+     * Gets the rows of specified table that matches "where" condition loading only the specified
+     * columns. The rest of fields of the returned objects are not populated, so they should only
+     * be used to show the loaded data. Use getRow to load the full row when needed.
      *
-     * @param courseCode Course code to be referenced
-     * @return A list of group codes belonging to the selected course
+     * @param table   Table containing the rows
+     * @param columns Columns to be loaded
+     * @param where   Where condition of SQL sentence
+     * @param orderby Orderby part of SQL sentence
+     * @return A list of partially populated Model's subclass objects
      */
-    public List<Long> getGroupCodesCourse(long courseCode) {
-        List<Long> result = new ArrayList<>();
+    public <T extends Model> List<T> getAllRows(String table, String[] columns, String where, String orderby) {
+        List<T> result = new ArrayList<>();
+        List<Entity> rows = db.getEntityList(table, columns, where, orderby, null);
+        T row;
 
-        List<Entity> rows = db.getEntityList(DataBaseHelper.DB_TABLE_GROUPS_COURSES, "crsCod = '" + courseCode + "'");
-        if (rows != null) {
-            for (Entity ent : rows) {
-                result.add(ent.getLong("grpCod"));
-            }
+        for (Entity ent : rows) {
+            row = createObjectByTable(table, ent);
+            result.add(row);
         }
 
         return result;
     }
 
     /**
-     * Gets the groups belonging to the selected type of group
+     * Gets the rows of specified table that matches "where" condition, indexed by their _id,
+     * so that the rows notified by an OnRowsChangedListener can be matched with the loaded ones
      *
-     * @param groupTypeCode group type code to be referenced
-     * @return List of Groups
+     * @param table     Table containing the rows
+     * @param columns   Columns to be loaded (null for all)
+     * @param where     Where condition of SQL sentence, with ? placeholders (can be null)
+     * @param whereArgs Values of the placeholders (can be null)
+     * @param orderby   Orderby part of SQL sentence (can be null)
+     * @return A map of _id to Model's subclass objects, in the order of the query
      */
-    public List<Group> getGroupsOfType(long groupTypeCode) {
-        List<Group> groups = new ArrayList<>();
-        List<Long> groupCodes = getGroupsCodesOfType(groupTypeCode);
-        if (!groupCodes.isEmpty()) {
-            for (Long groupCode : groupCodes) {
-                groups.add((Group) getRow(DataBaseHelper.DB_TABLE_GROUPS, "id", String.valueOf(groupCode)));
-            }
+    public <T extends Model> LinkedHashMap<Long, T> getRowsByRowId(String table, String[] columns, String where,
+                                                                  String[] whereArgs, String orderby) {
+        LinkedHashMap<Long, T> result = new LinkedHashMap<>();
+        List<Entity> rows = db.getEntityList(table, columns, where, whereArgs, orderby, null);
+
+        for (Entity ent : rows) {
+            T row = createObjectByTable(table, ent);
+            result.put(ent.getId(), row);
         }
 
-        return groups;
+        return result;
     }
 
-    public Cursor getCursor(String table) {
-        return db.getCursor(table);
-    }
+    /**
+     * Iterates over the rows of specified table that matches "where" condition, loading
+     * them from database in pages of "pageSize" rows ordered by _id. Only one page is kept
+     * in memory, so the returned objects must not be retained by the caller if the table
+     * can be arbitrarily large.
+     *
+     * @param table    Table containing the rows
+     * @param where    Where condition of SQL sentence (can be null)
+     * @param pageSize Number of rows loaded on each query
+     * @return An iterable of Model's subclass objects
+     */
+    public <T extends Model> Iterable<T> getRowsPaged(final String table, String where, int pageSize) {
+        final EntityPager pager = db.getEntityPager(table, where, null, pageSize);
 
-    public Cursor getCursor(String table, String where, String orderby) {
-        return db.getCursor(table, where, orderby);
-    }
+        return () -> {
+            final Iterator<Entity> rows = pager.iterator();
 
-    public Cursor getCursorGroupType(long courseCode) {
-        return db.getCursor(DataBaseHelper.DB_TABLE_GROUP_TYPES, "courseCode =" + courseCode, "groupTypeName");
-    }
+            return new Iterator<T>() {
+                @Override
+                public boolean hasNext() {
+                    return rows.hasNext();
+                }
 
-    public GroupType getGroupTypeFromGroup(long groupCode) {
-        long groupTypeCode = getGroupTypeCodeFromGroup(groupCode);
-        return (GroupType) getRow(DataBaseHelper.DB_TABLE_GROUP_TYPES, "id", String.valueOf(groupTypeCode));
+                @Override
+                public T next() {
+                    return createObjectByTable(table, rows.next());
+                }
+            };
+        };
     }
 
     /**
-     * Gets the code of the group type belonging the group with the given group code
+     * Gets count of all rows of specified table
      *
-     * @param groupCode long that specifies the code of the group
-     * @return group type code in case the given group belongs to a group type
-     *         -1 	 otherwise
+     * @param table Table containing the rows
+     * @return Count of all rows of specified table
      */
-    long getGroupTypeCodeFromGroup(long groupCode) {
-        List<Entity> rows = db.getEntityList(DataBaseHelper.DB_TABLE_GROUPS_GROUPTYPES, "grpCod = '" + groupCode + "'");
-        long groupTypeCode = -1;
-        if (!rows.isEmpty()) {
-            groupTypeCode = rows.get(0).getLong("grpTypCod");
-        }
-        return groupTypeCode;
-
+    public int getAllRowsCount(String table) {
+        return db.getEntityListCount(table, null);
     }
+    
+    /**
+     * Gets count of all rows of specified table
+    *
+    * @param table   Table containing the rows
+    * @param where   Where condition of SQL sentence
+    * @return Count of all rows of specified table
+    */
+   public int getAllRowsCount(String table, String where) {
+       return db.getEntityListCount(table, where);
+   }
 
     /**
-     * Gets the codes of groups belonging the selected type of group
+     * Gets the rows of specified table that matches the query
      *
-     * @param groupTypeCode group type code to be referenced
-     * @return List of group codes
+     * @param table Table containing the rows
+     * @param query Where condition with bind arguments
+     * @return A list of rows
      */
-    private List<Long> getGroupsCodesOfType(long groupTypeCode) {
-        List<Long> groupCodes = new ArrayList<>();
-        List<Entity> rows = db.getEntityList(DataBaseHelper.DB_TABLE_GROUPS_GROUPTYPES, "grpTypCod = '" + groupTypeCode + "'");
-        if (rows != null) {
-            for (Entity row : rows) {
-                groupCodes.add(row.getLong("grpCod"));
-            }
-        }
-        return groupCodes;
+    private List<Entity> getEntityList(String table, QueryBuilder query) {
+        return getEntityList(table, query, null);
     }
 
     /**
-     * Get groups belonging to the referred course to which the logged user is enrolled
+     * Gets the rows of specified table that matches the query. The rows are ordered as says
+     * the "orderby" parameter
      *
-     * @param courseCode course code to which the groups belong
-     * @return List of the group
+     * @param table   Table containing the rows
+     * @param query   Where condition with bind arguments
+     * @param orderby Orderby part of SQL sentence
+     * @return A list of rows
      */
-    public List<Group> getUserLoggedGroups(long courseCode) {
-        List<Long> groupCodes = getGroupCodesCourse(courseCode);
-        List<Group> groups = new ArrayList<>();
-        if (!groupCodes.isEmpty()) {
-            for (Long groupCode : groupCodes) {
-                Group g = getRow(DataBaseHelper.DB_TABLE_GROUPS, "id", String.valueOf(groupCode));
-                if (g.isMember()) groups.add(g);
-            }
-        }
-        return groups;
+    private List<Entity> getEntityList(String table, QueryBuilder query, String orderby) {
+        return db.getEntityList(table, null, query.getSelection(), query.getBindArgs(), orderby, null);
     }
 
     /**
-     * Gets the practice groups in the selected course
+     * Gets count of the rows of specified table that matches the query
      *
-     * @param courseCode Course code to be referenced
-     * @return Cursor access to the practice groups
+     * @param table Table containing the rows
+     * @param query Where condition with bind arguments
+     * @return Count of the rows that matches the query
      */
-    public Cursor getPracticeGroups(long courseCode) {
-        String select = "SELECT " +
-                "g._id, g.id, gt.groupTypeName, g.groupName" +
-                " FROM " +
-                DataBaseHelper.DB_TABLE_GROUPS + " g, " + DataBaseHelper.DB_TABLE_GROUPS_COURSES + " gc, " +
-                DataBaseHelper.DB_TABLE_GROUP_TYPES + " gt, " + DataBaseHelper.DB_TABLE_GROUPS_GROUPTYPES + " ggt" +
-                " WHERE " +
-                "gc.crsCod = ? AND gc.grpCod = g.id AND gc.grpCod = ggt.grpCod AND ggt.grpTypCod = gt.id";
-
-        SQLiteDatabase db = DataFramework.getInstance().getDB();
-        return db.rawQuery(select, new String[]{String.valueOf(courseCode)});
+    public int getAllRowsCount(String table, QueryBuilder query) {
+        return db.getEntityListCount(table, query.getSelection(), query.getBindArgs());
     }
 
     /**
-     * Checks if the specified user is enrolled in the selected course
+     * Gets a row of specified table
      *
-     * @param selectedCourseCode Course code to be referenced
-     * @return True if user is enrolled in the selected course. False otherwise
+     * @param table      Table containing the rows
+     * @param fieldName  Field's name
+     * @param fieldValue Field's value
+     * @return A Model's subclass object
+     *         or null if the row does not exist in the specified table
      */
-    public boolean isUserEnrolledCourse(String userID, long selectedCourseCode) {
-        boolean enrolled = false;
-        User u = getRow(DataBaseHelper.DB_TABLE_USERS, "userID", userID);
+    public <T extends Model> T getRow(String table, String fieldName, Object fieldValue) {
+        if (hasRelationTable(table)) {
+            QueryBuilder query = QueryBuilder.where(fieldName, fieldValue);
+            List<T> result = getRowsWithRelations(table, query.getSelection(), query.getSelectionArgs(), null);
 
-        if (u != null) {
-            String sentencia = "SELECT userCode AS _id, crsCod" +
-                    " FROM " + DataBaseHelper.DB_TABLE_USERS_COURSES +
-                    " WHERE userCode = ? AND crsCod = ?" +
-                    " ORDER BY 1";
+            return result.isEmpty() ? null : result.get(0);
+        }
 
-            Cursor c = db.getDB().rawQuery(sentencia, new String[]{
-                    String.valueOf(u.getId()),
-                    String.valueOf(selectedCourseCode)
-            });
+        List<Entity> rows = getEntityList(table, QueryBuilder.where(fieldName, fieldValue));
+        Entity ent;
+        T row = null;
 
-            if (c.moveToFirst()) {
-                enrolled = true;
-            }
-            c.close();
-        } else
-            enrolled = false;
+        if (rows.size() > 0) {
+            ent = rows.get(0);
+            row = createObjectByTable(table, ent);
+        }
 
-        return enrolled;
+        return row;
     }
 
     /**
-     * Gets the groups that owns the selected course
+     * Gets all tablenames of the database
      *
-     * @param courseCode Course code to be referenced
-     * @return Cursor access to the groups
+     * @return A list of all tablenames of the database
      */
-    public List<Group> getGroups(long courseCode) {
-        String select = "SELECT grpCod FROM " + DataBaseHelper.DB_TABLE_GROUPS_COURSES + " WHERE crsCod = " + courseCode + ";";
-        Cursor groupCodes = db.getDB().rawQuery(select, null);
-
-        List<Group> groups = new ArrayList<>(groupCodes.getCount());
+    public List<String>  getAllTablenames() {
+        List<String> result = new ArrayList<>();
+        Cursor cursor = db.rawQuery("SELECT name FROM sqlite_master WHERE type='table' ORDER BY name", null);
 
-        while (groupCodes.moveToNext()) {
-            Group group = this.getRow(DataBaseHelper.DB_TABLE_GROUPS, "id", String.valueOf(groupCodes.getInt(0)));
-            groups.add(group);
+        while (cursor.moveToNext()) {
+            result.add(cursor.getString(0));
         }
 
-        groupCodes.close();
-
-        return groups;
+        return result;
     }
 
     /**
-     * Inserts a course in database
+     * Gets an user
      *
-     * @param c Course to be inserted
+     * @param fieldName  Field's name
+     * @param fieldValue Field's value
+     * @return The user found 
+     *         or null if the user does not exist
      */
-    public void insertCourse(Course c) {
-        Entity ent = new Entity(DataBaseHelper.DB_TABLE_COURSES);
-        ent.setValue("id", c.getId());
-        ent.setValue("userRole", c.getUserRole());
-        ent.setValue("shortName", c.getShortName());
-        ent.setValue("fullName", c.getFullName());
-        ent.save();
-    }
+    public User getUser(String fieldName, Object fieldValue) {
+        List<Entity> rows = getEntityList(DataBaseHelper.DB_TABLE_USERS, QueryBuilder.where(fieldName, fieldValue));
+        Entity ent;
+        User user = null;
 
-    /**
-     * Inserts a notification in database
-     *
-     * @param n Notification to be inserted
-     */
-    public void insertNotification(SWADNotification n) {
-        Entity ent = new Entity(DataBaseHelper.DB_TABLE_NOTIFICATIONS);
+        if (rows.size() > 0) {
+            ent = rows.get(0);
 
-        String eventTime = String.valueOf(n.getEventTime());
-        String status = String.valueOf(n.getStatus());
+            try {
+                user = new User(
+                        ent.getLong("userCode"),
+                        null,
+                        decryptColumn(ent, "userID", ""),
+                        decryptColumn(ent, "userNickname", ""),
+                        decryptColumn(ent, "userSurname1", ""),
+                        decryptColumn(ent, "userSurname2", ""),
+                        decryptColumn(ent, "userFirstname", ""),
+                        decryptColumn(ent, "photoPath", ""),
+                        null,
+                        ent.getInt("userRole"));
+            } catch (ParseException e) {
+                Log.e(TAG, e.getMessage(), e);
+            }
+        }
 
-        ent.setValue("notifCode", n.getId());
-        ent.setValue("eventCode", n.getEventCode());
-        ent.setValue("eventType", crypto.encrypt(n.getEventType()));
-        ent.setValue("eventTime", eventTime);
-        ent.setValue("userNickname", crypto.encrypt(n.getUserNickname()));
-        ent.setValue("userSurname1", crypto.encrypt(n.getUserSurname1()));
-        ent.setValue("userSurname2", crypto.encrypt(n.getUserSurname2()));
-        ent.setValue("userFirstname", crypto.encrypt(n.getUserFirstName()));
-        ent.setValue("userPhoto", crypto.encrypt(n.getUserPhoto()));
-        ent.setValue("location", crypto.encrypt(n.getLocation()));
-        ent.setValue("summary", crypto.encrypt(n.getSummary()));
-        ent.setValue("status", status);
-        ent.setValue("content", crypto.encrypt(n.getContent()));
-        ent.setValue("seenLocal", Utils.parseBoolString(n.isSeenLocal()));
-        ent.setValue("seenRemote", Utils.parseBoolString(n.isSeenRemote()));
-        ent.save();
+        return user;
     }
 
     /**
-     * Inserts a test question in database
+     * Gets the id of users enrolled in the selected course
      *
-     * @param q                  Test question to be inserted
-     * @param selectedCourseCode Course code to be referenced
+     * @param courseCode Course code to be referenced
+     * @return A list of User's id
      */
-    public void insertTestQuestion(TestQuestion q, long selectedCourseCode) {
-        Entity ent = new Entity(DataBaseHelper.DB_TABLE_TEST_QUESTIONS);
-
-        ent.setValue("id", q.getId());
-        ent.setValue("ansType", q.getAnswerType());
-        ent.setValue("stem", q.getStem());
-        ent.setValue("shuffle", Utils.parseBoolString(q.getShuffle()));
-        ent.setValue("feedback", q.getFeedback());
-        ent.save();
+    public List<Long> getUsersCourse(long courseCode) {
+        List<Long> result = new ArrayList<>();
 
-        ent = new Entity(DataBaseHelper.DB_TABLE_TEST_QUESTIONS_COURSE);
-        ent.setValue("qstCod", q.getId());
-        ent.setValue("crsCod", selectedCourseCode);
-        ent.save();
+        List<Entity> rows = getEntityList(DataBaseHelper.DB_TABLE_USERS_COURSES, QueryBuilder.where("crsCod", courseCode));
+        if (rows != null) {
+            for (Entity ent : rows) {
+                result.add(ent.getLong("userCode"));
+            }
+        }
+        return result;
     }
 
     /**
-     * Inserts a test answer in database
+     * Gets the id of users related to the selected event
      *
-     * @param a      Test answer to be inserted
-     * @param qstCod Test question code to be referenced
+     * @param eventCode Event code to be referenced
+     * @return A list of User's id
      */
-    public void insertTestAnswer(TestAnswer a, int qstCod) {
-        Entity ent = new Entity(DataBaseHelper.DB_TABLE_TEST_ANSWERS);
-        long id;
-
-        ent.setValue("ansInd", a.getAnsInd());
-        ent.setValue("answer", a.getAnswer());
-        ent.setValue("correct", a.getCorrect());
-        ent.setValue("answerFeedback", a.getFeedback());
-        ent.save();
-        id = ent.getId();
+    public List<Long> getUserIdsEvent(int eventCode) {
+        List<Long> result = new ArrayList<>();
 
-        ent = new Entity(DataBaseHelper.DB_TABLE_TEST_QUESTION_ANSWERS);
-        ent.setValue("qstCod", qstCod);
-        ent.setValue("ansCod", id);
-        ent.save();
+        List<Entity> rows = getEntityList(DataBaseHelper.DB_TABLE_USERS_ATTENDANCES, QueryBuilder.where("eventCode", eventCode));
+        if (rows != null) {
+            for (Entity ent : rows) {
+                result.add(ent.getLong("userCode"));
+            }
+        }
+        return result;
     }
 
     /**
-     * Inserts a test tag in database
+     * Gets the list of users related to the selected event
      *
-     * @param t Test tag to be inserted
+     * @param eventCode Event code to be referenced
+     * @return A list of @link{UserAttendance} related to the selected event
      */
-    public void insertTestTag(TestTag t) {
-        List<Entity> rows = db.getEntityList(DataBaseHelper.DB_TABLE_TEST_TAGS, "id = " + t.getId());
-
-        if (rows.isEmpty()) {
-            Entity ent = new Entity(DataBaseHelper.DB_TABLE_TEST_TAGS);
-
-            ent.setValue("id", t.getId());
-            ent.setValue("tagTxt", t.getTagTxt());
-            ent.save();
+    public List<UserAttendance> getUsersEvent(int eventCode) {
+        List<UserAttendance> result = new ArrayList<>();
+        List<Entity> rows = getEntityList(DataBaseHelper.DB_TABLE_USERS_ATTENDANCES, QueryBuilder.where("eventCode", eventCode));
 
-            for (Integer i : t.getQstCodList()) {
-                ent = new Entity(DataBaseHelper.DB_TABLE_TEST_QUESTION_TAGS);
-                ent.setValue("qstCod", i);
-                ent.setValue("tagCod", t.getId());
-                ent.setValue("tagInd", t.getTagInd());
-                ent.save();
+        if (rows != null) {
+            for (Entity ent : rows) {
+                result.add( (UserAttendance) createObjectByTable(DataBaseHelper.DB_TABLE_USERS_ATTENDANCES, ent));
             }
-        } else {
-            throw new SQLException("Duplicated tag");
         }
+
+        return result;
     }
 
     /**
-     * Inserts a test config in database
+     * Checks if the user is enrolled in the selected event
      *
-     * @param t Test config to be inserted
+     * @param eventCode Event code to be referenced
+     * @param fieldName  Field's name
+     * @param fieldValue Field's value
+     * @return true if the user is enrolled in the selected event
+     *         false if the user is not enrolled in the selected event
      */
-    public void insertTestConfig(Test t) {
-        Entity ent = new Entity(DataBaseHelper.DB_TABLE_TEST_CONFIG);
-
-        ent.setValue("id", t.getId());
-        ent.setValue("min", t.getMin());
-        ent.setValue("def", t.getDef());
-        ent.setValue("max", t.getMax());
-        ent.setValue("feedback", t.getFeedback());
-        ent.setValue("editTime", t.getEditTime());
-        ent.save();
+    public boolean isUserEnrolledEvent(int eventCode, String fieldName, String fieldValue) {
+        return (getAllRowsCount(DB_TABLE_USERS_ATTENDANCES,
+                QueryBuilder.where("eventCode", eventCode).and(fieldName, fieldValue)) != 0);
     }
 
     /**
-     * Inserts a relation in database
+     * Gets the list of users related to the selected event
      *
-     * @param p Relation to be inserted
+     * @param eventCode Event code to be referenced
+     * @return A Cursor with a list of users related to the selected event
      */
-    void insertPairTable(PairTable<?, ?> p) {
-        String table = p.getTable();
-        Pair<String, String> params = selectParamsPairTable(table);
-
-        Entity ent = new Entity(table);
-        ent.setValue(params.getFirst(), p.getFirst());
-        ent.setValue(params.getSecond(), p.getSecond());
-        ent.save();
+    public Cursor getUsersEventCursor(int eventCode) {
+        return db.rawQuery("SELECT * FROM " + DB_TABLE_USERS + " AS U"
+                + " INNER JOIN " + DB_TABLE_USERS_ATTENDANCES + " AS A"
+                + " ON U.userCode = A.userCode WHERE eventCode = ?", new String[]{String.valueOf(eventCode)});
     }
 
     /**
-     * Inserts a new row or updates an existing one in the table named @a tableName with the data that contains @a currentModel
+     * Gets the list of events related to the selected course
      *
-     * @param tableName    string with the table name
-     * @param currentModel model with the new data
-     * @param ents         vector of entities. In case this param is given, the entities given will be modified
+     * @param crsCod Course code to be referenced
+     * @return A list of Event
      */
+    public List<Event> getEventsCourse(long crsCod) {
+        List<Event> result = new ArrayList<>();
+        List<Entity> rows = db.getEntityList(DataBaseHelper.DB_TABLE_EVENTS_ATTENDANCES, null,
+                "id IN (SELECT eventCode FROM " + DataBaseHelper.DB_TABLE_EVENTS_COURSES + " WHERE crsCod = ?)",
+                new String[]{String.valueOf(crsCod)}, null, null);
 
-    boolean insertEntity(String tableName, Model currentModel, Entity... ents) {
-        boolean returnValue = true;
-        Entity ent;
-
-        if (ents.length >= 1) {
-            ent = ents[0];
-        } else {
-            ent = new Entity(tableName);
-        }
-
-        if (tableName.equals(DataBaseHelper.DB_TABLE_GROUPS)) {
-            Group g = (Group) currentModel;
-            ent.setValue("id", g.getId());
-            ent.setValue("groupName", g.getGroupName());
-            ent.setValue("maxStudents", g.getMaxStudents());
-            ent.setValue("students", g.getCurrentStudents());
-            ent.setValue("open", g.getOpen());
-            ent.setValue("fileZones", g.getDocumentsArea());
-            ent.setValue("member", g.getMember());
-            ent.save();
-        }
-
-        if (tableName.equals(DataBaseHelper.DB_TABLE_GROUP_TYPES)) {
-            GroupType gt = (GroupType) currentModel;
-            ent.setValue("id", gt.getId());
-            ent.setValue("groupTypeName", gt.getGroupTypeName());
-            ent.setValue("courseCode", gt.getCourseCode());
-            ent.setValue("mandatory", gt.getMandatory());
-            ent.setValue("multiple", gt.getMultiple());
-            ent.setValue("openTime", gt.getOpenTime());
-            ent.save();
+        for (Entity ent : rows) {
+            result.add((Event) createObjectByTable(DataBaseHelper.DB_TABLE_EVENTS_ATTENDANCES, ent));
         }
 
-        return returnValue;
+        return result;
     }
 
     /**
-     * Inserts a user in database or updates it if already exists
+     * Gets the list of users related to the selected event
      *
-     * @param u User to be inserted
+     * @param crsCod Course code to be referenced
+     * @return A Cursor with a list of events related to the selected course
      */
-    public void insertUser(User u) {
-        Entity ent;
-        List<Entity> rows = db.getEntityList(DataBaseHelper.DB_TABLE_USERS, "userCode = " + u.getId());
+    public Cursor getEventsCourseCursor(long crsCod) {
+        return db.rawQuery("SELECT * FROM " + DB_TABLE_EVENTS_ATTENDANCES + " AS E"
+                + " INNER JOIN " + DB_TABLE_EVENTS_COURSES + " AS C"
+                + " ON E.id = C.eventCode WHERE C.crsCod = ? AND hidden = ?"
+                + " ORDER BY E.startTime DESC,E.endTime DESC,E.title DESC",
+                new String[]{String.valueOf(crsCod), String.valueOf(Utils.parseBoolInt(false))});
+    }
 
-        if (rows.isEmpty()) {
-            ent = new Entity(DataBaseHelper.DB_TABLE_USERS);
-        } else {
-            ent = rows.get(0);
-        }
-        
-        ent.setValue("userCode", u.getId());
-        ent.setValue("userID", crypto.encrypt(u.getUserID()));
-        ent.setValue("userNickname", crypto.encrypt(u.getUserNickname()));
-        ent.setValue("userSurname1", crypto.encrypt(u.getUserSurname1()));
-        ent.setValue("userSurname2", crypto.encrypt(u.getUserSurname2()));
-        ent.setValue("userFirstname", crypto.encrypt(u.getUserFirstname()));
-
-        if(u.getUserPhoto() != null) {
-            ent.setValue("photoPath", crypto.encrypt(u.getUserPhoto()));
-        } else {
-            ent.setValue("photoPath", null);
-        }
+    /**
+     * Gets the number of users related to the selected event. It is read from the attendances
+     * counter, without scanning the attendances
+     *
+     * @param eventCode Event code to be referenced
+     * @return the number of users related to the selected event
+     */
+    public int getUsersEventCount(int eventCode) {
+        return (int) db.longForQuery("SELECT IFNULL((SELECT present + absent FROM "
+                + DB_COUNTER_USERS_ATTENDANCES + " WHERE eventCode = ?), 0)", new String[]{String.valueOf(eventCode)});
+    }
 
-        ent.setValue("userRole", u.getUserRole());
-        ent.save();
+    /**
+     * Gets the number of present or absent users of the selected event. It is read from the
+     * attendances counter, without scanning the attendances
+     *
+     * @param eventCode Event code to be referenced
+     * @param present   true for the present users, false for the absent ones
+     * @return the number of present or absent users of the selected event
+     */
+    public int getUsersEventCount(int eventCode, boolean present) {
+        return (int) db.longForQuery("SELECT IFNULL((SELECT " + (present ? "present" : "absent")
+                + " FROM " + DB_COUNTER_USERS_ATTENDANCES + " WHERE eventCode = ?), 0)",
+                new String[]{String.valueOf(eventCode)});
     }
 
     /**
-     * Inserts a group in database
+     * Gets the number of users related to the selected event
      *
-     * @param g          Group to be inserted
-     * @param courseCode Course code to be referenced
+     * @param eventCode Event code to be referenced
+     * @param fieldName  Field's name
+     * @param fieldValue Field's value
+     * @return the number of users related to the selected event
      */
-    public boolean insertGroup(Group g, long courseCode) {
-        List<Entity> rows = db.getEntityList(DataBaseHelper.DB_TABLE_GROUPS, "id = " + g.getId());
-        boolean returnValue = true;
+    public int getUsersEventCount(int eventCode, String fieldName, String fieldValue) {
+        Cursor cursor =  db.rawQuery("SELECT COUNT(*) AS COUNT FROM " + DB_TABLE_USERS + " AS U"
+                + " INNER JOIN " + DB_TABLE_USERS_ATTENDANCES + " AS A"
+                + " ON U.userCode = A.userCode WHERE eventCode = ? AND " + fieldName + " = ?",
+                new String[]{String.valueOf(eventCode), fieldValue});
 
-        if (rows.isEmpty()) {
-            insertEntity(DataBaseHelper.DB_TABLE_GROUPS, g);
-        } else { //already exits a group with the given code. just update
-            insertEntity(DataBaseHelper.DB_TABLE_GROUPS, g, rows.get(0));
+        return cursor.getInt(cursor.getColumnIndex("COUNT"));
+    }
 
-        }
+    /**
+     * Gets the group which code is given
+     *
+     * @param groupId long that identifies uniquely the searched group
+     * @return group with the referenced code in case it exits
+     *         null otherwise
+     */
+    public Group getGroup(long groupId) {
+        return getRow(DataBaseHelper.DB_TABLE_GROUPS, "id", groupId);
+    }
 
-        //update all the relationship
-        long groupCode = g.getId();
-        rows = db.getEntityList(DataBaseHelper.DB_TABLE_GROUPS_COURSES, "grpCod =" + groupCode);
-        Course course = getRow(DataBaseHelper.DB_TABLE_COURSES, "id", String.valueOf(courseCode));
+    /**
+     * Gets the group codes in the selected course
+     *
+     * @param courseCode Course code to be referenced
+     * @return A list of group codes belonging to the selected course
+     */
+    public List<Long> getGroupCodesCourse(long courseCode) {
+        List<Long> result = new ArrayList<>();
 
-        //course code is a foreign key. Therefore, to avoid a database error,
-        //it should not insert/modify rows in the relationship table if the course does not exists
-        if (course != null) {
-            if (rows.isEmpty()) {
-                PairTable<Long, Long> pair = new PairTable<>(DataBaseHelper.DB_TABLE_GROUPS_COURSES, g.getId(), courseCode);
-                insertPairTable(pair);
-            } else {
-                rows.get(0).setValue("crsCod", courseCode);
-                rows.get(0).save();
+        List<Entity> rows = getEntityList(DataBaseHelper.DB_TABLE_GROUPS_COURSES, QueryBuilder.where("crsCod", courseCode));
+        if (rows != null) {
+            for (Entity ent : rows) {
+                result.add(ent.getLong("grpCod"));
             }
-        } else returnValue = false;
-
-        long groupTypeCode = g.getGroupTypeCode();
-
-        //WHILE THE WEB SERVICE TO GET GROUP TYPES STILL UNAVAILABLE, this condition is not evaluated
-        //GroupType groupType = (GroupType) getRow(Global.DB_TABLE_GROUP_TYPES,"id",String.valueOf(groupTypeCode));
-        //group type code is a foreign key. Therefore, to avoid a database error,
-        //it should not insert/modify rows in the relationship table if the group type does not exists
-        //if(groupType != null){
-        rows = db.getEntityList(DataBaseHelper.DB_TABLE_GROUPS_GROUPTYPES, "grpCod=" + groupCode);
-        if (rows.isEmpty()) {
-            insertPairTable(new PairTable<>(DataBaseHelper.DB_TABLE_GROUPS_GROUPTYPES, groupTypeCode, groupCode));
-        } else {
-			PairTable<Object, Object> prev = new PairTable<>(DataBaseHelper.DB_TABLE_GROUPS_GROUPTYPES, rows.get(0).getValue("grpTypCod"), rows.get(0).getValue("grpCod"));
-			PairTable<Object, Object> current = new PairTable<Object, Object>(DataBaseHelper.DB_TABLE_GROUPS_GROUPTYPES, groupTypeCode, groupCode);
-            updatePairTable(prev, current);
         }
-		/*}else returnValue = false;*/
 
-        return returnValue;
+        return result;
     }
 
     /**
-     * Insert a new group type in the database or updated if the group type exits already in the data base
+     * Gets the groups belonging to the selected type of group
      *
-     * @param gt Group Type to be inserted
+     * @param groupTypeCode group type code to be referenced
+     * @return List of Groups
      */
-    public boolean insertGroupType(GroupType gt) {
-        boolean returnValue = true;
-        GroupType row = getRow(DataBaseHelper.DB_TABLE_GROUP_TYPES, "id", String.valueOf(gt.getId()));
-        if (row == null) {
-            insertEntity(DataBaseHelper.DB_TABLE_GROUP_TYPES, gt);
-        } else {
-            returnValue = false;
-        }
-        return returnValue;
+    public List<Group> getGroupsOfType(long groupTypeCode) {
+        return getRowsWithRelations(DataBaseHelper.DB_TABLE_GROUPS,
+                "id IN (SELECT grpCod FROM " + DataBaseHelper.DB_TABLE_GROUPS_GROUPTYPES + " WHERE grpTypCod = ?)",
+                new String[]{String.valueOf(groupTypeCode)}, null);
     }
 
-    public boolean insertCollection(String table, List<Model> currentModels, long... courseCode) {
-        boolean result = true;
-        Collection<? extends Model> modelsDB = getAllRows(table);
-        List<Model> newModels = new ArrayList<>();
-        List<Model> obsoleteModel = new ArrayList<>();
-        List<Model> modifiedModel = new ArrayList<>();
-        
-        beginTransaction();
-
-        newModels.addAll(currentModels);
-        newModels.removeAll(modelsDB);
+    public Cursor getCursor(String table) {
+        return db.getCursor(table);
+    }
 
-        obsoleteModel.addAll(modelsDB);
-        obsoleteModel.removeAll(currentModels);
+    public Cursor getCursor(String table, String where, String orderby) {
+        return db.getCursor(table, where, orderby);
+    }
 
-        modifiedModel.addAll(currentModels);
-        modifiedModel.removeAll(newModels);
-        modifiedModel.removeAll(obsoleteModel);
+    public Cursor getCursorGroupType(long courseCode) {
+        return db.getCursor(DataBaseHelper.DB_TABLE_GROUP_TYPES, "courseCode = ?",
+                new String[]{String.valueOf(courseCode)}, "groupTypeName");
+    }
 
-        if (table.compareTo(DataBaseHelper.DB_TABLE_GROUP_TYPES) == 0) {
-            for (Model anObsoleteModel : obsoleteModel) {
-                long code = anObsoleteModel.getId();
-                removeAllRows(table, "id", code);
-                removeAllRows(DataBaseHelper.DB_TABLE_GROUPS_GROUPTYPES, "grpTypCod", code);
-            }
-            for (Model model : newModels) {
-                insertEntity(table, model);
-            }
-            List<Entity> rows;
-            for (Model m : modifiedModel) {
-                rows = db.getEntityList(table, "id=" + m.getId());
-                insertEntity(table, m, rows.get(0));
-            }
-        }
+    public GroupType getGroupTypeFromGroup(long groupCode) {
+        long groupTypeCode = getGroupTypeCodeFromGroup(groupCode);
+        return (GroupType) getRow(DataBaseHelper.DB_TABLE_GROUP_TYPES, "id", String.valueOf(groupTypeCode));
+    }
 
-        if (table.compareTo(DataBaseHelper.DB_TABLE_GROUPS) == 0) {
-            for (Model anObsoleteModel : obsoleteModel) {
-                long code = anObsoleteModel.getId();
-                removeAllRows(table, "id", code);
-                removeAllRows(DataBaseHelper.DB_TABLE_GROUPS_GROUPTYPES, "grpCod", code);
-                removeAllRows(DataBaseHelper.DB_TABLE_GROUPS_COURSES, "grpCod", code);
-            }
-            for (Model model : newModels) {
-                insertGroup((Group) model, courseCode[0]);
-            }
-            for (Model model : modifiedModel) {
-                insertGroup((Group) model, courseCode[0]);
-            }
+    /**
+     * Gets the code of the group type belonging the group with the given group code
+     *
+     * @param groupCode long that specifies the code of the group
+     * @return group type code in case the given group belongs to a group type
+     *         -1 	 otherwise
+     */
+    long getGroupTypeCodeFromGroup(long groupCode) {
+        List<Entity> rows = getEntityList(DataBaseHelper.DB_TABLE_GROUPS_GROUPTYPES, QueryBuilder.where("grpCod", groupCode));
+        long groupTypeCode = -1;
+        if (!rows.isEmpty()) {
+            groupTypeCode = rows.get(0).getLong("grpTypCod");
         }
-        
-        //Finish the pending transaction with successful status
-        endTransaction(true);
+        return groupTypeCode;
 
-        return result;
     }
 
     /**
-     * Inserts a new record in database indicating that the user belongs
-     * to the course and group specified, or updates it if already exists
+     * Get groups belonging to the referred course to which the logged user is enrolled
      *
-     * @param userID     User to be inserted
-     * @param courseCode Course code to be referenced
-     * @param groupCode  Group code to be referenced
+     * @param courseCode course code to which the groups belong
+     * @return List of the group
      */
-    public void insertUserCourse(long userID, long courseCode, long groupCode) {
-        Entity ent;
-        String where = "userCode = " + userID + " AND crsCod = " + courseCode;
-        List<Entity> rows = db.getEntityList(DataBaseHelper.DB_TABLE_USERS_COURSES, where);
-
-        if (rows.isEmpty()) {
-            ent = new Entity(DataBaseHelper.DB_TABLE_USERS_COURSES);
-        } else {
-            ent = rows.get(0);
+    public List<Group> getUserLoggedGroups(long courseCode) {
+        List<Group> groups = new ArrayList<>();
+        for (Group g : getGroups(courseCode)) {
+            if (g.isMember()) groups.add(g);
         }
-        ent.setValue("userCode", userID);
-        ent.setValue("crsCod", courseCode);
-        ent.setValue("grpCod", groupCode);
-        ent.save();
+        return groups;
     }
 
     /**
-     * Inserts a new record in database indicating if the user has an
-     * attendance to the event specified, or updates it if already exists
+     * Gets the practice groups in the selected course
      *
-     * @param userCode     User code to be inserted
-     * @param eventCode Event code to be referenced
-     * @param present Flag for indicate if the user is present in the attendance
+     * @param courseCode Course code to be referenced
+     * @return Cursor access to the practice groups
      */
-    public void insertAttendance(long userCode, long eventCode, boolean present) {
-        Entity ent;
-        String where = "userCode = " + userCode + " AND eventCode = " + eventCode;
-        List<Entity> rows = db.getEntityList(DataBaseHelper.DB_TABLE_USERS_ATTENDANCES, where);
-
-        if (rows.isEmpty()) {
-            ent = new Entity(DataBaseHelper.DB_TABLE_USERS_ATTENDANCES);
-        } else {
-            ent = rows.get(0);
-        }
+    public Cursor getPracticeGroups(long courseCode) {
+        String select = "SELECT " +
+                "g._id, g.id, gt.groupTypeName, g.groupName" +
+                " FROM " +
+                DataBaseHelper.DB_TABLE_GROUPS + " g, " + DataBaseHelper.DB_TABLE_GROUPS_COURSES + " gc, " +
+                DataBaseHelper.DB_TABLE_GROUP_TYPES + " gt, " + DataBaseHelper.DB_TABLE_GROUPS_GROUPTYPES + " ggt" +
+                " WHERE " +
+                "gc.crsCod = ? AND gc.grpCod = g.id AND gc.grpCod = ggt.grpCod AND ggt.grpTypCod = gt.id";
 
-        ent.setValue("userCode", userCode);
-        ent.setValue("eventCode", eventCode);
-        ent.setValue("present", Utils.parseBoolInt(present));
-        ent.save();
+        SQLiteDatabase db = DataFramework.getInstance().getDB();
+        return db.rawQuery(select, new String[]{String.valueOf(courseCode)});
     }
 
     /**
-     * Inserts a new record in database for an attendance event,
-     * or updates it if already exists
+     * Checks if the specified user is enrolled in the selected course
      *
-     * @param event Event to be inserted
+     * @param selectedCourseCode Course code to be referenced
+     * @return True if user is enrolled in the selected course. False otherwise
      */
-    public void insertEvent(Event event) {
-        Entity ent;
-        String where = "id = " + event.getId();
-        List<Entity> rows = db.getEntityList(DataBaseHelper.DB_TABLE_EVENTS_ATTENDANCES, where);
+    public boolean isUserEnrolledCourse(String userID, long selectedCourseCode) {
+        boolean enrolled = false;
+        User u = getRow(DataBaseHelper.DB_TABLE_USERS, "userID", userID);
 
-        if (rows.isEmpty()) {
-            ent = new Entity(DataBaseHelper.DB_TABLE_EVENTS_ATTENDANCES);
-            ent.setValue("status", crypto.encrypt(event.getStatus()));
-        } else {
-            ent = rows.get(0);
-        }
+        if (u != null) {
+            String sentencia = "SELECT userCode AS _id, crsCod" +
+                    " FROM " + DataBaseHelper.DB_TABLE_USERS_COURSES +
+                    " WHERE userCode = ? AND crsCod = ?" +
+                    " ORDER BY 1";
 
-        ent.setValue("id", event.getId());
-        ent.setValue("hidden", Utils.parseBoolInt(event.isHidden()));
-        ent.setValue("userSurname1", crypto.encrypt(event.getUserSurname1()));
-        ent.setValue("userSurname2", crypto.encrypt(event.getUserSurname2()));
-        ent.setValue("userFirstName", crypto.encrypt(event.getUserFirstName()));
-        ent.setValue("userPhoto", crypto.encrypt(event.getUserPhoto()));
-        ent.setValue("startTime", event.getStartTime());
-        ent.setValue("endTime", event.getEndTime());
-        ent.setValue("commentsTeachersVisible", Utils.parseBoolInt(event.isCommentsTeachersVisible()));
-        ent.setValue("title", crypto.encrypt(event.getTitle()));
-        ent.setValue("text", crypto.encrypt(event.getText()));
-        ent.setValue("groups", crypto.encrypt(event.getGroups()));
-        ent.save();
+            Cursor c = db.getRawCursor(sentencia, new String[]{
+                    String.valueOf(u.getId()),
+                    String.valueOf(selectedCourseCode)
+            });
+
+            if (c.moveToFirst()) {
+                enrolled = true;
+            }
+            c.close();
+        } else
+            enrolled = false;
+
+        return enrolled;
     }
 
     /**
-     * Inserts a new record in database for the relationship between an attendance event and a course,
-     * or updates it if already exists
+     * Gets the groups that owns the selected course
      *
-     * @param eventCode Event code
-     * @param crsCod Course code
+     * @param courseCode Course code to be referenced
+     * @return Cursor access to the groups
      */
-    public void insertEventCourse(long eventCode, long crsCod) {
-        Entity ent;
-        String where = "eventCode = " + eventCode + " AND crsCod = " + crsCod;
-        List<Entity> rows = db.getEntityList(DataBaseHelper.DB_TABLE_EVENTS_COURSES, where);
-
-        if (rows.isEmpty()) {
-            ent = new Entity(DataBaseHelper.DB_TABLE_EVENTS_COURSES);
-        } else {
-            ent = rows.get(0);
-        }
-
-        ent.setValue("eventCode", eventCode);
-        ent.setValue("crsCod", crsCod);
-        ent.save();
+    public List<Group> getGroups(long courseCode) {
+        return getRowsWithRelations(DataBaseHelper.DB_TABLE_GROUPS,
+                "id IN (SELECT grpCod FROM " + DataBaseHelper.DB_TABLE_GROUPS_COURSES + " WHERE crsCod = ?)",
+                new String[]{String.valueOf(courseCode)}, null);
     }
 
     /**
-     * Inserts a new Frequent Recipient
+     * Inserts a course in database
      *
-     * @param user the frequent recipient to insert in the list
+     * @param c Course to be inserted
      */
-    public void insertFrequentRecipient(FrequentUser user) {
-        Entity ent = new Entity(DataBaseHelper.DB_TABLE_FREQUENT_RECIPIENTS);
-        ent.setValue("idUser", user.getidUser());
-        ent.setValue("nicknameRecipient", crypto.encrypt(user.getUserNickname()));
-        ent.setValue("surname1Recipient", crypto.encrypt(user.getUserSurname1()));
-        ent.setValue("surname2Recipient", crypto.encrypt(user.getUserSurname2()));
-        ent.setValue("firstnameRecipient", crypto.encrypt(user.getUserFirstname()));
-        ent.setValue("photoRecipient", crypto.encrypt(user.getUserPhoto()));
-        ent.setValue("score", user.getScore());
+    public void insertCourse(Course c) {
+        Entity ent = new Entity(DataBaseHelper.DB_TABLE_COURSES);
+        ent.setValue("id", c.getId());
+        ent.setValue("userRole", c.getUserRole());
+        ent.setValue("shortName", c.getShortName());
+        ent.setValue("fullName", c.getFullName());
         ent.save();
     }
 
     /**
-     * Inserts a list of frequent recipients
+     * Inserts a notification in database
      *
-     * @param list the list of users
-     * @return number of users inserted in the table
+     * @param n Notification to be inserted
      */
-    public int insertFrequentsList(List<FrequentUser> list) {
-        int numElements = 0;
-
-        for(int i=0; i<list.size(); i++){
-            FrequentUser user = list.get(i);
-
-            Entity ent = new Entity(DataBaseHelper.DB_TABLE_FREQUENT_RECIPIENTS);
-            ent.setValue("idUser", user.getidUser());
-            ent.setValue("nicknameRecipient", crypto.encrypt(user.getUserNickname()));
-            ent.setValue("surname1Recipient", crypto.encrypt(user.getUserSurname1()));
-            ent.setValue("surname2Recipient", crypto.encrypt(user.getUserSurname2()));
-            ent.setValue("firstnameRecipient", crypto.encrypt(user.getUserFirstname()));
-            ent.setValue("photoRecipient", crypto.encrypt(user.getUserPhoto()));
-            ent.setValue("score", user.getScore());
-            ent.save();
+    public void insertNotification(SWADNotification n) {
+        Entity ent = new Entity(DataBaseHelper.DB_TABLE_NOTIFICATIONS);
 
-            numElements++;
-        }
+        long eventTime = n.getEventTime();
+        String status = String.valueOf(n.getStatus());
 
-        return numElements;
+        ent.setValue("notifCode", n.getId());
+        ent.setValue("eventCode", n.getEventCode());
+        ent.setValue("eventType", crypto.encrypt(n.getEventType()));
+        ent.setValue("eventTime", eventTime);
+        ent.setValue("userNickname", crypto.encrypt(n.getUserNickname()));
+        ent.setValue("userSurname1", crypto.encrypt(n.getUserSurname1()));
+        ent.setValue("userSurname2", crypto.encrypt(n.getUserSurname2()));
+        ent.setValue("userFirstname", crypto.encrypt(n.getUserFirstName()));
+        ent.setValue("userPhoto", crypto.encrypt(n.getUserPhoto()));
+        ent.setValue("location", crypto.encrypt(n.getLocation()));
+        ent.setValue("summary", crypto.encrypt(n.getSummary()));
+        ent.setValue("status", status);
+        ent.setValue("content", crypto.encrypt(n.getContent()));
+        ent.setValue("seenLocal", Utils.parseBoolInt(n.isSeenLocal()));
+        ent.setValue("seenRemote", Utils.parseBoolInt(n.isSeenRemote()));
+        ent.save();
     }
 
     /**
-     * Updates a course in database
+     * Inserts a test question in database
      *
-     * @param prev   Course to be updated
-     * @param actual Updated course
+     * @param q                  Test question to be inserted
+     * @param selectedCourseCode Course code to be referenced
      */
-    public void updateCourse(Course prev, Course actual) {
-        List<Entity> rows = db.getEntityList(DataBaseHelper.DB_TABLE_COURSES, "id = " + prev.getId());
-        Entity ent = rows.get(0);
-        ent.setValue("id", actual.getId());
-        ent.setValue("userRole", actual.getUserRole());
-        ent.setValue("shortName", actual.getShortName());
-        ent.setValue("fullName", actual.getFullName());
+    public void insertTestQuestion(TestQuestion q, long selectedCourseCode) {
+        Entity ent = new Entity(DataBaseHelper.DB_TABLE_TEST_QUESTIONS);
+
+        ent.setValue("id", q.getId());
+        ent.setValue("ansType", q.getAnswerType());
+        ent.setValue("stem", q.getStem());
+        ent.setValue("shuffle", Utils.parseBoolInt(q.getShuffle()));
+        ent.setValue("feedback", q.getFeedback());
+        ent.save();
+
+        ent = new Entity(DataBaseHelper.DB_TABLE_TEST_QUESTIONS_COURSE);
+        ent.setValue("qstCod", q.getId());
+        ent.setValue("crsCod", selectedCourseCode);
         ent.save();
     }
 
     /**
-     * Updates a course in database
+     * Inserts a test answer in database
      *
-     * @param id     Course code of course to be updated
-     * @param actual Updated course
+     * @param a      Test answer to be inserted
+     * @param qstCod Test question code to be referenced
      */
-    public void updateCourse(long id, Course actual) {
-        List<Entity> rows = db.getEntityList(DataBaseHelper.DB_TABLE_COURSES, "id = " + id);
-        if (!rows.isEmpty()) {
-            Entity ent = rows.get(0);
-            ent.setValue("id", actual.getId());
-            ent.setValue("userRole", actual.getUserRole());
-            ent.setValue("shortName", actual.getShortName());
-            ent.setValue("fullName", actual.getFullName());
-            ent.save();
-        }
+    public void insertTestAnswer(TestAnswer a, int qstCod) {
+        Entity ent = new Entity(DataBaseHelper.DB_TABLE_TEST_ANSWERS);
+        long id;
+
+        ent.setValue("ansInd", a.getAnsInd());
+        ent.setValue("answer", a.getAnswer());
+        ent.setValue("correct", Utils.parseBoolInt(a.getCorrect()));
+        ent.setValue("answerFeedback", a.getFeedback());
+        ent.save();
+        id = ent.getId();
+
+        ent = new Entity(DataBaseHelper.DB_TABLE_TEST_QUESTION_ANSWERS);
+        ent.setValue("qstCod", qstCod);
+        ent.setValue("ansCod", id);
+        ent.save();
     }
 
     /**
-     * Updates all notifications in database
+     * Inserts a test tag in database
      *
-     * @param field  Field to be updated
-     * @param value  New field value
+     * @param t Test tag to be inserted
      */
-    public void updateAllNotifications(String field, String value) {
-        List<Entity> rows = db.getEntityList(DataBaseHelper.DB_TABLE_NOTIFICATIONS);
-        for(Entity ent : rows) {
-        	ent.setValue(field, value);
-        	ent.save();
+    public void insertTestTag(TestTag t) {
+        List<Entity> rows = getEntityList(DataBaseHelper.DB_TABLE_TEST_TAGS, QueryBuilder.where("id", t.getId()));
+
+        if (rows.isEmpty()) {
+            Entity ent = new Entity(DataBaseHelper.DB_TABLE_TEST_TAGS);
+
+            ent.setValue("id", t.getId());
+            ent.setValue("tagTxt", t.getTagTxt());
+            ent.save();
+
+            for (Integer i : t.getQstCodList()) {
+                ent = new Entity(DataBaseHelper.DB_TABLE_TEST_QUESTION_TAGS);
+                ent.setValue("qstCod", i);
+                ent.setValue("tagCod", t.getId());
+                ent.setValue("tagInd", t.getTagInd());
+                ent.save();
+            }
+        } else {
+            throw new SQLException("Duplicated tag");
         }
     }
 
     /**
-     * Updates a notification in database
+     * Inserts a batch of test tags and their relationships with questions in database,
+     * or updates them if they already exist
      *
-     * @param id     Notification code of notification to be updated
-     * @param field  Field to be updated
-     * @param value  New field value
+     * @param tags Test tags to be inserted
      */
-    public void updateNotification(long id, String field, String value) {
-        List<Entity> rows = db.getEntityList(DataBaseHelper.DB_TABLE_NOTIFICATIONS, "notifCode = " + id);
-        for(Entity ent : rows) {
-        	ent.setValue(field, value);
-        	ent.save();
-        }
+    public void upsertTestTags(Collection<TestTag> tags) {
+        writeBatch(() -> {
+            SQLiteStatement insert = db.getDB().compileStatement(SQL_INSERT_QUESTION_TAG);
+            SQLiteStatement update = db.getDB().compileStatement(SQL_UPDATE_QUESTION_TAG);
+
+            try {
+                upsertRows(DataBaseHelper.DB_TABLE_TEST_TAGS, tags);
+
+                for (TestTag t : tags) {
+                    if (t.getQstCodList() != null) {
+                        for (Integer i : t.getQstCodList()) {
+                            upsertQuestionTag(insert, update, i, t.getId(), t.getTagInd());
+                        }
+                    }
+                }
+
+                db.notifyTableChanged(DataBaseHelper.DB_TABLE_TEST_QUESTION_TAGS);
+            } finally {
+                insert.close();
+                update.close();
+            }
+        });
     }
 
     /**
-     * Updates a notification in database
+     * Inserts a batch of test answers and their relationships with questions in database, or
+     * updates them if they already exist. An answer is identified by its question and its
+     * index, so writing the same batch again leaves the database as writing it once
      *
-     * @param id     Notification code of notification to be updated
-     * @param actual Updated notification
+     * @param answers Test answers to be inserted
      */
-    public void updateNotification(long id, SWADNotification actual) {
-        List<Entity> rows = db.getEntityList(DataBaseHelper.DB_TABLE_NOTIFICATIONS, "notifCode = " + id);
-        long notifCode = actual.getId();
-        long eventCode = actual.getEventCode();
-        String eventType = crypto.encrypt(actual.getEventType());
-        String eventTime = String.valueOf(actual.getEventTime());
-        String userNickname = crypto.encrypt(actual.getUserNickname());
-        String userSurname1 = crypto.encrypt(actual.getUserSurname1());
-        String userSurname2 = crypto.encrypt(actual.getUserSurname2());
-        String userFirstname = crypto.encrypt(actual.getUserFirstName());
-        String userPhoto = crypto.encrypt(actual.getUserPhoto());
-        String location = crypto.encrypt(actual.getLocation());
-        String summary = crypto.encrypt(actual.getSummary());
-        String status = String.valueOf(actual.getStatus());
-        String content = crypto.encrypt(actual.getContent());
-        String seenLocal = Utils.parseBoolString(actual.isSeenLocal());
-        String seenRemote = Utils.parseBoolString(actual.isSeenRemote());
-        
-        for(Entity ent : rows) {
-	        ent.setValue("notifCode", notifCode);
-	        ent.setValue("eventCode", eventCode);
-	        ent.setValue("eventType", eventType);
-	        ent.setValue("eventTime", eventTime);
-            ent.setValue("userNickname", userNickname);
-	        ent.setValue("userSurname1", userSurname1);
-	        ent.setValue("userSurname2", userSurname2);
-	        ent.setValue("userFirstname", userFirstname);
-	        ent.setValue("userPhoto", userPhoto);
-	        ent.setValue("location", location);
-	        ent.setValue("summary", summary);
-	        ent.setValue("status", status);
-	        ent.setValue("content", content);
-	        ent.setValue("seenLocal", seenLocal);
-	        ent.setValue("seenRemote", seenRemote);
-	        ent.save();
-        }
+    public void upsertTestAnswers(Collection<TestAnswer> answers) {
+        writeBatch(() -> {
+            SQLiteDatabase sqlite = db.getDB();
+            SQLiteStatement select = sqlite.compileStatement("SELECT IFNULL((SELECT A._id FROM "
+                    + DB_TABLE_TEST_ANSWERS + " AS A INNER JOIN " + DB_TABLE_TEST_QUESTION_ANSWERS + " AS QA"
+                    + " ON QA.ansCod = A._id WHERE QA.qstCod = ? AND A.ansInd = ? LIMIT 1), -1);");
+            SQLiteStatement update = sqlite.compileStatement("UPDATE " + DB_TABLE_TEST_ANSWERS
+                    + " SET answer = ?, correct = ?, answerFeedback = ? WHERE _id = ?;");
+            SQLiteStatement insert = sqlite.compileStatement("INSERT INTO " + DB_TABLE_TEST_ANSWERS
+                    + " (ansInd, answer, correct, answerFeedback) VALUES (?, ?, ?, ?);");
+            SQLiteStatement insertRelation = sqlite.compileStatement("INSERT INTO " + DB_TABLE_TEST_QUESTION_ANSWERS
+                    + " (qstCod, ansCod) VALUES (?, ?);");
+
+            try {
+                for (TestAnswer a : answers) {
+                    select.bindLong(1, a.getQstCod());
+                    select.bindLong(2, a.getAnsInd());
+                    long id = select.simpleQueryForLong();
+
+                    if (id < 0) {
+                        insert.bindLong(1, a.getAnsInd());
+                        insert.bindString(2, a.getAnswer());
+                        insert.bindLong(3, Utils.parseBoolInt(a.getCorrect()));
+                        DataFramework.bindValue(insert, 4, a.getFeedback());
+                        id = insert.executeInsert();
+
+                        insertRelation.bindLong(1, a.getQstCod());
+                        insertRelation.bindLong(2, id);
+                        insertRelation.executeInsert();
+                    } else {
+                        update.bindString(1, a.getAnswer());
+                        update.bindLong(2, Utils.parseBoolInt(a.getCorrect()));
+                        DataFramework.bindValue(update, 3, a.getFeedback());
+                        update.bindLong(4, id);
+                        update.executeUpdateDelete();
+                    }
+                }
+
+                db.notifyTableChanged(DataBaseHelper.DB_TABLE_TEST_ANSWERS);
+                db.notifyTableChanged(DataBaseHelper.DB_TABLE_TEST_QUESTION_ANSWERS);
+            } finally {
+                select.close();
+                update.close();
+                insert.close();
+                insertRelation.close();
+            }
+        });
     }
 
     /**
-     * Updates a notification in database
+     * Inserts a relationship between a test question and a tag, or updates its index if it
+     * already exists
      *
-     * @param prev   Notification to be updated
-     * @param actual Updated notification
+     * @param insert Compiled {@link #SQL_INSERT_QUESTION_TAG}
+     * @param update Compiled {@link #SQL_UPDATE_QUESTION_TAG}
+     * @param qstCod Question code
+     * @param tagCod Tag code
+     * @param tagInd Index of the tag in the question
      */
-    public void updateNotification(SWADNotification prev, SWADNotification actual) {
-        List<Entity> rows = db.getEntityList(DataBaseHelper.DB_TABLE_NOTIFICATIONS, "notifCode = " + prev.getId());
-        long notifCode = actual.getId();
-        long eventCode = actual.getEventCode();
-        String eventType = crypto.encrypt(actual.getEventType());
-        String eventTime = String.valueOf(actual.getEventTime());
-        String userNickname = crypto.encrypt(actual.getUserNickname());
-        String userSurname1 = crypto.encrypt(actual.getUserSurname1());
-        String userSurname2 = crypto.encrypt(actual.getUserSurname2());
-        String userFirstname = crypto.encrypt(actual.getUserFirstName());
-        String userPhoto = crypto.encrypt(actual.getUserPhoto());
-        String location = crypto.encrypt(actual.getLocation());
-        String summary = crypto.encrypt(actual.getSummary());
-        String status = String.valueOf(actual.getStatus());
-        String content = crypto.encrypt(actual.getContent());
-        String seenLocal = Utils.parseBoolString(actual.isSeenLocal());
-        String seenRemote = Utils.parseBoolString(actual.isSeenRemote());
-        
-        for(Entity ent : rows) {
-	        ent.setValue("notifCode", notifCode);
-	        ent.setValue("eventCode", eventCode);
-	        ent.setValue("eventType", eventType);
-	        ent.setValue("eventTime", eventTime);
-            ent.setValue("userNickname", userNickname);
-	        ent.setValue("userSurname1", userSurname1);
-	        ent.setValue("userSurname2", userSurname2);
-	        ent.setValue("userFirstname", userFirstname);
-	        ent.setValue("userPhoto", userPhoto);
-	        ent.setValue("location", location);
-	        ent.setValue("summary", summary);
-	        ent.setValue("status", status);
-	        ent.setValue("content", content);
-	        ent.setValue("seenLocal", seenLocal);
-	        ent.setValue("seenRemote", seenRemote);
-	        ent.save();
+    private static void upsertQuestionTag(SQLiteStatement insert, SQLiteStatement update,
+                                          long qstCod, long tagCod, long tagInd) {
+        insert.bindLong(1, qstCod);
+        insert.bindLong(2, tagCod);
+        insert.bindLong(3, tagInd);
+
+        //The insert is ignored if the relationship already exists
+        if (insert.executeInsert() == -1) {
+            update.bindLong(1, tagInd);
+            update.bindLong(2, qstCod);
+            update.bindLong(3, tagCod);
+            update.executeUpdateDelete();
         }
     }
 
     /**
-     * Updates a test question in database
+     * Inserts a test config in database
      *
-     * @param prev               Test question to be updated
-     * @param actual             Updated test question
-     * @param selectedCourseCode Course code to be referenced
+     * @param t Test config to be inserted
      */
-    public void updateTestQuestion(TestQuestion prev, TestQuestion actual, long selectedCourseCode) {
-        List<Entity> rows = db.getEntityList(DataBaseHelper.DB_TABLE_TEST_QUESTIONS, "id = " + prev.getId());
-        Entity ent = rows.get(0);
+    public void insertTestConfig(Test t) {
+        Entity ent = new Entity(DataBaseHelper.DB_TABLE_TEST_CONFIG);
 
-        ent.setValue("id", actual.getId());
-        ent.setValue("ansType", actual.getAnswerType());
-        ent.setValue("stem", actual.getStem());
-        ent.setValue("shuffle", Utils.parseBoolString(actual.getShuffle()));
-        ent.setValue("feedback", actual.getFeedback());
+        ent.setValue("id", t.getId());
+        ent.setValue("min", t.getMin());
+        ent.setValue("def", t.getDef());
+        ent.setValue("max", t.getMax());
+        ent.setValue("feedback", t.getFeedback());
+        ent.setValue("editTime", t.getEditTime());
         ent.save();
-
-        rows = db.getEntityList(DataBaseHelper.DB_TABLE_TEST_QUESTIONS_COURSE, "qstCod = " + actual.getId());
-        for (Entity row : rows) {
-            ent = row;
-            ent.setValue("crsCod", selectedCourseCode);
-            ent.save();
-        }
     }
 
     /**
-     * Updates a test question in database
+     * Inserts a relation in database
      *
-     * @param actual             Updated test question
-     * @param selectedCourseCode Course code to be referenced
+     * @param p Relation to be inserted
      */
-    public void updateTestQuestion(TestQuestion actual, long selectedCourseCode) {
-        List<Entity> rows = db.getEntityList(DataBaseHelper.DB_TABLE_TEST_QUESTIONS, "id = " + actual.getId());
-        Entity ent = rows.get(0);
+    void insertPairTable(PairTable<?, ?> p) {
+        String table = p.getTable();
+        Pair<String, String> params = selectParamsPairTable(table);
 
-        ent.setValue("ansType", actual.getAnswerType());
-        ent.setValue("stem", actual.getStem());
-        ent.setValue("shuffle", Utils.parseBoolString(actual.getShuffle()));
-        ent.setValue("feedback", actual.getFeedback());
+        Entity ent = new Entity(table);
+        ent.setValue(params.getFirst(), p.getFirst());
+        ent.setValue(params.getSecond(), p.getSecond());
         ent.save();
-
-        rows = db.getEntityList(DataBaseHelper.DB_TABLE_TEST_QUESTIONS_COURSE, "qstCod = " + actual.getId());
-        for (Entity row : rows) {
-            ent = row;
-            ent.setValue("crsCod", selectedCourseCode);
-            ent.save();
-        }
     }
 
     /**
-     * Updates a test answer in database
+     * Inserts a new row or updates an existing one in the table named @a tableName with the data that contains @a currentModel
      *
-     * @param prev   Test answer to be updated
-     * @param actual Updated test answer
-     * @param qstCod Test question code to be referenced
+     * @param tableName    string with the table name
+     * @param currentModel model with the new data
+     * @param ents         vector of entities. In case this param is given, the entities given will be modified
      */
-    public void updateTestAnswer(TestAnswer prev, TestAnswer actual, int qstCod) {
-        List<Entity> rows = db.getEntityList(DataBaseHelper.DB_TABLE_TEST_ANSWERS, "_id = " + prev.getId());
-        Entity ent = rows.get(0);
 
-        ent.setValue("ansInd", actual.getAnsInd());
-        ent.setValue("answer", actual.getAnswer());
-        ent.setValue("correct", actual.getCorrect());
-        ent.setValue("answerFeedback", actual.getFeedback());
-        ent.save();
+    boolean insertEntity(String tableName, Model currentModel, Entity... ents) {
+        boolean returnValue = true;
+        Entity ent;
 
-        rows = db.getEntityList(DataBaseHelper.DB_TABLE_TEST_QUESTION_ANSWERS, "ansCod = " + actual.getId());
-        for (Entity row : rows) {
-            ent = row;
-            ent.setValue("qstCod", qstCod);
-            ent.save();
+        if (ents.length >= 1) {
+            ent = ents[0];
+        } else {
+            ent = new Entity(tableName);
         }
-    }
-    /**
-     * Updates a test answer in database
-     *
-     * @param actual Updated test answer
-     * @param qstCod Test question code to be referenced
-     */
-    public void updateTestAnswer(TestAnswer actual, int qstCod) {
-        List<Entity> rows = db.getEntityList(DataBaseHelper.DB_TABLE_TEST_ANSWERS, "_id = " + actual.getId());
-        Entity ent = rows.get(0);
 
-        ent.setValue("ansInd", actual.getAnsInd());
-        ent.setValue("answer", actual.getAnswer());
-        ent.setValue("correct", actual.getCorrect());
-        ent.setValue("answerFeedback", actual.getFeedback());
-        ent.save();
+        if (tableName.equals(DataBaseHelper.DB_TABLE_GROUPS)) {
+            Group g = (Group) currentModel;
+            ent.setValue("id", g.getId());
+            ent.setValue("groupName", g.getGroupName());
+            ent.setValue("maxStudents", g.getMaxStudents());
+            ent.setValue("students", g.getCurrentStudents());
+            ent.setValue("open", g.getOpen());
+            ent.setValue("fileZones", g.getDocumentsArea());
+            ent.setValue("member", g.getMember());
+            ent.save();
+        }
 
-        rows = db.getEntityList(DataBaseHelper.DB_TABLE_TEST_QUESTION_ANSWERS, "ansCod = " + actual.getId());
-        for (Entity row : rows) {
-            ent = row;
-            ent.setValue("qstCod", qstCod);
+        if (tableName.equals(DataBaseHelper.DB_TABLE_GROUP_TYPES)) {
+            GroupType gt = (GroupType) currentModel;
+            ent.setValue("id", gt.getId());
+            ent.setValue("groupTypeName", gt.getGroupTypeName());
+            ent.setValue("courseCode", gt.getCourseCode());
+            ent.setValue("mandatory", gt.getMandatory());
+            ent.setValue("multiple", gt.getMultiple());
+            ent.setValue("openTime", gt.getOpenTime());
             ent.save();
         }
+
+        return returnValue;
     }
 
     /**
-     * Updates a test tag in database
+     * Inserts a batch of models in the table named @a table, or updates the rows that already
+     * exist. Rows are matched by the natural key of the table instead of by _id, and the whole
+     * batch is written inside a single transaction with one UPDATE and, only for new rows,
+     * one INSERT per model
      *
-     * @param prev   Test tag to be updated
-     * @param actual Updated test tag
+     * @param table  Table to be written
+     * @param models Models to be inserted or updated
+     * @return Number of rows inserted or updated
      */
-    public void updateTestTag(TestTag prev, TestTag actual) {
-        List<Entity> rows = db.getEntityList(DataBaseHelper.DB_TABLE_TEST_TAGS, "id = " + prev.getId());
-        Entity ent = rows.get(0);
-        List<Integer> qstCodList = actual.getQstCodList();
-        SQLiteStatement st = db.getDB().compileStatement("INSERT OR REPLACE INTO " +
-                DataBaseHelper.DB_TABLE_TEST_QUESTION_TAGS + " VALUES (NULL, ?, ?, ?);");
+    public <T extends Model> int upsertRows(String table, Collection<T> models) {
+        List<ContentValues> rows = new ArrayList<>(models.size());
 
-        ent.setValue("id", actual.getId());
-        ent.setValue("tagTxt", actual.getTagTxt());
-        ent.save();
+        for (T m : models) {
+            rows.add(createValuesByTable(table, m));
+        }
+
+        return db.upsert(table, selectNaturalKey(table), rows, selectInsertOnlyColumns(table));
+    }
+
+    /**
+     * Inserts a user in database or updates it if already exists
+     *
+     * @param u User to be inserted
+     */
+    public void insertUser(User u) {
+        upsertRows(DataBaseHelper.DB_TABLE_USERS, Collections.singletonList(u));
+    }
+
+    /**
+     * Inserts a group in database
+     *
+     * @param g          Group to be inserted
+     * @param courseCode Course code to be referenced
+     */
+    public boolean insertGroup(Group g, long courseCode) {
+        boolean returnValue = true;
+
+        upsertRows(DataBaseHelper.DB_TABLE_GROUPS, Collections.singletonList(g));
+
+        //update all the relationship
+        long groupCode = g.getId();
+
+        //course code is a foreign key. Therefore, to avoid a database error,
+        //it should not insert/modify rows in the relationship table if the course does not exists
+        if (getAllRowsCount(DataBaseHelper.DB_TABLE_COURSES, QueryBuilder.where("id", courseCode)) > 0) {
+            upsertRows(DataBaseHelper.DB_TABLE_GROUPS_COURSES,
+                    Collections.singletonList(new PairTable<>(DataBaseHelper.DB_TABLE_GROUPS_COURSES, groupCode, courseCode)));
+        } else returnValue = false;
+
+        long groupTypeCode = g.getGroupTypeCode();
+
+        //WHILE THE WEB SERVICE TO GET GROUP TYPES STILL UNAVAILABLE, this condition is not evaluated
+        //GroupType groupType = (GroupType) getRow(Global.DB_TABLE_GROUP_TYPES,"id",String.valueOf(groupTypeCode));
+        //group type code is a foreign key. Therefore, to avoid a database error,
+        //it should not insert/modify rows in the relationship table if the group type does not exists
+        //if(groupType != null){
+        upsertRows(DataBaseHelper.DB_TABLE_GROUPS_GROUPTYPES,
+                Collections.singletonList(new PairTable<>(DataBaseHelper.DB_TABLE_GROUPS_GROUPTYPES, groupTypeCode, groupCode)));
+		/*}else returnValue = false;*/
+
+        return returnValue;
+    }
 
-        for (Integer i : qstCodList) {
-            st.bindLong(1, i);
-            st.bindLong(2, actual.getId());
-            st.bindLong(3, actual.getTagInd());
-            st.executeInsert();
+    /**
+     * Insert a new group type in the database or updated if the group type exits already in the data base
+     *
+     * @param gt Group Type to be inserted
+     */
+    public boolean insertGroupType(GroupType gt) {
+        boolean returnValue = true;
+        GroupType row = getRow(DataBaseHelper.DB_TABLE_GROUP_TYPES, "id", String.valueOf(gt.getId()));
+        if (row == null) {
+            insertEntity(DataBaseHelper.DB_TABLE_GROUP_TYPES, gt);
+        } else {
+            returnValue = false;
         }
+        return returnValue;
     }
 
     /**
-     * Updates a test tag in database
+     * Synchronizes the rows of a table with the models received from the webservice.
+     * Only the rows that have been added, modified or removed are written, in a single transaction
      *
-     * @param actual Updated test tag
+     * @param table         Table to be synchronized (courses, groups, group types or events)
+     * @param currentModels Models received from the webservice
+     * @param courseCode    Course code of the models. Required by groups and events
+     *                      and optional for group types
+     * @return Differences applied to the table
      */
-    public void updateTestTag(TestTag actual) {
-        List<Entity> rows = db.getEntityList(DataBaseHelper.DB_TABLE_TEST_TAGS, "id = " + actual.getId());
-        Entity ent = rows.get(0);
-        List<Integer> qstCodList = actual.getQstCodList();
-        SQLiteStatement st = db.getDB().compileStatement("INSERT OR REPLACE INTO " +
-                DataBaseHelper.DB_TABLE_TEST_QUESTION_TAGS + " VALUES (NULL, ?, ?, ?);");
+    public CollectionDiff<Model> insertCollection(final String table, List<Model> currentModels, long... courseCode) {
+        long crsCod = (courseCode.length > 0) ? courseCode[0] : -1;
+        CollectionDiff<Model> diff = CollectionDiff.compute(getStoredCollection(table, crsCod), currentModels,
+                m -> createFingerprint(table, m));
 
-        ent.setValue("id", actual.getId());
-        ent.setValue("tagTxt", actual.getTagTxt());
-        ent.save();
+        if (!diff.isEmpty()) {
+            applyCollectionDiff(table, diff, crsCod);
+        }
+
+        Log.i(TAG, "Synchronized " + table + ": " + diff);
+
+        return diff;
+    }
+
+    /**
+     * Gets the rows of a table to be compared with the models received from the webservice
+     *
+     * @param table      Table to be synchronized
+     * @param courseCode Course code of the rows or -1 for all the rows
+     * @return Rows stored in the table
+     */
+    private List<? extends Model> getStoredCollection(String table, long courseCode) {
+        switch (table) {
+            case DataBaseHelper.DB_TABLE_COURSES:
+                return getAllRows(table);
+            case DataBaseHelper.DB_TABLE_GROUP_TYPES:
+                if (courseCode < 0) {
+                    return getAllRows(table);
+                }
 
-        for (Integer i : qstCodList) {
-            st.bindLong(1, i);
-            st.bindLong(2, actual.getId());
-            st.bindLong(3, actual.getTagInd());
-            st.executeInsert();
+                List<Model> groupTypes = new ArrayList<>();
+                for (Entity ent : getEntityList(table, QueryBuilder.where("courseCode", courseCode))) {
+                    groupTypes.add(createObjectByTable(table, ent));
+                }
+                return groupTypes;
+            case DataBaseHelper.DB_TABLE_GROUPS:
+                return getGroups(courseCode);
+            case DataBaseHelper.DB_TABLE_EVENTS_ATTENDANCES:
+                return getEventsCourse(courseCode);
+            default:
+                throw new IllegalArgumentException("Table " + table + " can not be synchronized");
         }
     }
 
     /**
-     * Updates a test config in database
+     * Gets the content of a model as it would be written to a table. Insert-only columns are
+     * ignored because they are never overwritten. Private columns are kept as plain text:
+     * encrypted values are byte arrays, which ContentValues compares by reference, and
+     * encrypting every model only to compare it is not needed
      *
-     * @param id     ID of the test prior to update
-     * @param actual Updated test
+     * @param table Table to be written
+     * @param m     Model to be written
+     * @return Values of the columns to be written
      */
-    public void updateTestConfig(long id, Test actual) {
-        List<Entity> rows = db.getEntityList(DataBaseHelper.DB_TABLE_TEST_CONFIG, "id = " + id);
-        Entity ent = rows.get(0);
+    private ContentValues createFingerprint(String table, Model m) {
+        ContentValues values = createValuesByTable(table, m, false);
 
-        ent.setValue("id", actual.getId());
-        ent.setValue("min", actual.getMin());
-        ent.setValue("def", actual.getDef());
-        ent.setValue("max", actual.getMax());
-        ent.setValue("feedback", actual.getFeedback());
-        ent.setValue("editTime", actual.getEditTime());
+        for (String column : selectInsertOnlyColumns(table)) {
+            values.remove(column);
+        }
+
+        if (table.equals(DataBaseHelper.DB_TABLE_GROUPS)) {
+            values.put("groupTypeCode", ((Group) m).getGroupTypeCode());
+        }
+
+        return values;
+    }
+
+    /**
+     * Writes the differences of a table and its relationship tables in a single transaction
+     *
+     * @param table      Table to be written
+     * @param diff       Differences to be applied
+     * @param courseCode Course code of the rows
+     */
+    private void applyCollectionDiff(String table, CollectionDiff<Model> diff, long courseCode) {
+        List<Model> upserted = diff.getUpserted();
+
+        writeBatch(() -> {
+            deleteByIds(table, "id", diff.getDeleted());
+            upsertRows(table, upserted);
+
+            switch (table) {
+                case DataBaseHelper.DB_TABLE_GROUP_TYPES:
+                    deleteByIds(DataBaseHelper.DB_TABLE_GROUPS_GROUPTYPES, "grpTypCod", diff.getDeleted());
+                    break;
+                case DataBaseHelper.DB_TABLE_GROUPS:
+                    deleteByIds(DataBaseHelper.DB_TABLE_GROUPS_GROUPTYPES, "grpCod", diff.getDeleted());
+                    deleteByIds(DataBaseHelper.DB_TABLE_GROUPS_COURSES, "grpCod", diff.getDeleted());
+
+                    List<PairTable<Long, Long>> groupTypes = new ArrayList<>(upserted.size());
+                    List<PairTable<Long, Long>> groupCourses = new ArrayList<>(upserted.size());
+                    //course code is a foreign key. Therefore, to avoid a database error,
+                    //it should not insert/modify rows in the relationship table if the course does not exists
+                    boolean courseExists = getAllRowsCount(DataBaseHelper.DB_TABLE_COURSES,
+                            QueryBuilder.where("id", courseCode)) > 0;
+
+                    for (Model m : upserted) {
+                        Group g = (Group) m;
+                        groupTypes.add(new PairTable<>(DataBaseHelper.DB_TABLE_GROUPS_GROUPTYPES,
+                                g.getGroupTypeCode(), g.getId()));
+                        if (courseExists) {
+                            groupCourses.add(new PairTable<>(DataBaseHelper.DB_TABLE_GROUPS_COURSES,
+                                    g.getId(), courseCode));
+                        }
+                    }
+
+                    upsertRows(DataBaseHelper.DB_TABLE_GROUPS_GROUPTYPES, groupTypes);
+                    upsertRows(DataBaseHelper.DB_TABLE_GROUPS_COURSES, groupCourses);
+                    break;
+                case DataBaseHelper.DB_TABLE_EVENTS_ATTENDANCES:
+                    deleteByIds(DataBaseHelper.DB_TABLE_EVENTS_COURSES, "eventCode", diff.getDeleted());
+
+                    //Updated events are already linked to the course
+                    List<PairTable<Long, Long>> eventCourses = new ArrayList<>(diff.getInserted().size());
+                    for (Model m : diff.getInserted()) {
+                        eventCourses.add(new PairTable<>(DataBaseHelper.DB_TABLE_EVENTS_COURSES,
+                                m.getId(), courseCode));
+                    }
+
+                    upsertRows(DataBaseHelper.DB_TABLE_EVENTS_COURSES, eventCourses);
+                    break;
+                default:
+                    break;
+            }
+
+        });
+    }
+
+    /**
+     * Removes the rows of a table whose column has one of the given values.
+     * Values are bound in chunks to stay below the SQLite limit of host parameters
+     *
+     * @param table  Table to be accessed
+     * @param column Column to be compared
+     * @param ids    Values of the rows to be removed
+     * @return Number of removed rows
+     */
+    private int deleteByIds(String table, String column, List<Long> ids) {
+        int deleted = 0;
+
+        for (int from = 0; from < ids.size(); from += MAX_BIND_ARGS) {
+            QueryBuilder where = new QueryBuilder().andIn(column,
+                    ids.subList(from, Math.min(from + MAX_BIND_ARGS, ids.size())));
+            deleted += db.delete(table, where.getSelection(), where.getSelectionArgs());
+        }
+
+        return deleted;
+    }
+
+    /**
+     * Removes the attendances of an event whose users are not in a list. The attendances of
+     * the users in the list are kept, so that it can be run again before writing the list
+     * without losing the rows already written
+     *
+     * @param eventCode   Event code
+     * @param attendances Attendances of the event returned by the webservice
+     * @return Number of attendances removed
+     */
+    public int removeAttendancesNotIn(long eventCode, Collection<UserAttendance> attendances) {
+        Set<Long> users = new HashSet<>(attendances.size() * 2);
+        List<Long> obsolete = new ArrayList<>();
+        int deleted = 0;
+
+        for (UserAttendance a : attendances) {
+            users.add(a.getId());
+        }
+
+        Cursor c = db.getRawCursor("SELECT userCode FROM " + DB_TABLE_USERS_ATTENDANCES
+                + " WHERE eventCode = ?", new String[]{String.valueOf(eventCode)});
+        try {
+            while (c.moveToNext()) {
+                if (!users.contains(c.getLong(0))) {
+                    obsolete.add(c.getLong(0));
+                }
+            }
+        } finally {
+            c.close();
+        }
+
+        for (int from = 0; from < obsolete.size(); from += MAX_BIND_ARGS) {
+            QueryBuilder where = QueryBuilder.where("eventCode", eventCode).andIn("userCode",
+                    obsolete.subList(from, Math.min(from + MAX_BIND_ARGS, obsolete.size())));
+            deleted += db.delete(DB_TABLE_USERS_ATTENDANCES, where.getSelection(), where.getSelectionArgs());
+        }
+
+        return deleted;
+    }
+
+    /**
+     * Gets the presence of the given attendances of an event, to refresh only the
+     * attendances that have changed instead of the whole list of users
+     *
+     * @param eventCode Event code
+     * @param ids       _id of the attendances
+     * @return Map of user code to presence of the attendances that still exist in the event
+     */
+    public Map<Long, Boolean> getAttendancesPresence(long eventCode, Collection<Long> ids) {
+        List<Long> rows = new ArrayList<>(ids);
+        Map<Long, Boolean> result = new HashMap<>();
+
+        for (int from = 0; from < rows.size(); from += MAX_BIND_ARGS) {
+            QueryBuilder where = QueryBuilder.where("eventCode", eventCode).andIn("_id",
+                    rows.subList(from, Math.min(from + MAX_BIND_ARGS, rows.size())));
+            Cursor c = db.getRawCursor("SELECT userCode, present FROM " + DB_TABLE_USERS_ATTENDANCES
+                    + " WHERE " + where.getSelection(), where.getSelectionArgs());
+            try {
+                while (c.moveToNext()) {
+                    result.put(c.getLong(0), Utils.parseIntBool(c.getInt(1)));
+                }
+            } finally {
+                c.close();
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Inserts a new record in database indicating that the user belongs
+     * to the course and group specified, or updates it if already exists
+     *
+     * @param userID     User to be inserted
+     * @param courseCode Course code to be referenced
+     * @param groupCode  Group code to be referenced
+     */
+    public void insertUserCourse(long userID, long courseCode, long groupCode) {
+        Entity ent;
+        List<Entity> rows = getEntityList(DataBaseHelper.DB_TABLE_USERS_COURSES,
+                QueryBuilder.where("userCode", userID).and("crsCod", courseCode));
+
+        if (rows.isEmpty()) {
+            ent = new Entity(DataBaseHelper.DB_TABLE_USERS_COURSES);
+        } else {
+            ent = rows.get(0);
+        }
+        ent.setValue("userCode", userID);
+        ent.setValue("crsCod", courseCode);
+        ent.setValue("grpCod", groupCode);
+        ent.save();
+    }
+
+    /**
+     * Inserts a new record in database indicating if the user has an
+     * attendance to the event specified, or updates it if already exists
+     *
+     * @param userCode     User code to be inserted
+     * @param eventCode Event code to be referenced
+     * @param present Flag for indicate if the user is present in the attendance
+     */
+    public void insertAttendance(long userCode, long eventCode, boolean present) {
+        upsertRows(DataBaseHelper.DB_TABLE_USERS_ATTENDANCES,
+                Collections.singletonList(new UserAttendance(userCode, (int) eventCode, present)));
+    }
+
+    /**
+     * Inserts a new record in database for an attendance event,
+     * or updates it if already exists
+     *
+     * @param event Event to be inserted
+     */
+    public void insertEvent(Event event) {
+        upsertRows(DataBaseHelper.DB_TABLE_EVENTS_ATTENDANCES, Collections.singletonList(event));
+    }
+
+    /**
+     * Inserts a new record in database for the relationship between an attendance event and a course,
+     * or updates it if already exists
+     *
+     * @param eventCode Event code
+     * @param crsCod Course code
+     */
+    public void insertEventCourse(long eventCode, long crsCod) {
+        upsertRows(DataBaseHelper.DB_TABLE_EVENTS_COURSES,
+                Collections.singletonList(new PairTable<>(DataBaseHelper.DB_TABLE_EVENTS_COURSES, eventCode, crsCod)));
+    }
+
+    /**
+     * Inserts a new Frequent Recipient
+     *
+     * @param user the frequent recipient to insert in the list
+     */
+    public void insertFrequentRecipient(FrequentUser user) {
+        Entity ent = new Entity(DataBaseHelper.DB_TABLE_FREQUENT_RECIPIENTS);
+        ent.setValue("idUser", user.getidUser());
+        ent.setValue("nicknameRecipient", crypto.encrypt(user.getUserNickname()));
+        ent.setValue("surname1Recipient", crypto.encrypt(user.getUserSurname1()));
+        ent.setValue("surname2Recipient", crypto.encrypt(user.getUserSurname2()));
+        ent.setValue("firstnameRecipient", crypto.encrypt(user.getUserFirstname()));
+        ent.setValue("photoRecipient", crypto.encrypt(user.getUserPhoto()));
+        ent.setValue("score", user.getScore());
         ent.save();
     }
 
     /**
-     * Updates a relation in database
-     *
-     * @param prev   Relation to be updated
-     * @param actual Updated relation
+     * Inserts a list of frequent recipients
+     *
+     * @param list the list of users
+     * @return number of users inserted in the table
+     */
+    public int insertFrequentsList(List<FrequentUser> list) {
+        int numElements = 0;
+
+        for(int i=0; i<list.size(); i++){
+            FrequentUser user = list.get(i);
+
+            Entity ent = new Entity(DataBaseHelper.DB_TABLE_FREQUENT_RECIPIENTS);
+            ent.setValue("idUser", user.getidUser());
+            ent.setValue("nicknameRecipient", crypto.encrypt(user.getUserNickname()));
+            ent.setValue("surname1Recipient", crypto.encrypt(user.getUserSurname1()));
+            ent.setValue("surname2Recipient", crypto.encrypt(user.getUserSurname2()));
+            ent.setValue("firstnameRecipient", crypto.encrypt(user.getUserFirstname()));
+            ent.setValue("photoRecipient", crypto.encrypt(user.getUserPhoto()));
+            ent.setValue("score", user.getScore());
+            ent.save();
+
+            numElements++;
+        }
+
+        return numElements;
+    }
+
+    /**
+     * Updates a course in database
+     *
+     * @param prev   Course to be updated
+     * @param actual Updated course
+     */
+    public void updateCourse(Course prev, Course actual) {
+        List<Entity> rows = getEntityList(DataBaseHelper.DB_TABLE_COURSES, QueryBuilder.where("id", prev.getId()));
+        Entity ent = rows.get(0);
+        ent.setValue("id", actual.getId());
+        ent.setValue("userRole", actual.getUserRole());
+        ent.setValue("shortName", actual.getShortName());
+        ent.setValue("fullName", actual.getFullName());
+        ent.save();
+    }
+
+    /**
+     * Updates a course in database
+     *
+     * @param id     Course code of course to be updated
+     * @param actual Updated course
+     */
+    public void updateCourse(long id, Course actual) {
+        List<Entity> rows = getEntityList(DataBaseHelper.DB_TABLE_COURSES, QueryBuilder.where("id", id));
+        if (!rows.isEmpty()) {
+            Entity ent = rows.get(0);
+            ent.setValue("id", actual.getId());
+            ent.setValue("userRole", actual.getUserRole());
+            ent.setValue("shortName", actual.getShortName());
+            ent.setValue("fullName", actual.getFullName());
+            ent.save();
+        }
+    }
+
+    /**
+     * Updates a flag of all notifications in database
+     *
+     * @param field  Flag to be updated
+     * @param value  New flag value
+     * @return Number of updated notifications
+     */
+    public int updateAllNotifications(String field, boolean value) {
+        ContentValues values = new ContentValues();
+        values.put(field, Utils.parseBoolInt(value));
+
+        return db.update(DataBaseHelper.DB_TABLE_NOTIFICATIONS, values, null, null);
+    }
+
+    /**
+     * Updates a flag of a notification in database
+     *
+     * @param id     Notification code of notification to be updated
+     * @param field  Flag to be updated
+     * @param value  New flag value
+     */
+    public void updateNotification(long id, String field, boolean value) {
+        ContentValues values = new ContentValues();
+        QueryBuilder where = QueryBuilder.where("notifCode", id);
+        values.put(field, Utils.parseBoolInt(value));
+
+        db.update(DataBaseHelper.DB_TABLE_NOTIFICATIONS, values, where.getSelection(), where.getSelectionArgs());
+    }
+
+    /**
+     * Updates a notification in database
+     *
+     * @param id     Notification code of notification to be updated
+     * @param actual Updated notification
+     */
+    public void updateNotification(long id, SWADNotification actual) {
+        List<Entity> rows = getEntityList(DataBaseHelper.DB_TABLE_NOTIFICATIONS, QueryBuilder.where("notifCode", id));
+        long notifCode = actual.getId();
+        long eventCode = actual.getEventCode();
+        byte[] eventType = crypto.encrypt(actual.getEventType());
+        long eventTime = actual.getEventTime();
+        byte[] userNickname = crypto.encrypt(actual.getUserNickname());
+        byte[] userSurname1 = crypto.encrypt(actual.getUserSurname1());
+        byte[] userSurname2 = crypto.encrypt(actual.getUserSurname2());
+        byte[] userFirstname = crypto.encrypt(actual.getUserFirstName());
+        byte[] userPhoto = crypto.encrypt(actual.getUserPhoto());
+        byte[] location = crypto.encrypt(actual.getLocation());
+        byte[] summary = crypto.encrypt(actual.getSummary());
+        String status = String.valueOf(actual.getStatus());
+        byte[] content = crypto.encrypt(actual.getContent());
+        int seenLocal = Utils.parseBoolInt(actual.isSeenLocal());
+        int seenRemote = Utils.parseBoolInt(actual.isSeenRemote());
+        
+        for(Entity ent : rows) {
+	        ent.setValue("notifCode", notifCode);
+	        ent.setValue("eventCode", eventCode);
+	        ent.setValue("eventType", eventType);
+	        ent.setValue("eventTime", eventTime);
+            ent.setValue("userNickname", userNickname);
+	        ent.setValue("userSurname1", userSurname1);
+	        ent.setValue("userSurname2", userSurname2);
+	        ent.setValue("userFirstname", userFirstname);
+	        ent.setValue("userPhoto", userPhoto);
+	        ent.setValue("location", location);
+	        ent.setValue("summary", summary);
+	        ent.setValue("status", status);
+	        ent.setValue("content", content);
+	        ent.setValue("seenLocal", seenLocal);
+	        ent.setValue("seenRemote", seenRemote);
+	        ent.save();
+        }
+    }
+
+    /**
+     * Updates a notification in database
+     *
+     * @param prev   Notification to be updated
+     * @param actual Updated notification
+     */
+    public void updateNotification(SWADNotification prev, SWADNotification actual) {
+        List<Entity> rows = getEntityList(DataBaseHelper.DB_TABLE_NOTIFICATIONS, QueryBuilder.where("notifCode", prev.getId()));
+        long notifCode = actual.getId();
+        long eventCode = actual.getEventCode();
+        byte[] eventType = crypto.encrypt(actual.getEventType());
+        long eventTime = actual.getEventTime();
+        byte[] userNickname = crypto.encrypt(actual.getUserNickname());
+        byte[] userSurname1 = crypto.encrypt(actual.getUserSurname1());
+        byte[] userSurname2 = crypto.encrypt(actual.getUserSurname2());
+        byte[] userFirstname = crypto.encrypt(actual.getUserFirstName());
+        byte[] userPhoto = crypto.encrypt(actual.getUserPhoto());
+        byte[] location = crypto.encrypt(actual.getLocation());
+        byte[] summary = crypto.encrypt(actual.getSummary());
+        String status = String.valueOf(actual.getStatus());
+        byte[] content = crypto.encrypt(actual.getContent());
+        int seenLocal = Utils.parseBoolInt(actual.isSeenLocal());
+        int seenRemote = Utils.parseBoolInt(actual.isSeenRemote());
+        
+        for(Entity ent : rows) {
+	        ent.setValue("notifCode", notifCode);
+	        ent.setValue("eventCode", eventCode);
+	        ent.setValue("eventType", eventType);
+	        ent.setValue("eventTime", eventTime);
+            ent.setValue("userNickname", userNickname);
+	        ent.setValue("userSurname1", userSurname1);
+	        ent.setValue("userSurname2", userSurname2);
+	        ent.setValue("userFirstname", userFirstname);
+	        ent.setValue("userPhoto", userPhoto);
+	        ent.setValue("location", location);
+	        ent.setValue("summary", summary);
+	        ent.setValue("status", status);
+	        ent.setValue("content", content);
+	        ent.setValue("seenLocal", seenLocal);
+	        ent.setValue("seenRemote", seenRemote);
+	        ent.save();
+        }
+    }
+
+    /**
+     * Updates a test question in database
+     *
+     * @param prev               Test question to be updated
+     * @param actual             Updated test question
+     * @param selectedCourseCode Course code to be referenced
+     */
+    public void updateTestQuestion(TestQuestion prev, TestQuestion actual, long selectedCourseCode) {
+        List<Entity> rows = getEntityList(DataBaseHelper.DB_TABLE_TEST_QUESTIONS, QueryBuilder.where("id", prev.getId()));
+        Entity ent = rows.get(0);
+
+        ent.setValue("id", actual.getId());
+        ent.setValue("ansType", actual.getAnswerType());
+        ent.setValue("stem", actual.getStem());
+        ent.setValue("shuffle", Utils.parseBoolInt(actual.getShuffle()));
+        ent.setValue("feedback", actual.getFeedback());
+        ent.save();
+
+        rows = getEntityList(DataBaseHelper.DB_TABLE_TEST_QUESTIONS_COURSE, QueryBuilder.where("qstCod", actual.getId()));
+        for (Entity row : rows) {
+            ent = row;
+            ent.setValue("crsCod", selectedCourseCode);
+            ent.save();
+        }
+    }
+
+    /**
+     * Updates a test question in database
+     *
+     * @param actual             Updated test question
+     * @param selectedCourseCode Course code to be referenced
+     */
+    public void updateTestQuestion(TestQuestion actual, long selectedCourseCode) {
+        List<Entity> rows = getEntityList(DataBaseHelper.DB_TABLE_TEST_QUESTIONS, QueryBuilder.where("id", actual.getId()));
+        Entity ent = rows.get(0);
+
+        ent.setValue("ansType", actual.getAnswerType());
+        ent.setValue("stem", actual.getStem());
+        ent.setValue("shuffle", Utils.parseBoolInt(actual.getShuffle()));
+        ent.setValue("feedback", actual.getFeedback());
+        ent.save();
+
+        rows = getEntityList(DataBaseHelper.DB_TABLE_TEST_QUESTIONS_COURSE, QueryBuilder.where("qstCod", actual.getId()));
+        for (Entity row : rows) {
+            ent = row;
+            ent.setValue("crsCod", selectedCourseCode);
+            ent.save();
+        }
+    }
+
+    /**
+     * Updates a test answer in database
+     *
+     * @param prev   Test answer to be updated
+     * @param actual Updated test answer
+     * @param qstCod Test question code to be referenced
+     */
+    public void updateTestAnswer(TestAnswer prev, TestAnswer actual, int qstCod) {
+        List<Entity> rows = getEntityList(DataBaseHelper.DB_TABLE_TEST_ANSWERS, QueryBuilder.where("_id", prev.getId()));
+        Entity ent = rows.get(0);
+
+        ent.setValue("ansInd", actual.getAnsInd());
+        ent.setValue("answer", actual.getAnswer());
+        ent.setValue("correct", Utils.parseBoolInt(actual.getCorrect()));
+        ent.setValue("answerFeedback", actual.getFeedback());
+        ent.save();
+
+        rows = getEntityList(DataBaseHelper.DB_TABLE_TEST_QUESTION_ANSWERS, QueryBuilder.where("ansCod", actual.getId()));
+        for (Entity row : rows) {
+            ent = row;
+            ent.setValue("qstCod", qstCod);
+            ent.save();
+        }
+    }
+    /**
+     * Updates a test answer in database
+     *
+     * @param actual Updated test answer
+     * @param qstCod Test question code to be referenced
+     */
+    public void updateTestAnswer(TestAnswer actual, int qstCod) {
+        List<Entity> rows = getEntityList(DataBaseHelper.DB_TABLE_TEST_ANSWERS, QueryBuilder.where("_id", actual.getId()));
+        Entity ent = rows.get(0);
+
+        ent.setValue("ansInd", actual.getAnsInd());
+        ent.setValue("answer", actual.getAnswer());
+        ent.setValue("correct", Utils.parseBoolInt(actual.getCorrect()));
+        ent.setValue("answerFeedback", actual.getFeedback());
+        ent.save();
+
+        rows = getEntityList(DataBaseHelper.DB_TABLE_TEST_QUESTION_ANSWERS, QueryBuilder.where("ansCod", actual.getId()));
+        for (Entity row : rows) {
+            ent = row;
+            ent.setValue("qstCod", qstCod);
+            ent.save();
+        }
+    }
+
+    /**
+     * Updates a test tag in database
+     *
+     * @param prev   Test tag to be updated
+     * @param actual Updated test tag
+     */
+    public void updateTestTag(TestTag prev, TestTag actual) {
+        List<Entity> rows = getEntityList(DataBaseHelper.DB_TABLE_TEST_TAGS, QueryBuilder.where("id", prev.getId()));
+        Entity ent = rows.get(0);
+        List<Integer> qstCodList = actual.getQstCodList();
+
+        writeBatch(() -> {
+            SQLiteStatement insert = db.getDB().compileStatement(SQL_INSERT_QUESTION_TAG);
+            SQLiteStatement update = db.getDB().compileStatement(SQL_UPDATE_QUESTION_TAG);
+
+            try {
+                ent.setValue("id", actual.getId());
+                ent.setValue("tagTxt", actual.getTagTxt());
+                ent.save();
+
+                for (Integer i : qstCodList) {
+                    upsertQuestionTag(insert, update, i, actual.getId(), actual.getTagInd());
+                }
+            } finally {
+                insert.close();
+                update.close();
+            }
+            db.notifyTableChanged(DataBaseHelper.DB_TABLE_TEST_QUESTION_TAGS);
+        });
+    }
+
+    /**
+     * Updates a test tag in database
+     *
+     * @param actual Updated test tag
+     */
+    public void updateTestTag(TestTag actual) {
+        List<Entity> rows = getEntityList(DataBaseHelper.DB_TABLE_TEST_TAGS, QueryBuilder.where("id", actual.getId()));
+        Entity ent = rows.get(0);
+        List<Integer> qstCodList = actual.getQstCodList();
+
+        writeBatch(() -> {
+            SQLiteStatement insert = db.getDB().compileStatement(SQL_INSERT_QUESTION_TAG);
+            SQLiteStatement update = db.getDB().compileStatement(SQL_UPDATE_QUESTION_TAG);
+
+            try {
+                ent.setValue("id", actual.getId());
+                ent.setValue("tagTxt", actual.getTagTxt());
+                ent.save();
+
+                for (Integer i : qstCodList) {
+                    upsertQuestionTag(insert, update, i, actual.getId(), actual.getTagInd());
+                }
+            } finally {
+                insert.close();
+                update.close();
+            }
+            db.notifyTableChanged(DataBaseHelper.DB_TABLE_TEST_QUESTION_TAGS);
+        });
+    }
+
+    /**
+     * Updates a test config in database
+     *
+     * @param id     ID of the test prior to update
+     * @param actual Updated test
+     */
+    public void updateTestConfig(long id, Test actual) {
+        List<Entity> rows = getEntityList(DataBaseHelper.DB_TABLE_TEST_CONFIG, QueryBuilder.where("id", id));
+        Entity ent = rows.get(0);
+
+        ent.setValue("id", actual.getId());
+        ent.setValue("min", actual.getMin());
+        ent.setValue("def", actual.getDef());
+        ent.setValue("max", actual.getMax());
+        ent.setValue("feedback", actual.getFeedback());
+        ent.setValue("editTime", actual.getEditTime());
+        ent.save();
+    }
+
+    /**
+     * Updates a relation in database
+     *
+     * @param prev   Relation to be updated
+     * @param actual Updated relation
+     */
+    void updatePairTable(PairTable<?, ?> prev, PairTable<?, ?> actual) {
+        String table = prev.getTable();
+        //Integer first = (Integer) prev.getFirst();
+        //Integer second = (Integer) prev.getSecond();
+        Pair<String, String> params = selectParamsPairTable(table);
+        QueryBuilder query = QueryBuilder.where(params.getFirst(), prev.getFirst())
+                .and(params.getSecond(), prev.getSecond());
+
+        List<Entity> rows = getEntityList(table, query);
+        if (!rows.isEmpty()) {
+            Entity ent = rows.get(0);
+            ent.setValue(params.getFirst(), actual.getFirst());
+            ent.setValue(params.getSecond(), actual.getSecond());
+            ent.save();
+        }
+    }
+
+    /**
+     * Updates a user in database
+     *
+     * @param prev   User to be updated
+     * @param actual Updated user
+     */
+    public void updateUser(User prev, User actual) {
+        List<Entity> rows = getEntityList(DataBaseHelper.DB_TABLE_USERS, QueryBuilder.where("id", prev.getId()));
+        Entity ent = rows.get(0);
+        ent.setValue("userCode", actual.getId());
+        ent.setValue("userID", actual.getUserID());
+        ent.setValue("userNickname", actual.getUserNickname());
+        ent.setValue("userSurname1", actual.getUserSurname1());
+        ent.setValue("userSurname2", actual.getUserSurname2());
+        ent.setValue("userFirstname", actual.getUserFirstname());
+        ent.setValue("userPhoto", actual.getUserPhoto());
+        ent.setValue("userRole", actual.getUserRole());
+        ent.save();
+    }
+
+    /**
+     * Updates a user in database
+     *
+     * @param eventCode Code of event to be updated
+     * @param status    Event status to be updated
+     */
+    public void updateEventStatus(int eventCode, String status) {
+        ContentValues values = new ContentValues();
+        values.put("status", crypto.encrypt(status));
+
+        db.update(DataBaseHelper.DB_TABLE_EVENTS_ATTENDANCES, values,
+                "id = ?", new String[]{String.valueOf(eventCode)});
+    }
+
+    /**
+     * Updates a Group and the relationship between Groups and Courses
+     *
+     * @param groupCode    code of the group to be updated
+     * @param courseCode   current code of the course related to the group
+     * @param currentGroup updated group
+     */
+    public boolean updateGroup(long groupCode, long courseCode, Group currentGroup, long... groupTypeCode) {
+        List<Entity> rows = getEntityList(DataBaseHelper.DB_TABLE_GROUPS, QueryBuilder.where("id", groupCode));
+        if (!rows.isEmpty()) {
+            Entity ent = rows.get(0);
+            boolean returnValue = true;
+            insertEntity(DataBaseHelper.DB_TABLE_GROUPS, currentGroup, ent);
+
+            rows = getEntityList(DataBaseHelper.DB_TABLE_GROUPS_COURSES, QueryBuilder.where("grpCod", groupCode));
+            Course course = getRow(DataBaseHelper.DB_TABLE_COURSES, "id", String.valueOf(courseCode));
+            //course code is a foreign key. Therefore, to avoid a database error,
+            //it should not insert/modify rows in the relationship table if the course does not exists
+            if (course != null) {
+                if (rows.isEmpty()) {
+                    ent = new Entity(DataBaseHelper.DB_TABLE_GROUPS_COURSES);
+                    ent.setValue("grpCod", groupCode);
+                    ent.setValue("crsCod", courseCode);
+                    ent.save();
+                } else {
+                    rows.get(0).setValue("crsCod", courseCode);
+                    rows.get(0).save();
+                }
+            } else returnValue = false;
+
+            if (groupTypeCode.length > 0) {
+                GroupType groupType = getRow(DataBaseHelper.DB_TABLE_GROUP_TYPES, "id", String.valueOf(groupTypeCode[0]));
+                //group type code is a foreign key. Therefore, to avoid a database error,
+                //it should not insert/modify rows in the relationship table if the group type does not exists
+                if (groupType != null) {
+                    rows = getEntityList(DataBaseHelper.DB_TABLE_GROUPS_GROUPTYPES, QueryBuilder.where("grpCod", groupCode));
+                    if (!rows.isEmpty()) {
+                        insertPairTable(new PairTable<>(DataBaseHelper.DB_TABLE_GROUPS_GROUPTYPES, groupTypeCode[0], groupCode));
+
+                    } else {
+						PairTable<Object, Object> prev = new PairTable<>(DataBaseHelper.DB_TABLE_GROUPS_GROUPTYPES, rows.get(0).getValue("grpTypCod"), rows.get(0).getValue("grpCod"));
+						PairTable<Object, Object> current = new PairTable<Object, Object>(DataBaseHelper.DB_TABLE_GROUPS_GROUPTYPES, groupTypeCode[0], groupCode);
+                        updatePairTable(prev, current);
+
+                    }
+                } else returnValue = false;
+            }
+            return returnValue;
+        } else
+            return false;
+    }
+
+    /**
+     * Updates a Frequent Recipient with the new score
+     *
+     * @param nickname    the identifier of recipient
+     * @param score   the score to order the frequent recipients list
+     */
+    public void updateFrequentRecipient(String nickname, Double score) {
+        ContentValues values = new ContentValues();
+        QueryBuilder where = QueryBuilder.where("nicknameRecipient", crypto.encrypt(nickname));
+        values.put("score", score);
+
+        //The encrypted nickname is a blob, so the arguments are bound by their type
+        db.update(DataBaseHelper.DB_TABLE_FREQUENT_RECIPIENTS, values,
+                where.getSelection(), where.getBindArgs());
+    }
+
+    /**
+     * Removes a User from database
+     *
+     * @param u User to be removed
+     */
+    public void removeUser(User u) {
+        removeRow(DataBaseHelper.DB_TABLE_USERS, u.getId());
+    }
+
+    /**
+     * Removes a Group from database
+     *
+     * @param g Group to be removed
+     */
+    public void removeGroup(Group g) {
+        removeRow(DataBaseHelper.DB_TABLE_GROUPS, g.getId());
+
+        //Remove also relationships with courses and group types
+        removeAllRows(DataBaseHelper.DB_TABLE_GROUPS_GROUPTYPES, "grpCod", g.getId());
+        removeAllRows(DataBaseHelper.DB_TABLE_GROUPS_COURSES, "grpCod", g.getId());
+    }
+
+    /**
+     * Removes a row from a database table
+     *
+     * @param id Identifier of row to be removed
+     */
+    public void removeRow(String table, long id) {
+        removeAllRows(table, QueryBuilder.where("id", id));
+    }
+
+    /**
+     * Removes all rows from a database table where fieldName has the given value as value
+     *
+     * @param fieldName Name field to search
+     * @param value     Value field of row to be removed
+     */
+    public void removeAllRows(String table, String fieldName, Object value) {
+        removeAllRows(table, QueryBuilder.where(fieldName, value));
+    }
+
+    /**
+     * Removes all rows from a database table matching the given query
+     *
+     * @param query condition to remove a row, with bind arguments
+     * @return numRowsDeleted Number of deleted rows
+     */
+    public int removeAllRows(String table, QueryBuilder query) {
+        return db.delete(table, query.getSelection(), query.getSelectionArgs());
+    }
+
+    /**
+     * Removes a PairTable from database
+     *
+     * @param p PairTable to be removed
+     */
+    public void removePairTable(PairTable<?, ?> p) {
+        String table = p.getTable();
+        Integer first = (Integer) p.getFirst();
+        Integer second = (Integer) p.getSecond();
+        List<Entity> rows;
+        Entity ent;
+        Pair<String, String> params = selectParamsPairTable(table);
+
+        rows = getEntityList(table, QueryBuilder.where(params.getFirst(), first).and(params.getSecond(), second));
+        ent = rows.get(0);
+        ent.delete();
+    }
+
+    /**
+     * Gets a field of last notification
+     *
+     * @param field A field of last notification
+     * @return The field of last notification
+     */
+    public String getFieldOfLastNotification(String field) {
+        //Only the newest row is read, straight from the eventTime index
+        Entity ent = db.getTopEntity(DataBaseHelper.DB_TABLE_NOTIFICATIONS, null, "eventTime DESC");
+        String f = "0";
+
+        if (ent != null) {
+            f = (String) ent.getValue(field);
+        }
+
+        return f;
+    }
+
+    /**
+     * Gets the number of not seen notifications. It is read from the unread counters, one row
+     * per notification type, without scanning the notifications
+     *
+     * @return Number of not seen notifications
+     */
+    public int getUnreadNotificationsCount() {
+        return (int) db.longForQuery("SELECT IFNULL(SUM(unread), 0) FROM "
+                + DB_COUNTER_NOTIFICATIONS_UNREAD, null);
+    }
+
+    /**
+     * Gets the number of not seen notifications of each type, read from the unread counters
+     *
+     * @return Map of notification type to number of not seen notifications of that type
+     */
+    public Map<String, Integer> getUnreadNotificationsCountByType() {
+        Map<String, Integer> result = new HashMap<>();
+        Cursor c = db.getRawCursor("SELECT eventType, unread FROM " + DB_COUNTER_NOTIFICATIONS_UNREAD
+                + " WHERE unread > 0", null);
+
+        try {
+            while (c.moveToNext()) {
+                String eventType = (c.getType(0) == Cursor.FIELD_TYPE_BLOB)
+                        ? crypto.decrypt(c.getBlob(0)) : crypto.decrypt(c.getString(0));
+                Integer count = result.get(eventType);
+
+                //Types stored as hexadecimal text and as BLOB are the same type
+                result.put(eventType, c.getInt(1) + ((count != null) ? count : 0));
+            }
+        } finally {
+            c.close();
+        }
+
+        return result;
+    }
+
+    /**
+     * Gets a page of notifications ordered by event time and notification code, newest first.
+     * Pages are read by keyset: each page starts right after the last notification of the
+     * previous one, so the query reads only "limit" rows from the
+     * (seenLocal, eventTime, notifCode) index however many notifications are stored
+     *
+     * @param columns Columns to be read (can be null)
+     * @param seen    true for the seen notifications, false for the not seen ones
+     * @param after   Last notification of the previous page, or null for the first page
+     * @param limit   Maximum number of notifications of the page
+     * @return A map of _id to notifications, in the order of the page
+     */
+    public LinkedHashMap<Long, Model> getNotificationsPage(String[] columns, boolean seen,
+                                                           SWADNotification after, int limit) {
+        QueryBuilder query = QueryBuilder.where("seenLocal", Utils.parseBoolInt(seen));
+
+        if (after != null) {
+            query.andCondition("(eventTime < ? OR (eventTime = ? AND notifCode < ?))",
+                    after.getEventTime(), after.getEventTime(), after.getId());
+        }
+
+        LinkedHashMap<Long, Model> result = new LinkedHashMap<>();
+        List<Entity> rows = db.getEntityList(DataBaseHelper.DB_TABLE_NOTIFICATIONS, columns,
+                query.getSelection(), query.getSelectionArgs(), NOTIFICATIONS_PAGE_ORDER, String.valueOf(limit));
+
+        for (Entity ent : rows) {
+            result.put(ent.getId(), createObjectByTable(DataBaseHelper.DB_TABLE_NOTIFICATIONS, ent));
+        }
+
+        return result;
+    }
+
+    /**
+     * Gets last time the test was updated
+     *
+     * @param selectedCourseCode Test's course
+     * @return Last time the test was updated
+     */
+    public String getTimeOfLastTestUpdate(long selectedCourseCode) {
+        List<Entity> rows = getEntityList(DataBaseHelper.DB_TABLE_TEST_CONFIG,
+                QueryBuilder.where("id", selectedCourseCode));
+        String f = "0";
+
+        if (rows.size() > 0) {
+            Entity ent = rows.get(0);
+            f = (String) ent.getValue("editTime");
+        }
+
+        if (f == null) {
+            f = "0";
+        }
+
+        return f;
+    }
+
+    /**
+     * Gets the tags of specified course ordered by tagInd field
+     *
+     * @param selectedCourseCode Test's course
+     * @return A list of the tags of specified course ordered by tagInd field
+     */
+    public List<TestTag> getOrderedCourseTags(long selectedCourseCode) {
+        String[] columns = {"T.id", "T.tagTxt", "Q.qstCod", "Q.tagInd"};
+        String tables = DataBaseHelper.DB_TABLE_TEST_TAGS + " AS T, " + DataBaseHelper.DB_TABLE_TEST_QUESTION_TAGS
+                + " AS Q, " + DataBaseHelper.DB_TABLE_TEST_QUESTIONS_COURSE + " AS C";
+        QueryBuilder query = new QueryBuilder().andCondition("T.id=Q.tagCod AND Q.qstCod=C.qstCod")
+                .and("C.crsCod", selectedCourseCode);
+        String orderBy = "T.tagTxt ASC";
+        String groupBy = "T.id";
+        Cursor dbCursor = db.getCursor(tables, columns, query.getSelection(), query.getSelectionArgs(),
+                groupBy, null, orderBy, null);
+        List<TestTag> result = new ArrayList<>();
+        List<Integer> qstCodList;
+        int idOld = -1;
+        TestTag t = null;
+
+        while (dbCursor.moveToNext()) {
+            int id = dbCursor.getInt(0);
+
+            if (id != idOld) {
+                qstCodList = new ArrayList<>();
+
+                String tagTxt = dbCursor.getString(1);
+                qstCodList.add(dbCursor.getInt(2));
+                int tagInd = dbCursor.getInt(3);
+
+                t = new TestTag(id, qstCodList, tagTxt, tagInd);
+
+                result.add(t);
+                idOld = id;
+            } else {
+                t.addQstCod(dbCursor.getInt(2));
+            }
+        }
+
+        dbCursor.close();
+
+        return result;
+    }
+
+    /**
+     * Gets the number of questions of each test tag. It is read from the questions counters,
+     * without scanning the relationships between questions and tags
+     *
+     * @return Map of tag code to number of questions with that tag
+     */
+    public Map<Long, Integer> getTagQuestionsCount() {
+        Map<Long, Integer> result = new HashMap<>();
+        Cursor c = db.getRawCursor("SELECT tagCod, questions FROM " + DB_COUNTER_TEST_QUESTION_TAGS, null);
+
+        try {
+            while (c.moveToNext()) {
+                result.put(c.getLong(0), c.getInt(1));
+            }
+        } finally {
+            c.close();
+        }
+
+        return result;
+    }
+
+    /**
+     * Gets the questions of specified course and tags
+     *
+     * The candidate questions are read as a list of codes and sampled in a single pass
+     * (reservoir sampling), so the candidate set is never sorted. Then the selected questions
+     * and all their answers are loaded with one query each.
+     *
+     * @param selectedCourseCode Test's course
+     * @param tagsList           Tag's list of the questions to be extracted
+     * @return A list of the questions of specified course and tags
+     */
+    public List<TestQuestion> getRandomCourseQuestionsByTagAndAnswerType(long selectedCourseCode, List<TestTag> tagsList,
+                                                                         List<String> answerTypesList, int maxQuestions) {
+        String select = "SELECT DISTINCT Q.id";
+        String tables = " FROM " + DataBaseHelper.DB_TABLE_TEST_QUESTIONS + " AS Q, "
+                + DataBaseHelper.DB_TABLE_TEST_QUESTIONS_COURSE + " AS C, "
+                + DataBaseHelper.DB_TABLE_TEST_QUESTION_TAGS + " AS T";
+        QueryBuilder query = new QueryBuilder().andCondition("Q.id=C.qstCod AND Q.id=T.qstCod")
+                .and("C.crsCod", selectedCourseCode);
+        Cursor dbCursor;
+        List<TestQuestion> result = new ArrayList<>();
+        List<Long> tagCodes = new ArrayList<>(tagsList.size());
+        List<Long> selectedCodes = new ArrayList<>(maxQuestions);
+        Map<Long, TestQuestion> questions = new HashMap<>();
+        Random random = new Random();
+        int numCandidates = 0;
+
+        if (!tagsList.get(0).getTagTxt().equals("all")) {
+            for (TestTag tag : tagsList) {
+                tagCodes.add(tag.getId());
+            }
+            query.andIn("T.tagCod", tagCodes);
+        }
+
+        if (!answerTypesList.get(0).equals("all")) {
+            query.andIn("Q.ansType", answerTypesList);
+        }
+
+        //Select maxQuestions random codes reading the candidates once
+        dbCursor = db.getRawCursor(select + tables + " WHERE " + query.getSelection(), query.getSelectionArgs());
+        try {
+            while (dbCursor.moveToNext()) {
+                long qstCod = dbCursor.getLong(0);
+
+                if (numCandidates < maxQuestions) {
+                    selectedCodes.add(qstCod);
+                } else {
+                    int j = random.nextInt(numCandidates + 1);
+                    if (j < maxQuestions) {
+                        selectedCodes.set(j, qstCod);
+                    }
+                }
+                numCandidates++;
+            }
+        } finally {
+            dbCursor.close();
+        }
+
+        if (selectedCodes.isEmpty()) {
+            return result;
+        }
+
+        //The reservoir keeps the first candidates in order, so shuffle the selection
+        Collections.shuffle(selectedCodes, random);
+
+        //Load the selected questions
+        query = new QueryBuilder().andIn("id", selectedCodes);
+        dbCursor = db.getRawCursor("SELECT id, ansType, shuffle, stem, feedback FROM "
+                + DataBaseHelper.DB_TABLE_TEST_QUESTIONS + " WHERE " + query.getSelection(), query.getSelectionArgs());
+        try {
+            while (dbCursor.moveToNext()) {
+                long qstCod = dbCursor.getLong(0);
+                TestQuestion q = new TestQuestion(qstCod, selectedCourseCode, dbCursor.getString(3),
+                        dbCursor.getString(1), Utils.parseIntBool(dbCursor.getInt(2)), dbCursor.getString(4));
+
+                q.setAnswers(new ArrayList<TestAnswer>());
+                questions.put(qstCod, q);
+            }
+        } finally {
+            dbCursor.close();
+        }
+
+        //Load the answers of all the selected questions
+        query = new QueryBuilder().andCondition("Q.ansCod=A._id").andIn("Q.qstCod", selectedCodes);
+        dbCursor = db.getRawCursor("SELECT DISTINCT A._id, A.ansInd, Q.qstCod, A.answer, A.correct, A.answerFeedback"
+                + " FROM " + DataBaseHelper.DB_TABLE_TEST_ANSWERS + " AS A, "
+                + DataBaseHelper.DB_TABLE_TEST_QUESTION_ANSWERS + " AS Q"
+                + " WHERE " + query.getSelection() + " ORDER BY Q.qstCod, A.ansInd", query.getSelectionArgs());
+        try {
+            while (dbCursor.moveToNext()) {
+                long ansCod = dbCursor.getLong(0);
+                int ansInd = dbCursor.getInt(1);
+                int qstCod = dbCursor.getInt(2);
+                String answer = dbCursor.getString(3);
+                boolean correct = Utils.parseIntBool(dbCursor.getInt(4));
+                String aswerFeedback = dbCursor.getString(5);
+                TestQuestion q = questions.get((long) qstCod);
+
+                if (q != null) {
+                    q.getAnswers().add(new TestAnswer(ansCod, ansInd, qstCod, correct, answer, aswerFeedback));
+                }
+            }
+        } finally {
+            dbCursor.close();
+        }
+
+        for (Long qstCod : selectedCodes) {
+            TestQuestion q = questions.get(qstCod);
+            if (q != null) {
+                result.add(q);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Clean old notifications by size, keeping only the newest ones
+     *
+     * @param size Max table size
+     * @return numRowsDeleted Number of deleted notifications
+     */
+    public int cleanOldNotificationsBySize(int size) {
+        return db.deleteAllButFirst(DataBaseHelper.DB_TABLE_NOTIFICATIONS, "eventTime DESC", size);
+    }
+
+    /**
+     * Clean old notifications by age
+     *
+     * @param age Max age in seconds
+     * @return numRowsDeleted Number of deleted notifications
+     */
+    public int cleanOldNotificationsByAge(int age) {
+        long now = Calendar.getInstance().getTime().getTime() / 1000; // in seconds
+
+        // Remove notifications older than 'age' seconds
+        return removeAllRows(DataBaseHelper.DB_TABLE_NOTIFICATIONS,
+                QueryBuilder.where("eventTime", "<", now - age));
+    }
+
+    /**
+     * Encrypts the notifications data
+     */
+    public void encryptNotifications() {
+        EntityPager rows = db.getEntityPager(DataBaseHelper.DB_TABLE_NOTIFICATIONS, null);
+
+        for (Entity ent : rows) {
+            ent.setValue("eventType", crypto.encrypt(ent.getString("eventType")));
+            ent.setValue("userSurname1", crypto.encrypt(ent.getString("userSurname1")));
+            ent.setValue("userSurname2", crypto.encrypt(ent.getString("userSurname2")));
+            ent.setValue("userFirstname", crypto.encrypt(ent.getString("userFirstname")));
+            ent.setValue("userPhoto", crypto.encrypt(ent.getString("userPhoto")));
+            ent.setValue("location", crypto.encrypt(ent.getString("location")));
+            ent.setValue("summary", crypto.encrypt(ent.getString("summary")));
+            ent.setValue("content", crypto.encrypt(ent.getString("content")));
+            ent.save();
+        }
+    }
+
+    /**
+     * Encrypts the users data
+     */
+    public void encryptUsers() {
+        EntityPager rows = db.getEntityPager(DataBaseHelper.DB_TABLE_USERS, null);
+
+        for (Entity ent : rows) {
+            ent.setValue("userID", crypto.encrypt(ent.getString("userID")));
+            ent.setValue("userNickname", crypto.encrypt(ent.getString("userNickname")));
+            ent.setValue("userSurname1", crypto.encrypt(ent.getString("userSurname1")));
+            ent.setValue("userSurname2", crypto.encrypt(ent.getString("userSurname2")));
+            ent.setValue("userFirstname", crypto.encrypt(ent.getString("userFirstname")));
+            ent.setValue("userPhoto", crypto.encrypt(ent.getString("photoPath")));
+            ent.save();
+        }
+    }
+
+    /**
+     * Reencrypts the notifications data
+     */
+    public void reencryptNotifications() {
+        EntityPager rows = db.getEntityPager(DataBaseHelper.DB_TABLE_NOTIFICATIONS, null);
+        byte[] type, surname1, surname2, firstname, photo, location, summary, content;
+
+        for (Entity ent : rows) {
+            type = crypto.encrypt(OldCrypto.decrypt(mCtx, DBKey, ent.getString("eventType")));
+            surname1 = crypto.encrypt(OldCrypto.decrypt(mCtx, DBKey, ent.getString("userSurname1")));
+            surname2 = crypto.encrypt(OldCrypto.decrypt(mCtx, DBKey, ent.getString("userSurname2")));
+            firstname = crypto.encrypt(OldCrypto.decrypt(mCtx, DBKey, ent.getString("userFirstname")));
+            photo = crypto.encrypt(OldCrypto.decrypt(mCtx, DBKey, ent.getString("userPhoto")));
+            location = crypto.encrypt(OldCrypto.decrypt(mCtx, DBKey, ent.getString("location")));
+            summary = crypto.encrypt(OldCrypto.decrypt(mCtx, DBKey, ent.getString("summary")));
+            content = crypto.encrypt(OldCrypto.decrypt(mCtx, DBKey, ent.getString("content")));
+
+            ent.setValue("eventType", type);
+            ent.setValue("userSurname1", surname1);
+            ent.setValue("userSurname2", surname2);
+            ent.setValue("userFirstname", firstname);
+            ent.setValue("userPhoto", photo);
+            ent.setValue("location", location);
+            ent.setValue("summary", summary);
+            ent.setValue("content", content);
+            ent.save();
+        }
+    }
+
+    /**
+     * Empty table from database
+     *
+     * @param table Table to be emptied
+     */
+    public void emptyTable(String table) {
+        db.emptyTable(table);
+        Log.d(TAG, "Emptied table " + table);
+    }
+
+    /**
+     * Delete table from database
+     *
+     * @param table Table to be deleted
+     */
+    public void deleteTable(String table) {
+        if(isTableExisting(table)) {
+            db.deleteTable(table);
+            Log.d(TAG, "Deleted table " + table);
+        } else {
+            Log.e(TAG, "Table " + table + " doesn't exists. Can't be deleted");
+        }
+    }
+
+    /**
+     * Checks if a table exists in database
+     * @param tableName Name of the table to be checked
+     * @return true is table exists
+     *         false otherwise
+     */
+    public boolean isTableExisting(String tableName) {
+        Cursor cursor = db.rawQuery("select DISTINCT tbl_name from sqlite_master where tbl_name = ?", new String[]{tableName});
+        if(cursor!=null) {
+            if(cursor.getCount()>0) {
+                cursor.close();
+                return true;
+            }
+            cursor.close();
+        }
+        return false;
+    }
+
+    /**
+     * Delete all tables from database
      */
-    void updatePairTable(PairTable<?, ?> prev, PairTable<?, ?> actual) {
-        String table = prev.getTable();
-        String where;
-        //Integer first = (Integer) prev.getFirst();
-        //Integer second = (Integer) prev.getSecond();
-        Pair<String, String> params = selectParamsPairTable(table);
+    public void clearDB() {
+        db.deleteTables();
+        Log.i(TAG, "All tables deleted");
+    }
 
-        where = params.getFirst() + " = " + prev.getFirst() + " AND " + params.getSecond() + " = " + prev.getSecond();
+    /**
+     * Clean data of all tables from database. Removes users photos from external storage.
+     * The pages freed are returned to the file system later by the maintenance job
+     */
+    public void cleanTables() {
+        Log.i(TAG, "Emptying all tables");
 
-        List<Entity> rows = db.getEntityList(table, where);
-        if (!rows.isEmpty()) {
-            Entity ent = rows.get(0);
-            ent.setValue(params.getFirst(), actual.getFirst());
-            ent.setValue(params.getSecond(), actual.getSecond());
-            ent.save();
-        }
+        db.emptyTables();
+
+        Log.i(TAG, "All tables emptied");
     }
 
     /**
-     * Updates a user in database
+     * Runs a write task in a transaction on the database writer thread and waits for it to finish.
+     * Every write runs on that thread, so writes never compete with each other for the database
+     * lock, while readers of other threads keep running concurrently. Writes that must be applied
+     * together use this method; the single writes of this class are sent to the writer thread
+     * by the data framework. Only the migrations and indexes applied while the database is opened
+     * run on the opening thread, before any other component can use the database. The main thread
+     * must not wait for the writer thread, so it queues its writes with {@link #submitWrite(WriteTask)}
      *
-     * @param prev   User to be updated
-     * @param actual Updated user
+     * @param task Write task. The transaction is committed if it ends without errors
+     * @return Result of the task
+     * @throws Exception The exception thrown by the task
      */
-    public void updateUser(User prev, User actual) {
-        List<Entity> rows = db.getEntityList(DataBaseHelper.DB_TABLE_USERS, "id = " + prev.getId());
-        Entity ent = rows.get(0);
-        ent.setValue("userCode", actual.getId());
-        ent.setValue("userID", actual.getUserID());
-        ent.setValue("userNickname", actual.getUserNickname());
-        ent.setValue("userSurname1", actual.getUserSurname1());
-        ent.setValue("userSurname2", actual.getUserSurname2());
-        ent.setValue("userFirstname", actual.getUserFirstname());
-        ent.setValue("userPhoto", actual.getUserPhoto());
-        ent.setValue("userRole", actual.getUserRole());
-        ent.save();
+    public <T> T writeInTransaction(final Callable<T> task) throws Exception {
+        return db.write(() -> {
+            db.startTransaction();
+            try {
+                T result = task.call();
+                db.successfulTransaction();
+                return result;
+            } finally {
+                db.endTransaction();
+            }
+        });
     }
 
     /**
-     * Updates a user in database
-     *
-     * @param eventCode Code of event to be updated
-     * @param status    Event status to be updated
+     * Write task queued by {@link #submitWrite(WriteTask)}
      */
-    public void updateEventStatus(int eventCode, String status) {
-        Entity ent = db.getTopEntity(DataBaseHelper.DB_TABLE_EVENTS_ATTENDANCES,
-                "id = " + eventCode, "1");
-        ent.setValue("status", crypto.encrypt(status));
-        ent.save();
+    public interface WriteTask {
+        void run() throws Exception;
     }
 
     /**
-     * Updates a Group and the relationship between Groups and Courses
+     * Queues a write task on the database writer thread and returns without waiting for it. The
+     * main thread must use this method for its writes, so it never waits behind the ingestion
+     * chunks and maintenance steps queued on the writer. Writes that must be applied together
+     * are wrapped in {@link #writeInTransaction(Callable)} inside the task, which then runs
+     * inline. The shared helper is kept open until the task has finished, and errors are logged
      *
-     * @param groupCode    code of the group to be updated
-     * @param courseCode   current code of the course related to the group
-     * @param currentGroup updated group
+     * @param task Write task
+     * @return Future to know when the task has finished
      */
-    public boolean updateGroup(long groupCode, long courseCode, Group currentGroup, long... groupTypeCode) {
-        List<Entity> rows = db.getEntityList(DataBaseHelper.DB_TABLE_GROUPS, "id =" + groupCode);
-        if (!rows.isEmpty()) {
-            Entity ent = rows.get(0);
-            boolean returnValue = true;
-            insertEntity(DataBaseHelper.DB_TABLE_GROUPS, currentGroup, ent);
+    public Future<?> submitWrite(final WriteTask task) {
+        final boolean retained = retain();
 
-            rows = db.getEntityList(DataBaseHelper.DB_TABLE_GROUPS_COURSES, "grpCod =" + groupCode);
-            Course course = getRow(DataBaseHelper.DB_TABLE_COURSES, "id", String.valueOf(courseCode));
-            //course code is a foreign key. Therefore, to avoid a database error,
-            //it should not insert/modify rows in the relationship table if the course does not exists
-            if (course != null) {
-                if (rows.isEmpty()) {
-                    ent = new Entity(DataBaseHelper.DB_TABLE_GROUPS_COURSES);
-                    ent.setValue("grpCod", groupCode);
-                    ent.setValue("crsCod", courseCode);
-                    ent.save();
-                } else {
-                    rows.get(0).setValue("crsCod", courseCode);
-                    rows.get(0).save();
+        return db.submitWrite(() -> {
+            try {
+                task.run();
+            } catch (Exception e) {
+                Log.e(TAG, "Error writing to the database", e);
+            } finally {
+                if (retained) {
+                    release();
                 }
-            } else returnValue = false;
-
-            if (groupTypeCode.length > 0) {
-                GroupType groupType = getRow(DataBaseHelper.DB_TABLE_GROUP_TYPES, "id", String.valueOf(groupTypeCode[0]));
-                //group type code is a foreign key. Therefore, to avoid a database error,
-                //it should not insert/modify rows in the relationship table if the group type does not exists
-                if (groupType != null) {
-                    rows = db.getEntityList(DataBaseHelper.DB_TABLE_GROUPS_GROUPTYPES, "grpCod=" + groupCode);
-                    if (!rows.isEmpty()) {
-                        insertPairTable(new PairTable<>(DataBaseHelper.DB_TABLE_GROUPS_GROUPTYPES, groupTypeCode[0], groupCode));
-
-                    } else {
-						PairTable<Object, Object> prev = new PairTable<>(DataBaseHelper.DB_TABLE_GROUPS_GROUPTYPES, rows.get(0).getValue("grpTypCod"), rows.get(0).getValue("grpCod"));
-						PairTable<Object, Object> current = new PairTable<Object, Object>(DataBaseHelper.DB_TABLE_GROUPS_GROUPTYPES, groupTypeCode[0], groupCode);
-                        updatePairTable(prev, current);
-
-                    }
-                } else returnValue = false;
             }
-            return returnValue;
-        } else
-            return false;
+        });
     }
 
     /**
-     * Updates a Frequent Recipient with the new score
+     * Runs a batch of statements in a single transaction on the database writer thread
      *
-     * @param nickname    the identifier of recipient
-     * @param score   the score to order the frequent recipients list
+     * @param task Statements to be executed
      */
-    public void updateFrequentRecipient(String nickname, Double score) {
-        List<Entity> rows = db.getEntityList(DataBaseHelper.DB_TABLE_FREQUENT_RECIPIENTS, "nicknameRecipient = '" + nickname + "'");
-
-        for(Entity ent : rows) {
-            ent.setValue("score", score);
-            ent.save();
+    private void writeBatch(Runnable task) {
+        try {
+            writeInTransaction(() -> {
+                task.run();
+                return null;
+            });
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
         }
     }
 
     /**
-     * Removes a User from database
+     * Checks if there are write tasks pending or running on the database writer thread
      *
-     * @param u User to be removed
+     * @return true if the writer thread is busy
      */
-    public void removeUser(User u) {
-        removeRow(DataBaseHelper.DB_TABLE_USERS, u.getId());
+    public boolean isWriting() {
+        return db.isWriting();
     }
 
     /**
-     * Removes a Group from database
+     * Checks if the free pages of the database can be reclaimed with incremental vacuum
      *
-     * @param g Group to be removed
+     * @return true if the database is in incremental auto-vacuum mode
      */
-    public void removeGroup(Group g) {
-        removeRow(DataBaseHelper.DB_TABLE_GROUPS, g.getId());
-
-        //Remove also relationships with courses and group types
-        removeAllRows(DataBaseHelper.DB_TABLE_GROUPS_GROUPTYPES, "grpCod", g.getId());
-        removeAllRows(DataBaseHelper.DB_TABLE_GROUPS_COURSES, "grpCod", g.getId());
+    public boolean isIncrementalVacuumEnabled() {
+        return DatabaseUtils.longForQuery(db.getDB(), "PRAGMA auto_vacuum;", null) == AUTO_VACUUM_INCREMENTAL;
     }
 
     /**
-     * Removes a row from a database table
+     * Switches the database to incremental auto-vacuum mode. It rewrites the whole database
+     * file once, so it should only be run while the device is idle. It does nothing if the
+     * database is already in incremental mode.
+     * The rewrite does not run on the database writer thread, which is kept for short writes.
+     * A task queued on the writer thread holds it while the file is rewritten, so the writes
+     * of other components wait in its queue instead of failing on the database lock, and the
+     * rewrite runs on its own connection from the calling thread
      *
-     * @param id Identifier of row to be removed
+     * @param signal Cancels the rewrite. An interrupted VACUUM is rolled back and leaves the
+     *               database as it was, so the switch is tried again in the next run
+     * @return true if the database has been rewritten, false if it was already in incremental
+     * mode or the rewrite was cancelled
+     * @throws Exception If the database could not be rewritten
      */
-    public void removeRow(String table, long id) {
-        List<Entity> rows = db.getEntityList(table, "id = " + id);
-        Entity ent = rows.get(0);
-        ent.delete();
-    }
+    public boolean enableIncrementalVacuum(final CancellationSignal signal) throws Exception {
+        final CountDownLatch writerHeld = new CountDownLatch(1);
+        final CountDownLatch rewriteFinished = new CountDownLatch(1);
+        boolean retained;
 
-    /**
-     * Removes all rows from a database table where fieldName has the given value as value
-     *
-     * @param fieldName Name field to search
-     * @param value     Value field of row to be removed
-     */
-    public void removeAllRows(String table, String fieldName, Object value) {
-        List<Entity> rows;
-        
-        if(value instanceof String) {
-        	rows = db.getEntityList(table, fieldName + "='" + value + "'");
-        } else {
-        	rows = db.getEntityList(table, fieldName + "= " + value);
+        if (isIncrementalVacuumEnabled() || signal.isCanceled()) {
+            return false;
         }
-        
-        for (Entity ent : rows) {
-            ent.delete();
+
+        retained = retain();
+        try {
+            db.submitWrite(() -> {
+                writerHeld.countDown();
+                try {
+                    rewriteFinished.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+
+            try {
+                //Waits for the writes queued before the barrier, unless the rewrite is cancelled
+                while (!writerHeld.await(WRITER_BARRIER_POLL_MS, TimeUnit.MILLISECONDS)) {
+                    if (signal.isCanceled()) {
+                        return false;
+                    }
+                }
+
+                //Checked again, a previous run could have switched it while the barrier was queued
+                if (isIncrementalVacuumEnabled() || signal.isCanceled()) {
+                    return false;
+                }
+
+                return vacuumIncremental(signal);
+            } finally {
+                rewriteFinished.countDown();
+            }
+        } finally {
+            if (retained) {
+                release();
+            }
         }
-    }/**
-     * Removes all rows from a database table matching the given condition
+    }
+
+    /**
+     * Rewrites the database file in incremental auto-vacuum mode on a connection of its own.
+     * The connection is opened in WAL mode, like the connection of the data framework, so the
+     * journal mode of the database is not changed
      *
-     * @param where condition to remove a row
-     * @return numRowsDeleted Number of deleted rows
+     * @param signal Cancels the rewrite
+     * @return true if the database has been rewritten, false if the rewrite was cancelled
      */
-    public int removeAllRows(String table, String where) {
-        List<Entity> rows = db.getEntityList(table, where);
+    private boolean vacuumIncremental(CancellationSignal signal) {
+        SQLiteDatabase sqlite = SQLiteDatabase.openDatabase(db.getDB().getPath(), null,
+                SQLiteDatabase.OPEN_READWRITE | SQLiteDatabase.ENABLE_WRITE_AHEAD_LOGGING);
 
-        for (Entity ent : rows) {
-            ent.delete();
-        }
+        try {
+            Log.i(TAG, "Enabling incremental vacuum");
+            sqlite.execSQL("PRAGMA auto_vacuum = INCREMENTAL;");
+
+            //VACUUM is run as a query so that cancelling the signal interrupts it
+            try {
+                Cursor c = sqlite.rawQueryWithFactory(null, "VACUUM;", null, null, signal);
+                try {
+                    c.getCount();
+                } finally {
+                    c.close();
+                }
+            } catch (OperationCanceledException e) {
+                Log.i(TAG, "Incremental vacuum not enabled, the rewrite was cancelled");
+                return false;
+            }
 
-        return rows.size();
+            return DatabaseUtils.longForQuery(sqlite, "PRAGMA auto_vacuum;", null) == AUTO_VACUUM_INCREMENTAL;
+        } finally {
+            sqlite.close();
+        }
     }
 
     /**
-     * Removes a PairTable from database
+     * Gets the number of unused pages of the database
      *
-     * @param p PairTable to be removed
+     * @return Number of free pages
      */
-    public void removePairTable(PairTable<?, ?> p) {
-        String table = p.getTable();
-        Integer first = (Integer) p.getFirst();
-        Integer second = (Integer) p.getSecond();
-        String where;
-        List<Entity> rows;
-        Entity ent;
-        Pair<String, String> params = selectParamsPairTable(table);
-
-        where = params.getFirst() + " = " + first + " AND " + params.getSecond() + " = " + second;
-
-        rows = db.getEntityList(table, where);
-        ent = rows.get(0);
-        ent.delete();
+    public long getFreePages() {
+        return DatabaseUtils.longForQuery(db.getDB(), "PRAGMA freelist_count;", null);
     }
 
     /**
-     * Gets a field of last notification
+     * Gets the size of the database file
      *
-     * @param field A field of last notification
-     * @return The field of last notification
+     * @return Size of the database file in bytes
      */
-    public String getFieldOfLastNotification(String field) {
-        String where = null;
-        String orderby = "eventTime DESC";
-        List<Entity> rows = db.getEntityList(DataBaseHelper.DB_TABLE_NOTIFICATIONS, where, orderby);
-        String f = "0";
+    public long getDatabaseFileSize() {
+        return new File(db.getDB().getPath()).length();
+    }
 
-        if (rows.size() > 0) {
-            Entity ent = rows.get(0);
-            f = (String) ent.getValue(field);
-        }
+    /**
+     * Returns free pages of the database to the file system. The work is done on the database
+     * writer thread, so that it never competes with other writes, and each call holds the
+     * write lock only for the pages requested
+     *
+     * @param maxPages Maximum number of pages to be reclaimed
+     * @return Number of pages reclaimed
+     * @throws Exception If the pages could not be reclaimed
+     */
+    public long reclaimFreePages(final int maxPages) throws Exception {
+        return db.write(() -> {
+            SQLiteDatabase sqlite = db.getDB();
+            long freePages = getFreePages();
+
+            //incremental_vacuum frees one page per step of the statement. execSQL runs only
+            //the first step, so the statement is run as a query and read to the end
+            Cursor c = sqlite.rawQuery("PRAGMA incremental_vacuum(" + maxPages + ");", null);
+            try {
+                c.getCount();
+            } finally {
+                c.close();
+            }
 
-        return f;
+            return freePages - getFreePages();
+        });
     }
 
     /**
-     * Gets last time the test was updated
+     * Records that a course has been opened now. The data of the courses not opened for the
+     * longest time is the first one to be evicted when the storage budget is exceeded
      *
-     * @param selectedCourseCode Test's course
-     * @return Last time the test was updated
+     * @param crsCod Course code
      */
-    public String getTimeOfLastTestUpdate(long selectedCourseCode) {
-        String where = "id=" + selectedCourseCode;
-        String orderby = null;
-        List<Entity> rows = db.getEntityList(DataBaseHelper.DB_TABLE_TEST_CONFIG, where, orderby);
-        String f = "0";
-
-        if (rows.size() > 0) {
-            Entity ent = rows.get(0);
-            f = (String) ent.getValue("editTime");
+    public void touchCourse(long crsCod) {
+        if (crsCod <= 0) {
+            return;
         }
 
-        if (f == null) {
-            f = "0";
-        }
+        ContentValues values = new ContentValues();
+        values.put("crsCod", crsCod);
+        values.put("lastAccess", System.currentTimeMillis());
+        values.put("bytes", 0);
 
-        return f;
+        db.upsert(DataBaseHelper.DB_TABLE_COURSE_ACCESS, new String[]{"crsCod"},
+                Collections.singletonList(values), "bytes");
     }
 
     /**
-     * Gets the tags of specified course ordered by tagInd field
+     * Gets the tables holding the downloaded data of a course, with the condition that selects
+     * the rows of the course. The only parameter of the conditions is the course code.
+     * Users are shared between courses, so the roster of the course is counted in full
      *
-     * @param selectedCourseCode Test's course
-     * @return A list of the tags of specified course ordered by tagInd field
+     * @return Pairs of table and condition
      */
-    public List<TestTag> getOrderedCourseTags(long selectedCourseCode) {
-        String[] columns = {"T.id", "T.tagTxt", "Q.qstCod", "Q.tagInd"};
-        String tables = DataBaseHelper.DB_TABLE_TEST_TAGS + " AS T, " + DataBaseHelper.DB_TABLE_TEST_QUESTION_TAGS
-                + " AS Q, " + DataBaseHelper.DB_TABLE_TEST_QUESTIONS_COURSE + " AS C";
-        String where = "T.id=Q.tagCod AND Q.qstCod=C.qstCod AND C.crsCod=" + selectedCourseCode;
-        String orderBy = "T.tagTxt ASC";
-        String groupBy = "T.id";
-        Cursor dbCursor = db.getDB().query(tables, columns, where, null, groupBy, null, orderBy);
-        List<TestTag> result = new ArrayList<>();
-        List<Integer> qstCodList;
-        int idOld = -1;
-        TestTag t = null;
-
-        while (dbCursor.moveToNext()) {
-            int id = dbCursor.getInt(0);
-
-            if (id != idOld) {
-                qstCodList = new ArrayList<>();
-
-                String tagTxt = dbCursor.getString(1);
-                qstCodList.add(dbCursor.getInt(2));
-                int tagInd = dbCursor.getInt(3);
-
-                t = new TestTag(id, qstCodList, tagTxt, tagInd);
-
-                result.add(t);
-                idOld = id;
-            } else {
-                t.addQstCod(dbCursor.getInt(2));
-            }
-        }
-
-        dbCursor.close();
-
-        return result;
+    private static String[][] selectCourseDataTables() {
+        String questions = "SELECT qstCod FROM " + DB_TABLE_TEST_QUESTIONS_COURSE + " WHERE crsCod = ?";
+        String events = "SELECT eventCode FROM " + DB_TABLE_EVENTS_COURSES + " WHERE crsCod = ?";
+        String groups = "SELECT grpCod FROM " + DB_TABLE_GROUPS_COURSES + " WHERE crsCod = ?";
+
+        return new String[][]{
+                {DB_TABLE_TEST_CONFIG, "id = ?"},
+                {DB_TABLE_TEST_QUESTIONS_COURSE, "crsCod = ?"},
+                {DB_TABLE_TEST_QUESTIONS, "id IN (" + questions + ")"},
+                {DB_TABLE_TEST_QUESTION_ANSWERS, "qstCod IN (" + questions + ")"},
+                {DB_TABLE_TEST_ANSWERS, "_id IN (SELECT ansCod FROM " + DB_TABLE_TEST_QUESTION_ANSWERS
+                        + " WHERE qstCod IN (" + questions + "))"},
+                {DB_TABLE_TEST_QUESTION_TAGS, "qstCod IN (" + questions + ")"},
+                {DB_TABLE_USERS_COURSES, "crsCod = ?"},
+                {DB_TABLE_USERS, "userCode IN (SELECT userCode FROM " + DB_TABLE_USERS_COURSES + " WHERE crsCod = ?)"},
+                {DB_TABLE_EVENTS_COURSES, "crsCod = ?"},
+                {DB_TABLE_EVENTS_ATTENDANCES, "id IN (" + events + ")"},
+                {DB_TABLE_USERS_ATTENDANCES, "eventCode IN (" + events + ")"},
+                {DB_TABLE_GROUPS_COURSES, "crsCod = ?"},
+                {DB_TABLE_GROUPS, "id IN (" + groups + ")"},
+                {DB_TABLE_GROUPS_GROUPTYPES, "grpCod IN (" + groups + ")"},
+                {DB_TABLE_GROUP_TYPES, "courseCode = ?"}
+        };
     }
 
     /**
-     * Gets the questions of specified course and tags
+     * Estimates the size of the downloaded data of a course as the length of all the values of
+     * its rows. SQLite does not report the size of a subset of rows, and the page overhead is
+     * roughly the same for every course
      *
-     * @param selectedCourseCode Test's course
-     * @param tagsList           Tag's list of the questions to be extracted
-     * @return A list of the questions of specified course and tags
+     * @param crsCod Course code
+     * @return Size of the data of the course in bytes
      */
-    public List<TestQuestion> getRandomCourseQuestionsByTagAndAnswerType(long selectedCourseCode, List<TestTag> tagsList,
-                                                                         List<String> answerTypesList, int maxQuestions) {
-        String select = "SELECT DISTINCT Q.id, Q.ansType, Q.shuffle, Q.stem, Q.feedback";
-        String tables = " FROM " + DataBaseHelper.DB_TABLE_TEST_QUESTIONS + " AS Q, "
-                + DataBaseHelper.DB_TABLE_TEST_QUESTIONS_COURSE + " AS C, "
-                + DataBaseHelper.DB_TABLE_TEST_QUESTION_TAGS + " AS T";
-        String where = " WHERE Q.id=C.qstCod AND Q.id=T.qstCod AND C.crsCod=" + selectedCourseCode;
-        String orderby = " ORDER BY RANDOM()";
-        String limit = " LIMIT " + maxQuestions;
-        Cursor dbCursorQuestions, dbCursorAnswers;
-        List<TestQuestion> result = new ArrayList<>();
-        List<TestAnswer> answers;
-        int tagsListSize = tagsList.size();
-        int answerTypesListSize = answerTypesList.size();
+    public long getCourseDataSize(long crsCod) {
+        String[] args = {String.valueOf(crsCod)};
+        long bytes = 0;
 
-        if (!tagsList.get(0).getTagTxt().equals("all")) {
-            where += " AND (";
-            for (int i = 0; i < tagsListSize; i++) {
-                where += "T.tagCod=" + tagsList.get(i).getId();
-                if (i < tagsListSize - 1) {
-                    where += " OR ";
-                }
+        for (String[] data : selectCourseDataTables()) {
+            StringBuilder length = new StringBuilder("0");
+
+            for (String column : db.getTable(data[0]).getFieldsToArray()) {
+                length.append(" + IFNULL(length(").append(column).append("), 0)");
             }
-            where += ")";
 
-            if (!answerTypesList.get(0).equals("all")) {
-                where += " AND ";
+            bytes += db.longForQuery("SELECT IFNULL(SUM(" + length + "), 0) FROM "
+                    + data[0] + " WHERE " + data[1], args);
+        }
+
+        return bytes;
+    }
+
+    /**
+     * Accounts the size of the data of every course and, while the total exceeds the budget,
+     * removes the downloaded data of the courses not opened for the longest time. The data is
+     * downloaded again the next time the course is opened.
+     * The courses list, the selected course, the most recently opened course and the
+     * attendances pending to be sent are never removed, even if a single course exceeds the budget
+     *
+     * @param budgetBytes        Maximum size of the data of all the courses, in bytes
+     * @param selectedCourseCode Course being used, whose data is kept
+     * @return Number of courses whose data has been removed
+     * @throws Exception If the data could not be removed
+     */
+    public int evictCourses(long budgetBytes, long selectedCourseCode) throws Exception {
+        long start = System.currentTimeMillis();
+        final Map<Long, Long> sizes = new LinkedHashMap<>();
+        long total = 0;
+        int evicted = 0;
+        Cursor c;
+
+        //Courses not opened since the accounting exists are the first ones to be evicted
+        c = db.getRawCursor("SELECT id FROM " + DB_TABLE_COURSES + " UNION SELECT crsCod FROM "
+                + DB_TABLE_COURSE_ACCESS, null);
+        try {
+            while (c.moveToNext()) {
+                long crsCod = c.getLong(0);
+                long bytes = getCourseDataSize(crsCod);
+
+                sizes.put(crsCod, bytes);
+                total += bytes;
             }
+        } finally {
+            c.close();
         }
 
-        if (!answerTypesList.get(0).equals("all")) {
-            if (tagsList.get(0).getTagTxt().equals("all")) {
-                where += " AND ";
+        writeInTransaction(() -> {
+            for (Map.Entry<Long, Long> size : sizes.entrySet()) {
+                updateCourseDataSize(size.getKey(), size.getValue());
             }
+            return null;
+        });
+
+        Log.i(TAG, "Data of " + sizes.size() + " courses takes " + total + " bytes (budget " + budgetBytes + ")");
 
-            where += "(";
-            for (int i = 0; i < answerTypesListSize; i++) {
-                where += "Q.ansType='" + answerTypesList.get(i) + "'";
+        if (total > budgetBytes) {
+            List<Long> lru = new ArrayList<>();
 
-                if (i < answerTypesListSize - 1) {
-                    where += " OR ";
+            c = db.getRawCursor("SELECT crsCod FROM " + DB_TABLE_COURSE_ACCESS + " ORDER BY lastAccess", null);
+            try {
+                while (c.moveToNext()) {
+                    lru.add(c.getLong(0));
                 }
+            } finally {
+                c.close();
             }
-            where += ")";
-        }
 
-        dbCursorQuestions = db.getDB().rawQuery(select + tables + where + orderby + limit, null);
+            //The most recently opened course is kept, it is the one the user is working with
+            //even if the application is not running and there is no selected course
+            if (!lru.isEmpty()) {
+                lru.remove(lru.size() - 1);
+            }
 
-        select = "SELECT DISTINCT A._id, A.ansInd, A.answer, A.correct, A.answerFeedback";
-        tables = " FROM " + DataBaseHelper.DB_TABLE_TEST_ANSWERS + " AS A, "
-                + DataBaseHelper.DB_TABLE_TEST_QUESTION_ANSWERS + " AS Q";
-        orderby = " ORDER BY A.ansInd";
+            for (final long crsCod : lru) {
+                Long before = sizes.get(crsCod);
 
-        while (dbCursorQuestions.moveToNext()) {
-            int qstCod = dbCursorQuestions.getInt(0);
-            String ansType = dbCursorQuestions.getString(1);
-            boolean shuffle = Utils.parseStringBool(dbCursorQuestions.getString(2));
-            String stem = dbCursorQuestions.getString(3);
-            String questionFeedback = dbCursorQuestions.getString(4);
-            TestQuestion q = new TestQuestion(qstCod, selectedCourseCode, stem, ansType, shuffle, questionFeedback);
+                if (total <= budgetBytes) {
+                    break;
+                }
 
-            where = " WHERE Q.qstCod=" + qstCod + " AND Q.ansCod=A._id";
-            dbCursorAnswers = db.getDB().rawQuery(select + tables + where + orderby, null);
-            answers = new ArrayList<>();
-            while (dbCursorAnswers.moveToNext()) {
-                long ansCod = dbCursorAnswers.getLong(0);
-                int ansInd = dbCursorAnswers.getInt(1);
-                String answer = dbCursorAnswers.getString(2);
-                boolean correct = dbCursorAnswers.getString(3).equals("true");
-                String aswerFeedback = dbCursorAnswers.getString(4);
+                //Courses opened for the first time after the accounting have no size yet
+                if ((crsCod == selectedCourseCode) || (before == null) || (before == 0)) {
+                    continue;
+                }
 
-                answers.add(new TestAnswer(ansCod, ansInd, qstCod, correct, answer, aswerFeedback));
-            }
+                long after = writeInTransaction(() -> {
+                    removeCourseData(crsCod);
 
-            q.setAnswers(answers);
-            result.add(q);
+                    long bytes = getCourseDataSize(crsCod);
+                    updateCourseDataSize(crsCod, bytes);
+                    return bytes;
+                });
 
-            dbCursorAnswers.close();
+                total -= before - after;
+                evicted++;
+
+                Log.i(TAG, "Evicted data of course " + crsCod + ": " + before + " -> " + after + " bytes");
+            }
         }
 
-        dbCursorQuestions.close();
+        Log.i(TAG, "Evicted data of " + evicted + " courses in " + (System.currentTimeMillis() - start)
+                + " ms, " + total + " bytes left");
 
-        return result;
+        return evicted;
     }
 
     /**
-     * Clean old notifications by size
+     * Gets the code of a course by its position in the courses list, ordered by short name
+     * as the courses spinner shows them
      *
-     * @param size Max table size
+     * @param position Position of the course in the courses list
+     * @return Course code or -1 if there is no course in that position
      */
-    public void cleanOldNotificationsBySize(int size) {
-        String where = null;
-        String orderby = "CAST(eventTime as INTEGER) ASC";
-        List<Entity> rows = db.getEntityList(DataBaseHelper.DB_TABLE_NOTIFICATIONS, where, orderby);
-        int numRows = rows.size();
-        int numDeletions = numRows - size;
-
-        if (numRows > size) {
-            for (int i = 0; i < numDeletions; i++)
-                rows.get(i).delete();
+    public long getCourseCodeAt(int position) {
+        if (position < 0) {
+            return -1;
         }
+
+        return db.longForQuery("SELECT IFNULL((SELECT id FROM " + DB_TABLE_COURSES
+                + " ORDER BY shortName LIMIT 1 OFFSET ?), -1)", new String[]{String.valueOf(position)});
     }
 
     /**
-     * Clean old notifications by age
+     * Stores the size of the data of a course
      *
-     * @param age Max age in seconds
-     * @return numRowsDeleted Number of deleted notifications
+     * @param crsCod Course code
+     * @param bytes  Size of the data of the course in bytes
      */
-    public int cleanOldNotificationsByAge(int age) {
-        long now = Calendar.getInstance().getTime().getTime() / 1000; // in seconds
-
-        // Remove notifications older than 'age' seconds
-        String where = "CAST(eventTime as INTEGER) < " + String.valueOf(now - age);
+    private void updateCourseDataSize(long crsCod, long bytes) {
+        ContentValues values = new ContentValues();
+        values.put("crsCod", crsCod);
+        values.put("lastAccess", 0);
+        values.put("bytes", bytes);
+
+        db.upsert(DataBaseHelper.DB_TABLE_COURSE_ACCESS, new String[]{"crsCod"},
+                Collections.singletonList(values), "lastAccess");
+    }
 
-        return removeAllRows(DataBaseHelper.DB_TABLE_NOTIFICATIONS, where);
+    /**
+     * Removes the downloaded data of a course: tests, roster, events and groups. The events
+     * with attendances pending to be sent are kept with their attendances. Users are removed
+     * only if no course or event references them any more. Must be run in a transaction
+     *
+     * @param crsCod Course code
+     */
+    private void removeCourseData(long crsCod) {
+        String course = String.valueOf(crsCod);
+        String questions = "SELECT qstCod FROM " + DB_TABLE_TEST_QUESTIONS_COURSE + " WHERE crsCod = ?";
+        String events = "SELECT eventCode FROM " + DB_TABLE_EVENTS_COURSES + " WHERE crsCod = ?"
+                + " AND eventCode NOT IN (SELECT id FROM " + DB_TABLE_EVENTS_ATTENDANCES + " WHERE hex(status) = ?)";
+        String groups = "SELECT grpCod FROM " + DB_TABLE_GROUPS_COURSES + " WHERE crsCod = ?";
+        String[] courseArgs = {course};
+        String[] eventArgs = {course, Crypto.toHex(crypto.encrypt("pending"))};
+
+        //Tests
+        db.delete(DB_TABLE_TEST_ANSWERS, "_id IN (SELECT ansCod FROM " + DB_TABLE_TEST_QUESTION_ANSWERS
+                + " WHERE qstCod IN (" + questions + "))", courseArgs);
+        db.delete(DB_TABLE_TEST_QUESTION_ANSWERS, "qstCod IN (" + questions + ")", courseArgs);
+        db.delete(DB_TABLE_TEST_QUESTION_TAGS, "qstCod IN (" + questions + ")", courseArgs);
+        db.delete(DB_TABLE_TEST_QUESTIONS, "id IN (" + questions + ")", courseArgs);
+        db.delete(DB_TABLE_TEST_QUESTIONS_COURSE, "crsCod = ?", courseArgs);
+        db.delete(DB_TABLE_TEST_TAGS, "id NOT IN (SELECT tagCod FROM " + DB_TABLE_TEST_QUESTION_TAGS + ")", null);
+        //Without configuration, the whole test is downloaded again
+        db.delete(DB_TABLE_TEST_CONFIG, "id = ?", courseArgs);
+
+        //Events not pending to be sent
+        db.delete(DB_TABLE_USERS_ATTENDANCES, "eventCode IN (" + events + ")", eventArgs);
+        db.delete(DB_TABLE_EVENTS_ATTENDANCES, "id IN (" + events + ")", eventArgs);
+        db.delete(DB_TABLE_EVENTS_COURSES, "crsCod = ? AND eventCode NOT IN (SELECT id FROM "
+                + DB_TABLE_EVENTS_ATTENDANCES + ")", courseArgs);
+
+        //Roster
+        db.delete(DB_TABLE_USERS_COURSES, "crsCod = ?", courseArgs);
+        db.delete(DB_TABLE_USERS, "userCode NOT IN (SELECT userCode FROM " + DB_TABLE_USERS_COURSES + ")"
+                + " AND userCode NOT IN (SELECT userCode FROM " + DB_TABLE_USERS_ATTENDANCES + ")", null);
+
+        //Groups
+        db.delete(DB_TABLE_GROUPS_GROUPTYPES, "grpCod IN (" + groups + ")", courseArgs);
+        db.delete(DB_TABLE_GROUPS, "id IN (" + groups + ")", courseArgs);
+        db.delete(DB_TABLE_GROUPS_COURSES, "crsCod = ?", courseArgs);
+        db.delete(DB_TABLE_GROUP_TYPES, "courseCode = ?", courseArgs);
     }
 
     /**
-     * Encrypts the notifications data
+     * Times the main read paths of the application with the storage profile applied when the
+     * database was opened: the notifications list, the roster of the event with more users and
+     * the assembly of a test of the course with more questions. The profile is not switched
+     * here because it is applied once per connection, so profiles are compared across the
+     * reports of low-ram and high-ram devices. It reads the whole data set several times, so it
+     * should only be run in debug builds while the device is idle
+     *
+     * @param runs Number of times each read path is run
+     * @return Report with the storage profile and the mean time of each read path
      */
-    public void encryptNotifications() {
-        List<Entity> rows = db.getEntityList(DataBaseHelper.DB_TABLE_NOTIFICATIONS);
+    public String benchmarkStorageProfile(int runs) {
+        long eventCode = db.longForQuery("SELECT IFNULL((SELECT eventCode FROM "
+                + DB_TABLE_USERS_ATTENDANCES + " GROUP BY eventCode ORDER BY COUNT(*) DESC LIMIT 1), 0)", null);
+        long crsCod = db.longForQuery("SELECT IFNULL((SELECT crsCod FROM "
+                + DB_TABLE_TEST_QUESTIONS_COURSE + " GROUP BY crsCod ORDER BY COUNT(*) DESC LIMIT 1), 0)", null);
+        List<TestTag> allTags = Collections.singletonList(new TestTag(0, "all", 0));
+        List<String> allAnswerTypes = Collections.singletonList("all");
+        long notificationsTime = 0;
+        long rosterTime = 0;
+        long testTime = 0;
+
+        for (int i = 0; i < runs; i++) {
+            long start = System.nanoTime();
+            getRowsByRowId(DB_TABLE_NOTIFICATIONS, null, null, null, "eventTime DESC");
+            notificationsTime += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            Cursor c = getUsersEventCursor((int) eventCode);
+            try {
+                while (c.moveToNext()) {
+                    c.getString(0);
+                }
+            } finally {
+                c.close();
+            }
+            rosterTime += System.nanoTime() - start;
 
-        for (Entity ent : rows) {
-            ent.setValue("eventType", crypto.encrypt(ent.getString("eventType")));
-            ent.setValue("userSurname1", crypto.encrypt(ent.getString("userSurname1")));
-            ent.setValue("userSurname2", crypto.encrypt(ent.getString("userSurname2")));
-            ent.setValue("userFirstname", crypto.encrypt(ent.getString("userFirstname")));
-            ent.setValue("userPhoto", crypto.encrypt(ent.getString("userPhoto")));
-            ent.setValue("location", crypto.encrypt(ent.getString("location")));
-            ent.setValue("summary", crypto.encrypt(ent.getString("summary")));
-            ent.setValue("content", crypto.encrypt(ent.getString("content")));
-            ent.save();
+            start = System.nanoTime();
+            getRandomCourseQuestionsByTagAndAnswerType(crsCod, allTags, allAnswerTypes, 20);
+            testTime += System.nanoTime() - start;
         }
+
+        return "Storage profile " + db.getStorageProfile() + " (" + runs + " runs, mean ms): notifications "
+                + (notificationsTime / runs / 1000000) + ", roster " + (rosterTime / runs / 1000000)
+                + ", test " + (testTime / runs / 1000000);
     }
 
     /**
-     * Encrypts the users data
+     * Times the lookup of single notifications by their code with the code concatenated as a
+     * literal, which compiles a new statement for every code, and with the code bound to a ?
+     * placeholder by {@link QueryBuilder}, which reuses the compiled statement. The query cache
+     * is not used, so every lookup reaches the database. It should only be run in debug builds
+     * while the device is idle
+     *
+     * @param lookups Number of notifications looked up in each way
+     * @return Report with the time of each way of looking up the notifications
      */
-    public void encryptUsers() {
-        List<Entity> rows = db.getEntityList(DataBaseHelper.DB_TABLE_USERS);
+    public String benchmarkHotLookups(int lookups) {
+        List<Long> codes = new ArrayList<>(lookups);
+        Cursor c = db.getRawCursor("SELECT notifCode FROM " + DB_TABLE_NOTIFICATIONS + " LIMIT ?",
+                new String[]{String.valueOf(lookups)});
+        long literalTime;
+        long boundTime;
+
+        try {
+            while (c.moveToNext()) {
+                codes.add(c.getLong(0));
+            }
+        } finally {
+            c.close();
+        }
 
-        for (Entity ent : rows) {
-            ent.setValue("userID", crypto.encrypt(ent.getString("userID")));
-            ent.setValue("userNickname", crypto.encrypt(ent.getString("userNickname")));
-            ent.setValue("userSurname1", crypto.encrypt(ent.getString("userSurname1")));
-            ent.setValue("userSurname2", crypto.encrypt(ent.getString("userSurname2")));
-            ent.setValue("userFirstname", crypto.encrypt(ent.getString("userFirstname")));
-            ent.setValue("userPhoto", crypto.encrypt(ent.getString("photoPath")));
-            ent.save();
+        //Missing codes are looked up too, they compile the same statements
+        for (int i = codes.size(); i < lookups; i++) {
+            codes.add((long) -(i + 1));
+        }
+
+        literalTime = System.nanoTime();
+        for (long code : codes) {
+            db.getEntityList(DB_TABLE_NOTIFICATIONS, null, "notifCode = " + code, null, null, null);
         }
+        literalTime = System.nanoTime() - literalTime;
+
+        boundTime = System.nanoTime();
+        for (long code : codes) {
+            getEntityList(DB_TABLE_NOTIFICATIONS, QueryBuilder.where("notifCode", code));
+        }
+        boundTime = System.nanoTime() - boundTime;
+
+        return "Hot lookups (" + lookups + " notifications by code, ms): literal " + (literalTime / 1000000)
+                + ", bound " + (boundTime / 1000000);
     }
 
     /**
-     * Reencrypts the notifications data
+     * Times storing a batch of notifications row by row, as Entity.save() does with the _id
+     * assigned by SQLite in the INSERT itself, and as a single batch upsert. Every run is
+     * rolled back, so the stored notifications are not changed. It should only be run in
+     * debug builds while the device is idle
+     *
+     * @param rows Number of notifications stored in each run
+     * @return Report with the time of each way of storing the notifications
+     * @throws Exception If the notifications could not be written
      */
-    public void reencryptNotifications() {
-        List<Entity> rows = db.getEntityList(DataBaseHelper.DB_TABLE_NOTIFICATIONS);
-        String type, surname1, surname2, firstname, photo, location, summary, content;
+    public String benchmarkNotificationIngestion(int rows) throws Exception {
+        final List<SWADNotification> notifications = new ArrayList<>(rows);
+
+        //Negative codes never collide with the notifications downloaded from SWAD
+        for (int i = 1; i <= rows; i++) {
+            notifications.add(new SWADNotification(-i, i, "message", System.currentTimeMillis() / 1000,
+                    "nickname" + i, "surname1", "surname2", "firstname", "", "location", "summary " + i,
+                    0, "content " + i, false, false));
+        }
 
-        for (Entity ent : rows) {
-            type = crypto.encrypt(OldCrypto.decrypt(mCtx, DBKey, ent.getString("eventType")));
-            surname1 = crypto.encrypt(OldCrypto.decrypt(mCtx, DBKey, ent.getString("userSurname1")));
-            surname2 = crypto.encrypt(OldCrypto.decrypt(mCtx, DBKey, ent.getString("userSurname2")));
-            firstname = crypto.encrypt(OldCrypto.decrypt(mCtx, DBKey, ent.getString("userFirstname")));
-            photo = crypto.encrypt(OldCrypto.decrypt(mCtx, DBKey, ent.getString("userPhoto")));
-            location = crypto.encrypt(OldCrypto.decrypt(mCtx, DBKey, ent.getString("location")));
-            summary = crypto.encrypt(OldCrypto.decrypt(mCtx, DBKey, ent.getString("summary")));
-            content = crypto.encrypt(OldCrypto.decrypt(mCtx, DBKey, ent.getString("content")));
+        long rowByRowTime = db.write(() -> {
+            long start = System.nanoTime();
 
-            ent.setValue("eventType", type);
-            ent.setValue("userSurname1", surname1);
-            ent.setValue("userSurname2", surname2);
-            ent.setValue("userFirstname", firstname);
-            ent.setValue("userPhoto", photo);
-            ent.setValue("location", location);
-            ent.setValue("summary", summary);
-            ent.setValue("content", content);
-            ent.save();
-        }
+            db.startTransaction();
+            try {
+                for (SWADNotification n : notifications) {
+                    insertNotification(n);
+                }
+                return System.nanoTime() - start;
+            } finally {
+                //Not marked as successful, so the notifications are rolled back
+                db.endTransaction();
+            }
+        });
+
+        long batchTime = db.write(() -> {
+            long start = System.nanoTime();
+
+            db.startTransaction();
+            try {
+                upsertRows(DB_TABLE_NOTIFICATIONS, notifications);
+                return System.nanoTime() - start;
+            } finally {
+                db.endTransaction();
+            }
+        });
+
+        return "Notification ingestion (" + rows + " rows, ms): row by row " + (rowByRowTime / 1000000)
+                + ", batch upsert " + (batchTime / 1000000);
     }
 
     /**
-     * Empty table from database
+     * Times a backup and a restore of the whole database with the XML format, the binary format
+     * and the compressed binary format, and reports the size of each backup. The tables are
+     * emptied before each restore and every restore is rolled back, so the database is not
+     * changed. It should only be run in debug builds while the device is idle
      *
-     * @param table Table to be emptied
+     * @return Report with the time and size of each backup format
+     * @throws Exception If the backups could not be written or restored
      */
-    public void emptyTable(String table) {
-        db.emptyTable(table);
-        Log.d(TAG, "Emptied table " + table);
+    public String benchmarkBackup() throws Exception {
+        final File xml = new File(mCtx.getCacheDir(), "benchmark_backup.xml");
+        final File binary = new File(mCtx.getCacheDir(), "benchmark_backup.bin");
+        final File compressed = new File(mCtx.getCacheDir(), "benchmark_backup.bin.gz");
+
+        //The backups and restores run in a single writer task, so no other write changes the
+        //database between them
+        return db.write(() -> {
+            try {
+                long xmlBackupTime = System.nanoTime();
+                db.backup(xml.getPath(), true);
+                xmlBackupTime = System.nanoTime() - xmlBackupTime;
+
+                long binaryBackupTime = System.nanoTime();
+                int rows = db.backupBinary(binary.getPath(), true, false);
+                binaryBackupTime = System.nanoTime() - binaryBackupTime;
+
+                long compressedBackupTime = System.nanoTime();
+                db.backupBinary(compressed.getPath(), true, true);
+                compressedBackupTime = System.nanoTime() - compressedBackupTime;
+
+                return "Backup (" + rows + " rows, ms / bytes): XML " + (xmlBackupTime / 1000000)
+                        + " / " + xml.length() + ", binary " + (binaryBackupTime / 1000000)
+                        + " / " + binary.length() + ", compressed binary " + (compressedBackupTime / 1000000)
+                        + " / " + compressed.length()
+                        + "\nRestore (ms): XML " + (timeRolledBackRestore(xml) / 1000000)
+                        + ", binary " + (timeRolledBackRestore(binary) / 1000000)
+                        + ", compressed binary " + (timeRolledBackRestore(compressed) / 1000000);
+            } finally {
+                xml.delete();
+                binary.delete();
+                compressed.delete();
+            }
+        });
     }
 
     /**
-     * Delete table from database
+     * Times the restore of a backup into the emptied tables. The transaction is rolled back,
+     * so the database is not changed. It must be run on the database writer thread
      *
-     * @param table Table to be deleted
+     * @param backup Backup file
+     * @return Time of the restore, in nanoseconds
+     * @throws Exception If the backup could not be restored
      */
-    public void deleteTable(String table) {
-        if(isTableExisting(table)) {
-            db.deleteTable(table);
-            Log.d(TAG, "Deleted table " + table);
-        } else {
-            Log.e(TAG, "Table " + table + " doesn't exists. Can't be deleted");
+    private long timeRolledBackRestore(File backup) throws Exception {
+        db.startTransaction();
+        try {
+            db.emptyTables();
+
+            long start = System.nanoTime();
+            db.restore(backup.getPath());
+            return System.nanoTime() - start;
+        } finally {
+            //Not marked as successful, so the emptied tables and the restored rows are rolled back
+            db.endTransaction();
         }
     }
 
     /**
-     * Checks if a table exists in database
-     * @param tableName Name of the table to be checked
-     * @return true is table exists
-     *         false otherwise
+     * Creates the indexes and counters that are missing. It is run when the database is opened,
+     * after the pending migration steps
      */
-    public boolean isTableExisting(String tableName) {
-        Cursor cursor = db.rawQuery("select DISTINCT tbl_name from sqlite_master where tbl_name = '"+tableName+"'", null);
-        if(cursor!=null) {
-            if(cursor.getCount()>0) {
-                cursor.close();
-                return true;
-            }
-            cursor.close();
-        }
-        return false;
+    public void initializeDB() {
+        createIndexes(db.getDB());
+        createCounters(db.getDB());
     }
 
     /**
-     * Delete all tables from database
+     * Creates the indexes of the database if they do not exist
+     *
+     * @param sqlite Database
      */
-    public void clearDB() {
-        db.deleteTables();
-        Log.i(TAG, "All tables deleted");
+    private void createIndexes(SQLiteDatabase sqlite) {
+        //Indexes for tests
+        sqlite.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS " + DataBaseHelper.DB_TABLE_TEST_QUESTION_TAGS + "_unique on "
+                + DataBaseHelper.DB_TABLE_TEST_QUESTION_TAGS + "(qstCod, tagCod);");
+        sqlite.execSQL("CREATE INDEX IF NOT EXISTS " + DataBaseHelper.DB_TABLE_TEST_QUESTION_ANSWERS + "_question on "
+                + DataBaseHelper.DB_TABLE_TEST_QUESTION_ANSWERS + "(qstCod);");
+
+        //Indexes for sorting notifications by time, cleaning old ones and listing them by read status
+        sqlite.execSQL("CREATE INDEX IF NOT EXISTS " + DataBaseHelper.DB_TABLE_NOTIFICATIONS + "_time on "
+                + DataBaseHelper.DB_TABLE_NOTIFICATIONS + "(eventTime);");
+        //The notifications list is paged by (eventTime, notifCode) inside each read status
+        sqlite.execSQL("DROP INDEX IF EXISTS " + DataBaseHelper.DB_TABLE_NOTIFICATIONS + "_seen;");
+        sqlite.execSQL("CREATE INDEX IF NOT EXISTS " + DataBaseHelper.DB_TABLE_NOTIFICATIONS + "_seen_page on "
+                + DataBaseHelper.DB_TABLE_NOTIFICATIONS + "(seenLocal, eventTime, notifCode);");
+
+        //Index for the accounting of the data of each course
+        sqlite.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS " + DataBaseHelper.DB_TABLE_COURSE_ACCESS + "_key on "
+                + DataBaseHelper.DB_TABLE_COURSE_ACCESS + "(crsCod);");
+
+        //Indexes for the natural keys used by upserts
+        String[] tables = {DataBaseHelper.DB_TABLE_USERS, DataBaseHelper.DB_TABLE_USERS_ATTENDANCES,
+                DataBaseHelper.DB_TABLE_EVENTS_ATTENDANCES, DataBaseHelper.DB_TABLE_EVENTS_COURSES,
+                DataBaseHelper.DB_TABLE_GROUPS, DataBaseHelper.DB_TABLE_GROUPS_COURSES,
+                DataBaseHelper.DB_TABLE_GROUPS_GROUPTYPES, DataBaseHelper.DB_TABLE_TEST_QUESTIONS,
+                DataBaseHelper.DB_TABLE_TEST_QUESTIONS_COURSE, DataBaseHelper.DB_TABLE_TEST_TAGS,
+                DataBaseHelper.DB_TABLE_NOTIFICATIONS};
+        for (String table : tables) {
+            sqlite.execSQL("CREATE INDEX IF NOT EXISTS " + table + "_key on "
+                    + table + "(" + TextUtils.join(", ", selectNaturalKey(table)) + ");");
+        }
     }
 
     /**
-     * Clean data of all tables from database. Removes users photos from external storage
+     * Creates the counter tables and the triggers that keep them up to date inside the same
+     * transaction as every write to their source table, so that the counts are read in O(1):
+     * not seen notifications per type, present and absent users per event and questions per tag.
+     * If any trigger is missing (new database or source table rebuilt) the counters are
+     * recomputed from their source tables before creating the triggers again
+     *
+     * @param sqlite Database
      */
-    public void cleanTables() {
-        Log.i(TAG, "Emptying all tables");
+    private void createCounters(SQLiteDatabase sqlite) {
+        String notifType = "IFNULL(%s.eventType, X'')";
+        String[][] counters = {
+                //Counter table, source table, counter table definition, initial contents
+                {DB_COUNTER_NOTIFICATIONS_UNREAD, DB_TABLE_NOTIFICATIONS,
+                        "(eventType BLOB PRIMARY KEY NOT NULL, unread INTEGER NOT NULL DEFAULT 0)",
+                        "SELECT " + String.format(notifType, DB_TABLE_NOTIFICATIONS) + ", COUNT(*) FROM "
+                                + DB_TABLE_NOTIFICATIONS + " WHERE seenLocal = 0 GROUP BY 1"},
+                {DB_COUNTER_USERS_ATTENDANCES, DB_TABLE_USERS_ATTENDANCES,
+                        "(eventCode INTEGER PRIMARY KEY, present INTEGER NOT NULL DEFAULT 0,"
+                                + " absent INTEGER NOT NULL DEFAULT 0)",
+                        "SELECT eventCode, SUM(present <> 0), SUM(present = 0) FROM "
+                                + DB_TABLE_USERS_ATTENDANCES + " GROUP BY eventCode"},
+                {DB_COUNTER_TEST_QUESTION_TAGS, DB_TABLE_TEST_QUESTION_TAGS,
+                        "(tagCod INTEGER PRIMARY KEY, questions INTEGER NOT NULL DEFAULT 0)",
+                        "SELECT tagCod, COUNT(*) FROM " + DB_TABLE_TEST_QUESTION_TAGS + " GROUP BY tagCod"}
+        };
+        String[] events = {"insert", "delete", "update"};
+        boolean complete = true;
+
+        for (String[] counter : counters) {
+            for (String event : events) {
+                complete &= DatabaseUtils.longForQuery(sqlite, "SELECT COUNT(*) FROM sqlite_master"
+                        + " WHERE type = 'trigger' AND name = ?", new String[]{counter[0] + "_" + event}) > 0;
+            }
+        }
 
-        db.emptyTables();
-        compactDB();
+        if (complete) {
+            return;
+        }
 
-        Log.i(TAG, "All tables emptied");
+        long start = System.currentTimeMillis();
+
+        sqlite.beginTransaction();
+        try {
+            for (String[] counter : counters) {
+                for (String event : events) {
+                    sqlite.execSQL("DROP TRIGGER IF EXISTS " + counter[0] + "_" + event + ";");
+                }
+
+                sqlite.execSQL("CREATE TABLE IF NOT EXISTS " + counter[0] + " " + counter[2] + ";");
+                sqlite.execSQL("DELETE FROM " + counter[0] + ";");
+                sqlite.execSQL("INSERT INTO " + counter[0] + " " + counter[3] + ";");
+            }
+
+            //Not seen notifications per type
+            String newType = String.format(notifType, "NEW");
+            String oldType = String.format(notifType, "OLD");
+            String increment = "INSERT OR IGNORE INTO " + DB_COUNTER_NOTIFICATIONS_UNREAD + " (eventType)"
+                    + " SELECT " + newType + " WHERE NEW.seenLocal = 0;"
+                    + " UPDATE " + DB_COUNTER_NOTIFICATIONS_UNREAD + " SET unread = unread + 1"
+                    + " WHERE NEW.seenLocal = 0 AND eventType = " + newType + ";";
+            String decrement = "UPDATE " + DB_COUNTER_NOTIFICATIONS_UNREAD + " SET unread = unread - 1"
+                    + " WHERE OLD.seenLocal = 0 AND eventType = " + oldType + ";";
+            createCounterTriggers(sqlite, DB_COUNTER_NOTIFICATIONS_UNREAD, DB_TABLE_NOTIFICATIONS,
+                    "seenLocal, eventType", increment, decrement);
+
+            //Present and absent users per event
+            increment = "INSERT OR IGNORE INTO " + DB_COUNTER_USERS_ATTENDANCES + " (eventCode) VALUES (NEW.eventCode);"
+                    + " UPDATE " + DB_COUNTER_USERS_ATTENDANCES + " SET present = present + (NEW.present <> 0),"
+                    + " absent = absent + (NEW.present = 0) WHERE eventCode = NEW.eventCode;";
+            decrement = "UPDATE " + DB_COUNTER_USERS_ATTENDANCES + " SET present = present - (OLD.present <> 0),"
+                    + " absent = absent - (OLD.present = 0) WHERE eventCode = OLD.eventCode;";
+            createCounterTriggers(sqlite, DB_COUNTER_USERS_ATTENDANCES, DB_TABLE_USERS_ATTENDANCES,
+                    "eventCode, present", increment, decrement);
+
+            //Questions per tag
+            increment = "INSERT OR IGNORE INTO " + DB_COUNTER_TEST_QUESTION_TAGS + " (tagCod) VALUES (NEW.tagCod);"
+                    + " UPDATE " + DB_COUNTER_TEST_QUESTION_TAGS + " SET questions = questions + 1"
+                    + " WHERE tagCod = NEW.tagCod;";
+            decrement = "UPDATE " + DB_COUNTER_TEST_QUESTION_TAGS + " SET questions = questions - 1"
+                    + " WHERE tagCod = OLD.tagCod;";
+            createCounterTriggers(sqlite, DB_COUNTER_TEST_QUESTION_TAGS, DB_TABLE_TEST_QUESTION_TAGS,
+                    "tagCod", increment, decrement);
+
+            sqlite.setTransactionSuccessful();
+        } finally {
+            sqlite.endTransaction();
+        }
+
+        Log.i(TAG, "Counters rebuilt in " + (System.currentTimeMillis() - start) + " ms");
     }
 
     /**
-     * Begin a database transaction
+     * Creates the insert, delete and update triggers that maintain a counter table
+     *
+     * @param sqlite    Database
+     * @param counter   Counter table
+     * @param table     Source table
+     * @param columns   Columns of the source table the counter depends on
+     * @param increment Statements that count the NEW row
+     * @param decrement Statements that discount the OLD row
      */
-    public synchronized void beginTransaction() {
-    	while(db.inTransaction()) {
-	    	try {
-				wait();
-			} catch (InterruptedException e) {
-                Log.e(TAG, e.getMessage(), e);
-			}
-    	}
-    	
-        db.startTransaction();
-        
-        Log.i(TAG, "Database locked");
+    private static void createCounterTriggers(SQLiteDatabase sqlite, String counter, String table, String columns,
+                                              String increment, String decrement) {
+        sqlite.execSQL("CREATE TRIGGER " + counter + "_insert AFTER INSERT ON " + table
+                + " BEGIN " + increment + " END;");
+        sqlite.execSQL("CREATE TRIGGER " + counter + "_delete AFTER DELETE ON " + table
+                + " BEGIN " + decrement + " END;");
+        sqlite.execSQL("CREATE TRIGGER " + counter + "_update AFTER UPDATE OF " + columns + " ON " + table
+                + " BEGIN " + decrement + " " + increment + " END;");
     }
 
     /**
-     * End a database transaction
+     * Upgrades the database structure. It is run when the database is opened, so it only
+     * has to be called to upgrade it again without reopening it
      */
-    public synchronized void endTransaction(boolean successfulTransaction) {
-    	if(db.inTransaction()) {
-    		if(successfulTransaction) {
-    			db.successfulTransaction();
-    		}
-    		
-	        db.endTransaction();
-	        
-	        Log.i(TAG, "Database unlocked");
-	        
-	        notifyAll();
-    	} else {
-    	    Exception e = new DataBaseHelperException("No active transactions");
-            Log.e(TAG, e.getMessage(), e);
-    	}
+    public void upgradeDB() {
+        upgradeDB(null);
     }
-    
-    public boolean isDbInTransaction() {
-    	return db.inTransaction();
+
+    /**
+     * Upgrades the database structure. New tables and columns have already been created
+     * by the framework with CREATE TABLE and ALTER TABLE when the database was opened, so
+     * only the changes that cannot be expressed in tables.xml are run here
+     *
+     * @param listener Receives the progress of the migration. Can be null
+     */
+    public synchronized void upgradeDB(MigrationEngine.ProgressListener listener) {
+        int applied;
+
+        Log.i(TAG, "Upgrading database");
+
+        applied = new MigrationEngine(createMigrations()).migrate(db.getDB(), db.getVersion(), (step, index, count) -> {
+            Log.i(TAG, "Migration step " + (index + 1) + "/" + count + ": " + step.getDescription());
+
+            if (listener != null) {
+                listener.onProgress(step, index, count);
+            }
+        });
+
+        if (applied > 0) {
+            db.notifyAllTablesChanged();
+        }
+
+        Log.i(TAG, "Database upgraded (" + applied + " migration steps applied)");
+
+        //The pages freed by the migration are returned to the file system by the maintenance job
+        initializeDB();
+        upgradePending = false;
     }
 
     /**
-     * Compact the database
+     * Runs the migrations left pending when the database was opened with the upgrade deferred.
+     * They run on the database writer thread, so the writes of other components wait for them.
+     * It must not be called from the main thread
+     *
+     * @param listener Receives the progress of the migration. Can be null
+     * @throws Exception If the database could not be upgraded
      */
-    private void compactDB() {
-        Log.i(TAG, "Compacting database");
-        db.getDB().execSQL("VACUUM;");
-        Log.i(TAG, "Database compacted");
+    public void runPendingUpgrade(MigrationEngine.ProgressListener listener) throws Exception {
+        boolean retained = retain();
+
+        try {
+            db.write(() -> {
+                upgradeDB(listener);
+                return null;
+            });
+        } finally {
+            if (retained) {
+                release();
+            }
+        }
     }
 
     /**
-     * Initializes the database structure for the first use
+     * Indicates if the database was opened with the upgrade deferred and the pending migrations
+     * have not been run yet with {@link #runPendingUpgrade(MigrationEngine.ProgressListener)}
+     *
+     * @return true if there are pending migrations
      */
-    public void initializeDB() {
-        //Index for tests
-        db.getDB().execSQL("CREATE UNIQUE INDEX IF NOT EXISTS " + DataBaseHelper.DB_TABLE_TEST_QUESTION_TAGS + "_unique on "
-                + DataBaseHelper.DB_TABLE_TEST_QUESTION_TAGS + "(qstCod, tagCod);");
+    public boolean isUpgradePending() {
+        return upgradePending;
     }
 
     /**
-     * Upgrades the database structure
+     * Defers the pending migrations of the database while it is opened from the main thread.
+     * The caller must then check {@link #isUpgradePending()} and run them in background
+     *
+     * @param deferred true to defer the migrations of the database opened next
      */
-    public void upgradeDB() {
-        int dbVersion = db.getDB().getVersion();
+    public static void setUpgradeDeferred(boolean deferred) {
+        upgradeDeferred = deferred;
+    }
 
-        Log.i(TAG, "Upgrading database");
+    /**
+     * Creates the steps of the database migration
+     *
+     * @return Steps of the migration
+     */
+    private List<Migration> createMigrations() {
+        List<Migration> migrations = new ArrayList<>();
 
-		/* 
-		 * Modify database keeping data:
-		 * 1. Create temporary table __DB_TABLE_GROUPS (with the new model)
-		 * 2. insert in the temporary table all the data (in the new model) from the old table
-		 * 3. drop table DB_TABLE_GROUPS
-		 * 4. create DB_TABLE_GROUPS with the new model. 
-		 * 5. insert in DB_TABLE_GROUPS all the data from __DB_TABLE_GROUPS
-		 * 6. insert in DB_TABLE_GROUPS_GROUPTYPES the relationships between the deleted groups and group types
-		 * 7. drop __DB_TABLE_GROUPS
-		 * Just to modify database without to keep data just 7,6.
-		 * 
-		 * */
-        
         /* version 15-16
-		 * changes on notifications table: 
-		 * - new field notifCode
-		 * - changed field id to eventCode
-		 * */
-        if (dbVersion == 16) {
-        	//without keeping data
-        	db.getDB().execSQL("DROP TABLE " + DataBaseHelper.DB_TABLE_NOTIFICATIONS + ";");
-            db.getDB().execSQL("CREATE TABLE " + DataBaseHelper.DB_TABLE_NOTIFICATIONS + " (_id integer primary key autoincrement, notifCode long, eventCode long, eventType text, eventTime text,"
-                    + " userSurname1 text, userSurname2 text, userFirstname text, userPhoto text, location text, summary text, status text, content text, seenLocal text, seenRemote text); ");
-        }
+         * changes on notifications table:
+         * - new field notifCode
+         * - changed field id to eventCode
+         * notifCode and eventCode are added by ALTER TABLE. Old notifications have no notifCode,
+         * so they are discarded and downloaded again, and the obsolete id column is dropped
+         * rebuilding the table with the types it has, which are converted by later steps
+         * */
+        migrations.add(new Migration() {
+            @Override
+            public int getVersion() {
+                return 16;
+            }
+
+            @Override
+            public String getDescription() {
+                return "Discard notifications without notifCode and drop their id column";
+            }
+
+            @Override
+            public boolean isNeeded(SQLiteDatabase sqlite) {
+                return MigrationEngine.hasColumn(sqlite, DB_TABLE_NOTIFICATIONS, "id");
+            }
+
+            @Override
+            public void migrate(SQLiteDatabase sqlite) {
+                sqlite.delete(DB_TABLE_NOTIFICATIONS, "notifCode IS NULL", null);
+                MigrationEngine.dropColumn(sqlite, DB_TABLE_NOTIFICATIONS, "id");
+            }
+        });
 
         /* version 16-17
-		 * removed old Rollcall tables
-		 * created indexes for user tables
-		 * */
-        if (dbVersion == 17) {
-            deleteTable(DB_TABLE_PRACTICE_SESSIONS);
-            deleteTable(DB_TABLE_ROLLCALL);
-        }
+         * removed old Rollcall tables
+         * */
+        migrations.add(new Migration() {
+            @Override
+            public int getVersion() {
+                return 17;
+            }
+
+            @Override
+            public String getDescription() {
+                return "Remove old rollcall tables";
+            }
+
+            @Override
+            public boolean isNeeded(SQLiteDatabase sqlite) {
+                return MigrationEngine.hasTable(sqlite, DB_TABLE_PRACTICE_SESSIONS)
+                        || MigrationEngine.hasTable(sqlite, DB_TABLE_ROLLCALL);
+            }
+
+            @Override
+            public void migrate(SQLiteDatabase sqlite) {
+                sqlite.execSQL("DROP TABLE IF EXISTS " + DB_TABLE_PRACTICE_SESSIONS + ";");
+                sqlite.execSQL("DROP TABLE IF EXISTS " + DB_TABLE_ROLLCALL + ";");
+            }
+        });
 
         /* version 18-19
-		 * deleted old event data
-		 * */
-        if (dbVersion == 19) {
-            emptyTable(DB_TABLE_EVENTS_ATTENDANCES);
-        }
+         * deleted old event data
+         * */
+        migrations.add(new Migration() {
+            @Override
+            public int getVersion() {
+                return 19;
+            }
+
+            @Override
+            public String getDescription() {
+                return "Delete old event data";
+            }
+
+            @Override
+            public boolean isNeeded(SQLiteDatabase sqlite) {
+                return DatabaseUtils.queryNumEntries(sqlite, DB_TABLE_EVENTS_ATTENDANCES) > 0;
+            }
+
+            @Override
+            public void migrate(SQLiteDatabase sqlite) {
+                sqlite.delete(DB_TABLE_EVENTS_ATTENDANCES, null, null);
+            }
+        });
+
+        /* version 21-22
+         * times and flags stored as INTEGER instead of text:
+         * - notifications: eventTime, seenLocal, seenRemote
+         * - tst_config: editTime
+         * - tst_questions: shuffle
+         * - tst_answers: correct
+         * */
+        migrations.add(new Migration() {
+            private final String[][] typedColumns = {
+                    {DB_TABLE_NOTIFICATIONS, "eventTime", "seenLocal", "seenRemote"},
+                    {DB_TABLE_TEST_CONFIG, "editTime"},
+                    {DB_TABLE_TEST_QUESTIONS, "shuffle"},
+                    {DB_TABLE_TEST_ANSWERS, "correct"}
+            };
+
+            @Override
+            public int getVersion() {
+                return 22;
+            }
+
+            @Override
+            public String getDescription() {
+                return "Store times and flags as integers";
+            }
+
+            @Override
+            public boolean isNeeded(SQLiteDatabase sqlite) {
+                for (String[] t : typedColumns) {
+                    if (isTextColumn(sqlite, t[0], t[1])) {
+                        return true;
+                    }
+                }
+
+                return false;
+            }
+
+            @Override
+            public void migrate(SQLiteDatabase sqlite) {
+                for (String[] t : typedColumns) {
+                    if (!isTextColumn(sqlite, t[0], t[1])) {
+                        continue;
+                    }
+
+                    List<String> converted = Arrays.asList(t).subList(1, t.length);
+                    String[] columns = db.getTable(t[0]).getFieldsToArray();
+                    String[] expressions = new String[columns.length];
+
+                    for (int i = 0; i < columns.length; i++) {
+                        String column = columns[i];
+
+                        if (!converted.contains(column)) {
+                            expressions[i] = column;
+                        } else if (column.endsWith("Time")) {
+                            expressions[i] = "CAST(" + column + " AS INTEGER)";
+                        } else {
+                            //Test answers were saved as 'true'/'false' instead of 'Y'/'N'
+                            expressions[i] = "(" + column + " IN ('Y', 'true', '1'))";
+                        }
+                    }
+
+                    MigrationEngine.rebuildTable(sqlite, t[0], db.getTable(t[0]).getSQLCreateTable(),
+                            columns, expressions);
+                }
+
+                //The rebuilt tables lost their counter triggers
+                createIndexes(sqlite);
+                createCounters(sqlite);
+            }
+
+            private boolean isTextColumn(SQLiteDatabase sqlite, String table, String column) {
+                return "text".equalsIgnoreCase(MigrationEngine.getColumnType(sqlite, table, column));
+            }
+        });
+
+        /* version 22-23
+         * encrypted columns stored as BLOB instead of hexadecimal text
+         * */
+        migrations.add(new Migration() {
+            private final String[][] encryptedColumns = {
+                    {DB_TABLE_NOTIFICATIONS, "eventType", "userNickname", "userSurname1", "userSurname2",
+                            "userFirstname", "userPhoto", "location", "summary", "content"},
+                    {DB_TABLE_USERS, "userID", "userNickname", "userSurname1", "userSurname2",
+                            "userFirstname", "photoPath"},
+                    {DB_TABLE_EVENTS_ATTENDANCES, "userSurname1", "userSurname2", "userFirstName",
+                            "userPhoto", "title", "text", "groups", "status"},
+                    {DB_TABLE_FREQUENT_RECIPIENTS, "nicknameRecipient", "surname1Recipient",
+                            "surname2Recipient", "firstnameRecipient", "photoRecipient"}
+            };
+
+            @Override
+            public int getVersion() {
+                return 23;
+            }
+
+            @Override
+            public String getDescription() {
+                return "Store encrypted columns as blobs";
+            }
+
+            @Override
+            public boolean isNeeded(SQLiteDatabase sqlite) {
+                for (String[] t : encryptedColumns) {
+                    if (DatabaseUtils.longForQuery(sqlite, "SELECT COUNT(*) FROM " + t[0]
+                            + " WHERE " + textCondition(t), null) > 0) {
+                        return true;
+                    }
+                }
+
+                return false;
+            }
+
+            @Override
+            public void migrate(SQLiteDatabase sqlite) {
+                long start = System.currentTimeMillis();
+                long textBytes = 0;
+                long blobBytes = 0;
+                int converted = 0;
+
+                for (String[] t : encryptedColumns) {
+                    String[] columns = Arrays.copyOfRange(t, 1, t.length);
+                    StringBuilder sql = new StringBuilder("UPDATE " + t[0] + " SET ");
+
+                    for (int i = 0; i < columns.length; i++) {
+                        sql.append(i > 0 ? ", " : "").append(columns[i]).append(" = ?");
+                    }
+                    sql.append(" WHERE _id = ?");
+
+                    SQLiteStatement update = sqlite.compileStatement(sql.toString());
+                    Cursor c = sqlite.rawQuery("SELECT _id, " + TextUtils.join(", ", columns)
+                            + " FROM " + t[0] + " WHERE " + textCondition(t), null);
+
+                    try {
+                        while (c.moveToNext()) {
+                            update.clearBindings();
+
+                            for (int i = 0; i < columns.length; i++) {
+                                int type = c.getType(i + 1);
+
+                                if (type == Cursor.FIELD_TYPE_NULL) {
+                                    update.bindNull(i + 1);
+                                } else if (type == Cursor.FIELD_TYPE_BLOB) {
+                                    update.bindBlob(i + 1, c.getBlob(i + 1));
+                                } else {
+                                    String value = c.getString(i + 1);
+
+                                    //Values encrypted before version 52 could still be plain text
+                                    if (isCiphertext(value)) {
+                                        byte[] bytes = Crypto.toByte(value);
+
+                                        update.bindBlob(i + 1, bytes);
+                                        textBytes += value.length();
+                                        blobBytes += bytes.length;
+                                        converted++;
+                                    } else {
+                                        update.bindString(i + 1, value);
+                                    }
+                                }
+                            }
+
+                            update.bindLong(columns.length + 1, c.getLong(0));
+                            update.executeUpdateDelete();
+                        }
+                    } finally {
+                        c.close();
+                        update.close();
+                    }
+                }
+
+                Log.i(TAG, "Converted " + converted + " encrypted values to blobs: " + textBytes
+                        + " bytes as text, " + blobBytes + " bytes as blobs ("
+                        + (System.currentTimeMillis() - start) + " ms)");
+            }
+
+            private String textCondition(String[] t) {
+                StringBuilder condition = new StringBuilder();
+
+                for (int i = 1; i < t.length; i++) {
+                    condition.append(i > 1 ? " OR " : "").append("typeof(").append(t[i]).append(") = 'text'");
+                }
+
+                return condition.toString();
+            }
 
-        Log.i(TAG, "Database upgraded");
+            private boolean isCiphertext(String value) {
+                //Ciphertexts are whole AES blocks of 16 bytes, written as uppercase hexadecimal
+                if (value.isEmpty() || (value.length() % 32) != 0) {
+                    return false;
+                }
+
+                for (int i = 0; i < value.length(); i++) {
+                    char ch = value.charAt(i);
+
+                    if ((ch < '0' || ch > '9') && (ch < 'A' || ch > 'F')) {
+                        return false;
+                    }
+                }
+
+                return true;
+            }
+        });
 
-        compactDB();
+        return migrations;
     }
 
 	/**
@@ -0,0 +1,60 @@
+/*
+ *  This file is part of SWADroid.
+ *
+ *  Copyright (C) 2010 Juan Miguel Boyero Corral <juanmi1982@gmail.com>
+ *
+ *  SWADroid is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  SWADroid is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with SWADroid.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.ugr.swad.swadroid.database;
+
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * Step of the database schema migration. Steps are run in order of version, each one
+ * in its own transaction, and must be idempotent: running a step twice leaves the
+ * database as running it once.
+ *
+ * @author Juan Miguel Boyero Corral <juanmi1982@gmail.com>
+ */
+public interface Migration {
+    /**
+     * Gets the database version introduced by this step
+     *
+     * @return Database version reached after running this step
+     */
+    int getVersion();
+
+    /**
+     * Gets a short description of the changes, used in logs and progress messages
+     *
+     * @return Description of the step
+     */
+    String getDescription();
+
+    /**
+     * Checks whether the database still needs this step. It must only read the schema
+     * or the data, never modify them
+     *
+     * @param db Database to be checked
+     * @return true if the step has to be run
+     */
+    boolean isNeeded(SQLiteDatabase db);
+
+    /**
+     * Runs the step. It is called inside a transaction
+     *
+     * @param db Database to be migrated
+     */
+    void migrate(SQLiteDatabase db);
+}
@@ -0,0 +1,300 @@
+/*
+ *  This file is part of SWADroid.
+ *
+ *  Copyright (C) 2010 Juan Miguel Boyero Corral <juanmi1982@gmail.com>
+ *
+ *  SWADroid is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  SWADroid is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with SWADroid.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.ugr.swad.swadroid.database;
+
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.text.TextUtils;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Runs the pending steps of the database schema migration. The version reached by the last
+ * step applied is stored in the database, in the same transaction as the step, so an
+ * interrupted migration resumes from the first step not committed and steps already applied
+ * are never run again.
+ *
+ * @author Juan Miguel Boyero Corral <juanmi1982@gmail.com>
+ */
+public class MigrationEngine {
+    /**
+     * Table that stores the version reached by the last step applied
+     */
+    public static final String DB_TABLE_MIGRATIONS = "schema_migrations";
+    /**
+     * Migration tag name for Logcat
+     */
+    private static final String TAG = "MigrationEngine";
+    /**
+     * Steps of the migration, in order of version
+     */
+    private final List<Migration> migrations;
+
+    /**
+     * Receives the progress of the migration
+     */
+    public interface ProgressListener {
+        /**
+         * Called before running a step
+         *
+         * @param step  Step to be run
+         * @param index Position of the step among the pending steps, starting at 0
+         * @param count Number of pending steps
+         */
+        void onProgress(Migration step, int index, int count);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param migrations Steps of the migration, in any order
+     */
+    public MigrationEngine(List<Migration> migrations) {
+        this.migrations = new ArrayList<>(migrations);
+        Collections.sort(this.migrations, (a, b) -> Integer.compare(a.getVersion(), b.getVersion()));
+    }
+
+    /**
+     * Creates the migration table the first time the database is opened with it. The database
+     * is then considered migrated up to the version it had before being opened, because
+     * the steps of older versions were applied by the previous releases
+     *
+     * @param db         Database
+     * @param oldVersion Version of the database before being opened, or the current version
+     *                   if it has just been created with the current structure
+     */
+    public static void init(SQLiteDatabase db, int oldVersion) {
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + DB_TABLE_MIGRATIONS + " (version integer not null);");
+
+        if (DatabaseUtils.queryNumEntries(db, DB_TABLE_MIGRATIONS) == 0) {
+            db.execSQL("INSERT INTO " + DB_TABLE_MIGRATIONS + " (version) VALUES (?);",
+                    new Object[]{oldVersion});
+        }
+    }
+
+    /**
+     * Gets the version reached by the last step applied
+     *
+     * @param db Database
+     * @return Migrated version
+     */
+    public static int getMigratedVersion(SQLiteDatabase db) {
+        return (int) DatabaseUtils.longForQuery(db, "SELECT version FROM " + DB_TABLE_MIGRATIONS, null);
+    }
+
+    /**
+     * Runs the pending steps up to a version. Each step runs in its own transaction and is
+     * skipped if the database does not need it. If a step fails, its changes are rolled back
+     * and the exception is thrown, so the next run starts again from that step
+     *
+     * @param db            Database
+     * @param targetVersion Last version to be reached
+     * @param listener      Receives the progress of the migration. Can be null
+     * @return Number of steps applied
+     */
+    public int migrate(SQLiteDatabase db, int targetVersion, ProgressListener listener) {
+        List<Migration> pending = getPending(getMigratedVersion(db), targetVersion);
+        int applied = 0;
+
+        for (int i = 0; i < pending.size(); i++) {
+            Migration m = pending.get(i);
+
+            if (listener != null) {
+                listener.onProgress(m, i, pending.size());
+            }
+
+            db.beginTransaction();
+            try {
+                if (m.isNeeded(db)) {
+                    Log.i(TAG, "Migrating to version " + m.getVersion() + ": " + m.getDescription());
+                    m.migrate(db);
+                    applied++;
+                } else {
+                    Log.i(TAG, "Skipping version " + m.getVersion() + ": " + m.getDescription());
+                }
+
+                setMigratedVersion(db, m.getVersion());
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        }
+
+        if (getMigratedVersion(db) < targetVersion) {
+            setMigratedVersion(db, targetVersion);
+        }
+
+        return applied;
+    }
+
+    /**
+     * Gets the steps not applied yet up to a version, in order of version
+     *
+     * @param migratedVersion Version reached by the last step applied
+     * @param targetVersion   Last version to be reached
+     * @return Steps to be run
+     */
+    List<Migration> getPending(int migratedVersion, int targetVersion) {
+        List<Migration> pending = new ArrayList<>();
+
+        for (Migration m : migrations) {
+            if ((m.getVersion() > migratedVersion) && (m.getVersion() <= targetVersion)) {
+                pending.add(m);
+            }
+        }
+
+        return pending;
+    }
+
+    private static void setMigratedVersion(SQLiteDatabase db, int version) {
+        db.execSQL("UPDATE " + DB_TABLE_MIGRATIONS + " SET version = ?;", new Object[]{version});
+    }
+
+    /**
+     * Checks if a table exists
+     *
+     * @param db    Database
+     * @param table Table name
+     * @return true if the table exists
+     */
+    public static boolean hasTable(SQLiteDatabase db, String table) {
+        return DatabaseUtils.longForQuery(db, "SELECT COUNT(*) FROM sqlite_master WHERE type = 'table' AND name = ?",
+                new String[]{table}) > 0;
+    }
+
+    /**
+     * Checks if a table has a column
+     *
+     * @param db     Database
+     * @param table  Table name
+     * @param column Column name
+     * @return true if the column exists
+     */
+    public static boolean hasColumn(SQLiteDatabase db, String table, String column) {
+        return getColumnType(db, table, column) != null;
+    }
+
+    /**
+     * Gets the declared type of a column
+     *
+     * @param db     Database
+     * @param table  Table name
+     * @param column Column name
+     * @return Declared type of the column or null if the column does not exist
+     */
+    public static String getColumnType(SQLiteDatabase db, String table, String column) {
+        Cursor c = db.rawQuery("PRAGMA table_info(" + table + ")", null);
+
+        try {
+            int nameIndex = c.getColumnIndex("name");
+            int typeIndex = c.getColumnIndex("type");
+            while (c.moveToNext()) {
+                if (column.equalsIgnoreCase(c.getString(nameIndex))) {
+                    return c.getString(typeIndex);
+                }
+            }
+        } finally {
+            c.close();
+        }
+
+        return null;
+    }
+
+    /**
+     * Rebuilds a table with a new definition, as SQLite cannot change the type of a column.
+     * The table is renamed, created again and filled from the old one. Indexes of the old
+     * table are dropped with it, so they have to be created again by the caller.
+     *
+     * @param db          Database
+     * @param table       Table name
+     * @param createSql   Statement that creates the new table
+     * @param columns     Columns copied to the new table
+     * @param expressions Expression that gives the value of each column from the old table
+     */
+    public static void rebuildTable(SQLiteDatabase db, String table, String createSql,
+                                    String[] columns, String[] expressions) {
+        String oldTable = table + "_old";
+
+        db.execSQL("DROP TABLE IF EXISTS " + oldTable);
+        db.execSQL("ALTER TABLE " + table + " RENAME TO " + oldTable);
+        db.execSQL(createSql);
+        db.execSQL("INSERT INTO " + table + " (" + TextUtils.join(", ", columns) + ") SELECT "
+                + TextUtils.join(", ", expressions) + " FROM " + oldTable);
+        db.execSQL("DROP TABLE " + oldTable);
+    }
+
+    /**
+     * Removes a column from a table, as SQLite cannot drop columns before version 3.35.
+     * The table is rebuilt keeping the declared type, constraints and data of the rest of
+     * columns, read from the table itself. Only tables with a single-column primary key
+     * are supported, as the framework creates them
+     *
+     * @param db     Database
+     * @param table  Table name
+     * @param column Column to be removed
+     */
+    public static void dropColumn(SQLiteDatabase db, String table, String column) {
+        String createSql = DatabaseUtils.stringForQuery(db,
+                "SELECT sql FROM sqlite_master WHERE type = 'table' AND name = ?", new String[]{table});
+        boolean autoincrement = createSql.toLowerCase(Locale.US).contains("autoincrement");
+        StringBuilder definition = new StringBuilder();
+        List<String> columns = new ArrayList<>();
+        Cursor c = db.rawQuery("PRAGMA table_info(" + table + ")", null);
+
+        try {
+            int nameIndex = c.getColumnIndexOrThrow("name");
+            int typeIndex = c.getColumnIndexOrThrow("type");
+            int notNullIndex = c.getColumnIndexOrThrow("notnull");
+            int defaultIndex = c.getColumnIndexOrThrow("dflt_value");
+            int pkIndex = c.getColumnIndexOrThrow("pk");
+
+            while (c.moveToNext()) {
+                String name = c.getString(nameIndex);
+
+                if (name.equalsIgnoreCase(column)) {
+                    continue;
+                }
+
+                columns.add(name);
+                definition.append(definition.length() > 0 ? ", " : "")
+                        .append(name).append(' ').append(c.getString(typeIndex));
+
+                if (c.getInt(pkIndex) > 0) {
+                    definition.append(autoincrement ? " primary key autoincrement" : " primary key");
+                } else if (c.getInt(notNullIndex) != 0) {
+                    definition.append(" not null");
+                }
+
+                if (!c.isNull(defaultIndex)) {
+                    definition.append(" default ").append(c.getString(defaultIndex));
+                }
+            }
+        } finally {
+            c.close();
+        }
+
+        String[] names = columns.toArray(new String[0]);
+        rebuildTable(db, table, "CREATE TABLE " + table + " (" + definition + ")", names, names);
+    }
+}
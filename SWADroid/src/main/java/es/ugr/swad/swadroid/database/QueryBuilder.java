@@ -0,0 +1,214 @@
+/*
+ *  This file is part of SWADroid.
+ *
+ *  Copyright (C) 2010 Juan Miguel Boyero Corral <juanmi1982@gmail.com>
+ *
+ *  SWADroid is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  SWADroid is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with SWADroid.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.ugr.swad.swadroid.database;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Builder for the WHERE part of SQL sentences. Values are never written into the SQL text,
+ * they are replaced by ? placeholders and returned as bind arguments, so equal queries with
+ * different values share the same compiled statement in SQLite's statement cache.
+ *
+ * @author Juan Miguel Boyero Corral <juanmi1982@gmail.com>
+ */
+public class QueryBuilder {
+    /**
+     * WHERE part of the SQL sentence
+     */
+    private final StringBuilder selection = new StringBuilder();
+    /**
+     * Values of the placeholders, in order. Byte arrays are kept as they are, the rest as strings
+     */
+    private final List<Object> selectionArgs = new ArrayList<>();
+
+    /**
+     * Creates a condition "column = value"
+     *
+     * @param column Column name
+     * @param value  Value to be compared
+     * @return A new query builder
+     */
+    public static QueryBuilder where(String column, Object value) {
+        return new QueryBuilder().and(column, "=", value);
+    }
+
+    /**
+     * Creates a condition "column operator value"
+     *
+     * @param column   Column name
+     * @param operator Comparison operator (=, <, >, <=, >=, <>, LIKE)
+     * @param value    Value to be compared
+     * @return A new query builder
+     */
+    public static QueryBuilder where(String column, String operator, Object value) {
+        return new QueryBuilder().and(column, operator, value);
+    }
+
+    /**
+     * Adds a condition "column = value"
+     *
+     * @param column Column name
+     * @param value  Value to be compared
+     * @return This query builder
+     */
+    public QueryBuilder and(String column, Object value) {
+        return and(column, "=", value);
+    }
+
+    /**
+     * Adds a condition "column operator value". Byte arrays (encrypted columns) are kept as
+     * blobs, so they have to be read with {@link #getBindArgs()}
+     *
+     * @param column   Column name
+     * @param operator Comparison operator (=, <, >, <=, >=, <>, LIKE)
+     * @param value    Value to be compared
+     * @return This query builder
+     */
+    public QueryBuilder and(String column, String operator, Object value) {
+        appendAnd();
+        selection.append(column).append(' ').append(operator).append(" ?");
+        selectionArgs.add((value instanceof byte[]) ? value : String.valueOf(value));
+
+        return this;
+    }
+
+    /**
+     * Adds a condition "column IN (values)". An empty list of values matches no rows
+     *
+     * @param column Column name
+     * @param values Values to be compared
+     * @return This query builder
+     */
+    public QueryBuilder andIn(String column, Collection<?> values) {
+        appendAnd();
+
+        if (values.isEmpty()) {
+            selection.append('0');
+        } else {
+            selection.append(column).append(" IN (").append(placeholders(values.size())).append(')');
+            for (Object value : values) {
+                selectionArgs.add(String.valueOf(value));
+            }
+        }
+
+        return this;
+    }
+
+    /**
+     * Adds a condition without values, like a join between two tables ("T.id = Q.tagCod")
+     *
+     * @param condition SQL condition. It must not contain literal values
+     * @return This query builder
+     */
+    public QueryBuilder andCondition(String condition) {
+        appendAnd();
+        selection.append(condition);
+
+        return this;
+    }
+
+    /**
+     * Adds a condition with ? placeholders, like a keyset condition
+     * ("(eventTime < ? OR (eventTime = ? AND notifCode < ?))")
+     *
+     * @param condition SQL condition. It must not contain literal values
+     * @param values    Values of the placeholders, in order
+     * @return This query builder
+     */
+    public QueryBuilder andCondition(String condition, Object... values) {
+        andCondition(condition);
+        for (Object value : values) {
+            selectionArgs.add(String.valueOf(value));
+        }
+
+        return this;
+    }
+
+    /**
+     * Gets the WHERE part of the SQL sentence
+     *
+     * @return WHERE part with ? placeholders or null if there are no conditions
+     */
+    public String getSelection() {
+        return (selection.length() > 0) ? selection.toString() : null;
+    }
+
+    /**
+     * Gets the values of the placeholders as strings, as SQLiteDatabase binds them
+     *
+     * @return Values of the placeholders or null if there are no values
+     * @throws IllegalStateException If any value is a byte array, which can not be bound as a string
+     */
+    public String[] getSelectionArgs() {
+        if (selectionArgs.isEmpty()) {
+            return null;
+        }
+
+        String[] args = new String[selectionArgs.size()];
+        for (int i = 0; i < args.length; i++) {
+            if (!(selectionArgs.get(i) instanceof String)) {
+                throw new IllegalStateException("Blob values must be bound with getBindArgs()");
+            }
+            args[i] = (String) selectionArgs.get(i);
+        }
+
+        return args;
+    }
+
+    /**
+     * Gets the values of the placeholders to be bound by their type, with byte arrays as blobs
+     *
+     * @return Values of the placeholders or null if there are no values
+     */
+    public Object[] getBindArgs() {
+        return selectionArgs.isEmpty() ? null : selectionArgs.toArray();
+    }
+
+    /**
+     * Gets a list of placeholders separated by commas, to be used in IN clauses
+     *
+     * @param count Number of placeholders
+     * @return "?, ?, ..., ?"
+     */
+    public static String placeholders(int count) {
+        StringBuilder sb = new StringBuilder(count * 3);
+
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append('?');
+        }
+
+        return sb.toString();
+    }
+
+    private void appendAnd() {
+        if (selection.length() > 0) {
+            selection.append(" AND ");
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "QueryBuilder [selection=" + selection + ", selectionArgs=" + selectionArgs + "]";
+    }
+}
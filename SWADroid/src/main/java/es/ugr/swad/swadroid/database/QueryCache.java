@@ -0,0 +1,222 @@
+/*
+ *  This file is part of SWADroid.
+ *
+ *  Copyright (C) 2010 Juan Miguel Boyero Corral <juanmi1982@gmail.com>
+ *
+ *  SWADroid is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  SWADroid is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with SWADroid.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.ugr.swad.swadroid.database;
+
+import com.android.dataframework.DataFramework;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+
+import es.ugr.swad.swadroid.model.Model;
+
+/**
+ * Size-bounded cache of query results. Every entry depends on a set of tables and is
+ * removed when any of them is written. The least recently used entry is evicted
+ * when the cache is full.
+ * The cache owns its rows: they are copied when they are stored and when they are
+ * returned, so callers can modify the models they get without changing later results.
+ *
+ * @author Juan Miguel Boyero Corral <juanmi1982@gmail.com>
+ */
+public class QueryCache implements DataFramework.OnTableChangedListener {
+    /**
+     * Cached results, in access order
+     */
+    private final LinkedHashMap<String, Entry> entries;
+    /**
+     * Number of queries answered from the cache
+     */
+    private int hits = 0;
+    /**
+     * Number of queries that had to be run against the database
+     */
+    private int misses = 0;
+    /**
+     * Number of invalidations. Results read before an invalidation are not stored
+     */
+    private long generation = 0;
+    /**
+     * Creates a copy of a cached model
+     */
+    private final UnaryOperator<Model> copier;
+
+    /**
+     * Result of a query and the tables it depends on
+     */
+    private static class Entry {
+        final List<String> tables;
+        final List<? extends Model> rows;
+
+        Entry(List<String> tables, List<? extends Model> rows) {
+            this.tables = tables;
+            this.rows = rows;
+        }
+    }
+
+    /**
+     * Constructor
+     *
+     * @param maxEntries Maximum number of cached queries
+     * @param copier     Creates a copy of a model that does not share mutable state with it
+     */
+    public QueryCache(final int maxEntries, UnaryOperator<Model> copier) {
+        this.copier = copier;
+        entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Builds the key of a query
+     *
+     * @param table Main table of the query
+     * @param parts Rest of parts of the query (where, arguments, order by...). Can be null
+     * @return Key of the query
+     */
+    public static String key(String table, Object... parts) {
+        StringBuilder sb = new StringBuilder(table);
+
+        for (Object part : parts) {
+            sb.append('\u0000');
+            sb.append((part instanceof Object[]) ? Arrays.toString((Object[]) part) : String.valueOf(part));
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * Gets the cached result of a query
+     *
+     * @param key Key of the query
+     * @return A copy of the cached rows or null if the query is not cached
+     */
+    public synchronized <T extends Model> List<T> get(String key) {
+        Entry entry = entries.get(key);
+
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+
+        hits++;
+        return copy(entry.rows);
+    }
+
+    /**
+     * Copies a list of rows and every model in it
+     *
+     * @param rows Rows to be copied
+     * @return Copy of the rows
+     */
+    @SuppressWarnings("unchecked")
+    private <T extends Model> List<T> copy(List<? extends Model> rows) {
+        List<T> result = new ArrayList<>(rows.size());
+
+        for (Model m : rows) {
+            result.add((T) copier.apply(m));
+        }
+
+        return result;
+    }
+
+    /**
+     * Gets a stamp to be taken before running a query whose result will be stored
+     *
+     * @return Current stamp of the cache
+     */
+    public synchronized long stamp() {
+        return generation;
+    }
+
+    /**
+     * Stores the result of a query. The result is discarded if any table has been
+     * written since the stamp was taken, because it could be out of date
+     *
+     * @param key    Key of the query
+     * @param stamp  Stamp taken before running the query
+     * @param rows   Rows returned by the query
+     * @param tables Tables read by the query
+     */
+    public synchronized void put(String key, long stamp, List<? extends Model> rows, String... tables) {
+        if (stamp == generation) {
+            entries.put(key, new Entry(Arrays.asList(tables), copy(rows)));
+        }
+    }
+
+    /**
+     * Removes the cached queries that depend on a table
+     *
+     * @param table Table written
+     */
+    public synchronized void invalidate(String table) {
+        Iterator<Entry> it = entries.values().iterator();
+
+        generation++;
+
+        while (it.hasNext()) {
+            if (it.next().tables.contains(table)) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Removes all the cached queries
+     */
+    public synchronized void clear() {
+        generation++;
+        entries.clear();
+    }
+
+    @Override
+    public void onTableChanged(String table) {
+        invalidate(table);
+    }
+
+    /**
+     * Gets the number of queries answered from the cache
+     *
+     * @return Number of cache hits
+     */
+    public synchronized int getHits() {
+        return hits;
+    }
+
+    /**
+     * Gets the number of queries that had to be run against the database
+     *
+     * @return Number of cache misses
+     */
+    public synchronized int getMisses() {
+        return misses;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "QueryCache [size=" + entries.size() + ", hits=" + hits + ", misses=" + misses + "]";
+    }
+}
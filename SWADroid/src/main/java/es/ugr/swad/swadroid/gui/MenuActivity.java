@@ -54,6 +54,10 @@ public class MenuActivity extends AppCompatActivity {
      * Database Helper.
      */
     protected static DataBaseHelper dbHelper;
+    /**
+     * Set when this activity holds a reference to the shared database helper
+     */
+    private boolean dbAcquired;
     /**
      * Application debuggable flag
      */
@@ -77,11 +81,16 @@ public class MenuActivity extends AppCompatActivity {
         public void onClick(DialogInterface dialog, int id) {
             dialog.cancel();
             
-            dbHelper.cleanTables();
-            Preferences.setLastCourseSelected(0);
-            DataBaseHelper.setDbCleaned(true);
-            Toast.makeText(getApplicationContext(), R.string.cleanDatabaseMsg, Toast.LENGTH_LONG).show();
-            Log.i(Constants.APP_TAG, getString(R.string.cleanDatabaseMsg));
+            dbHelper.submitWrite(() -> {
+                dbHelper.cleanTables();
+
+                runOnUiThread(() -> {
+                    Preferences.setLastCourseSelected(0);
+                    DataBaseHelper.setDbCleaned(true);
+                    Toast.makeText(getApplicationContext(), R.string.cleanDatabaseMsg, Toast.LENGTH_LONG).show();
+                    Log.i(Constants.APP_TAG, getString(R.string.cleanDatabaseMsg));
+                });
+            });
         }
     };
 
@@ -203,7 +212,8 @@ public class MenuActivity extends AppCompatActivity {
         	prefs = new Preferences(this);
         	
             //Initialize database
-            dbHelper = new DataBaseHelper(this);
+            dbHelper = DataBaseHelper.acquire(this);
+            dbAcquired = true;
             getPackageManager().getApplicationInfo(
                     getPackageName(), 0);
 			isDebuggable = (ApplicationInfo.FLAG_DEBUGGABLE != 0);	
@@ -213,26 +223,14 @@ public class MenuActivity extends AppCompatActivity {
     }
     
     /* (non-Javadoc)
-     * @see android.app.Activity#onPause()
+     * @see android.app.Activity#onDestroy()
      */
     @Override
-    protected void onPause() {
-        dbHelper.close();
-        super.onPause();
-    }
-
-    /* (non-Javadoc)
-     * @see android.app.Activity#onResume()
-     */
-    @Override
-    protected void onResume() {
-        super.onResume();
-
-        //Initialize database
-        try {
-            dbHelper = new DataBaseHelper(this);
-        } catch (Exception ex) {
-            error(ex.getMessage(), ex);
+    protected void onDestroy() {
+        //The shared helper is only released if it was acquired by this activity
+        if (dbAcquired) {
+            DataBaseHelper.release();
         }
+        super.onDestroy();
     }
 }
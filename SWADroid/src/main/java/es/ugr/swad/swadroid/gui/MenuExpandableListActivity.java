@@ -55,6 +55,10 @@ public class MenuExpandableListActivity extends AppCompatActivity {
      * Database Helper.
      */
     protected static DataBaseHelper dbHelper;
+    /**
+     * Set when this activity holds a reference to the shared database helper
+     */
+    private boolean dbAcquired;
     /**
      * Application debuggable flag
      */
@@ -80,14 +84,19 @@ public class MenuExpandableListActivity extends AppCompatActivity {
      */
     private OnClickListener positiveClickListener = new DialogInterface.OnClickListener() {
         public void onClick(DialogInterface dialog, int id) {            
-            dbHelper.cleanTables();
-            Preferences.setLastCourseSelected(0);
-            DataBaseHelper.setDbCleaned(true);
-            Toast.makeText(getApplicationContext(), R.string.cleanDatabaseMsg, Toast.LENGTH_LONG).show();
-            if (isSWADMain) {
-                setMenuDbClean();
-            }
-            Log.i(Constants.APP_TAG, getString(R.string.cleanDatabaseMsg));
+            dbHelper.submitWrite(() -> {
+                dbHelper.cleanTables();
+
+                runOnUiThread(() -> {
+                    Preferences.setLastCourseSelected(0);
+                    DataBaseHelper.setDbCleaned(true);
+                    Toast.makeText(getApplicationContext(), R.string.cleanDatabaseMsg, Toast.LENGTH_LONG).show();
+                    if (isSWADMain) {
+                        setMenuDbClean();
+                    }
+                    Log.i(Constants.APP_TAG, getString(R.string.cleanDatabaseMsg));
+                });
+            });
         }
     };
 
@@ -218,7 +227,8 @@ public class MenuExpandableListActivity extends AppCompatActivity {
         	prefs = new Preferences(this);
         	
             //Initialize database
-            dbHelper = new DataBaseHelper(this);
+            dbHelper = DataBaseHelper.acquire(this);
+            dbAcquired = true;
             getPackageManager().getApplicationInfo(
                     getPackageName(), 0);
 			isDebuggable = (ApplicationInfo.FLAG_DEBUGGABLE != 0);			
@@ -229,27 +239,15 @@ public class MenuExpandableListActivity extends AppCompatActivity {
     }
 
     /* (non-Javadoc)
-     * @see android.app.Activity#onPause()
+     * @see android.app.Activity#onDestroy()
      */
     @Override
-    protected void onPause() {
-        dbHelper.close();
-        super.onPause();
-    }
-
-    /* (non-Javadoc)
-     * @see android.app.Activity#onResume()
-     */
-    @Override
-    protected void onResume() {
-        super.onResume();
-
-        //Initialize database
-        try {
-            dbHelper = new DataBaseHelper(this);
-        } catch (Exception ex) {
-            error(ex.getMessage(), ex);
+    protected void onDestroy() {
+        //The shared helper is only released if it was acquired by this activity
+        if (dbAcquired) {
+            DataBaseHelper.release();
         }
+        super.onDestroy();
     }
 
     protected void setMenuDbClean() {
@@ -400,11 +400,6 @@ public abstract class Module extends MenuActivity {
                 error(errorMsg, e);
                 setResult(RESULT_CANCELED);
 
-                // Launch database rollback
-                if (dbHelper.isDbInTransaction()) {
-                    dbHelper.endTransaction(false);
-                }
-
                 onError();
             } else {
                 postConnect();
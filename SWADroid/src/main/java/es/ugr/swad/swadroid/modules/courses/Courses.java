@@ -31,6 +31,7 @@ import java.util.List;
 import java.util.Vector;
 
 import es.ugr.swad.swadroid.Constants;
+import es.ugr.swad.swadroid.database.CollectionDiff;
 import es.ugr.swad.swadroid.database.DataBaseHelper;
 import es.ugr.swad.swadroid.model.Course;
 import es.ugr.swad.swadroid.model.Model;
@@ -127,10 +128,7 @@ public class Courses extends Module {
 
         if (result != null) {
             //Stores courses data returned by webservice response
-            List<Model> coursesDB = dbHelper.getAllRows(DataBaseHelper.DB_TABLE_COURSES);
             List<Model> coursesSWAD = new ArrayList<>();
-            List<Model> newCourses = new ArrayList<>();
-            List<Model> obsoleteCourses = new ArrayList<>();
 
 			ArrayList<?> res = new ArrayList<Object>((Vector<?>) result);
             SoapObject soap = (SoapObject) res.get(1);
@@ -150,32 +148,12 @@ public class Courses extends Module {
 
             Log.i(TAG, "Retrieved " + csSize + " courses");
 
-            //Obtain old unregistered courses and modified courses
-            obsoleteCourses.addAll(coursesDB);
-            obsoleteCourses.removeAll(coursesSWAD);
+            //Delete old unregistered courses and insert or update the registered ones
+            CollectionDiff<Model> diff = dbHelper.insertCollection(DataBaseHelper.DB_TABLE_COURSES, coursesSWAD);
 
-            //Obtain new registered courses
-            newCourses.addAll(coursesSWAD);
-            newCourses.removeAll(coursesDB);
-            newCourses.removeAll(obsoleteCourses);
-
-            //Delete old unregistered courses stuff
-            csSize = obsoleteCourses.size();
-            for (int i = 0; i < csSize; i++) {
-                Course c = (Course) obsoleteCourses.get(i);
-                dbHelper.removeRow(DataBaseHelper.DB_TABLE_COURSES, c.getId());
-            }
-
-            Log.i(TAG, "Deleted " + csSize + " old courses");
-
-            //Insert new registered courses
-            csSize = newCourses.size();
-            for (int i = 0; i < csSize; i++) {
-                Course c = (Course) newCourses.get(i);
-                dbHelper.insertCourse(c);
-            }
-
-            Log.i(TAG, "Added " + csSize + " new courses");
+            Log.i(TAG, "Deleted " + diff.getDeleted().size() + " old courses");
+            Log.i(TAG, "Added " + diff.getInserted().size() + " new courses");
+            Log.i(TAG, "Updated " + diff.getUpdated().size() + " courses");
 
             //Request finalized without errors
             setResult(RESULT_OK);
@@ -204,11 +182,7 @@ public class Courses extends Module {
      * @param context Database context
      */
     public void clearCourses(Context context) {
-        try {
-            dbHelper.emptyTable(DataBaseHelper.DB_TABLE_COURSES);
-        } catch (Exception e) {
-            Log.e(TAG, e.getMessage(), e);
-        }
+        dbHelper.submitWrite(() -> dbHelper.emptyTable(DataBaseHelper.DB_TABLE_COURSES));
     }
 
 	/**
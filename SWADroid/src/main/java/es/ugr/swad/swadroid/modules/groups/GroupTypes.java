@@ -107,7 +107,7 @@ public class GroupTypes extends Module {
                 }
             }
 
-            dbHelper.insertCollection(DataBaseHelper.DB_TABLE_GROUP_TYPES, groupsSWAD);
+            dbHelper.insertCollection(DataBaseHelper.DB_TABLE_GROUP_TYPES, groupsSWAD, courseCode);
 
             setResult(RESULT_OK);
         }
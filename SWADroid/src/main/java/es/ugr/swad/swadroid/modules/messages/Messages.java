@@ -47,6 +47,7 @@ import java.util.Vector;
 import es.ugr.swad.swadroid.Constants;
 import es.ugr.swad.swadroid.R;
 import es.ugr.swad.swadroid.database.DataBaseHelper;
+import es.ugr.swad.swadroid.database.QueryBuilder;
 import es.ugr.swad.swadroid.gui.ImageFactory;
 import es.ugr.swad.swadroid.gui.ProgressScreen;
 import es.ugr.swad.swadroid.model.FrequentUser;
@@ -321,7 +322,7 @@ public class Messages extends Module {
         String nickname;
 
         //get data of frequent users
-        frequentsList = dbHelper.getAllRows(DataBaseHelper.DB_TABLE_FREQUENT_RECIPIENTS, "idUser='" + userLogged + "'", "");
+        frequentsList = dbHelper.getAllRows(DataBaseHelper.DB_TABLE_FREQUENT_RECIPIENTS, QueryBuilder.where("idUser", userLogged), null);
 
         //modify data in memory
         for(int i=0; i < frequentsList.size(); i++){
@@ -357,15 +358,17 @@ public class Messages extends Module {
             Log.d(TAG, "frequent user '" + arrayReceivers.get(i).getUserNickname() + "' added = " + INITIAL_SCORE + " (sender = '" + userLogged + "')");
         }
 
-        dbHelper.beginTransaction();
+        final String sender = userLogged;
+        final List<FrequentUser> frequents = new ArrayList<>(frequentsList);
 
-        //delete frequent recipients of user logged
-        dbHelper.removeAllRows(DataBaseHelper.DB_TABLE_FREQUENT_RECIPIENTS, "idUser='" + userLogged + "'");
+        dbHelper.submitWrite(() -> dbHelper.writeInTransaction(() -> {
+            //delete frequent recipients of user logged
+            dbHelper.removeAllRows(DataBaseHelper.DB_TABLE_FREQUENT_RECIPIENTS, QueryBuilder.where("idUser", sender));
 
-        //insert new data in data base
-        dbHelper.insertFrequentsList(frequentsList);
-
-        dbHelper.endTransaction(true);
+            //insert new data in data base
+            dbHelper.insertFrequentsList(frequents);
+            return null;
+        }));
 
         progressLayout.hide();
         String messageSent = getString(R.string.messageSentMsg) + ":\n" + receiversNames;
@@ -29,6 +29,7 @@ import java.util.Vector;
 import es.ugr.swad.swadroid.Constants;
 import es.ugr.swad.swadroid.R;
 import es.ugr.swad.swadroid.database.DataBaseHelper;
+import es.ugr.swad.swadroid.database.QueryBuilder;
 import es.ugr.swad.swadroid.gui.ProgressScreen;
 import es.ugr.swad.swadroid.model.FrequentUser;
 import es.ugr.swad.swadroid.model.User;
@@ -168,7 +169,7 @@ public class SearchUsers extends Module implements SearchView.OnQueryTextListene
 
         frequentUsersText = (TextView) findViewById(R.id.listText);
 
-        frequentsList = dbHelper.getAllRows(DataBaseHelper.DB_TABLE_FREQUENT_RECIPIENTS, "idUser='" + userLogged + "'", "score DESC");
+        frequentsList = dbHelper.getAllRows(DataBaseHelper.DB_TABLE_FREQUENT_RECIPIENTS, QueryBuilder.where("idUser", userLogged), "score DESC");
         numFrequents = frequentsList.size();
 
         if(numFrequents == 0) {
@@ -108,7 +108,8 @@ public class NotificationItem extends MenuActivity {
         webview.setWebViewClient(WebViewFactory.getMathJaxExpression(content));
         
         //Set notification as seen locally
-        dbHelper.updateNotification(notifCode, "seenLocal", Utils.parseBoolString(true));
+        final long seenNotifCode = notifCode;
+        dbHelper.submitWrite(() -> dbHelper.updateNotification(seenNotifCode, "seenLocal", true));
         
         //Sends "seen notifications" info to the server if there is a connection available
         if(!seenLocal) {
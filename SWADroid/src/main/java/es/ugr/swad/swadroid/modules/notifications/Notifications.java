@@ -42,15 +42,21 @@ import android.widget.LinearLayout;
 import android.widget.TextView;
 import android.widget.Toast;
 
+import com.android.dataframework.DataFramework;
+
 import org.ksoap2.serialization.SoapObject;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.Vector;
 
 import es.ugr.swad.swadroid.Constants;
 import es.ugr.swad.swadroid.R;
 import es.ugr.swad.swadroid.database.DataBaseHelper;
+import es.ugr.swad.swadroid.database.QueryBuilder;
 import es.ugr.swad.swadroid.gui.AlertNotificationFactory;
 import es.ugr.swad.swadroid.model.Model;
 import es.ugr.swad.swadroid.model.SWADNotification;
@@ -58,7 +64,6 @@ import es.ugr.swad.swadroid.modules.Module;
 import es.ugr.swad.swadroid.modules.login.Login;
 import es.ugr.swad.swadroid.sync.SyncUtils;
 import es.ugr.swad.swadroid.utils.DateTimeUtils;
-import es.ugr.swad.swadroid.utils.Utils;
 import es.ugr.swad.swadroid.webservices.SOAPClient;
 
 /**
@@ -76,9 +81,19 @@ public class Notifications extends Module implements
 	 */
 	public static final int NOTIF_ALERT_ID = 1982;
 	/**
-	 * Cursor orderby parameter
+	 * Number of notifications loaded on each page of a group
+	 */
+	private static final int PAGE_SIZE = 50;
+	/**
+	 * Number of list items left below the last visible one when the next page is loaded
 	 */
-	private final String orderby = "eventTime DESC";
+	private static final int LOAD_MORE_THRESHOLD = 10;
+	/**
+	 * Columns shown in the notifications list. The content is loaded when a notification is opened
+	 */
+	private static final String[] LIST_COLUMNS = {"notifCode", "eventCode", "eventType", "eventTime",
+			"userSurname1", "userSurname2", "userFirstname", "userPhoto", "location", "summary", "status",
+			"seenLocal", "seenRemote"};
 	/**
 	 * Notifications counter
 	 */
@@ -147,6 +162,27 @@ public class Notifications extends Module implements
 	 * Id for the seen notifications group
 	 */
 	private int SEEN_GROUP_ID = 1;
+	/**
+	 * Notifications shown, indexed by their _id in database
+	 */
+	private final Map<Long, Model> shownRows = new HashMap<>();
+	/**
+	 * Last notification loaded in each group, where the next page of the group starts
+	 */
+	private final SWADNotification[] lastLoaded = new SWADNotification[2];
+	/**
+	 * Whether each group has notifications not loaded yet
+	 */
+	private final boolean[] hasMore = new boolean[2];
+	/**
+	 * Set while the load of the next page is pending, so that it is requested only once
+	 */
+	private boolean loadingMore;
+	/**
+	 * Applies on screen the notifications changed in database
+	 */
+	private final DataFramework.OnRowsChangedListener rowsChangedListener =
+			(table, ids) -> runOnUiThread(() -> applyChanges(ids));
 	/**
 	 * ListView click listener
 	 */
@@ -162,7 +198,6 @@ public class Notifications extends Module implements
 			TextView sender = (TextView) v.findViewById(R.id.eventSender);
 			TextView course = (TextView) v.findViewById(R.id.eventLocation);
 			TextView summary = (TextView) v.findViewById(R.id.eventSummary);
-			TextView content = (TextView) v.findViewById(R.id.eventText);
 			TextView date = (TextView) v.findViewById(R.id.eventDate);
 			TextView time = (TextView) v.findViewById(R.id.eventTime);
 			TextView seenLocalText = (TextView) v.findViewById(R.id.seenLocal);
@@ -176,7 +211,7 @@ public class Notifications extends Module implements
 			activity.putExtra("sender", sender.getText().toString());
 			activity.putExtra("course", course.getText().toString());
 			activity.putExtra("summary", summary.getText().toString());
-			activity.putExtra("content", content.getText().toString());
+			activity.putExtra("content", getNotificationContent(notifCode.getText().toString()));
 			activity.putExtra("date", date.getText().toString());
 			activity.putExtra("time", time.getText().toString());
 			activity.putExtra("seenLocal", seenLocalText.getText().toString());
@@ -186,6 +221,24 @@ public class Notifications extends Module implements
 		}
 	};
 
+	/**
+	 * Loads the content of a notification, which is not loaded with the notifications list
+	 *
+	 * @param notifCode Notification code
+	 * @return Notification content
+	 */
+	private String getNotificationContent(String notifCode) {
+		SWADNotification notif = dbHelper.getRow(DataBaseHelper.DB_TABLE_NOTIFICATIONS, "notifCode",
+				Long.valueOf(notifCode));
+
+		//Empty field checking
+		if ((notif == null) || notif.getContent().equals(Constants.NULL_VALUE)) {
+			return getString(R.string.noContentMsg);
+		}
+
+		return notif.getContent();
+	}
+
 	/**
 	 * Refreshes data on screen
 	 */
@@ -218,9 +271,7 @@ public class Notifications extends Module implements
 		// "pending to mark as read in SWAD"
 		markedNotificationsList = dbHelper.getAllRows(
 				DataBaseHelper.DB_TABLE_NOTIFICATIONS,
-				"seenLocal='" + Utils.parseBoolString(true)
-						+ "' AND seenRemote='"
-						+ Utils.parseBoolString(false) + "'", null);
+				"seenLocal = 1 AND seenRemote = 0", null);
 
 		numMarkedNotificationsList = markedNotificationsList.size();
 		if (isDebuggable)
@@ -291,14 +342,15 @@ public class Notifications extends Module implements
 		initSwipeOptions();
 
 		//Set ExpandableListView data
-		setGroupData();
+		groupItem.add(getString(R.string.notSeenLabel));
+		groupItem.add(getString(R.string.seenLabel));
 		setChildGroupData();
 
 		/*
 		 * If there aren't notifications to show, hide the notifications list
 		 * and show the empty notifications message
 		 */
-		if (dbHelper.getAllRowsCount(DataBaseHelper.DB_TABLE_NOTIFICATIONS) == 0) {
+		if (shownRows.isEmpty()) {
 			Log.d(TAG, "[onCreate] Notifications table is empty");
 			
 			emptyNotifTextView.setText(R.string.notificationsEmptyListMsg);
@@ -323,13 +375,16 @@ public class Notifications extends Module implements
 	 *
 	 */
 	public void onMarkAllReadClick() {
-		dbHelper.updateAllNotifications("seenLocal",
-				Utils.parseBoolString(true));
-
-		// Sends to SWAD the "seen notifications" info
-		sendReadNotifications();
+		dbHelper.submitWrite(() -> {
+			dbHelper.updateAllNotifications("seenLocal", true);
 
-		refreshScreen();
+			// Sends to SWAD the "seen notifications" info once they are stored
+			runOnUiThread(() -> {
+				if (!isFinishing()) {
+					sendReadNotifications();
+				}
+			});
+		});
 	}
 	
 	/*
@@ -346,9 +401,11 @@ public class Notifications extends Module implements
 		intentFilter.addAction(NotificationsSyncAdapterService.STOP_SYNC);
 		intentFilter.addAction(Intent.CATEGORY_DEFAULT);
 		registerReceiver(receiver, intentFilter);
+		dbHelper.addOnRowsChangedListener(DataBaseHelper.DB_TABLE_NOTIFICATIONS, rowsChangedListener);
 		
 		Log.i(TAG, "Registered receiver for automatic synchronization");
 
+		//Changes made while paused were not received
 		refreshScreen();
 	}
 
@@ -361,6 +418,7 @@ public class Notifications extends Module implements
 	protected void onPause() {
 		super.onPause();
 		unregisterReceiver(receiver);
+		dbHelper.removeOnRowsChangedListener(DataBaseHelper.DB_TABLE_NOTIFICATIONS, rowsChangedListener);
 		Log.i(TAG, "Unregistered receiver for automatic synchronization");
 	}
 
@@ -396,70 +454,70 @@ public class Notifications extends Module implements
 			sendRequest(SWADNotification.class, false);
 
 			if (result != null) {
-				dbHelper.beginTransaction();
-
 				// Stores notifications data returned by webservice response
 				ArrayList<?> res = new ArrayList<Object>((Vector<?>) result);
-				SoapObject soap = (SoapObject) res.get(1);
-				int numNotif = soap.getPropertyCount();
-
-				notifCount = 0;
-				for (int i = 0; i < numNotif; i++) {
-					SoapObject pii = (SoapObject) soap.getProperty(i);
-					Long notifCode = Long.valueOf(pii.getProperty("notifCode")
-							.toString());
-					Long eventCode = Long.valueOf(pii.getProperty(
-							"eventCode").toString());
-					String eventType = pii.getProperty("eventType").toString();
-					Long eventTime = Long.valueOf(pii.getProperty("eventTime")
-							.toString());
-					String userNickname = pii.getProperty("userNickname")
-							.toString();
-					String userSurname1 = pii.getProperty("userSurname1")
-							.toString();
-					String userSurname2 = pii.getProperty("userSurname2")
-							.toString();
-					String userFirstName = pii.getProperty("userFirstname")
-							.toString();
-					String userPhoto = pii.getProperty("userPhoto").toString();
-					String location = pii.getProperty("location").toString();
-					String summary = pii.getProperty("summary").toString();
-					Integer status = Integer.valueOf(pii.getProperty("status")
-							.toString());
-					String content = pii.getProperty("content").toString();
-					boolean notifReadSWAD = (status >= 4);
-					boolean notifCancelled = (status >= 8);
-
-					// Add not cancelled notifications only
-					if(!notifCancelled) {
-						SWADNotification n = new SWADNotification(notifCode,
-								eventCode, eventType, eventTime, userNickname, userSurname1,
-								userSurname2, userFirstName, userPhoto, location,
-								summary, status, content, notifReadSWAD,
-								notifReadSWAD);
-
-						dbHelper.insertNotification(n);
-
-						// Count unread notifications only
-						if (!notifReadSWAD) {
-							notifCount++;
+				final SoapObject soap = (SoapObject) res.get(1);
+				final int numNotif = soap.getPropertyCount();
+
+				// Notifications are written by the database writer thread, so the list can keep reading them
+				numDeletedNotif = dbHelper.writeInTransaction(() -> {
+					notifCount = 0;
+					for (int i = 0; i < numNotif; i++) {
+						SoapObject pii = (SoapObject) soap.getProperty(i);
+						Long notifCode = Long.valueOf(pii.getProperty("notifCode")
+								.toString());
+						Long eventCode = Long.valueOf(pii.getProperty(
+								"eventCode").toString());
+						String eventType = pii.getProperty("eventType").toString();
+						Long eventTime = Long.valueOf(pii.getProperty("eventTime")
+								.toString());
+						String userNickname = pii.getProperty("userNickname")
+								.toString();
+						String userSurname1 = pii.getProperty("userSurname1")
+								.toString();
+						String userSurname2 = pii.getProperty("userSurname2")
+								.toString();
+						String userFirstName = pii.getProperty("userFirstname")
+								.toString();
+						String userPhoto = pii.getProperty("userPhoto").toString();
+						String location = pii.getProperty("location").toString();
+						String summary = pii.getProperty("summary").toString();
+						Integer status = Integer.valueOf(pii.getProperty("status")
+								.toString());
+						String content = pii.getProperty("content").toString();
+						boolean notifReadSWAD = (status >= 4);
+						boolean notifCancelled = (status >= 8);
+
+						// Add not cancelled notifications only
+						if(!notifCancelled) {
+							SWADNotification n = new SWADNotification(notifCode,
+									eventCode, eventType, eventTime, userNickname, userSurname1,
+									userSurname2, userFirstName, userPhoto, location,
+									summary, status, content, notifReadSWAD,
+									notifReadSWAD);
+
+							dbHelper.insertNotification(n);
+
+							// Count unread notifications only
+							if (!notifReadSWAD) {
+								notifCount++;
+							}
+
+							if (isDebuggable)
+								Log.d(TAG, n.toString());
 						}
-
-						if (isDebuggable)
-							Log.d(TAG, n.toString());
 					}
-				}
 
-				// Request finalized without errors
-				setResult(RESULT_OK);
-				Log.i(TAG, "Retrieved " + numNotif + " notifications ("
-						+ notifCount + " unread)");
+					Log.i(TAG, "Retrieved " + numNotif + " notifications ("
+							+ notifCount + " unread)");
 
-				// Clean old notifications to control database size
-                numDeletedNotif = dbHelper.cleanOldNotificationsByAge(Constants.CLEAN_NOTIFICATIONS_THRESHOLD);
+					// Clean old notifications to control database size
+					return dbHelper.cleanOldNotificationsByAge(Constants.CLEAN_NOTIFICATIONS_THRESHOLD);
+				});
                 Log.i(TAG, "Deleted " + numDeletedNotif + " notifications from database");
 
-				dbHelper.endTransaction(true);
+				// Request finalized without errors
+				setResult(RESULT_OK);
 			}
 		}
 	}
@@ -519,7 +577,8 @@ public class Notifications extends Module implements
 			// Sends to SWAD the "seen notifications" info
 			sendReadNotifications();
 
-			refreshScreen();
+			//The notifications downloaded have already been applied by rowsChangedListener
+			hideSwipeProgress();
 		}
 	}
 
@@ -538,11 +597,13 @@ public class Notifications extends Module implements
 	 *
 	 */
 	public void clearNotifications() {
-		try {
-			dbHelper.emptyTable(DataBaseHelper.DB_TABLE_NOTIFICATIONS);
-		} catch (Exception e) {
-			error(e.getMessage(), e);
-		}
+		dbHelper.submitWrite(() -> {
+			try {
+				dbHelper.emptyTable(DataBaseHelper.DB_TABLE_NOTIFICATIONS);
+			} catch (Exception e) {
+				runOnUiThread(() -> error(e.getMessage(), e));
+			}
+		});
 	}
 
 	/**
@@ -574,7 +635,8 @@ public class Notifications extends Module implements
 							Toast.LENGTH_LONG).show();
 				}
 
-				refreshScreen();
+				//The notifications downloaded have already been applied by rowsChangedListener
+				hideSwipeProgress();
 			}
 		}
 	}
@@ -589,10 +651,7 @@ public class Notifications extends Module implements
 	public boolean onOptionsItemSelected(MenuItem item) {
 		switch (item.getItemId()) {
 		case R.id.action_markAllRead:
-			dbHelper.updateAllNotifications("seenLocal",
-					Utils.parseBoolString(true));
-			sendReadNotifications();
-			refreshScreen();
+			onMarkAllReadClick();
 			return true;
 
 		default:
@@ -636,6 +695,13 @@ public class Notifications extends Module implements
                     enable = firstItemVisible && topOfFirstItemVisible;
                 }
                 refreshLayout.setEnabled(enable);
+
+                //Load the next page before the end of the list is reached
+                if (!loadingMore && hasMorePages()
+                        && (firstVisibleItem + visibleItemCount >= totalItemCount - LOAD_MORE_THRESHOLD)) {
+                    loadingMore = true;
+                    list.post(() -> loadMore());
+                }
             }
         });
 		/*
@@ -759,40 +825,188 @@ public class Notifications extends Module implements
 		}
 	}
 
+	/**
+	 * Shows the number of not seen notifications in the header of their group. It is read
+	 * from the unread counter, so it is right even if not all the pages have been loaded
+	 */
 	private void setGroupData() {
-		groupItem.add(getString(R.string.notSeenLabel));
-		groupItem.add(getString(R.string.seenLabel));
+		int unread = dbHelper.getUnreadNotificationsCount();
+		String notSeenLabel = getString(R.string.notSeenLabel);
+
+		groupItem.set(NOT_SEEN_GROUP_ID, (unread > 0) ? notSeenLabel + " (" + unread + ")" : notSeenLabel);
 	}
 
 	private void setChildGroupData() {
-		List<Model> child;
+		boolean writing = dbHelper.isWriting();
+		long timeBefore = System.currentTimeMillis();
 		
 		//Clear data
 		childItem.clear();
+		shownRows.clear();
+		childItem.add(new ArrayList<>());
+		childItem.add(new ArrayList<>());
+		lastLoaded[NOT_SEEN_GROUP_ID] = null;
+		lastLoaded[SEEN_GROUP_ID] = null;
+		hasMore[NOT_SEEN_GROUP_ID] = true;
+		hasMore[SEEN_GROUP_ID] = true;
 		
-		//Add data for not seen notifications		 
-		child = dbHelper.getAllRows(DataBaseHelper.DB_TABLE_NOTIFICATIONS,
-				"seenLocal='" + Utils.parseBoolString(false) + "'", orderby);
-		childItem.add(child);
-		
-		//Add data for seen notifications	
-		child = dbHelper.getAllRows(DataBaseHelper.DB_TABLE_NOTIFICATIONS,
-				"seenLocal='" + Utils.parseBoolString(true) + "'", orderby);
-		childItem.add(child);
+		//Only the first page is read, the rest are read while scrolling
+		loadNextPage();
 		
+		Log.i(TAG, "Read first page of notifications list in " + (System.currentTimeMillis() - timeBefore) + " ms"
+				+ (writing ? " while a sync was writing" : ""));
 		Log.d(TAG, "groups size=" + childItem.size());
 		Log.d(TAG, "not seen children size=" + childItem.get(NOT_SEEN_GROUP_ID).size());
 		Log.d(TAG, "seen children size=" + childItem.get(SEEN_GROUP_ID).size());
 		
+		setGroupData();
 		adapter = new NotificationsExpandableListAdapter(this, groupItem, childItem);
+		list.setAdapter(adapter);
+		updateListVisibility();
+	}
 
-		if(dbHelper.getAllRowsCount(DataBaseHelper.DB_TABLE_NOTIFICATIONS) > 0) {
+	/**
+	 * Checks if any group has notifications not loaded yet
+	 *
+	 * @return true if there are more pages to be loaded
+	 */
+	private boolean hasMorePages() {
+		return (adapter != null) && (hasMore[NOT_SEEN_GROUP_ID] || hasMore[SEEN_GROUP_ID]);
+	}
+
+	/**
+	 * Loads the next page of notifications and shows it. Called when the list is scrolled
+	 * near its end
+	 */
+	private void loadMore() {
+		loadingMore = false;
+
+		if (hasMorePages()) {
+			loadNextPage();
+			adapter.notifyDataSetChanged();
+		}
+	}
+
+	/**
+	 * Loads the next page of notifications. The not seen group is shown above the seen one,
+	 * so the seen group is not paged until all the not seen notifications have been loaded
+	 */
+	private void loadNextPage() {
+		if (hasMore[NOT_SEEN_GROUP_ID]) {
+			loadPage(NOT_SEEN_GROUP_ID);
+		}
+
+		if (!hasMore[NOT_SEEN_GROUP_ID] && hasMore[SEEN_GROUP_ID]) {
+			loadPage(SEEN_GROUP_ID);
+		}
+	}
+
+	/**
+	 * Loads the next page of a group, starting after its last loaded notification, and
+	 * indexes the notifications by their _id
+	 *
+	 * @param groupId Id of the group
+	 */
+	private void loadPage(int groupId) {
+		Map<Long, Model> rows = dbHelper.getNotificationsPage(LIST_COLUMNS, groupId == SEEN_GROUP_ID,
+				lastLoaded[groupId], PAGE_SIZE);
+
+		for (Model row : rows.values()) {
+			lastLoaded[groupId] = (SWADNotification) row;
+		}
+
+		hasMore[groupId] = (rows.size() == PAGE_SIZE);
+		shownRows.putAll(rows);
+		childItem.get(groupId).addAll(rows.values());
+	}
+
+	/**
+	 * Applies on screen the notifications inserted, updated or deleted in database,
+	 * reading only the changed rows
+	 *
+	 * @param ids _id of the changed notifications, or null to reload the whole list
+	 */
+	private void applyChanges(Set<Long> ids) {
+		if (adapter == null) {
+			return;
+		}
+
+		if (ids == null) {
+			setChildGroupData();
+			return;
+		}
+
+		QueryBuilder query = new QueryBuilder().andIn(DataFramework.KEY_ID, ids);
+		Map<Long, Model> changed = dbHelper.getRowsByRowId(DataBaseHelper.DB_TABLE_NOTIFICATIONS, LIST_COLUMNS,
+				query.getSelection(), query.getSelectionArgs(), null);
+
+		for (Long id : ids) {
+			Model oldRow = shownRows.remove(id);
+			SWADNotification newRow = (SWADNotification) changed.get(id);
+
+			if (oldRow != null) {
+				childItem.get(NOT_SEEN_GROUP_ID).remove(oldRow);
+				childItem.get(SEEN_GROUP_ID).remove(oldRow);
+			}
+
+			//Deleted notifications are not found. Notifications placed beyond the loaded pages
+			//of their group are not shown now, they will be read with their page
+			if (newRow != null) {
+				int groupId = newRow.isSeenLocal() ? SEEN_GROUP_ID : NOT_SEEN_GROUP_ID;
+
+				if (!hasMore[groupId] || ((lastLoaded[groupId] != null) && isBefore(newRow, lastLoaded[groupId]))) {
+					insertSorted(childItem.get(groupId), newRow);
+					shownRows.put(id, newRow);
+				}
+			}
+		}
+
+		Log.d(TAG, "Applied " + ids.size() + " changed notifications");
+
+		setGroupData();
+		adapter.notifyDataSetChanged();
+		updateListVisibility();
+	}
+
+	/**
+	 * Inserts a notification in a group keeping the order of the pages, newest first
+	 *
+	 * @param group Notifications of the group
+	 * @param notif Notification to be inserted
+	 */
+	private static void insertSorted(List<Model> group, SWADNotification notif) {
+		int position = 0;
+
+		while ((position < group.size()) && !isBefore(notif, (SWADNotification) group.get(position))) {
+			position++;
+		}
+
+		group.add(position, notif);
+	}
+
+	/**
+	 * Checks if a notification is shown before another one. Notifications are ordered by
+	 * event time and notification code, newest first, as the pages are read from database
+	 *
+	 * @param a First notification
+	 * @param b Second notification
+	 * @return true if a is shown before b
+	 */
+	private static boolean isBefore(SWADNotification a, SWADNotification b) {
+		return (a.getEventTime() > b.getEventTime())
+				|| ((a.getEventTime() == b.getEventTime()) && (a.getId() > b.getId()));
+	}
+
+	/**
+	 * Shows the notifications list or the empty notifications message
+	 */
+	private void updateListVisibility() {
+		if(!shownRows.isEmpty()) {
 			Log.d(TAG, "[setChildGroupData] Notifications table is not empty");
 			
 			emptyNotifTextView.setVisibility(View.GONE);
 			list.setVisibility(View.VISIBLE);
 			
-			list.setAdapter(adapter);
 			list.setOnChildClickListener(clickListener);
 			
 			//Expand the groups
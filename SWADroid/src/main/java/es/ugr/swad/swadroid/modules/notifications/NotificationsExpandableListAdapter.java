@@ -227,8 +227,10 @@ public class NotificationsExpandableListAdapter extends
         if ((content != null)) {
         	contentText = notif.getContent();
 
-            //Empty field checking
-            if (contentText.equals(Constants.NULL_VALUE))
+            //Empty field checking (content is not loaded for the list, it is read when the notification is opened)
+            if (contentText == null)
+                contentText = "";
+            else if (contentText.equals(Constants.NULL_VALUE))
                 contentText = activity.getString(R.string.noContentMsg);
 
             content.setText(contentText);
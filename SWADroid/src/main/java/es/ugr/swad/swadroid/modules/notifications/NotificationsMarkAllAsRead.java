@@ -26,7 +26,6 @@ import org.ksoap2.serialization.SoapPrimitive;
 import es.ugr.swad.swadroid.Constants;
 import es.ugr.swad.swadroid.modules.Module;
 import es.ugr.swad.swadroid.modules.login.Login;
-import es.ugr.swad.swadroid.utils.Utils;
 import es.ugr.swad.swadroid.webservices.SOAPClient;
 
 /**
@@ -83,7 +82,7 @@ public class NotificationsMarkAllAsRead extends Module {
         }
         
         Log.i(TAG, "Marked " + numMarkedNotifications + " notifications as readed");
-    	dbHelper.updateAllNotifications("seenRemote", Utils.parseBoolString(true));
+    	dbHelper.updateAllNotifications("seenRemote", true);
         
         if(numMarkedNotifications != numMarkedNotificationsList) {	            
         	Log.e(TAG, "numMarkedNotifications (" + numMarkedNotifications + ") != numMarkedNotificationsList (" + numMarkedNotificationsList + ")");
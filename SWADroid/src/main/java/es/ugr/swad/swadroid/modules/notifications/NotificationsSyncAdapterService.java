@@ -52,6 +52,7 @@ import javax.net.ssl.SSLException;
 import es.ugr.swad.swadroid.Config;
 import es.ugr.swad.swadroid.Constants;
 import es.ugr.swad.swadroid.R;
+import es.ugr.swad.swadroid.database.ChunkedIngestion;
 import es.ugr.swad.swadroid.database.DataBaseHelper;
 import es.ugr.swad.swadroid.gui.AlertNotificationFactory;
 import es.ugr.swad.swadroid.model.Model;
@@ -77,6 +78,7 @@ public class NotificationsSyncAdapterService extends Service {
     private static SyncAdapterImpl sSyncAdapter = null;
     private static int notifCount;
     private static DataBaseHelper dbHelper;
+    private boolean dbAcquired;
     private static IWebserviceClient webserviceClient;
     private static String METHOD_NAME = "";
     private static Object result;
@@ -165,11 +167,6 @@ public class NotificationsSyncAdapterService extends Service {
                     }
                 }
 
-                // Launch database rollback
-                if(dbHelper.isDbInTransaction()) {
-                	dbHelper.endTransaction(false);
-                }
-
                 Log.e(TAG, errorMessage, e);
 
                 //Notify synchronization stop
@@ -199,7 +196,8 @@ public class NotificationsSyncAdapterService extends Service {
 
         try {
             prefs = new Preferences(this);
-            dbHelper = new DataBaseHelper(this);
+            dbHelper = DataBaseHelper.acquire(this);
+            dbAcquired = true;
             //Initialize webservices client
             webserviceClient = null;
         } catch (Exception e) {
@@ -209,6 +207,18 @@ public class NotificationsSyncAdapterService extends Service {
 		super.onCreate();
 	}
 
+	/* (non-Javadoc)
+	 * @see android.app.Service#onDestroy()
+	 */
+	@Override
+	public void onDestroy() {
+		//The shared helper is only released if it was acquired by this service
+		if (dbAcquired) {
+			DataBaseHelper.release();
+		}
+		super.onDestroy();
+	}
+
 	/* (non-Javadoc)
 	 * @see android.app.Service#onStartCommand(android.content.Intent, int, int)
 	 */
@@ -316,6 +326,7 @@ public class NotificationsSyncAdapterService extends Service {
 
     private static void getNotifications() throws Exception {
         int numDeletedNotif;
+        long timeBefore, timeAfter;
 
     	Log.d(TAG, "Logged");
 
@@ -332,16 +343,17 @@ public class NotificationsSyncAdapterService extends Service {
         sendRequest(SWADNotification.class, false);
 
         if (result != null) {
-            dbHelper.beginTransaction();
-
             //Stores notifications data returned by webservice response
             ArrayList<?> res = new ArrayList<Object>((Vector<?>) result);
-            SoapObject soap = (SoapObject) res.get(1);
-            int numNotif = soap.getPropertyCount();
+            final SoapObject soap = (SoapObject) res.get(1);
+            final int numNotif = soap.getPropertyCount();
+
+            timeBefore = System.currentTimeMillis();
 
+            List<SWADNotification> notifications = new ArrayList<>(numNotif);
             notifCount = 0;
             for (int i = 0; i < numNotif; i++) {
-            	SoapObject pii = (SoapObject) soap.getProperty(i);
+                SoapObject pii = (SoapObject) soap.getProperty(i);
                 Long notifCode = Long.valueOf(pii.getProperty("notifCode").toString());
                 Long eventCode = Long.valueOf(pii.getProperty("eventCode").toString());
                 String eventType = pii.getProperty("eventType").toString();
@@ -360,29 +372,35 @@ public class NotificationsSyncAdapterService extends Service {
 
                 // Add not cancelled notifications only
                 if(!notifCancelled) {
-                    SWADNotification n = new SWADNotification(notifCode, eventCode, eventType,
+                    notifications.add(new SWADNotification(notifCode, eventCode, eventType,
                             eventTime, userNickname, userSurname1, userSurname2, userFirstName,
-                            userPhoto, location, summary, status, content, notifReadSWAD, notifReadSWAD);
-
-                    dbHelper.insertNotification(n);
+                            userPhoto, location, summary, status, content, notifReadSWAD, notifReadSWAD));
 
                     //Count unread notifications only
                     if (!notifReadSWAD) {
                         notifCount++;
                     }
-
-                    //Log.d(TAG, n.toString());
                 }
             }
 
+            //Notifications are written by the database writer thread in chunks, each one in its
+            //own transaction, so the UI can keep reading them and a failure only redoes the last chunk
+            ChunkedIngestion ingestion = new ChunkedIngestion(dbHelper, "notifications",
+                    ChunkedIngestion.DEFAULT_CHUNK_SIZE);
+            ingestion.write("notifications", notifications,
+                    (chunk, i) -> dbHelper.upsertRows(DataBaseHelper.DB_TABLE_NOTIFICATIONS, chunk));
+            ingestion.finish();
+
             //Request finalized without errors
             Log.i(TAG, "Retrieved " + numNotif + " notifications (" + notifCount + " unread)");
 
             //Clean old notifications to control database size
-            numDeletedNotif = dbHelper.cleanOldNotificationsByAge(Constants.CLEAN_NOTIFICATIONS_THRESHOLD);
+            numDeletedNotif = dbHelper.writeInTransaction(
+                    () -> dbHelper.cleanOldNotificationsByAge(Constants.CLEAN_NOTIFICATIONS_THRESHOLD));
             Log.i(TAG, "Deleted " + numDeletedNotif + " notifications from database");
 
-            dbHelper.endTransaction(true);
+            timeAfter = System.currentTimeMillis();
+            Log.i(TAG, "Stored " + numNotif + " notifications in " + (timeAfter - timeBefore) + " ms");
         }
     }
 
@@ -397,8 +415,7 @@ public class NotificationsSyncAdapterService extends Service {
 
     	//Construct a list of seen notifications in state "pending to mark as read in SWAD"
         markedNotificationsList = dbHelper.getAllRows(DataBaseHelper.DB_TABLE_NOTIFICATIONS,
-        		"seenLocal='" + Utils.parseBoolString(true)
-        		+ "' AND seenRemote='" + Utils.parseBoolString(false) + "'", null);
+        		"seenLocal = 1 AND seenRemote = 0", null);
 
         numMarkedNotificationsList = markedNotificationsList.size();
         if(isDebuggable)
@@ -54,6 +54,11 @@ public class ContinuousCaptureActivity extends AppCompatActivity {
      */
     private static DataBaseHelper dbHelper;
 
+    /**
+     * Set when this activity holds a reference to the shared database helper
+     */
+    private boolean dbAcquired;
+
     /**
      * Cryptographic helper
      */
@@ -101,8 +106,9 @@ public class ContinuousCaptureActivity extends AppCompatActivity {
 
         try {
             //Initialize database
-            dbHelper = new DataBaseHelper(this);
-            crypto = new Crypto(this, dbHelper.getDBKey());
+            dbHelper = DataBaseHelper.acquire(this);
+            dbAcquired = true;
+            crypto = dbHelper.getCrypto();
         } catch (Exception ex) {
             Log.e(TAG, ex.getMessage(), ex);
         }
@@ -125,6 +131,15 @@ public class ContinuousCaptureActivity extends AppCompatActivity {
         barcodeView.pause();
     }
 
+    @Override
+    protected void onDestroy() {
+        //The shared helper is only released if it was acquired by this activity
+        if (dbAcquired) {
+            DataBaseHelper.release();
+        }
+        super.onDestroy();
+    }
+
     @Override
     public boolean onKeyDown(int keyCode, KeyEvent event) {
         return barcodeView.onKeyDown(keyCode, event) || super.onKeyDown(keyCode, event);
@@ -149,12 +164,16 @@ public class ContinuousCaptureActivity extends AppCompatActivity {
             if ((u != null) && dbHelper.isUserEnrolledEvent(UsersActivity.getEventCode(), "userCode",
                     String.valueOf(u.getId()))) {
                 Log.d(TAG, "isUserEnrolledEvent=" + dbHelper.isUserEnrolledEvent(UsersActivity.getEventCode(), "userCode",
-                        crypto.encrypt(String.valueOf(u.getId()))));
-                //Mark student as present in the event
-                dbHelper.insertAttendance(u.getId(), UsersActivity.getEventCode(), true);
-
-                //Mark event status as "pending"
-                dbHelper.updateEventStatus(UsersActivity.getEventCode(), "pending");
+                        String.valueOf(u.getId())));
+                final long userCode = u.getId();
+                final int eventCode = UsersActivity.getEventCode();
+
+                //Mark student as present in the event and the event status as "pending"
+                dbHelper.submitWrite(() -> dbHelper.writeInTransaction(() -> {
+                    dbHelper.insertAttendance(userCode, eventCode, true);
+                    dbHelper.updateEventStatus(eventCode, "pending");
+                    return null;
+                }));
 
                 messageResult = getString(R.string.scan_valid_student);
                 iconResult = R.drawable.ok;
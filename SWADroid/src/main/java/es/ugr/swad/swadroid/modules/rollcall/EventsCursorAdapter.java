@@ -70,7 +70,7 @@ public class EventsCursorAdapter extends CursorAdapter {
 
         super(context, c, true);
         this.cursor = c;
-        this.crypto = new Crypto(context, dbHelper.getDBKey());
+        this.crypto = dbHelper.getCrypto();
         this.df = DateFormat.getDateTimeInstance(DateFormat.MEDIUM, DateFormat.SHORT);
         this.inflater = LayoutInflater.from(context);
 
@@ -91,7 +91,7 @@ public class EventsCursorAdapter extends CursorAdapter {
 
         super(context, c, autoRequery);
         this.cursor = c;
-        this.crypto = new Crypto(context, dbHelper.getDBKey());
+        this.crypto = dbHelper.getCrypto();
         this.df = DateFormat.getDateTimeInstance(DateFormat.MEDIUM, DateFormat.SHORT);
         this.inflater = LayoutInflater.from(context);
 
@@ -101,10 +101,10 @@ public class EventsCursorAdapter extends CursorAdapter {
 
     @Override
     public void bindView(View view, final Context context, Cursor cursor) {
-        String title = crypto.decrypt(cursor.getString(cursor.getColumnIndex("title")));
+        String title = crypto.decrypt(cursor.getBlob(cursor.getColumnIndex("title")));
         long startTime = cursor.getLong(cursor.getColumnIndex("startTime"));
         long endTime = cursor.getLong(cursor.getColumnIndex("endTime"));
-        final boolean pending = "pending".equals(crypto.decrypt(cursor.getString(cursor.getColumnIndex("status"))));
+        final boolean pending = "pending".equals(crypto.decrypt(cursor.getBlob(cursor.getColumnIndex("status"))));
         Calendar today = Calendar.getInstance();
         Calendar startTimeCalendar = Calendar.getInstance();
         Calendar endTimeCalendar = Calendar.getInstance();
@@ -31,8 +31,10 @@ import java.util.Vector;
 
 import es.ugr.swad.swadroid.Constants;
 import es.ugr.swad.swadroid.R;
+import es.ugr.swad.swadroid.database.CollectionDiff;
 import es.ugr.swad.swadroid.database.DataBaseHelper;
 import es.ugr.swad.swadroid.model.Event;
+import es.ugr.swad.swadroid.model.Model;
 import es.ugr.swad.swadroid.modules.courses.Courses;
 import es.ugr.swad.swadroid.modules.login.Login;
 import es.ugr.swad.swadroid.modules.Module;
@@ -50,10 +52,6 @@ public class EventsDownload extends Module {
      * Number of events associated to the selected course
      */
     private int numEvents;
-    /**
-     * List of downloaded event codes
-     */
-    private List<Long> eventCodes;
     /**
      * Rollcall Events Download tag name for Logcat
      */
@@ -99,7 +97,7 @@ public class EventsDownload extends Module {
             ArrayList<?> res = new ArrayList<Object>((Vector<?>) result);
             SoapObject soap = (SoapObject) res.get(1);
             numEvents = soap.getPropertyCount();
-            eventCodes = new ArrayList<>();
+            List<Model> events = new ArrayList<>(numEvents);
 
             for (int i = 0; i < numEvents; i++) {
                 SoapObject pii = (SoapObject) soap.getProperty(i);
@@ -125,19 +123,16 @@ public class EventsDownload extends Module {
                 if (title.equalsIgnoreCase(Constants.NULL_VALUE)) title = "";
                 if (text.equalsIgnoreCase(Constants.NULL_VALUE)) text = "";
 
-                //Inserts or updates event into database
-                dbHelper.insertEvent(new Event(attendanceEventCode, hidden, userSurname1,
+                events.add(new Event(attendanceEventCode, hidden, userSurname1,
                         userSurname2, userFirstName, userPhoto, startTime, endTime,
                         commentsTeachersVisible, title, text, groups));
-
-                dbHelper.insertEventCourse(attendanceEventCode, courseCode);
-
-                //Add eventCode to the new events list
-                eventCodes.add(attendanceEventCode);
             }
 
-            //Removes old events not listed in eventCodes
-            removeOldEvents();
+            //Inserts or updates events into database and removes old events not listed in the response
+            CollectionDiff<Model> diff = dbHelper.insertCollection(DataBaseHelper.DB_TABLE_EVENTS_ATTENDANCES,
+                    events, courseCode);
+
+            Log.i(TAG, "Removed " + diff.getDeleted().size() + " events");
 
             Log.i(TAG, "Retrieved " + numEvents + " events");
         }    // end if (result != null)
@@ -168,21 +163,4 @@ public class EventsDownload extends Module {
     protected void onError() {
 
     }
-
-    private void removeOldEvents() {
-        List<Event> dbEvents = dbHelper.getEventsCourse(Courses.getSelectedCourseCode());
-        int nEventsRemoved = 0;
-
-        if((dbEvents != null) && (dbEvents.size() > 0)) {
-            for (Event e : dbEvents) {
-                if (!eventCodes.contains(e.getId())) {
-                    dbHelper.removeAllRows(DataBaseHelper.DB_TABLE_EVENTS_COURSES, "eventCode", e.getId());
-                    dbHelper.removeAllRows(DataBaseHelper.DB_TABLE_EVENTS_ATTENDANCES, "id", e.getId());
-                    nEventsRemoved++;
-                }
-            }
-        }
-
-        Log.i(TAG, "Removed " + nEventsRemoved + " events");
-    }
 }
@@ -43,9 +43,11 @@ import android.widget.AbsListView;
 import android.widget.ListView;
 import android.widget.TextView;
 
+import com.android.dataframework.DataFramework;
 import com.google.zxing.integration.android.IntentIntegrator;
 
 import java.util.List;
+import java.util.Set;
 
 import es.ugr.swad.swadroid.Constants;
 import es.ugr.swad.swadroid.R;
@@ -80,9 +82,10 @@ public class UsersActivity extends MenuExpandableListActivity implements
      */
     private UsersCursorAdapter adapter;
     /**
-     * Database cursor for Adapter of users
+     * Refreshes the list of users when the users or their attendances change in database
      */
-    private Cursor dbCursor;
+    private final DataFramework.OnRowsChangedListener rowsChangedListener =
+            (table, ids) -> runOnUiThread(() -> refreshRows(table, ids));
     /**
      * Layout with "Pull to refresh" function
      */
@@ -168,18 +171,77 @@ public class UsersActivity extends MenuExpandableListActivity implements
     protected void onStart() {
         super.onStart();
 
-        //Refresh ListView of users
+        dbHelper.addOnRowsChangedListener(DataBaseHelper.DB_TABLE_USERS, rowsChangedListener);
+        dbHelper.addOnRowsChangedListener(DataBaseHelper.DB_TABLE_USERS_ATTENDANCES, rowsChangedListener);
+
+        //Refresh ListView of users, changes made while stopped were not received
         refreshAdapter();
     }
 
+    /* (non-Javadoc)
+     * @see android.app.Activity#onStop()
+     */
+    @Override
+    protected void onStop() {
+        dbHelper.removeOnRowsChangedListener(DataBaseHelper.DB_TABLE_USERS, rowsChangedListener);
+        dbHelper.removeOnRowsChangedListener(DataBaseHelper.DB_TABLE_USERS_ATTENDANCES, rowsChangedListener);
+
+        super.onStop();
+    }
+
+    /* (non-Javadoc)
+     * @see es.ugr.swad.swadroid.gui.MenuExpandableListActivity#onDestroy()
+     */
+    @Override
+    protected void onDestroy() {
+        //Closes the cursor of the adapter
+        if (adapter != null) {
+            adapter.changeCursor(null);
+        }
+
+        super.onDestroy();
+    }
+
     @Override
     protected void onActivityResult(int requestCode, int resultCode, Intent intent) {
-        refreshAdapter();
+        //The list is refreshed by onStart
         setActionMenuItemsEnabled(true);
 
         super.onActivityResult(requestCode, resultCode, intent);
     }
 
+    /**
+     * Refreshes only the attendances that have changed. The whole list is reloaded if the
+     * changed rows are unknown, if users have changed or if users have been added or removed
+     *
+     * @param table Table changed
+     * @param ids   _id of the rows changed, or null if they are unknown
+     */
+    private void refreshRows(String table, Set<Long> ids) {
+        if ((adapter == null) || (adapter.getCursor() == null) || (ids == null)
+                || !DataBaseHelper.DB_TABLE_USERS_ATTENDANCES.equals(table)
+                || (dbHelper.getUsersEventCount(eventCode) != adapter.getCount())) {
+            refreshAdapter();
+        } else {
+            adapter.updatePresence(dbHelper.getAttendancesPresence(eventCode, ids));
+            updateSubtitle();
+        }
+    }
+
+    /**
+     * Shows the attendance totals of the event in the subtitle
+     */
+    private void updateSubtitle() {
+        //Attendance totals are read from their counter, not counted from the cursor
+        int total = dbHelper.getUsersEventCount(eventCode);
+        if (total > 0) {
+            getSupportActionBar().setSubtitle(Courses.getSelectedCourseShortName() + " ("
+                    + dbHelper.getUsersEventCount(eventCode, true) + "/" + total + ")");
+        } else {
+            getSupportActionBar().setSubtitle(Courses.getSelectedCourseShortName());
+        }
+    }
+
     private void refreshAdapter() {
         /*
          * Database query can be a time consuming task ..
@@ -189,8 +251,7 @@ public class UsersActivity extends MenuExpandableListActivity implements
         new Handler().post(new Runnable() {
             @Override
             public void run() {
-                dbCursor = dbHelper.getUsersEventCursor(eventCode);
-                startManagingCursor(dbCursor);
+                Cursor dbCursor = dbHelper.getUsersEventCursor(eventCode);
 
                 /*
                  * If there aren't users to show, hide the users lvUsers
@@ -212,8 +273,15 @@ public class UsersActivity extends MenuExpandableListActivity implements
                     lvUsers.setVisibility(View.VISIBLE);
                 }
 
-                adapter = new UsersCursorAdapter(getBaseContext(), dbCursor, dbHelper, eventCode);
-                lvUsers.setAdapter(adapter);
+                //Swapping the cursor keeps the scroll position of the list
+                if (adapter == null) {
+                    adapter = new UsersCursorAdapter(getBaseContext(), dbCursor, dbHelper, eventCode);
+                    lvUsers.setAdapter(adapter);
+                } else {
+                    adapter.changeCursor(dbCursor);
+                }
+
+                updateSubtitle();
 
                 mProgressScreen.hide();
             }
@@ -357,12 +425,13 @@ public class UsersActivity extends MenuExpandableListActivity implements
                             public void onClick(DialogInterface dialog, int id) {
                                 dialog.cancel();
 
-                                dbHelper.beginTransaction();
-                                dbHelper.removeAllRows(DataBaseHelper.DB_TABLE_USERS_ATTENDANCES, "eventCode", eventCode);
-                                dbHelper.updateEventStatus(eventCode, "OK");
-                                dbHelper.endTransaction(true);
+                                final int removedEventCode = eventCode;
 
-                                refreshAdapter();
+                                dbHelper.submitWrite(() -> dbHelper.writeInTransaction(() -> {
+                                    dbHelper.removeAllRows(DataBaseHelper.DB_TABLE_USERS_ATTENDANCES, "eventCode", removedEventCode);
+                                    dbHelper.updateEventStatus(removedEventCode, "OK");
+                                    return null;
+                                }));
                             }
                         },
                         new DialogInterface.OnClickListener() {
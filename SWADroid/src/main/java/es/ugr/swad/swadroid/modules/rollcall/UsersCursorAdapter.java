@@ -39,6 +39,9 @@ import es.ugr.swad.swadroid.gui.ImageFactory;
 import es.ugr.swad.swadroid.utils.Crypto;
 import es.ugr.swad.swadroid.utils.Utils;
 
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * Custom CursorAdapter for display users
  *
@@ -46,11 +49,14 @@ import es.ugr.swad.swadroid.utils.Utils;
  */
 public class UsersCursorAdapter extends CursorAdapter {
     private DataBaseHelper dbHelper;
-    private Cursor dbCursor;
     private Crypto crypto;
     private ImageLoader loader;
     private int eventCode;
     private LayoutInflater inflater;
+    /**
+     * Presence of the attendances changed since the cursor was loaded, by user code
+     */
+    private final Map<Long, Boolean> changedPresence = new HashMap<>();
 
     private static class ViewHolder {
         ImageView image;
@@ -74,7 +80,7 @@ public class UsersCursorAdapter extends CursorAdapter {
 
         this.dbHelper = dbHelper;
         this.eventCode = eventCode;
-        this.crypto = new Crypto(context, dbHelper.getDBKey());
+        this.crypto = dbHelper.getCrypto();
         this.loader = ImageFactory.init(context, true, true, R.drawable.usr_bl, R.drawable.usr_bl,
                 R.drawable.usr_bl);
         this.inflater = LayoutInflater.from(context);
@@ -103,13 +109,15 @@ public class UsersCursorAdapter extends CursorAdapter {
 
     @Override
     public void bindView(View view, Context context, Cursor cursor) {
-        String userSurname1 = crypto.decrypt(cursor.getString(cursor.getColumnIndex("userSurname1")));
-        String userSurname2 = crypto.decrypt(cursor.getString(cursor.getColumnIndex("userSurname2")));
-        String userFirstname = crypto.decrypt(cursor.getString(cursor.getColumnIndex("userFirstname")));
-        String userID = crypto.decrypt(cursor.getString(cursor.getColumnIndex("userID")));
+        String userSurname1 = crypto.decrypt(cursor.getBlob(cursor.getColumnIndex("userSurname1")));
+        String userSurname2 = crypto.decrypt(cursor.getBlob(cursor.getColumnIndex("userSurname2")));
+        String userFirstname = crypto.decrypt(cursor.getBlob(cursor.getColumnIndex("userFirstname")));
+        String userID = crypto.decrypt(cursor.getBlob(cursor.getColumnIndex("userID")));
         final long userCode = cursor.getLong(cursor.getColumnIndex("userCode"));
-        String userPhoto = crypto.decrypt(cursor.getString(cursor.getColumnIndex("photoPath")));
-        boolean present = Utils.parseIntBool(cursor.getInt(cursor.getColumnIndex("present")));
+        String userPhoto = crypto.decrypt(cursor.getBlob(cursor.getColumnIndex("photoPath")));
+        Boolean changed = changedPresence.get(userCode);
+        boolean present = (changed != null) ? changed
+                : Utils.parseIntBool(cursor.getInt(cursor.getColumnIndex("present")));
 
         // Replace NULL value for strings returned by the webservice with the empty string
         if (userSurname1.equals(Constants.NULL_VALUE))
@@ -136,19 +144,16 @@ public class UsersCursorAdapter extends CursorAdapter {
         holder.checkbox.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
-                Cursor oldCursor;
-
-                //Inserts attendance into database
-                dbHelper.insertAttendance(userCode, eventCode, holder.checkbox.isChecked());
+                final boolean checked = holder.checkbox.isChecked();
 
-                //Mark event status as "pending"
-                dbHelper.updateEventStatus(eventCode, "pending");
+                //Inserts attendance into database. UsersActivity refreshes the list when it changes
+                dbHelper.submitWrite(() -> dbHelper.writeInTransaction(() -> {
+                    dbHelper.insertAttendance(userCode, eventCode, checked);
 
-                //Refresh ListView
-                dbCursor = dbHelper.getUsersEventCursor(eventCode);
-                oldCursor = swapCursor(dbCursor);
-                oldCursor.close();
-                notifyDataSetChanged();
+                    //Mark event status as "pending"
+                    dbHelper.updateEventStatus(eventCode, "pending");
+                    return null;
+                }));
             }
         });
 
@@ -162,6 +167,24 @@ public class UsersCursorAdapter extends CursorAdapter {
         holder.text2.setText(userID);
     }
 
+    /**
+     * Refreshes the presence of some users without reloading the cursor
+     *
+     * @param presence Map of user code to presence of the changed attendances
+     */
+    public void updatePresence(Map<Long, Boolean> presence) {
+        changedPresence.putAll(presence);
+        notifyDataSetChanged();
+    }
+
+    @Override
+    public Cursor swapCursor(Cursor newCursor) {
+        //A new cursor already contains every change
+        changedPresence.clear();
+
+        return super.swapCursor(newCursor);
+    }
+
     @Override
     public View newView(Context context, Cursor cursor, ViewGroup parent) {
         View view = inflater.inflate(R.layout.users_list_item, parent, false);
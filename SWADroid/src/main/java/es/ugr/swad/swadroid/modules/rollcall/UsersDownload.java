@@ -28,10 +28,12 @@ import android.widget.Toast;
 import org.ksoap2.serialization.SoapObject;
 
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Vector;
 
 import es.ugr.swad.swadroid.Constants;
 import es.ugr.swad.swadroid.R;
+import es.ugr.swad.swadroid.database.ChunkedIngestion;
 import es.ugr.swad.swadroid.database.DataBaseHelper;
 import es.ugr.swad.swadroid.model.User;
 import es.ugr.swad.swadroid.model.UserAttendance;
@@ -99,12 +101,9 @@ public class UsersDownload extends Module {
             SoapObject soap = (SoapObject) res.get(1);
             numUsers = soap.getPropertyCount();
 
-            if(numUsers > 0) {
-                dbHelper.beginTransaction();
+            List<User> users = new ArrayList<>(numUsers);
+            List<UserAttendance> attendances = new ArrayList<>(numUsers);
 
-                //Removes old attendances from database
-                dbHelper.removeAllRows(DataBaseHelper.DB_TABLE_USERS_ATTENDANCES, "eventCode", eventCode);
-            }
             for (int i = 0; i < numUsers; i++) {
                 SoapObject pii = (SoapObject) soap.getProperty(i);
 
@@ -124,15 +123,26 @@ public class UsersDownload extends Module {
                 if (userFirstname.equalsIgnoreCase(Constants.NULL_VALUE)) userFirstname = "";
                 if (userPhoto.equalsIgnoreCase(Constants.NULL_VALUE)) userPhoto = "";
 
-                //Inserts user data into database
-                dbHelper.insertUser(new User(userCode, null, userID, userNickname, userSurname1, userSurname2,
+                users.add(new User(userCode, null, userID, userNickname, userSurname1, userSurname2,
                         userFirstname, userPhoto, null, 0));
-
-                //Inserts attendance data into database
-                dbHelper.insertAttendance(userCode, eventCode, userPresent);
+                attendances.add(new UserAttendance(userCode, eventCode, userPresent));
             }
 
-            dbHelper.endTransaction(true);
+            //Users and attendances are committed in chunks, so a failure only redoes the last one
+            ChunkedIngestion ingestion = new ChunkedIngestion(dbHelper, "users." + eventCode,
+                    ChunkedIngestion.DEFAULT_CHUNK_SIZE);
+
+            //Removes the attendances not returned by the webservice before writing the new ones,
+            //even if there are none. Attendances already written by a previous try are kept
+            dbHelper.writeInTransaction(() -> dbHelper.removeAttendancesNotIn(eventCode, attendances));
+
+            //Inserts users and attendances data into database
+            ingestion.write("users", users,
+                    (chunk, i) -> dbHelper.upsertRows(DataBaseHelper.DB_TABLE_USERS, chunk));
+            ingestion.write("attendances", attendances,
+                    (chunk, i) -> dbHelper.upsertRows(DataBaseHelper.DB_TABLE_USERS_ATTENDANCES, chunk));
+
+            ingestion.finish();
 
             Log.i(TAG, "Retrieved " + numUsers + " users");
         }    // end if (result != null)
@@ -157,7 +167,8 @@ public class UsersDownload extends Module {
             Toast.makeText(this, msg, Toast.LENGTH_LONG).show();
         }
 
-        dbHelper.updateEventStatus(eventCode, "OK");
+        final int downloadedEventCode = eventCode;
+        dbHelper.submitWrite(() -> dbHelper.updateEventStatus(downloadedEventCode, "OK"));
 
         finish();
     }
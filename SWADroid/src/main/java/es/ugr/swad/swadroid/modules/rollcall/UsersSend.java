@@ -140,13 +140,16 @@ public class UsersSend extends Module {
 
             Toast.makeText(this, msg, Toast.LENGTH_LONG).show();
 
-            dbHelper.beginTransaction();
-            //Remove all event attendances from database after a successful sending
-            dbHelper.removeAllRows(DataBaseHelper.DB_TABLE_USERS_ATTENDANCES, "eventCode", eventCode);
+            final int sentEventCode = eventCode;
 
-            //Mark the event as sent to SWAD
-            dbHelper.updateEventStatus(eventCode, "OK");
-            dbHelper.endTransaction(true);
+            dbHelper.submitWrite(() -> dbHelper.writeInTransaction(() -> {
+                //Remove all event attendances from database after a successful sending
+                dbHelper.removeAllRows(DataBaseHelper.DB_TABLE_USERS_ATTENDANCES, "eventCode", sentEventCode);
+
+                //Mark the event as sent to SWAD
+                dbHelper.updateEventStatus(sentEventCode, "OK");
+                return null;
+            }));
 
             setResult(RESULT_OK);
         }
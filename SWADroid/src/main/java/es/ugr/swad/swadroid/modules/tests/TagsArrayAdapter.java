@@ -26,6 +26,7 @@ import android.widget.ArrayAdapter;
 import android.widget.CheckedTextView;
 
 import java.util.List;
+import java.util.Map;
 
 import es.ugr.swad.swadroid.model.TestTag;
 import es.ugr.swad.swadroid.utils.Utils;
@@ -34,14 +35,27 @@ public class TagsArrayAdapter extends ArrayAdapter<TestTag> {
     private final Context context;
     private final int textViewResourceId;
     private final List<TestTag> items;
+    private final Map<Long, Integer> questionsCount;
 
     public TagsArrayAdapter(Context context, int textViewResourceId,
                             List<TestTag> objects) {
 
+        this(context, textViewResourceId, objects, null);
+    }
+
+    /**
+     * Constructor that shows the number of questions of each tag
+     *
+     * @param questionsCount Number of questions of each tag, by tag code
+     */
+    public TagsArrayAdapter(Context context, int textViewResourceId,
+                            List<TestTag> objects, Map<Long, Integer> questionsCount) {
+
         super(context, textViewResourceId, objects);
         this.context = context;
         this.textViewResourceId = textViewResourceId;
         this.items = objects;
+        this.questionsCount = questionsCount;
     }
 
     /* (non-Javadoc)
@@ -59,7 +73,13 @@ public class TagsArrayAdapter extends ArrayAdapter<TestTag> {
         if (t != null) {
             CheckedTextView tt = (CheckedTextView) convertView.findViewById(android.R.id.text1);
             if (tt != null) {
-                tt.setText(Utils.fromHtml(t.getTagTxt()));
+                Integer count = (questionsCount != null) ? questionsCount.get(t.getId()) : null;
+
+                if ((count != null) && (count > 0)) {
+                    tt.setText(Utils.fromHtml(t.getTagTxt() + " (" + count + ")"));
+                } else {
+                    tt.setText(Utils.fromHtml(t.getTagTxt()));
+                }
             }
         }
 
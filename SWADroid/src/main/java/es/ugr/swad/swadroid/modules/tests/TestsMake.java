@@ -206,7 +206,8 @@ public class TestsMake extends MenuActivity {
         setLayout(R.layout.tests_tags);
 
         checkBoxesList = (ListView) findViewById(R.id.testTagsList);
-        tagsAdapter = new TagsArrayAdapter(this, R.layout.list_item_multiple_choice, allTagsList);
+        tagsAdapter = new TagsArrayAdapter(this, R.layout.list_item_multiple_choice, allTagsList,
+                dbHelper.getTagQuestionsCount());
         checkBoxesList.setAdapter(tagsAdapter);
         checkBoxesList.setChoiceMode(ListView.CHOICE_MODE_MULTIPLE);
         checkBoxesList.setOnItemClickListener(tagsAnswersTypeItemClickListener);
@@ -18,7 +18,6 @@
  */
 package es.ugr.swad.swadroid.modules.tests;
 
-import android.database.SQLException;
 import android.os.Bundle;
 import android.util.Log;
 import android.widget.Toast;
@@ -31,6 +30,9 @@ import java.util.Vector;
 
 import es.ugr.swad.swadroid.Constants;
 import es.ugr.swad.swadroid.R;
+import es.ugr.swad.swadroid.database.ChunkedIngestion;
+import es.ugr.swad.swadroid.database.DataBaseHelper;
+import es.ugr.swad.swadroid.model.PairTable;
 import es.ugr.swad.swadroid.model.Test;
 import es.ugr.swad.swadroid.model.TestAnswer;
 import es.ugr.swad.swadroid.model.TestQuestion;
@@ -122,7 +124,10 @@ public class TestsQuestionsDownload extends Module {
             }
 
             //Read questions info from webservice response
-            dbHelper.beginTransaction();
+            long courseCode = Courses.getSelectedCourseCode();
+            List<TestQuestion> questionsList = new ArrayList<>(listSizeQuestions);
+            List<PairTable<Long, Long>> questionsCourseList = new ArrayList<>(listSizeQuestions);
+            List<TestAnswer> answersList = new ArrayList<>(listSizeAnswers);
 
             for (int i = 0; i < listSizeQuestions; i++) {
                 SoapObject pii = (SoapObject) questionsListObject.getProperty(i);
@@ -133,20 +138,11 @@ public class TestsQuestionsDownload extends Module {
                 String questionFeedback = pii.getProperty("feedback").toString();
                 TestQuestion q = new TestQuestion(qstCod, stem, anstype, Utils.parseIntBool(shuffle), questionFeedback);
 
-                //If it's a new question, insert in database
-                try {
-                    dbHelper.insertTestQuestion(q, Courses.getSelectedCourseCode());
+                questionsList.add(q);
+                questionsCourseList.add(new PairTable<>(DataBaseHelper.DB_TABLE_TEST_QUESTIONS_COURSE, (long) qstCod, courseCode));
 
-                    if (isDebuggable)
-                        Log.d(TAG, "INSERTED: " + q.toString());
-
-                    //If it's an updated question, update it's row in database
-                } catch (SQLException e) {
-                    dbHelper.updateTestQuestion(q, Courses.getSelectedCourseCode());
-
-                    if (isDebuggable)
-                        Log.d(TAG, "UPDATED: " + q.toString());
-                }
+                if (isDebuggable)
+                    Log.d(TAG, "UPSERTED: " + q.toString());
             }
 
             //Read answers info from webservice response
@@ -157,22 +153,7 @@ public class TestsQuestionsDownload extends Module {
                 Integer correct = Integer.valueOf(pii.getProperty("correct").toString());
                 String answer = pii.getProperty("answerText").toString();
                 String answerFeeback = pii.getProperty("answerFeedback").toString();
-                TestAnswer a = new TestAnswer(0, ansIndex, qstCod, Utils.parseIntBool(correct), answer, answerFeeback);
-
-                //If it's a new answer, insert in database
-                try {
-                    dbHelper.insertTestAnswer(a, qstCod);
-
-                    if (isDebuggable)
-                        Log.d(TAG, "INSERTED: " + a.toString());
-
-                    //If it's an updated answer, update it's row in database
-                } catch (SQLException e) {
-                    dbHelper.updateTestAnswer(a, qstCod);
-
-                    if (isDebuggable)
-                        Log.d(TAG, "UPDATED: " + a.toString());
-                }
+                answersList.add(new TestAnswer(0, ansIndex, qstCod, Utils.parseIntBool(correct), answer, answerFeeback));
             }
 
             //Read relationships between questions and tags from webservice response
@@ -184,28 +165,40 @@ public class TestsQuestionsDownload extends Module {
                 TestTag tag = tagsList.get(tagsList.indexOf(new TestTag(tagCod, "", 0)));
                 tag.addQstCod(qstCod);
                 tag.setTagInd(tagIndex);
+            }
 
-                //If it's a new tag, insert in database
-                try {
-                    dbHelper.insertTestTag(tag);
-
-                    if (isDebuggable)
-                        Log.d(TAG, "INSERTED: " + tag.toString());
-
-                    //If it's an updated tag, update it's rows in database
-                } catch (SQLException e) {
-                    dbHelper.updateTestTag(tag);
+            //Insert new tags and update existing ones in database
+            List<TestTag> questionTagsList = new ArrayList<>();
+            for (TestTag tag : tagsList) {
+                if (tag.getQstCodList() != null) {
+                    questionTagsList.add(tag);
 
                     if (isDebuggable)
-                        Log.d(TAG, "UPDATED: " + tag.toString());
+                        Log.d(TAG, "UPSERTED: " + tag.toString());
                 }
             }
 
+            //Write the questions in chunks, each one in its own transaction. If the download
+            //fails, the next one with the same data skips the chunks already committed
+            ChunkedIngestion ingestion = new ChunkedIngestion(dbHelper, "tests." + courseCode,
+                    ChunkedIngestion.DEFAULT_CHUNK_SIZE);
+
+            //Insert new questions and update existing ones in database
+            ingestion.write("questions", questionsList,
+                    (chunk, i) -> dbHelper.upsertRows(DataBaseHelper.DB_TABLE_TEST_QUESTIONS, chunk));
+            ingestion.write("questionsCourse", questionsCourseList,
+                    (chunk, i) -> dbHelper.upsertRows(DataBaseHelper.DB_TABLE_TEST_QUESTIONS_COURSE, chunk));
+
+            ingestion.write("answers", answersList, (chunk, i) -> dbHelper.upsertTestAnswers(chunk));
+
+            //Insert new tags and update existing ones in database
+            ingestion.write("tags", questionTagsList, (chunk, i) -> dbHelper.upsertTestTags(chunk));
+
             //Update last time test was updated
             //Test testConfig = (Test) dbHelper.getRow(Constants.DB_TABLE_TEST_CONFIG, "id", Long.toString(Constants.getSelectedCourseCode()));
             //testConfig.setEditTime(System.currentTimeMillis() / 1000L);
             //dbHelper.updateTestConfig(testConfig.getId(), testConfig);
-            dbHelper.endTransaction(true);
+            ingestion.finish();
             
             timeAfter = System.currentTimeMillis();
 
@@ -109,6 +109,10 @@ public class Preferences {
      * Privacy policy preference name
      */
     public static final String PRIVACYPOLICYPREF = "privacyPolicyPref";
+    /**
+     * Slow query log preference name
+     */
+    public static final String QUERYLOGPREF = "queryLogPref";
     /**
      * Server preference name
      */
@@ -145,10 +149,6 @@ public class Preferences {
      * Authors preference name
      */
     public static final String LOGININFOPREF = "loginInfoPref";
-    /**
-     * Database Helper.
-     */
-    private static DataBaseHelper dbHelper;
     /**
      * Indicates if there are changes on preferences
      */
@@ -161,6 +161,18 @@ public class Preferences {
      * Sharing location preference
      */
     public static String SHARELOCATION = "prefShareLocation";
+    /**
+     * Prefix of the progress markers of chunked ingestions
+     */
+    public static final String INGESTIONPROGRESSPREF = "ingestionProgressPref.";
+    /**
+     * Maximum size of the downloaded data of all the courses
+     */
+    public static final String COURSEDATABUDGETPREF = "courseDataBudgetPref";
+    /**
+     * Results of the last database maintenance
+     */
+    public static final String MAINTENANCEREPORTPREF = "maintenanceReportPref";
     /**
      * Gets application preferences
      * @param ctx Application context
@@ -182,14 +194,6 @@ public class Preferences {
         getPreferences(ctx);
 
     	editor = prefs.edit();
-    	
-    	if(dbHelper == null) {
-	    	try {
-	            dbHelper = new DataBaseHelper(ctx);
-	        } catch (Exception e) {
-	            Log.e(TAG, e.getMessage());
-	        }
-    	}
 	}
 
 	/**
@@ -347,6 +351,86 @@ public class Preferences {
         editor.commit();
     }
 
+    /**
+     * Gets the maximum size of the downloaded data of all the courses
+     *
+     * @return The maximum size in bytes
+     */
+    public static long getCourseDataBudget() {
+        return prefs.getLong(COURSEDATABUDGETPREF, Constants.DEFAULT_COURSE_DATA_BUDGET);
+    }
+
+    /**
+     * Sets the maximum size of the downloaded data of all the courses
+     *
+     * @param budget The maximum size in bytes
+     */
+    public static void setCourseDataBudget(long budget) {
+        editor = editor.putLong(COURSEDATABUDGETPREF, budget);
+        editor.commit();
+    }
+
+    /**
+     * Gets the results of the last database maintenance
+     *
+     * @return The results of the last database maintenance, or "" if it has never run
+     */
+    public static String getMaintenanceReport() {
+        return prefs.getString(MAINTENANCEREPORTPREF, "");
+    }
+
+    /**
+     * Sets the results of the last database maintenance
+     *
+     * @param report The results of the last database maintenance
+     */
+    public static void setMaintenanceReport(String report) {
+        editor = editor.putString(MAINTENANCEREPORTPREF, report);
+        editor.commit();
+    }
+
+    /**
+     * Gets the number of chunks of an ingestion already committed to database
+     *
+     * @param ingestion   Ingestion and phase name
+     * @param fingerprint Fingerprint of the data being ingested
+     * @return The number of chunks committed, or 0 if the marker was stored for other data
+     */
+    public static int getIngestionProgress(String ingestion, long fingerprint) {
+        String marker = prefs.getString(INGESTIONPROGRESSPREF + ingestion, "");
+        String prefix = fingerprint + ":";
+
+        return marker.startsWith(prefix) ? Integer.parseInt(marker.substring(prefix.length())) : 0;
+    }
+
+    /**
+     * Sets the number of chunks of an ingestion already committed to database
+     *
+     * @param ingestion   Ingestion and phase name
+     * @param fingerprint Fingerprint of the data being ingested
+     * @param chunks      Number of chunks committed
+     */
+    public static void setIngestionProgress(String ingestion, long fingerprint, int chunks) {
+        editor = editor.putString(INGESTIONPROGRESSPREF + ingestion, fingerprint + ":" + chunks);
+        editor.commit();
+    }
+
+    /**
+     * Removes the progress markers of an ingestion and all its phases
+     *
+     * @param ingestion Ingestion name, or "" to remove the markers of all ingestions
+     */
+    public static void removeIngestionProgress(String ingestion) {
+        String prefix = INGESTIONPROGRESSPREF + ingestion;
+
+        for (String key : prefs.getAll().keySet()) {
+            if (key.startsWith(prefix)) {
+                editor = editor.remove(key);
+            }
+        }
+        editor.commit();
+    }
+
 	/**
      * Sets the database passphrase
      *
@@ -399,26 +483,47 @@ public class Preferences {
     }
     
     /**
-     * Clean data of all tables from database. Removes users photos from external storage
+     * Clean data of all tables from database. Removes users photos from external storage.
+     * The tables are emptied on the database writer thread without blocking the caller, and the
+     * shared database helper is only held until they have been emptied
+     *
+     * @param context Application context
      */
-    private static void cleanDatabase() {
-        List<String> tablenames = dbHelper.getAllTablenames();
+    private static void cleanDatabase(Context context) {
+        final DataBaseHelper dbHelper;
 
-        //Empty all tables except DB_TABLE_FREQUENT_RECIPIENTS
-        dbHelper.beginTransaction();
+        try {
+            dbHelper = DataBaseHelper.acquire(context);
+        } catch (Exception e) {
+            Log.e(TAG, "Database could not be cleaned: " + e.getMessage());
+            return;
+        }
 
-        for(String table : tablenames) {
-            if(!DataBaseHelper.DB_TABLE_FREQUENT_RECIPIENTS.equals(table)) {
-                dbHelper.emptyTable(table);
+        dbHelper.submitWrite(() -> {
+            try {
+                List<String> tablenames = dbHelper.getAllTablenames();
+
+                //Empty all tables except DB_TABLE_FREQUENT_RECIPIENTS. Counter tables are emptied too,
+                //their triggers only update existing counters so the order of the tables does not matter
+                dbHelper.writeInTransaction(() -> {
+                    for(String table : tablenames) {
+                        if(!DataBaseHelper.DB_TABLE_FREQUENT_RECIPIENTS.equals(table)) {
+                            dbHelper.emptyTable(table);
+                        }
+                    }
+                    return null;
+                });
+            } finally {
+                DataBaseHelper.release();
             }
-        }
 
-        dbHelper.endTransaction(true);
-        
-        Preferences.setLastCourseSelected(0);
-        DataBaseHelper.setDbCleaned(true);
-        
-        Log.i(TAG, "Database has been cleaned");
+            //Interrupted ingestions must be written again from the start
+            removeIngestionProgress("");
+            Preferences.setLastCourseSelected(0);
+            DataBaseHelper.setDbCleaned(true);
+
+            Log.i(TAG, "Database has been cleaned");
+        });
     }
     
     public static void logoutClean(Context context, String key) {
@@ -426,7 +531,7 @@ public class Preferences {
         removeLoginInfo();
         initializeSelectedCourse();
         
-        cleanDatabase();
+        cleanDatabase(context);
         setPreferencesChanged();
         
         if(isSyncEnabled()) {
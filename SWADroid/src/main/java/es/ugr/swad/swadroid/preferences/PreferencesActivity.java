@@ -45,6 +45,7 @@ import java.util.List;
 
 import es.ugr.swad.swadroid.Constants;
 import es.ugr.swad.swadroid.R;
+import es.ugr.swad.swadroid.database.DataBaseHelper;
 import es.ugr.swad.swadroid.gui.DialogFactory;
 import es.ugr.swad.swadroid.modules.login.Login;
 import es.ugr.swad.swadroid.modules.login.LoginActivity;
@@ -106,6 +107,10 @@ public class PreferencesActivity extends PreferenceActivity implements OnPrefere
      * Privacy policy preference
      */
     private static Preference privacyPolicyPref;
+    /**
+     * Slow query log preference
+     */
+    private static Preference queryLogPref;
     /**
      * Synchronization time preference
      */
@@ -186,6 +191,7 @@ public class PreferencesActivity extends PreferenceActivity implements OnPrefere
         blogPref = findPreference(Preferences.BLOGPREF);
         sharePref = findPreference(Preferences.SHAREPREF);
         privacyPolicyPref = findPreference(Preferences.PRIVACYPOLICYPREF);
+        queryLogPref = findPreference(Preferences.QUERYLOGPREF);
         syncTimePref = findPreference(Preferences.SYNCTIMEPREF);
         syncEnablePref = (CheckBoxPreference) findPreference(Preferences.SYNCENABLEPREF);
         //syncTimeLocationPref = findPreference(Preferences.SYNCLOCATIONTIMEPREF);
@@ -309,6 +315,22 @@ public class PreferencesActivity extends PreferenceActivity implements OnPrefere
                 return true;
             }
         });
+        queryLogPref.setOnPreferenceClickListener(new OnPreferenceClickListener() {
+            /**
+             * Called when a preference is selected.
+             * @param preference Preference selected.
+             */
+            public boolean onPreferenceClick(Preference preference) {
+                Intent sharingIntent = new Intent(android.content.Intent.ACTION_SEND);
+                sharingIntent.setType("text/plain");
+                sharingIntent.putExtra(android.content.Intent.EXTRA_SUBJECT,
+                        getString(R.string.app_name) + " - " + getString(R.string.queryLogTitle));
+                sharingIntent.putExtra(android.content.Intent.EXTRA_TEXT, DataBaseHelper.exportQueryLog()
+                        + "\nLast database maintenance: " + Preferences.getMaintenanceReport() + "\n");
+                startActivity(Intent.createChooser(sharingIntent, getString(R.string.queryLogTitle)));
+                return true;
+            }
+        });
 
         try {
             currentVersionPref.setSummary(getPackageManager().getPackageInfo(getPackageName(), 0).versionName);
@@ -0,0 +1,210 @@
+/*
+ *  This file is part of SWADroid.
+ *
+ *  Copyright (C) 2010 Juan Miguel Boyero Corral <juanmi1982@gmail.com>
+ *
+ *  SWADroid is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  SWADroid is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with SWADroid.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.ugr.swad.swadroid.sync;
+
+import android.app.AlarmManager;
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.os.CancellationSignal;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.text.DateFormat;
+import java.util.Date;
+
+import es.ugr.swad.swadroid.BuildConfig;
+import es.ugr.swad.swadroid.Constants;
+import es.ugr.swad.swadroid.database.DataBaseHelper;
+import es.ugr.swad.swadroid.modules.courses.Courses;
+import es.ugr.swad.swadroid.preferences.Preferences;
+
+/**
+ * Background job that returns the free pages of the database to the file system.
+ * It only runs while the device is idle and charging, and reclaims the pages in small
+ * steps so that it can be stopped at any moment without losing the work done.
+ *
+ * @author Juan Miguel Boyero Corral <juanmi1982@gmail.com>
+ */
+public class DatabaseMaintenanceJobService extends JobService {
+    /**
+     * DatabaseMaintenanceJobService tag name for Logcat
+     */
+    private static final String TAG = Constants.APP_TAG + " DatabaseMaintenance";
+    /**
+     * Identifier of the maintenance job
+     */
+    private static final int JOB_ID = 1001;
+    /**
+     * Pages reclaimed in each step
+     */
+    private static final int PAGES_PER_STEP = 256;
+    /**
+     * Maximum number of steps in each run
+     */
+    private static final int MAX_STEPS = 64;
+    /**
+     * Number of runs of each read path in the storage profiles benchmark (debug builds only)
+     */
+    private static final int BENCHMARK_RUNS = 5;
+    /**
+     * Number of notifications stored in the ingestion benchmark (debug builds only)
+     */
+    private static final int BENCHMARK_NOTIFICATIONS = 1000;
+    /**
+     * Number of notifications looked up in the hot lookups benchmark (debug builds only)
+     */
+    private static final int BENCHMARK_LOOKUPS = 500;
+    /**
+     * Set when the system stops the job
+     */
+    private volatile boolean stopped;
+    /**
+     * Cancels the database rewrite when the system stops the job
+     */
+    private volatile CancellationSignal cancellation;
+
+    /**
+     * Schedules the maintenance job once a day, while the device is idle and charging.
+     * It does nothing if the job is already scheduled
+     *
+     * @param context Application context
+     */
+    public static void schedule(Context context) {
+        JobScheduler scheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+
+        if ((scheduler != null) && (scheduler.getPendingJob(JOB_ID) == null)) {
+            JobInfo job = new JobInfo.Builder(JOB_ID, new ComponentName(context, DatabaseMaintenanceJobService.class))
+                    .setRequiresDeviceIdle(true)
+                    .setRequiresCharging(true)
+                    .setPeriodic(AlarmManager.INTERVAL_DAY)
+                    .build();
+
+            scheduler.schedule(job);
+            Log.i(TAG, "Database maintenance scheduled");
+        }
+    }
+
+    @Override
+    public boolean onStartJob(final JobParameters params) {
+        stopped = false;
+        cancellation = new CancellationSignal();
+
+        new Thread(() -> {
+            boolean reschedule = false;
+
+            try {
+                new Preferences(getApplicationContext());
+                DataBaseHelper dbHelper = DataBaseHelper.acquire(getApplicationContext());
+
+                try {
+                    //Reschedule only if the job was stopped before reclaiming all the pages
+                    reschedule = !runMaintenance(dbHelper);
+                } finally {
+                    DataBaseHelper.release();
+                }
+            } catch (Exception e) {
+                //An error would happen again if retried at once, so the job waits for its next run
+                Log.e(TAG, "Error reclaiming free pages", e);
+            }
+
+            jobFinished(params, reschedule);
+        }, "DatabaseMaintenance").start();
+
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        stopped = true;
+        cancellation.cancel();
+        return true;
+    }
+
+    /**
+     * Evicts the data of the least recently opened courses if the storage budget is exceeded
+     * and reclaims the free pages of the database in steps of PAGES_PER_STEP pages.
+     * The results are stored in preferences, so that they can be exported with the query log
+     *
+     * @param dbHelper Database helper
+     * @return true if the work has been finished, false if the job was stopped
+     * @throws Exception If the pages could not be reclaimed
+     */
+    private boolean runMaintenance(DataBaseHelper dbHelper) throws Exception {
+        long start = SystemClock.elapsedRealtime();
+        long sizeBefore = dbHelper.getDatabaseFileSize();
+        long freeBefore;
+        long reclaimed = 0;
+        int steps = 0;
+        boolean rewritten = false;
+        String rewriteError = null;
+        String report;
+
+        //Remove the data of the least recently opened courses first, so that its pages are reclaimed below.
+        //The selected course is only known if the application is running in this process,
+        //otherwise it is read from the last course selected in the courses spinner
+        long selectedCourseCode = Courses.getSelectedCourseCode();
+        if (selectedCourseCode <= 0) {
+            selectedCourseCode = dbHelper.getCourseCodeAt(Preferences.getLastCourseSelected());
+        }
+        dbHelper.evictCourses(Preferences.getCourseDataBudget(), selectedCourseCode);
+        freeBefore = dbHelper.getFreePages();
+
+        //Databases created before incremental vacuum need to be rewritten once. If the rewrite
+        //fails, the rest of the maintenance is done and it is tried again in the next run
+        if (!stopped && !dbHelper.isIncrementalVacuumEnabled()) {
+            try {
+                rewritten = dbHelper.enableIncrementalVacuum(cancellation);
+            } catch (Exception e) {
+                rewriteError = e.getMessage();
+                Log.e(TAG, "Error rewriting the database for incremental vacuum", e);
+            }
+        }
+
+        if (dbHelper.isIncrementalVacuumEnabled()) {
+            while (!stopped && (steps < MAX_STEPS) && (dbHelper.getFreePages() > 0)) {
+                reclaimed += dbHelper.reclaimFreePages(PAGES_PER_STEP);
+                steps++;
+            }
+        }
+
+        report = DateFormat.getDateTimeInstance().format(new Date())
+                + ": size " + sizeBefore + " -> " + dbHelper.getDatabaseFileSize()
+                + " bytes, free pages " + freeBefore + " -> " + dbHelper.getFreePages()
+                + ", " + reclaimed + " pages reclaimed in " + steps + " steps"
+                + (rewritten ? ", database rewritten for incremental vacuum" : "")
+                + ((rewriteError != null) ? ", database rewrite failed: " + rewriteError : "") + ", "
+                + (SystemClock.elapsedRealtime() - start) + " ms" + (stopped ? " (stopped)" : "");
+
+        if (BuildConfig.DEBUG && !stopped) {
+            report += "\n" + dbHelper.benchmarkStorageProfile(BENCHMARK_RUNS)
+                    + "\n" + dbHelper.benchmarkHotLookups(BENCHMARK_LOOKUPS)
+                    + "\n" + dbHelper.benchmarkNotificationIngestion(BENCHMARK_NOTIFICATIONS)
+                    + "\n" + dbHelper.benchmarkBackup();
+        }
+
+        Log.i(TAG, "Database maintenance: " + report);
+        Preferences.setMaintenanceReport(report);
+
+        return !stopped;
+    }
+}
@@ -23,6 +23,7 @@ package es.ugr.swad.swadroid.utils;
 import android.content.Context;
 import android.util.Log;
 
+import java.nio.charset.Charset;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.spec.AlgorithmParameterSpec;
@@ -47,6 +48,8 @@ public class Crypto {
      */
     public static final String TAG = Constants.APP_TAG + " Crypto";
 
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
     private Cipher ecipher;
     private Cipher dcipher;
 
@@ -84,36 +87,45 @@ public class Crypto {
         }
     }
 
-    public String encrypt(String str) {
-        String rVal;
+    /**
+     * Encrypts a string. The ciphertext is returned as raw bytes, to be stored in BLOB columns
+     *
+     * @param str String to be encrypted
+     * @return Encrypted bytes or an empty array if the string could not be encrypted
+     */
+    public synchronized byte[] encrypt(String str) {
+        byte[] rVal;
         try {
             // Encode the string into bytes using utf-8
-            byte[] utf8 = str.getBytes("UTF8");
+            byte[] utf8 = str.getBytes(UTF8);
 
             // Encrypt
-            byte[] enc = ecipher.doFinal(utf8);
-
-            // Encode bytes to base64 to get a string
-            rVal = toHex(enc);
+            rVal = ecipher.doFinal(utf8);
         } catch (Exception e) {
-            rVal = "Error encrypting: " + e.getMessage();
+            rVal = new byte[0];
 
-            Log.e(TAG, e.getMessage());
+            Log.e(TAG, "Error encrypting: " + e.getMessage());
         }
         return rVal;
     }
 
-    public String decrypt(String str) {
+    /**
+     * Decrypts the bytes returned by encrypt
+     *
+     * @param enc Encrypted bytes
+     * @return Decrypted string
+     */
+    public synchronized String decrypt(byte[] enc) {
         String rVal;
+        if (enc == null || enc.length == 0) {
+            return "";
+        }
         try {
-            // Decode base64 to get bytes
-            byte[] dec = toByte(str);
-
             // Decrypt
-            byte[] utf8 = dcipher.doFinal(dec);
+            byte[] utf8 = dcipher.doFinal(enc);
 
             // Decode using utf-8
-            rVal = new String(utf8, "UTF8");
+            rVal = new String(utf8, UTF8);
         } catch (Exception e) {
             rVal = "Error encrypting: " + e.getMessage();
 
@@ -122,30 +134,51 @@ public class Crypto {
         return rVal;
     }
 
-    private static byte[] toByte(String hexString) {
+    /**
+     * Decrypts a ciphertext encoded as hexadecimal text, as it was stored before
+     * encrypted columns were moved to BLOB
+     *
+     * @param hex Encrypted bytes encoded as hexadecimal text
+     * @return Decrypted string
+     */
+    public String decrypt(String hex) {
+        return decrypt(toByte(hex));
+    }
+
+    /**
+     * Decodes hexadecimal text
+     *
+     * @param hexString Hexadecimal text
+     * @return Decoded bytes
+     */
+    public static byte[] toByte(String hexString) {
         int len = hexString.length() / 2;
         byte[] result = new byte[len];
-        for (int i = 0; i < len; i++)
-            result[i] = Integer.valueOf(hexString.substring(2 * i, 2 * i + 2),
-                    16).byteValue();
+        for (int i = 0; i < len; i++) {
+            result[i] = (byte) ((Character.digit(hexString.charAt(2 * i), 16) << 4)
+                    | Character.digit(hexString.charAt(2 * i + 1), 16));
+        }
         return result;
     }
 
-    private static String toHex(byte[] buf) {
+    /**
+     * Encodes bytes as uppercase hexadecimal text
+     *
+     * @param buf Bytes to be encoded
+     * @return Hexadecimal text
+     */
+    public static String toHex(byte[] buf) {
         if (buf == null)
             return "";
-        StringBuffer result = new StringBuffer(2 * buf.length);
-        for (byte aBuf : buf) {
-            appendHex(result, aBuf);
+        char[] result = new char[2 * buf.length];
+        for (int i = 0; i < buf.length; i++) {
+            result[2 * i] = HEX[(buf[i] >> 4) & 0x0f];
+            result[2 * i + 1] = HEX[buf[i] & 0x0f];
         }
-        return result.toString();
+        return new String(result);
     }
 
-    private final static String HEX = "0123456789ABCDEF";
-
-    private static void appendHex(StringBuffer sb, byte b) {
-        sb.append(HEX.charAt((b >> 4) & 0x0f)).append(HEX.charAt(b & 0x0f));
-    }
+    private final static char[] HEX = "0123456789ABCDEF".toCharArray();
 
     /**
      * Encrypts user password with SHA-512 and encodes it to Base64UrlSafe
@@ -0,0 +1,142 @@
+/*
+ *  This file is part of SWADroid.
+ *
+ *  Copyright (C) 2010 Juan Miguel Boyero Corral <juanmi1982@gmail.com>
+ *
+ *  SWADroid is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  SWADroid is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with SWADroid.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.ugr.swad.swadroid.database;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests of the resumption of interrupted ingestions
+ *
+ * @author Juan Miguel Boyero Corral <juanmi1982@gmail.com>
+ */
+public class ChunkedIngestionTest {
+    private static final List<Integer> ROWS = Arrays.asList(1, 2, 3, 4, 5, 6, 7);
+
+    /**
+     * Progress markers kept in memory instead of the application preferences
+     */
+    private static class MemoryStore implements ChunkedIngestion.ProgressStore {
+        final Map<String, String> markers = new HashMap<>();
+
+        @Override
+        public int get(String marker, long fingerprint) {
+            String value = markers.get(marker);
+            String prefix = fingerprint + ":";
+
+            return (value != null && value.startsWith(prefix)) ? Integer.parseInt(value.substring(prefix.length())) : 0;
+        }
+
+        @Override
+        public void set(String marker, long fingerprint, int chunks) {
+            markers.put(marker, fingerprint + ":" + chunks);
+        }
+
+        @Override
+        public void remove(String prefix) {
+            markers.keySet().removeIf(key -> key.startsWith(prefix));
+        }
+    }
+
+    private MemoryStore store;
+    private List<Integer> written;
+
+    @Before
+    public void setUp() {
+        store = new MemoryStore();
+        written = new ArrayList<>();
+    }
+
+    private ChunkedIngestion ingestion() {
+        return new ChunkedIngestion(task -> task.call(), store, "course1", 3);
+    }
+
+    private void writeFailingAt(final int failingChunk) throws Exception {
+        ingestion().write("users", ROWS, (chunk, i) -> {
+            if (i == failingChunk) {
+                throw new IllegalStateException("Connection lost");
+            }
+            written.add(i);
+        });
+    }
+
+    @Test
+    public void rowsAreWrittenInChunks() throws Exception {
+        List<List<Integer>> chunks = new ArrayList<>();
+        ChunkedIngestion ingestion = ingestion();
+
+        ingestion.write("users", ROWS, (chunk, i) -> chunks.add(new ArrayList<>(chunk)));
+        ingestion.finish();
+
+        assertEquals(Arrays.asList(Arrays.asList(1, 2, 3), Arrays.asList(4, 5, 6), Arrays.asList(7)), chunks);
+        assertTrue(store.markers.isEmpty());
+    }
+
+    @Test
+    public void interruptedIngestionResumesAfterTheLastCommittedChunk() throws Exception {
+        try {
+            writeFailingAt(1);
+            fail("The second chunk should have failed");
+        } catch (IllegalStateException e) {
+            //Only the first chunk was committed
+        }
+
+        writeFailingAt(-1);
+
+        assertEquals(Arrays.asList(0, 1, 2), written);
+    }
+
+    @Test
+    public void differentDataStartsFromTheFirstChunk() throws Exception {
+        try {
+            writeFailingAt(1);
+            fail("The second chunk should have failed");
+        } catch (IllegalStateException e) {
+            //Only the first chunk was committed
+        }
+
+        ingestion().write("users", Arrays.asList(1, 2, 3, 4, 5, 6, 8), (chunk, i) -> written.add(i));
+
+        assertEquals(Arrays.asList(0, 0, 1, 2), written);
+    }
+
+    @Test
+    public void failedChunkIsNotMarkedAsCommitted() throws Exception {
+        try {
+            writeFailingAt(0);
+            fail("The first chunk should have failed");
+        } catch (IllegalStateException e) {
+            //Nothing was committed
+        }
+
+        writeFailingAt(-1);
+
+        assertEquals(Arrays.asList(0, 1, 2), written);
+    }
+}
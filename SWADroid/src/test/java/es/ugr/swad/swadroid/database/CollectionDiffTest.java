@@ -0,0 +1,85 @@
+/*
+ *  This file is part of SWADroid.
+ *
+ *  Copyright (C) 2010 Juan Miguel Boyero Corral <juanmi1982@gmail.com>
+ *
+ *  SWADroid is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  SWADroid is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with SWADroid.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.ugr.swad.swadroid.database;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import es.ugr.swad.swadroid.model.Course;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the differences between stored and received rows
+ *
+ * @author Juan Miguel Boyero Corral <juanmi1982@gmail.com>
+ */
+public class CollectionDiffTest {
+    private static final CollectionDiff.Fingerprint<Course> FINGERPRINT =
+            c -> Arrays.asList(c.getShortName(), c.getFullName());
+
+    @Test
+    public void rowsAreMatchedById() {
+        Course kept = new Course(1, 3, "IS", "Ingenieria del Software");
+        Course renamed = new Course(2, 3, "BD", "Bases de Datos");
+        Course removed = new Course(3, 3, "SO", "Sistemas Operativos");
+        Course added = new Course(4, 3, "ALG", "Algoritmica");
+
+        CollectionDiff<Course> diff = CollectionDiff.compute(
+                Arrays.asList(kept, renamed, removed),
+                Arrays.asList(new Course(1, 3, "IS", "Ingenieria del Software"),
+                        new Course(2, 3, "BD", "Bases de Datos I"), added),
+                FINGERPRINT);
+
+        assertEquals(Collections.singletonList(added), diff.getInserted());
+        assertEquals(1, diff.getUpdated().size());
+        assertEquals(2, diff.getUpdated().get(0).getId());
+        assertEquals(Collections.singletonList(3L), diff.getDeleted());
+        assertEquals(1, diff.getUnchanged());
+        assertEquals(2, diff.getUpserted().size());
+        assertFalse(diff.isEmpty());
+    }
+
+    @Test
+    public void sameContentIsEmpty() {
+        CollectionDiff<Course> diff = CollectionDiff.compute(
+                Collections.singletonList(new Course(1, 3, "IS", "Ingenieria del Software")),
+                Collections.singletonList(new Course(1, 3, "IS", "Ingenieria del Software")),
+                FINGERPRINT);
+
+        assertTrue(diff.isEmpty());
+        assertEquals(1, diff.getUnchanged());
+    }
+
+    @Test
+    public void emptyDownloadDeletesEveryRow() {
+        CollectionDiff<Course> diff = CollectionDiff.compute(
+                Arrays.asList(new Course(1, 3, "IS", "IS"), new Course(2, 3, "BD", "BD")),
+                Collections.<Course>emptyList(),
+                FINGERPRINT);
+
+        assertTrue(diff.getUpserted().isEmpty());
+        assertEquals(2, diff.getDeleted().size());
+        assertTrue(diff.getDeleted().containsAll(Arrays.asList(1L, 2L)));
+    }
+}
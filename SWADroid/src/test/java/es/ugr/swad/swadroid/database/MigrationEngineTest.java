@@ -0,0 +1,98 @@
+/*
+ *  This file is part of SWADroid.
+ *
+ *  Copyright (C) 2010 Juan Miguel Boyero Corral <juanmi1982@gmail.com>
+ *
+ *  SWADroid is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  SWADroid is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with SWADroid.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.ugr.swad.swadroid.database;
+
+import android.database.sqlite.SQLiteDatabase;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the selection and ordering of the migration steps
+ *
+ * @author Juan Miguel Boyero Corral <juanmi1982@gmail.com>
+ */
+public class MigrationEngineTest {
+    private static Migration step(final int version) {
+        return new Migration() {
+            @Override
+            public int getVersion() {
+                return version;
+            }
+
+            @Override
+            public String getDescription() {
+                return "Step " + version;
+            }
+
+            @Override
+            public boolean isNeeded(SQLiteDatabase db) {
+                return true;
+            }
+
+            @Override
+            public void migrate(SQLiteDatabase db) {
+            }
+        };
+    }
+
+    private static List<Integer> versions(List<Migration> steps) {
+        List<Integer> versions = new ArrayList<>();
+
+        for (Migration m : steps) {
+            versions.add(m.getVersion());
+        }
+
+        return versions;
+    }
+
+    @Test
+    public void stepsRunInOrderOfVersion() {
+        MigrationEngine engine = new MigrationEngine(Arrays.asList(step(20), step(17), step(19), step(18)));
+
+        assertEquals(Arrays.asList(17, 18, 19, 20), versions(engine.getPending(16, 20)));
+    }
+
+    @Test
+    public void appliedStepsAreSkipped() {
+        MigrationEngine engine = new MigrationEngine(Arrays.asList(step(17), step(18), step(19)));
+
+        assertEquals(Arrays.asList(18, 19), versions(engine.getPending(17, 19)));
+    }
+
+    @Test
+    public void stepsAfterTheTargetAreNotRun() {
+        MigrationEngine engine = new MigrationEngine(Arrays.asList(step(17), step(18), step(19)));
+
+        assertEquals(Arrays.asList(17, 18), versions(engine.getPending(16, 18)));
+    }
+
+    @Test
+    public void migratedDatabaseHasNoPendingSteps() {
+        MigrationEngine engine = new MigrationEngine(Arrays.asList(step(17), step(18)));
+
+        assertTrue(engine.getPending(18, 18).isEmpty());
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ *  This file is part of SWADroid.
+ *
+ *  Copyright (C) 2010 Juan Miguel Boyero Corral <juanmi1982@gmail.com>
+ *
+ *  SWADroid is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  SWADroid is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with SWADroid.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.ugr.swad.swadroid.database;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests of the WHERE builder
+ *
+ * @author Juan Miguel Boyero Corral <juanmi1982@gmail.com>
+ */
+public class QueryBuilderTest {
+    @Test
+    public void valuesAreBoundAsPlaceholders() {
+        QueryBuilder query = QueryBuilder.where("id", 3).and("eventTime", ">", 1000L);
+
+        assertEquals("id = ? AND eventTime > ?", query.getSelection());
+        assertArrayEquals(new String[]{"3", "1000"}, query.getSelectionArgs());
+    }
+
+    @Test
+    public void lookupsOfDifferentValuesShareTheirStatement() {
+        QueryBuilder first = QueryBuilder.where("idUser", "alice");
+        QueryBuilder second = QueryBuilder.where("idUser", "o'brien");
+
+        assertEquals(first.getSelection(), second.getSelection());
+        assertEquals("idUser = ?", second.getSelection());
+        assertArrayEquals(new String[]{"o'brien"}, second.getSelectionArgs());
+    }
+
+    @Test
+    public void emptyBuilderHasNoSelection() {
+        QueryBuilder query = new QueryBuilder();
+
+        assertNull(query.getSelection());
+        assertNull(query.getSelectionArgs());
+        assertNull(query.getBindArgs());
+    }
+
+    @Test
+    public void inListHasOnePlaceholderPerValue() {
+        QueryBuilder query = QueryBuilder.where("crsCod", 7).andIn("id", Arrays.asList(1L, 2L, 3L));
+
+        assertEquals("crsCod = ? AND id IN (?, ?, ?)", query.getSelection());
+        assertArrayEquals(new String[]{"7", "1", "2", "3"}, query.getSelectionArgs());
+    }
+
+    @Test
+    public void emptyInListMatchesNoRows() {
+        QueryBuilder query = new QueryBuilder().andIn("id", Collections.emptyList());
+
+        assertEquals("0", query.getSelection());
+        assertNull(query.getSelectionArgs());
+    }
+
+    @Test
+    public void conditionsKeepTheirValuesInOrder() {
+        QueryBuilder query = QueryBuilder.where("seenLocal", 0)
+                .andCondition("T.id = Q.tagCod")
+                .andCondition("(eventTime < ? OR (eventTime = ? AND notifCode < ?))", 10, 10, 4);
+
+        assertEquals("seenLocal = ? AND T.id = Q.tagCod AND (eventTime < ? OR (eventTime = ? AND notifCode < ?))",
+                query.getSelection());
+        assertArrayEquals(new String[]{"0", "10", "10", "4"}, query.getSelectionArgs());
+    }
+
+    @Test
+    public void blobsAreBoundByType() {
+        byte[] blob = {1, 2, 3};
+        QueryBuilder query = QueryBuilder.where("userID", blob).and("id", 5);
+        Object[] args = query.getBindArgs();
+
+        assertSame(blob, args[0]);
+        assertEquals("5", args[1]);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void blobsCanNotBeBoundAsStrings() {
+        QueryBuilder.where("userID", new byte[]{1}).getSelectionArgs();
+    }
+
+    @Test
+    public void placeholdersAreSeparatedByCommas() {
+        assertEquals("", QueryBuilder.placeholders(0));
+        assertEquals("?", QueryBuilder.placeholders(1));
+        assertEquals("?, ?, ?", QueryBuilder.placeholders(3));
+    }
+}
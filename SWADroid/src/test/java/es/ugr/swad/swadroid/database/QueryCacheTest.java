@@ -0,0 +1,126 @@
+/*
+ *  This file is part of SWADroid.
+ *
+ *  Copyright (C) 2010 Juan Miguel Boyero Corral <juanmi1982@gmail.com>
+ *
+ *  SWADroid is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  SWADroid is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with SWADroid.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.ugr.swad.swadroid.database;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+import es.ugr.swad.swadroid.model.Course;
+import es.ugr.swad.swadroid.model.Model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests of the invalidation of the query cache
+ *
+ * @author Juan Miguel Boyero Corral <juanmi1982@gmail.com>
+ */
+public class QueryCacheTest {
+    private QueryCache cache;
+
+    private static Model copy(Model m) {
+        Course c = (Course) m;
+        return new Course(c.getId(), c.getUserRole(), c.getShortName(), c.getFullName());
+    }
+
+    private static List<Course> rows() {
+        return Collections.singletonList(new Course(1, 3, "IS", "Ingenieria del Software"));
+    }
+
+    @Before
+    public void setUp() {
+        cache = new QueryCache(2, QueryCacheTest::copy);
+    }
+
+    @Test
+    public void writtenTableInvalidatesItsQueries() {
+        String courses = QueryCache.key("courses", "id = ?", new Object[]{1});
+        String groups = QueryCache.key("groups");
+
+        cache.put(courses, cache.stamp(), rows(), "courses");
+        cache.put(groups, cache.stamp(), rows(), "groups", "group_types");
+
+        cache.onTableChanged("group_types");
+
+        assertNotNull(cache.get(courses));
+        assertNull(cache.get(groups));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void resultReadBeforeAWriteIsNotStored() {
+        String key = QueryCache.key("courses");
+        long stamp = cache.stamp();
+
+        cache.invalidate("notifications");
+        cache.put(key, stamp, rows(), "courses");
+
+        assertNull(cache.get(key));
+    }
+
+    @Test
+    public void clearRemovesEveryQuery() {
+        String key = QueryCache.key("courses");
+
+        cache.put(key, cache.stamp(), rows(), "courses");
+        cache.clear();
+
+        assertNull(cache.get(key));
+    }
+
+    @Test
+    public void leastRecentlyUsedQueryIsEvicted() {
+        String a = QueryCache.key("a");
+        String b = QueryCache.key("b");
+        String c = QueryCache.key("c");
+
+        cache.put(a, cache.stamp(), rows(), "a");
+        cache.put(b, cache.stamp(), rows(), "b");
+        cache.get(a);
+        cache.put(c, cache.stamp(), rows(), "c");
+
+        assertNotNull(cache.get(a));
+        assertNull(cache.get(b));
+        assertNotNull(cache.get(c));
+    }
+
+    @Test
+    public void callersGetTheirOwnCopies() {
+        String key = QueryCache.key("courses");
+        List<Course> stored = rows();
+
+        cache.put(key, cache.stamp(), stored, "courses");
+        stored.get(0).setFullName("Changed");
+
+        List<Course> first = cache.get(key);
+        first.get(0).setShortName("Changed");
+        List<Course> second = cache.get(key);
+
+        assertNotSame(first.get(0), second.get(0));
+        assertEquals("IS", second.get(0).getShortName());
+        assertEquals("Ingenieria del Software", second.get(0).getFullName());
+    }
+}